@@ -0,0 +1,44 @@
+package edu.neu.ccs.pyramid.benchmarks;
+
+import edu.neu.ccs.pyramid.dataset.ClfDataSet;
+import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import edu.neu.ccs.pyramid.simulation.ClassificationSynthesizer;
+import edu.neu.ccs.pyramid.simulation.MultiLabelSynthesizer;
+
+/**
+ * synthetic data shared by the benchmarks
+ * benchmark classes live in the packages of the code they measure, so they can reach package-private classes
+ */
+public class SyntheticData {
+
+    /**
+     * dense binary classification data
+     */
+    public static ClfDataSet binary(int numDataPoints, int numFeatures){
+        return ClassificationSynthesizer.getBuilder()
+                .setNumDataPoints(numDataPoints)
+                .setNumFeatures(numFeatures)
+                .setNoiseSD(0.1)
+                .build()
+                .multivarLine();
+    }
+
+    /**
+     * dense multi-label data with one flipped label per data point
+     */
+    public static MultiLabelClfDataSet multiLabel(int numDataPoints, int numFeatures, int numClasses){
+        return MultiLabelSynthesizer.flipOne(numDataPoints, numFeatures, numClasses);
+    }
+
+    /**
+     * binary labels as regression targets
+     */
+    public static double[] regressionLabels(ClfDataSet dataSet){
+        int[] labels = dataSet.getLabels();
+        double[] regLabels = new double[labels.length];
+        for (int i=0;i<labels.length;i++){
+            regLabels[i] = labels[i];
+        }
+        return regLabels;
+    }
+}
@@ -0,0 +1,47 @@
+package edu.neu.ccs.pyramid.classification.logistic_regression;
+
+import edu.neu.ccs.pyramid.benchmarks.SyntheticData;
+import edu.neu.ccs.pyramid.dataset.ClfDataSet;
+import org.apache.mahout.math.Vector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * value and gradient of the logistic loss, with the caches invalidated before each call
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LogisticLossBenchmark {
+    @Param({"10000"})
+    private int numDataPoints;
+    @Param({"100"})
+    private int numFeatures;
+    @Param({"true"})
+    private boolean parallel;
+
+    private LogisticLoss loss;
+
+    @Setup
+    public void setup(){
+        ClfDataSet dataSet = SyntheticData.binary(numDataPoints, numFeatures);
+        LogisticRegression logisticRegression = new LogisticRegression(2, numFeatures, true);
+        loss = new LogisticLoss(logisticRegression, dataSet, 1.0, parallel);
+    }
+
+    @Benchmark
+    public Vector getGradient(){
+        loss.setParameters(loss.getParameters());
+        return loss.getGradient();
+    }
+
+    @Benchmark
+    public double getValue(){
+        loss.setParameters(loss.getParameters());
+        return loss.getValue();
+    }
+}
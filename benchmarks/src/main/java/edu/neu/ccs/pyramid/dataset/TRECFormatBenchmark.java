@@ -0,0 +1,49 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.benchmarks.SyntheticData;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * loading a multi-label TREC data set from disk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TRECFormatBenchmark {
+    @Param({"20000"})
+    private int numDataPoints;
+    @Param({"100"})
+    private int numFeatures;
+    @Param({"10"})
+    private int numClasses;
+    @Param({"ML_CLF_SPARSE", "ML_CLF_SEQ_SPARSE"})
+    private DataSetType dataSetType;
+
+    private File trecFile;
+
+    @Setup
+    public void setup() throws IOException{
+        MultiLabelClfDataSet dataSet = SyntheticData.multiLabel(numDataPoints, numFeatures, numClasses);
+        trecFile = Files.createTempDirectory("trec_format_benchmark").toFile();
+        TRECFormat.save(dataSet, trecFile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException{
+        FileUtils.deleteDirectory(trecFile);
+    }
+
+    @Benchmark
+    public MultiLabelClfDataSet load() throws Exception{
+        return TRECFormat.loadMultiLabelClfDataSet(trecFile, dataSetType, true);
+    }
+}
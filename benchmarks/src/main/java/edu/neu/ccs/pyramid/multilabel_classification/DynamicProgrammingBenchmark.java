@@ -0,0 +1,43 @@
+package edu.neu.ccs.pyramid.multilabel_classification;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * enumerating the top k label sets of independent label marginals
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DynamicProgrammingBenchmark {
+    @Param({"20", "100"})
+    private int numLabels;
+    @Param({"10", "100"})
+    private int top;
+
+    private double[] probabilities;
+
+    @Setup
+    public void setup(){
+        Random random = new Random(0);
+        probabilities = new double[numLabels];
+        for (int l=0;l<numLabels;l++){
+            probabilities[l] = random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public DynamicProgramming.Candidate nextHighest(){
+        DynamicProgramming dynamicProgramming = new DynamicProgramming(probabilities);
+        DynamicProgramming.Candidate candidate = null;
+        for (int t=0;t<top;t++){
+            candidate = dynamicProgramming.nextHighest();
+        }
+        return candidate;
+    }
+}
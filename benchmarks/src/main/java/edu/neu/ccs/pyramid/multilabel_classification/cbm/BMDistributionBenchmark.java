@@ -0,0 +1,55 @@
+package edu.neu.ccs.pyramid.multilabel_classification.cbm;
+
+import edu.neu.ccs.pyramid.benchmarks.SyntheticData;
+import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticRegression;
+import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * building the Bernoulli mixture of one data point from a CBM with random logistic regressions
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BMDistributionBenchmark {
+    @Param({"1000"})
+    private int numDataPoints;
+    @Param({"100"})
+    private int numFeatures;
+    @Param({"10"})
+    private int numClasses;
+    @Param({"20"})
+    private int numComponents;
+
+    private MultiLabelClfDataSet dataSet;
+    private CBM cbm;
+    private int dataIndex;
+
+    @Setup
+    public void setup(){
+        dataSet = SyntheticData.multiLabel(numDataPoints, numFeatures, numClasses);
+        cbm = CBM.getBuilder()
+                .setNumClasses(numClasses)
+                .setNumComponents(numComponents)
+                .setNumFeatures(numFeatures)
+                .setBinaryClassifierType("lr")
+                .setMultiClassClassifierType("lr")
+                .build();
+        for (int k=0;k<numComponents;k++){
+            for (int l=0;l<numClasses;l++){
+                cbm.binaryClassifiers[k][l] = new LogisticRegression(2, numFeatures, true);
+            }
+        }
+    }
+
+    @Benchmark
+    public BMDistribution construct(){
+        dataIndex = (dataIndex+1)%numDataPoints;
+        return new BMDistribution(cbm, dataSet.getRow(dataIndex));
+    }
+}
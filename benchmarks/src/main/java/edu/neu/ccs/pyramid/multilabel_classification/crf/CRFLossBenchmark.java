@@ -0,0 +1,47 @@
+package edu.neu.ccs.pyramid.multilabel_classification.crf;
+
+import edu.neu.ccs.pyramid.benchmarks.SyntheticData;
+import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import org.apache.mahout.math.Vector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * value and gradient of the CRF loss, with the caches invalidated before each call
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CRFLossBenchmark {
+    @Param({"5000"})
+    private int numDataPoints;
+    @Param({"100"})
+    private int numFeatures;
+    @Param({"10"})
+    private int numClasses;
+
+    private CRFLoss loss;
+
+    @Setup
+    public void setup(){
+        MultiLabelClfDataSet dataSet = SyntheticData.multiLabel(numDataPoints, numFeatures, numClasses);
+        CMLCRF cmlcrf = new CMLCRF(dataSet);
+        loss = new CRFLoss(cmlcrf, dataSet, 1.0);
+    }
+
+    @Benchmark
+    public Vector getGradient(){
+        loss.setParameters(loss.getParameters());
+        return loss.getGradient();
+    }
+
+    @Benchmark
+    public double getValue(){
+        loss.setParameters(loss.getParameters());
+        return loss.getValue();
+    }
+}
@@ -0,0 +1,56 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.benchmarks.SyntheticData;
+import edu.neu.ccs.pyramid.dataset.ClfDataSet;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * best split of a single feature, and of all features in turn, at the root
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IntervalSplitterBenchmark {
+    @Param({"10000"})
+    private int numDataPoints;
+    @Param({"100"})
+    private int numFeatures;
+    @Param({"100"})
+    private int numSplitIntervals;
+
+    private ClfDataSet dataSet;
+    private double[] labels;
+    private double[] probs;
+    private RegTreeConfig regTreeConfig;
+    private Splitter.GlobalStats globalStats;
+
+    @Setup
+    public void setup(){
+        dataSet = SyntheticData.binary(numDataPoints, numFeatures);
+        labels = SyntheticData.regressionLabels(dataSet);
+        probs = new double[numDataPoints];
+        Arrays.fill(probs, 1);
+        regTreeConfig = new RegTreeConfig().setNumSplitIntervals(numSplitIntervals);
+        globalStats = new Splitter.GlobalStats(labels, probs);
+    }
+
+    @Benchmark
+    public Optional<SplitResult> splitOneFeature(){
+        return IntervalSplitter.split(regTreeConfig, dataSet, labels, probs, 0, globalStats);
+    }
+
+    @Benchmark
+    public void splitAllFeatures(Blackhole blackhole){
+        for (int j=0;j<numFeatures;j++){
+            blackhole.consume(IntervalSplitter.split(regTreeConfig, dataSet, labels, probs, j, globalStats));
+        }
+    }
+}
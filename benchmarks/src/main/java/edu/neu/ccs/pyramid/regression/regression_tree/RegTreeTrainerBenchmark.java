@@ -0,0 +1,43 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.benchmarks.SyntheticData;
+import edu.neu.ccs.pyramid.dataset.ClfDataSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * fitting one regression tree, with interval or histogram splits
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RegTreeTrainerBenchmark {
+    @Param({"10000"})
+    private int numDataPoints;
+    @Param({"100"})
+    private int numFeatures;
+    @Param({"10"})
+    private int maxNumLeaves;
+    @Param({"false", "true"})
+    private boolean histogramSplit;
+
+    private ClfDataSet dataSet;
+    private double[] labels;
+    private RegTreeConfig regTreeConfig;
+
+    @Setup
+    public void setup(){
+        dataSet = SyntheticData.binary(numDataPoints, numFeatures);
+        labels = SyntheticData.regressionLabels(dataSet);
+        regTreeConfig = new RegTreeConfig().setMaxNumLeaves(maxNumLeaves).setHistogramSplit(histogramSplit);
+    }
+
+    @Benchmark
+    public RegressionTree fit(){
+        return RegTreeTrainer.fit(regTreeConfig, dataSet, labels);
+    }
+}
@@ -0,0 +1,70 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.benchmarks.SyntheticData;
+import edu.neu.ccs.pyramid.dataset.ClfDataSet;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * predicting all data points with an ensemble of trees, tree by tree and compiled
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RegressionTreeBenchmark {
+    @Param({"10000"})
+    private int numDataPoints;
+    @Param({"100"})
+    private int numFeatures;
+    @Param({"100"})
+    private int numTrees;
+    @Param({"10"})
+    private int maxNumLeaves;
+
+    private ClfDataSet dataSet;
+    private List<Regressor> trees;
+    private CompiledTreeEnsemble compiled;
+
+    @Setup
+    public void setup(){
+        dataSet = SyntheticData.binary(numDataPoints, numFeatures);
+        double[] labels = SyntheticData.regressionLabels(dataSet);
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(maxNumLeaves);
+        RegressionTree tree = RegTreeTrainer.fit(regTreeConfig, dataSet, labels);
+        // prediction cost does not depend on tree diversity
+        trees = new ArrayList<>(Collections.nCopies(numTrees, tree));
+        compiled = CompiledTreeEnsemble.compile(Collections.singletonList(trees));
+    }
+
+    @Benchmark
+    public void predict(Blackhole blackhole){
+        for (int i=0;i<numDataPoints;i++){
+            double score = 0;
+            for (Regressor tree: trees){
+                score += tree.predict(dataSet.getRow(i));
+            }
+            blackhole.consume(score);
+        }
+    }
+
+    @Benchmark
+    public void compiledScore(Blackhole blackhole){
+        for (int i=0;i<numDataPoints;i++){
+            blackhole.consume(compiled.score(dataSet.getRow(i), 0));
+        }
+    }
+
+    @Benchmark
+    public double[][] compiledBatchScores(){
+        return compiled.scores(dataSet);
+    }
+}
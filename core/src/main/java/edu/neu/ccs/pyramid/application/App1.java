@@ -7,10 +7,13 @@ import edu.neu.ccs.pyramid.configuration.Config;
 import edu.neu.ccs.pyramid.dataset.*;
 import edu.neu.ccs.pyramid.elasticsearch.ESIndex;
 import edu.neu.ccs.pyramid.elasticsearch.FeatureLoader;
+import edu.neu.ccs.pyramid.elasticsearch.TermVectorSnapshot;
+import edu.neu.ccs.pyramid.elasticsearch.TermVectorSource;
 import edu.neu.ccs.pyramid.feature.*;
 import edu.neu.ccs.pyramid.feature_extraction.NgramEnumerator;
 import edu.neu.ccs.pyramid.feature_extraction.NgramTemplate;
 import edu.neu.ccs.pyramid.feature_extraction.StumpSelector;
+import edu.neu.ccs.pyramid.regression.regression_tree.StumpScorer;
 import edu.neu.ccs.pyramid.util.BoundedBlockPriorityQueue;
 import edu.neu.ccs.pyramid.util.Pair;
 import edu.neu.ccs.pyramid.util.Serialization;
@@ -215,8 +218,28 @@ public class App1 {
         return true;
     }
 
+    static boolean hasTermVectorSnapshot(Config config){
+        return config.containsKey("train.feature.ngram.termVectorSnapshot")
+                && !config.getString("train.feature.ngram.termVectorSnapshot").isEmpty();
+    }
+
+    static TermVectorSnapshot loadTermVectorSnapshot(Config config) throws Exception{
+        return TermVectorSnapshot.load(config.getString("train.feature.ngram.termVectorSnapshot"));
+    }
+
     static Set<Ngram> gather(Config config, ESIndex index,
                              String[] ids, Logger logger) throws Exception{
+        TermVectorSource termVectorSource = index;
+        // with a local snapshot, documents can be read twice to prune rare ngrams with a sketch
+        int sketchWidth = 0;
+        if (hasTermVectorSnapshot(config)){
+            logger.info("loading term vector snapshot");
+            termVectorSource = loadTermVectorSnapshot(config);
+            sketchWidth = 1<<22;
+            if (config.containsKey("train.feature.ngram.sketchWidth")){
+                sketchWidth = config.getInt("train.feature.ngram.sketchWidth");
+            }
+        }
 
         File metaDataFolder = new File(config.getString("output.folder"),"meta_data");
         metaDataFolder.mkdirs();
@@ -234,7 +257,7 @@ public class App1 {
                 for (int slop:slops){
                     logger.info("gathering "+n+ "-grams from field "+field+" with slop "+slop+" and minDf "+minDf+ ", (actual frequency threshold = "+minDFrequency+")");
                     NgramTemplate template = new NgramTemplate(field,n,slop);
-                    Multiset<Ngram> ngrams = NgramEnumerator.gatherNgram(index, ids, template, minDFrequency);
+                    Multiset<Ngram> ngrams = NgramEnumerator.gatherNgram(termVectorSource, ids, template, minDFrequency, sketchWidth);
                     logger.info("gathered "+ngrams.elementSet().size()+ " ngrams");
                     int newCounter = 0;
                     for (Multiset.Entry<Ngram> entry: ngrams.entrySet()){
@@ -388,16 +411,7 @@ public class App1 {
                 break;
             case "tfifl":
                 matchScoreType= FeatureLoader.MatchScoreType.TFIFL;
-                fieldLength = new HashMap<>();
-                for (String field: config.getStrings("train.feature.ngram.extractionFields")){
-
-                    float[] arr = new float[idTranslator.numData()];
-                    for (int i=0;i<idTranslator.numData();i++){
-                        String extId = idTranslator.toExtId(i);
-                        arr[i]=index.getFloatField(extId, field+"_field_length");
-                    }
-                    fieldLength.put(field, arr);
-                }
+                fieldLength = loadFieldLength(config, index, idTranslator);
 
 
                 break;
@@ -405,7 +419,12 @@ public class App1 {
                 throw new IllegalArgumentException("unknown ngramMatchScoreType");
         }
 
-        FeatureLoader.loadFeatures(index, dataSet, featureList, idTranslator, matchScoreType, docFilter, fieldLength);
+        if (hasTermVectorSnapshot(config)){
+            FeatureLoader.loadFeatures(index, loadTermVectorSnapshot(config), dataSet, featureList, idTranslator,
+                    matchScoreType, docFilter, fieldLength);
+        } else {
+            FeatureLoader.loadFeatures(index, dataSet, featureList, idTranslator, matchScoreType, docFilter, fieldLength);
+        }
 
         dataSet.setIdTranslator(idTranslator);
         dataSet.setLabelTranslator(labelTranslator);
@@ -786,6 +805,20 @@ public class App1 {
         return labels;
     }
 
+    /**
+     * lengths of the extraction fields, fetched for all documents in one pass over the index
+     */
+    private static Map<String, float[]> loadFieldLength(Config config, ESIndex index, IdTranslator idTranslator){
+        List<String> fields = config.getStrings("train.feature.ngram.extractionFields");
+        String[] lengthFields = fields.stream().map(field -> field+"_field_length").toArray(String[]::new);
+        Map<String, float[]> lengths = index.getFloatFields(lengthFields, idTranslator);
+        Map<String, float[]> fieldLength = new HashMap<>();
+        for (String field: fields){
+            fieldLength.put(field, lengths.get(field+"_field_length"));
+        }
+        return fieldLength;
+    }
+
     private static void ngramSelection(Config config, ESIndex index,
                                        String docFilter,
                                        Logger logger)throws Exception{
@@ -813,15 +846,7 @@ public class App1 {
             case "tfifl":
                 matchScoreType= FeatureLoader.MatchScoreType.TFIFL;
 
-                for (String field: config.getStrings("train.feature.ngram.extractionFields")){
-
-                    float[] arr = new float[idTranslator.numData()];
-                    for (int i=0;i<idTranslator.numData();i++){
-                        String extId = idTranslator.toExtId(i);
-                        arr[i]=index.getFloatField(extId, field+"_field_length");
-                    }
-                    fieldLength.put(field, arr);
-                }
+                fieldLength.putAll(loadFieldLength(config, index, idTranslator));
 
 
                 break;
@@ -839,12 +864,14 @@ public class App1 {
         }
 
         FeatureList featureList = (FeatureList)Serialization.deserialize(new File(metaDataFolder,"feature_list.ser"));
+        // label statistics are shared by all candidate ngrams
+        StumpScorer stumpScorer = StumpSelector.scorer(labels);
 
         featureList.getAll().stream().parallel()
                 .filter(feature->feature instanceof Ngram).map(feature->(Ngram)feature)
                 .filter(ngram -> ngram.getN()>1 )
                 .forEach(ngram ->{
-                    double[] scores = StumpSelector.scores(index, labels, ngram, idTranslator, matchScoreType, docFilter, fieldLength);
+                    double[] scores = StumpSelector.scores(index, stumpScorer, ngram, idTranslator, matchScoreType, docFilter, fieldLength);
                     for (int l=0;l<numLabels;l++){
                         queues.get(l).add(new Pair<>(ngram, scores[l]));
                     }
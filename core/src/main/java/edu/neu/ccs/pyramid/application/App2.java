@@ -218,6 +218,7 @@ public class App2 {
         int interval = config.getInt("train.fullScanInterval");
         int minibatchLifeSpan = config.getInt("train.minibatchLifeSpan");
         int numActiveFeatures = config.getInt("train.numActiveFeatures");
+        boolean histogramSplit = config.containsKey("train.histogramSplit") && config.getBoolean("train.histogramSplit");
         int numofLabels = allTrainData.getNumClasses();
 
         List<Integer>[] activeFeaturesLists = new ArrayList[numofLabels];
@@ -245,6 +246,7 @@ public class App2 {
                         .numSplitIntervals(config.getInt("train.numSplitIntervals"))
                         .usePrior(config.getBoolean("train.usePrior"))
                         .numActiveFeatures(numActiveFeatures)
+                        .histogramSplit(histogramSplit)
                         .build();
 
                 trainer = new IMLGBTrainer(imlgbConfig, boosting, shouldStop);
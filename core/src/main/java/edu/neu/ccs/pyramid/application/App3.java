@@ -90,7 +90,8 @@ public class App3 {
                 "train.feature.codeDesc.matchField", "train.feature.codeDesc.minMatchPercentage","test.considerNewLabel","valid.considerNewLabel","train.label.minDF",
                 "index.indexName","index.clusterName","index.documentType","index.clientType",
                 "index.hosts","index.ports","train.label.field","train.label.filterByPrefix","train.label.filter.prefix",
-                "train.feature.featureFieldPrefix","train.feature.ngram.extractionFields",
+                "train.feature.featureFieldPrefix","train.feature.ngram.extractionFields","train.feature.ngram.termVectorSnapshot",
+                "train.feature.ngram.sketchWidth",
                 "train.splitQuery","test.splitQuery","valid.splitQuery",
                 "train.feature.ngram.matchScoreType","createTrainSet","createTestSet","createValidSet",
                 "train.feature.ngram.selection", "train.feature.ngram.selectPerLabel",
@@ -107,7 +108,7 @@ public class App3 {
         Config app2Config = new Config();
         String[] same = {"output.folder","output.log", "train","calibrate","test","tune","predict.target","train.warmStart","train.usePrior",
         "train.numIterations","train.numLeaves","train.learningRate","train.minDataPerLeaf",
-        "train.numSplitIntervals","train.batchSize", "train.minibatchLifeSpan", "train.fullScanInterval", "train.numActiveFeatures",
+        "train.numSplitIntervals","train.histogramSplit","train.batchSize", "train.minibatchLifeSpan", "train.fullScanInterval", "train.numActiveFeatures",
                 "train.showTrainProgress","train.showValidProgress", "train.showProgress.sampleSize",
                 "train.earlyStop.patience","train.earlyStop.minIterations","train.earlyStop",
                 "train.earlyStop.absoluteChange", "train.earlyStop.relativeChange",
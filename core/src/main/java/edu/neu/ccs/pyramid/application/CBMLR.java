@@ -6,11 +6,13 @@ import edu.neu.ccs.pyramid.eval.MLMeasures;
 import edu.neu.ccs.pyramid.multilabel_classification.MultiLabelClassifier;
 import edu.neu.ccs.pyramid.multilabel_classification.cbm.*;
 import edu.neu.ccs.pyramid.optimization.EarlyStopper;
+import edu.neu.ccs.pyramid.optimization.TuningScheduler;
 import edu.neu.ccs.pyramid.util.ListUtil;
 import edu.neu.ccs.pyramid.util.Pair;
 import edu.neu.ccs.pyramid.util.PrintUtil;
 import edu.neu.ccs.pyramid.util.Serialization;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.time.DurationFormatUtils;
 import org.apache.commons.lang3.time.StopWatch;
 
 import java.io.BufferedWriter;
@@ -46,65 +48,76 @@ public class CBMLR {
             System.out.println("Start hyper parameter tuning");
             StopWatch stopWatch = new StopWatch();
             stopWatch.start();
-            List<TuneResult> tuneResults = new ArrayList<>();
             List<MultiLabelClfDataSet> dataSets = loadTrainValidData(config);
             List<Double> variances = config.getDoubles("tune.variance.candidates");
             List<Integer> components = config.getIntegers("tune.numComponents.candidates");
-            for (double variance: variances){
-                for (int component: components){
-                    StopWatch stopWatch1 = new StopWatch();
-                    stopWatch1.start();
+            // from strong to weak regularization, so that each variance can start from the solution of the previous one
+            List<Double> variancePath = variances.stream().sorted().collect(Collectors.toList());
+            List<List<HyperParameters>> paths = new ArrayList<>();
+            for (int component: components){
+                List<HyperParameters> path = new ArrayList<>();
+                for (double variance: variancePath){
                     HyperParameters hyperParameters = new HyperParameters();
                     hyperParameters.numComponents = component;
                     hyperParameters.variance = variance;
-                    System.out.println("---------------------------");
-                    System.out.println("Trying hyper parameters:");
-                    System.out.println("train.numComponents = "+hyperParameters.numComponents);
-                    System.out.println("train.variance = "+hyperParameters.variance);
-                    TuneResult tuneResult = tune(config, hyperParameters, dataSets.get(0), dataSets.get(1));
-                    System.out.println("Found optimal train.iterations = "+tuneResult.hyperParameters.iterations);
-                    System.out.println("Validation performance = "+tuneResult.performance);
-                    tuneResults.add(tuneResult);
-                    System.out.println("Time spent on trying this set of hyper parameters = "+stopWatch1);
+                    path.add(hyperParameters);
                 }
+                paths.add(path);
             }
 
-            Comparator<TuneResult> comparator = Comparator.comparing(res->res.performance);
-
-            TuneResult best;
-            String predictTarget = config.getString("tune.targetMetric");
-            switch (predictTarget){
-                case "instance_set_accuracy":
-                    best = tuneResults.stream().max(comparator).get();
-                    break;
-                case "instance_f1":
-                    best = tuneResults.stream().max(comparator).get();
-                    break;
-                case "instance_hamming_loss":
-                    best = tuneResults.stream().min(comparator).get();
-                    break;
-                default:
-                    throw new IllegalArgumentException("tune.targetMetric should be instance_set_accuracy, instance_f1 or instance_hamming_loss");
+            TuningScheduler<HyperParameters, CBM> scheduler = newScheduler(config);
+            List<TuningScheduler.Result<HyperParameters>> tuneResults = scheduler.search(paths,
+                    (hyperParameters, warmStart) -> newTrial(config, hyperParameters, warmStart, dataSets.get(0), dataSets.get(1)));
+            for (TuningScheduler.Result<HyperParameters> tuneResult: tuneResults){
+                HyperParameters hyperParameters = tuneResult.getCandidate();
+                // a model retrained from scratch also needs the iterations behind the warm start model
+                hyperParameters.iterations = tuneResult.getWarmStartIterations()+tuneResult.getBestIteration();
+                System.out.println("---------------------------");
+                System.out.println("Tried hyper parameters:");
+                System.out.println("train.numComponents = "+hyperParameters.numComponents);
+                System.out.println("train.variance = "+hyperParameters.variance);
+                System.out.println("Found optimal train.iterations = "+hyperParameters.iterations);
+                if (tuneResult.getWarmStartIterations()>0){
+                    System.out.println("Including "+tuneResult.getWarmStartIterations()+" iterations of the warm start model and "
+                            +tuneResult.getBestIteration()+" iterations of this candidate");
+                }
+                System.out.println("Validation performance = "+tuneResult.getBestValue());
+                if (tuneResult.isPruned()){
+                    System.out.println("Stopped early by successive halving");
+                }
+                System.out.println("Time spent on trying this set of hyper parameters = "+DurationFormatUtils.formatDurationHMS(tuneResult.getTime()));
             }
 
+            TuningScheduler.Result<HyperParameters> best = scheduler.getBest();
 
             System.out.println("---------------------------");
             System.out.println("Hyper parameter tuning done.");
             System.out.println("Time spent on entire hyper parameter tuning = "+stopWatch);
-            System.out.println("Best validation performance = "+best.performance);
+            System.out.println("Best validation performance = "+best.getBestValue());
             System.out.println("Best hyper parameters:");
-            System.out.println("train.numComponents = "+best.hyperParameters.numComponents);
-            System.out.println("train.variance = "+best.hyperParameters.variance);
-            System.out.println("train.iterations = "+best.hyperParameters.iterations);
-            Config tunedHypers = best.hyperParameters.asConfig();
+            System.out.println("train.numComponents = "+best.getCandidate().numComponents);
+            System.out.println("train.variance = "+best.getCandidate().variance);
+            System.out.println("train.iterations = "+best.getCandidate().iterations);
+            Config tunedHypers = best.getCandidate().asConfig();
             tunedHypers.store(new File(config.getString("output.dir"), "tuned_hyper_parameters.properties"));
             System.out.println("Tuned hyper parameters saved to "+new File(config.getString("output.dir"), "tuned_hyper_parameters.properties").getAbsolutePath());
+            if (useTunedModel(config)){
+                saveModel(config, scheduler.getBestModel(), dataSets.get(0));
+                System.out.println("Model at the best iteration saved to "+new File(config.getString("output.dir"), "model").getAbsolutePath());
+            }
             System.out.println("============================================================");
         }
 
         if (config.getBoolean("train")){
             System.out.println("============================================================");
-            if (config.getBoolean("train.useTunedHyperParameters")){
+            if (useTunedModel(config)){
+                if (!config.getBoolean("tune")){
+                    System.out.println("train.useTunedModel is set to true. But hyper parameter tuning is not performed.");
+                    System.out.println("Please either run hyper parameter tuning, or set train.useTunedModel=false.");
+                    System.exit(1);
+                }
+                System.out.println("Using the model kept from hyper parameter tuning, no training is needed");
+            } else if (config.getBoolean("train.useTunedHyperParameters")){
                 File hyperFile = new File(config.getString("output.dir"), "tuned_hyper_parameters.properties");
                 if (!hyperFile.exists()){
                     System.out.println("train.useTunedHyperParameters is set to true. But no tuned hyper parameters can be found in the output directory.");
@@ -143,13 +156,19 @@ public class CBMLR {
     }
 
 
-    private static TuneResult tune(Config config, HyperParameters hyperParameters, MultiLabelClfDataSet trainSet, MultiLabelClfDataSet validSet) throws Exception{
-
-        CBM cbm = newCBM(config,trainSet, hyperParameters);
-        EarlyStopper earlyStopper = loadNewEarlyStopper(config);
-
-        LRCBMOptimizer optimizer = getOptimizer(config, hyperParameters, cbm, trainSet);
-        optimizer.initialize();
+    private static TuningScheduler.Trial<CBM> newTrial(Config config, HyperParameters hyperParameters, CBM warmStart,
+                                                       MultiLabelClfDataSet trainSet, MultiLabelClfDataSet validSet){
+        CBM cbm;
+        LRCBMOptimizer optimizer;
+        if (warmStart==null){
+            cbm = newCBM(config, trainSet, hyperParameters);
+            optimizer = getOptimizer(config, hyperParameters, cbm, trainSet);
+            optimizer.initialize();
+        } else {
+            // the first E step starts from the memberships of the warm start model
+            cbm = warmStart;
+            optimizer = getOptimizer(config, hyperParameters, cbm, trainSet);
+        }
 
         MultiLabelClassifier classifier;
         String predictTarget = config.getString("tune.targetMetric");
@@ -175,20 +194,14 @@ public class CBMLR {
                 throw new IllegalArgumentException("predictTarget should be instance_set_accuracy, instance_f1 or instance_hamming_loss");
         }
 
-        int interval = config.getInt("tune.monitorInterval");
-
-        for (int iter = 1; true; iter++){
-
-            if (VERBOSE){
-                System.out.println("iteration "+iter );
+        return new TuningScheduler.Trial<CBM>() {
+            @Override
+            public void iterate() {
+                optimizer.iterate();
             }
 
-
-            optimizer.iterate();
-
-            if (iter%interval==0){
-
-
+            @Override
+            public double evaluate() {
                 MLMeasures validMeasures = new MLMeasures(classifier,validSet);
                 if (VERBOSE){
                     System.out.println("validation performance with "+predictTarget+" optimal predictor:");
@@ -197,52 +210,47 @@ public class CBMLR {
 
                 switch (predictTarget){
                     case "instance_set_accuracy":
-                        earlyStopper.add(iter,validMeasures.getInstanceAverage().getAccuracy());
-                        break;
+                        return validMeasures.getInstanceAverage().getAccuracy();
                     case "instance_f1":
-                        earlyStopper.add(iter,validMeasures.getInstanceAverage().getF1());
-                        break;
+                        return validMeasures.getInstanceAverage().getF1();
                     case "instance_hamming_loss":
-                        earlyStopper.add(iter,validMeasures.getInstanceAverage().getHammingLoss());
-                        break;
+                        return validMeasures.getInstanceAverage().getHammingLoss();
                     default:
-                        throw new IllegalArgumentException("predictTarget should be instance_set_accuracy or instance_f1");
+                        throw new IllegalArgumentException("predictTarget should be instance_set_accuracy, instance_f1 or instance_hamming_loss");
                 }
+            }
 
-                if (earlyStopper.shouldStop()){
-                    if (VERBOSE){
-                        System.out.println("Early Stopper: the training should stop now!");
-                    }
-
-                    break;
-                }
+            @Override
+            public CBM getModel() {
+                return cbm;
             }
-        }
+        };
+    }
 
-        if (VERBOSE){
-            System.out.println("done!");
+    private static TuningScheduler<HyperParameters, CBM> newScheduler(Config config){
+        TuningScheduler<HyperParameters, CBM> scheduler = new TuningScheduler<>(() -> loadNewEarlyStopper(config));
+        scheduler.setMonitorInterval(config.getInt("tune.monitorInterval"));
+        if (config.containsKey("tune.numThreads")){
+            scheduler.setNumThreads(config.getInt("tune.numThreads"));
         }
+        if (config.containsKey("tune.warmStart")){
+            scheduler.setWarmStart(config.getBoolean("tune.warmStart"));
+        }
+        if (config.containsKey("tune.halving.minIterations")){
+            scheduler.setHalvingMinIterations(config.getInt("tune.halving.minIterations"));
+        }
+        if (config.containsKey("tune.halving.reduction")){
+            scheduler.setHalvingReduction(config.getDouble("tune.halving.reduction"));
+        }
+        return scheduler;
+    }
 
-        hyperParameters.iterations = earlyStopper.getBestIteration();
-        TuneResult tuneResult = new TuneResult();
-        tuneResult.hyperParameters = hyperParameters;
-        tuneResult.performance = earlyStopper.getBestValue();
-        return tuneResult;
-
+    private static boolean useTunedModel(Config config){
+        return config.containsKey("train.useTunedModel") && config.getBoolean("train.useTunedModel");
     }
 
 
     private static void train(Config config, HyperParameters hyperParameters, MultiLabelClfDataSet trainSet) throws Exception{
-
-        List<Integer> unobservedLabels = DataSetUtil.unobservedLabels(trainSet);
-
-        if (!unobservedLabels.isEmpty()){
-            System.out.println("The following labels do not actually appear in the training set and therefore cannot be learned:");
-            System.out.println(ListUtil.toSimpleString(unobservedLabels));
-        }
-        String output = config.getString("output.dir");
-        FileUtils.writeStringToFile(new File(output,"unobserved_labels.txt"), ListUtil.toSimpleString(unobservedLabels));
-
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
         CBM cbm = newCBM(config,trainSet, hyperParameters);
@@ -260,6 +268,19 @@ public class CBMLR {
         System.out.println("training done!");
         System.out.println("time spent on training = "+stopWatch);
 
+        saveModel(config, cbm, trainSet);
+    }
+
+    private static void saveModel(Config config, CBM cbm, MultiLabelClfDataSet trainSet) throws Exception{
+        List<Integer> unobservedLabels = DataSetUtil.unobservedLabels(trainSet);
+
+        if (!unobservedLabels.isEmpty()){
+            System.out.println("The following labels do not actually appear in the training set and therefore cannot be learned:");
+            System.out.println(ListUtil.toSimpleString(unobservedLabels));
+        }
+        String output = config.getString("output.dir");
+        FileUtils.writeStringToFile(new File(output,"unobserved_labels.txt"), ListUtil.toSimpleString(unobservedLabels));
+
         Serialization.serialize(cbm, new File(output,"model"));
         List<MultiLabel> support = DataSetUtil.gatherMultiLabels(trainSet);
         Serialization.serialize(support, new File(output,"support"));
@@ -271,25 +292,56 @@ public class CBMLR {
         String output = config.getString("output.dir");
 
         CBM cbm = (CBM) Serialization.deserialize(new File(output, "model"));
+        cbm.packBinaryClassifiers();
 
 
         System.out.println();
 
         System.out.println("Making predictions on test set with 3 different predictors designed for different metrics:");
-        reportAccPrediction(config, cbm, testSet);
-        reportF1Prediction(config, cbm, testSet);
-        reportHammingPrediction(config, cbm, testSet);
-        reportGeneral(config, cbm, testSet);
+        TestPredictions testPredictions = predict(config, cbm, testSet);
+        reportAccPrediction(config, testPredictions, testSet);
+        reportF1Prediction(config, testPredictions, testSet);
+        reportHammingPrediction(config, testPredictions, testSet);
+        reportGeneral(config, testPredictions, testSet);
         System.out.println();
     }
 
-    private static void reportAccPrediction(Config config, CBM cbm, MultiLabelClfDataSet dataSet) throws Exception{
-        System.out.println("============================================================");
-        System.out.println("Making predictions on test set with the instance set accuracy optimal predictor");
+    /**
+     * the mixture distribution of each test instance is computed once, and shared by all predictors and reports
+     */
+    private static TestPredictions predict(Config config, CBM cbm, MultiLabelClfDataSet dataSet) throws Exception{
         String output = config.getString("output.dir");
         AccPredictor accPredictor = new AccPredictor(cbm);
         accPredictor.setComponentContributionThreshold(config.getDouble("predict.piThreshold"));
-        MultiLabel[] predictions = accPredictor.predict(dataSet);
+        PluginF1 pluginF1 = new PluginF1(cbm);
+        List<MultiLabel> support = (List<MultiLabel>) Serialization.deserialize(new File(output, "support"));
+        pluginF1.setSupport(support);
+        pluginF1.setPiThreshold(config.getDouble("predict.piThreshold"));
+        MarginalPredictor marginalPredictor = new MarginalPredictor(cbm);
+        marginalPredictor.setPiThreshold(config.getDouble("predict.piThreshold"));
+        double labelProbThreshold = config.getDouble("report.labelProbThreshold");
+
+        TestPredictions testPredictions = new TestPredictions(dataSet.getNumDataPoints());
+        IntStream.range(0, dataSet.getNumDataPoints()).parallel().forEach(i->{
+            BMDistribution bmDistribution = cbm.computeBM(dataSet.getRow(i));
+            testPredictions.accPredictions[i] = accPredictor.predict(bmDistribution);
+            testPredictions.f1Predictions[i] = pluginF1.predict(bmDistribution);
+            testPredictions.hammingPredictions[i] = marginalPredictor.predict(bmDistribution);
+            // Here we do not use approximation
+            testPredictions.accSetProbs[i] = Math.exp(bmDistribution.logProbability(testPredictions.accPredictions[i]));
+            testPredictions.f1SetProbs[i] = Math.exp(bmDistribution.logProbability(testPredictions.f1Predictions[i]));
+            testPredictions.hammingSetProbs[i] = Math.exp(bmDistribution.logProbability(testPredictions.hammingPredictions[i]));
+            testPredictions.topLabels[i] = CBMInspector.topLabels(cbm, bmDistribution, labelProbThreshold);
+            testPredictions.logLikelihoods[i] = bmDistribution.logProbability(dataSet.getMultiLabels()[i]);
+        });
+        return testPredictions;
+    }
+
+    private static void reportAccPrediction(Config config, TestPredictions testPredictions, MultiLabelClfDataSet dataSet) throws Exception{
+        System.out.println("============================================================");
+        System.out.println("Making predictions on test set with the instance set accuracy optimal predictor");
+        String output = config.getString("output.dir");
+        MultiLabel[] predictions = testPredictions.accPredictions;
         MLMeasures mlMeasures = new MLMeasures(dataSet.getNumClasses(),dataSet.getMultiLabels(),predictions);
         System.out.println("test performance with the instance set accuracy optimal predictor");
         System.out.println(mlMeasures);
@@ -298,9 +350,7 @@ public class CBMLR {
         System.out.println("test performance is saved to "+performanceFile.toString());
 
 
-        // Here we do not use approximation
-        double[] setProbs = IntStream.range(0, predictions.length).parallel().
-                mapToDouble(i->cbm.predictAssignmentProb(dataSet.getRow(i),predictions[i])).toArray();
+        double[] setProbs = testPredictions.accSetProbs;
         File predictionFile = Paths.get(output,"test_predictions", "instance_accuracy_optimal","predictions.txt").toFile();
         try (BufferedWriter br = new BufferedWriter(new FileWriter(predictionFile))){
             for (int i=0;i<dataSet.getNumDataPoints();i++){
@@ -316,15 +366,11 @@ public class CBMLR {
     }
 
 
-    private static void reportF1Prediction(Config config, CBM cbm, MultiLabelClfDataSet dataSet) throws Exception{
+    private static void reportF1Prediction(Config config, TestPredictions testPredictions, MultiLabelClfDataSet dataSet) throws Exception{
         System.out.println("============================================================");
         System.out.println("Making predictions on test set with the instance F1 optimal predictor");
         String output = config.getString("output.dir");
-        PluginF1 pluginF1 = new PluginF1(cbm);
-        List<MultiLabel> support = (List<MultiLabel>) Serialization.deserialize(new File(output, "support"));
-        pluginF1.setSupport(support);
-        pluginF1.setPiThreshold(config.getDouble("predict.piThreshold"));
-        MultiLabel[] predictions = pluginF1.predict(dataSet);
+        MultiLabel[] predictions = testPredictions.f1Predictions;
         MLMeasures mlMeasures = new MLMeasures(dataSet.getNumClasses(),dataSet.getMultiLabels(),predictions);
         System.out.println("test performance with the instance F1 optimal predictor");
         System.out.println(mlMeasures);
@@ -333,9 +379,7 @@ public class CBMLR {
         System.out.println("test performance is saved to "+performanceFile.toString());
 
 
-        // Here we do not use approximation
-        double[] setProbs = IntStream.range(0, predictions.length).parallel().
-                mapToDouble(i->cbm.predictAssignmentProb(dataSet.getRow(i),predictions[i])).toArray();
+        double[] setProbs = testPredictions.f1SetProbs;
         File predictionFile = Paths.get(output,"test_predictions", "instance_f1_optimal","predictions.txt").toFile();
         try (BufferedWriter br = new BufferedWriter(new FileWriter(predictionFile))){
             for (int i=0;i<dataSet.getNumDataPoints();i++){
@@ -350,13 +394,11 @@ public class CBMLR {
         System.out.println("============================================================");
     }
 
-    private static void reportHammingPrediction(Config config, CBM cbm, MultiLabelClfDataSet dataSet) throws Exception{
+    private static void reportHammingPrediction(Config config, TestPredictions testPredictions, MultiLabelClfDataSet dataSet) throws Exception{
         System.out.println("============================================================");
         System.out.println("Making predictions on test set with the instance Hamming loss optimal predictor");
         String output = config.getString("output.dir");
-        MarginalPredictor marginalPredictor = new MarginalPredictor(cbm);
-        marginalPredictor.setPiThreshold(config.getDouble("predict.piThreshold"));
-        MultiLabel[] predictions = marginalPredictor.predict(dataSet);
+        MultiLabel[] predictions = testPredictions.hammingPredictions;
         MLMeasures mlMeasures = new MLMeasures(dataSet.getNumClasses(),dataSet.getMultiLabels(),predictions);
         System.out.println("test performance with the instance Hamming loss optimal predictor");
         System.out.println(mlMeasures);
@@ -365,9 +407,7 @@ public class CBMLR {
         System.out.println("test performance is saved to "+performanceFile.toString());
 
 
-        // Here we do not use approximation
-        double[] setProbs = IntStream.range(0, predictions.length).parallel().
-                mapToDouble(i->cbm.predictAssignmentProb(dataSet.getRow(i),predictions[i])).toArray();
+        double[] setProbs = testPredictions.hammingSetProbs;
         File predictionFile = Paths.get(output,"test_predictions", "instance_hamming_loss_optimal","predictions.txt").toFile();
         try (BufferedWriter br = new BufferedWriter(new FileWriter(predictionFile))){
             for (int i=0;i<dataSet.getNumDataPoints();i++){
@@ -383,16 +423,15 @@ public class CBMLR {
     }
 
 
-    private static void reportGeneral(Config config, CBM cbm, MultiLabelClfDataSet dataSet) throws Exception{
+    private static void reportGeneral(Config config, TestPredictions testPredictions, MultiLabelClfDataSet dataSet) throws Exception{
         System.out.println("============================================================");
         System.out.println("computing other predictor-independent metrics");
         String output = config.getString("output.dir");
         File labelProbFile = Paths.get(output, "test_predictions",  "label_probabilities.txt").toFile();
-        double labelProbThreshold = config.getDouble("report.labelProbThreshold");
 
         try (BufferedWriter br = new BufferedWriter(new FileWriter(labelProbFile))){
             for (int i=0;i<dataSet.getNumDataPoints();i++){
-                br.write(CBMInspector.topLabels(cbm, dataSet.getRow(i), labelProbThreshold));
+                br.write(testPredictions.topLabels[i]);
                 br.newLine();
             }
         }
@@ -403,10 +442,7 @@ public class CBMLR {
                 .split(",")).map(s->s.trim()).filter(s->!s.isEmpty()).map(s->Integer.parseInt(s)).collect(Collectors.toList());
 
 
-        // Here we do not use approximation
-        double[] logLikelihoods = IntStream.range(0, dataSet.getNumDataPoints()).parallel()
-                .mapToDouble(i->cbm.predictLogAssignmentProb(dataSet.getRow(i),dataSet.getMultiLabels()[i]))
-                .toArray();
+        double[] logLikelihoods = testPredictions.logLikelihoods;
 
         double average = IntStream.range(0, dataSet.getNumDataPoints()).filter(i->!containsNovelClass(dataSet.getMultiLabels()[i],unobservedLabels))
                 .mapToDouble(i->logLikelihoods[i]).average().getAsDouble();
@@ -436,6 +472,15 @@ public class CBMLR {
         lrcbmOptimizer.setSkipDataThreshold(config.getDouble("train.skipDataThreshold"));
         lrcbmOptimizer.setSkipLabelThreshold(config.getDouble("train.skipLabelThreshold"));
         lrcbmOptimizer.setSmoothingStrength(config.getDouble("train.smoothStrength"));
+        if (config.containsKey("train.onlineInitialize")){
+            lrcbmOptimizer.setOnlineInitialization(config.getBoolean("train.onlineInitialize"));
+        }
+        if (config.containsKey("train.onlineInitialize.numRuns")){
+            lrcbmOptimizer.setOnlineInitializationRuns(config.getInt("train.onlineInitialize.numRuns"));
+        }
+        if (config.containsKey("train.onlineInitialize.numPasses")){
+            lrcbmOptimizer.setOnlineInitializationPasses(config.getInt("train.onlineInitialize.numPasses"));
+        }
 
         return lrcbmOptimizer;
     }
@@ -569,9 +614,26 @@ public class CBMLR {
 
     }
 
-    private static class TuneResult{
-        HyperParameters hyperParameters;
-        double performance;
+    private static class TestPredictions{
+        MultiLabel[] accPredictions;
+        MultiLabel[] f1Predictions;
+        MultiLabel[] hammingPredictions;
+        double[] accSetProbs;
+        double[] f1SetProbs;
+        double[] hammingSetProbs;
+        String[] topLabels;
+        double[] logLikelihoods;
+
+        TestPredictions(int numDataPoints) {
+            accPredictions = new MultiLabel[numDataPoints];
+            f1Predictions = new MultiLabel[numDataPoints];
+            hammingPredictions = new MultiLabel[numDataPoints];
+            accSetProbs = new double[numDataPoints];
+            f1SetProbs = new double[numDataPoints];
+            hammingSetProbs = new double[numDataPoints];
+            topLabels = new String[numDataPoints];
+            logLikelihoods = new double[numDataPoints];
+        }
     }
 
     private static boolean containsNovelClass(MultiLabel multiLabel, List<Integer> novelLabels){
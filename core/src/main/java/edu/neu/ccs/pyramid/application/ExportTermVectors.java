@@ -0,0 +1,27 @@
+package edu.neu.ccs.pyramid.application;
+
+import edu.neu.ccs.pyramid.configuration.Config;
+import edu.neu.ccs.pyramid.elasticsearch.ESIndex;
+import edu.neu.ccs.pyramid.elasticsearch.TermVectorSnapshot;
+
+import java.io.File;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * export the term vectors of an index into a local snapshot, see TermVectorSnapshot
+ * the snapshot can then be given to App1 through train.feature.ngram.termVectorSnapshot
+ */
+public class ExportTermVectors {
+    public static void main(String[] args) throws Exception{
+        Config config = new Config(args[0]);
+        System.out.println(config);
+        Logger logger = Logger.getAnonymousLogger();
+        List<String> fields = config.getStrings("train.feature.ngram.extractionFields");
+        File snapshotFile = new File(config.getString("train.feature.ngram.termVectorSnapshot"));
+        try (ESIndex index = App1.loadIndex(config, logger)){
+            TermVectorSnapshot.export(index, fields.toArray(new String[fields.size()]), snapshotFile);
+        }
+        logger.info("term vectors saved to "+snapshotFile.getAbsolutePath());
+    }
+}
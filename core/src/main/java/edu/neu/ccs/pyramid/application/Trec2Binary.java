@@ -0,0 +1,35 @@
+package edu.neu.ccs.pyramid.application;
+
+import edu.neu.ccs.pyramid.configuration.Config;
+import edu.neu.ccs.pyramid.dataset.*;
+
+import java.util.List;
+
+/**
+ * convert TREC data sets into the memory-mapped binary format
+ * the binary files can be used wherever TREC multi-label or classification data sets are loaded
+ */
+public class Trec2Binary {
+    public static void main(String[] args) throws Exception{
+        Config config = new Config(args[0]);
+        System.out.println(config);
+        String dataType = config.getString("dataSetType");
+        List<String> trecFiles = config.getStrings("trec");
+        List<String> binaryFiles = config.getStrings("binary");
+        for (int i=0; i<trecFiles.size(); i++) {
+            String trecFile = trecFiles.get(i);
+            String binaryFile = binaryFiles.get(i);
+            System.out.println("translating: " + trecFile);
+            switch (dataType) {
+                case "clf":
+                    BinaryFormat.save(TRECFormat.loadClfDataSet(trecFile, DataSetType.CLF_SPARSE, true), binaryFile);
+                    break;
+                case "mlclf":
+                    BinaryFormat.save(TRECFormat.loadMultiLabelClfDataSet(trecFile, DataSetType.ML_CLF_SPARSE, true), binaryFile);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown dataSetType "+dataType);
+            }
+        }
+    }
+}
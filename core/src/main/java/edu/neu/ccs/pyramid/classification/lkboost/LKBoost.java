@@ -1,6 +1,7 @@
 package edu.neu.ccs.pyramid.classification.lkboost;
 
 import edu.neu.ccs.pyramid.classification.Classifier;
+import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.LabelTranslator;
 import edu.neu.ccs.pyramid.feature.FeatureList;
 import edu.neu.ccs.pyramid.optimization.gradient_boosting.Ensemble;
@@ -10,6 +11,9 @@ import edu.neu.ccs.pyramid.util.MathUtil;
 import org.apache.mahout.math.Vector;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 
 /**
@@ -53,8 +57,33 @@ public class LKBoost extends GradientBoosting implements Classifier.ProbabilityE
         return scores(vector);
     }
 
+    /**
+     * batch prediction over blocks of rows
+     * @param dataSet
+     * @return scores[dataIndex][classIndex]
+     */
+    public double[][] predictClassScores(DataSet dataSet){
+        return scores(dataSet);
+    }
+
+    @Override
+    public int[] predict(DataSet dataSet){
+        return Arrays.stream(predictClassScores(dataSet)).parallel()
+                .mapToInt(ArgMax::argMax).toArray();
+    }
+
     public double[] predictClassProbs(Vector vector){
         double[] scoreVector = this.predictClassScores(vector);
+        return classProbs(scoreVector);
+    }
+
+    @Override
+    public List<double[]> predictClassProbs(DataSet dataSet){
+        return Arrays.stream(predictClassScores(dataSet)).parallel()
+                .map(this::classProbs).collect(Collectors.toList());
+    }
+
+    private double[] classProbs(double[] scoreVector){
         double[] probVector = new double[this.numClasses];
         double logDenominator = MathUtil.logSumExp(scoreVector);
         for (int k=0;k<this.numClasses;k++){
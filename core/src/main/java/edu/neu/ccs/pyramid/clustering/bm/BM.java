@@ -1,5 +1,6 @@
 package edu.neu.ccs.pyramid.clustering.bm;
 
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.util.ArgSort;
 import edu.neu.ccs.pyramid.util.BernoulliDistribution;
 import edu.neu.ccs.pyramid.util.MathUtil;
@@ -85,6 +86,16 @@ public class BM implements Serializable{
         return logProb;
     }
 
+    public double clusterConditionalLogProb(MultiLabel multiLabel, int clusterIndex){
+        double logProb = logClusterConditioinalForEmpty[clusterIndex];
+        for (int l: multiLabel.getMatchedLabels()){
+            BernoulliDistribution distribution = distributions[clusterIndex][l];
+            logProb -= distribution.logProbability(0);
+            logProb += distribution.logProbability(1);
+        }
+        return logProb;
+    }
+
     private double computeLogClusterConditionalForEmpty(int clusterIndex){
         double logProb = 0.0;
         for (int l=0;l< dimension;l++){
@@ -113,6 +124,14 @@ public class BM implements Serializable{
         return probArr;
     }
 
+    public double[] clusterConditionalLogProbArr(MultiLabel multiLabel){
+        double[] probArr = new double[numClusters];
+        for (int clusterIndex=0; clusterIndex<numClusters; clusterIndex++) {
+            probArr[clusterIndex] = clusterConditionalLogProb(multiLabel, clusterIndex);
+        }
+        return probArr;
+    }
+
     /**
      * log probability based on the mixture
      * @param vector
@@ -129,6 +148,37 @@ public class BM implements Serializable{
         return MathUtil.logSumExp(arr);
     }
 
+    /**
+     * log probability based on the mixture
+     * @param multiLabel matched labels are the dimensions with value 1
+     * @return
+     */
+    public double logProbability(MultiLabel multiLabel){
+        double[] clusterConditionalLogProbArr = clusterConditionalLogProbArr(multiLabel);
+        double[] arr = new double[numClusters];
+        for (int k=0;k<numClusters;k++){
+            arr[k] = logMixtureCoefficients[k]+clusterConditionalLogProbArr[k];
+        }
+        return MathUtil.logSumExp(arr);
+    }
+
+    /**
+     * @return probability of each cluster given the label set
+     */
+    public double[] posteriors(MultiLabel multiLabel){
+        double[] logClusterConditionalProbs = clusterConditionalLogProbArr(multiLabel);
+        double[] logNumerators = new double[numClusters];
+        for (int k=0;k<numClusters;k++){
+            logNumerators[k] = logMixtureCoefficients[k] + logClusterConditionalProbs[k];
+        }
+        double logDenominator = MathUtil.logSumExp(logNumerators);
+        double[] posteriors = new double[numClusters];
+        for (int k=0;k<numClusters;k++){
+            posteriors[k] = Math.exp(logNumerators[k] - logDenominator);
+        }
+        return posteriors;
+    }
+
     /**
      * sample a vector from the mixture distribution
      * @return
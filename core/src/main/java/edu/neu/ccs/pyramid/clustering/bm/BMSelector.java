@@ -97,4 +97,23 @@ public class BMSelector {
         return pair;
     }
 
+    /**
+     * select the best BMM from multiple random starts of online EM
+     * each run reads the label sets numPasses times to train, and once more to evaluate
+     */
+    public static BM selectOnline(int numClasses, Iterable<MultiLabel> multiLabels, int numClusters, int numRuns, int numPasses){
+        BM best = null;
+        double bestObjective = Double.POSITIVE_INFINITY;
+        for (int i=0;i<numRuns;i++){
+            OnlineBMTrainer trainer = new OnlineBMTrainer(numClusters, numClasses, i);
+            BM bm = trainer.train(multiLabels, numPasses);
+            double objective = trainer.getObjective(multiLabels);
+            if (objective < bestObjective){
+                bestObjective = objective;
+                best = bm;
+            }
+        }
+        return best;
+    }
+
 }
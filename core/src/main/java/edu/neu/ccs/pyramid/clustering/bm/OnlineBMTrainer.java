@@ -0,0 +1,150 @@
+package edu.neu.ccs.pyramid.clustering.bm;
+
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+import edu.neu.ccs.pyramid.util.BernoulliDistribution;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * stepwise EM (Cappe and Moulines, 2009) for Bernoulli mixtures over label sets
+ * only the averaged sufficient statistics are kept: gamma and gamma*x of each cluster;
+ * each mini-batch moves them towards the statistics of the batch with step size (t+1)^-stepSizeDecay,
+ * and the model is re-estimated from them
+ * memory does not depend on the number of data points, and the data can be streamed, e.g. from disk
+ */
+public class OnlineBMTrainer {
+    private static final Logger logger = LogManager.getLogger();
+    /**
+     * keeps the log probabilities finite for labels not seen in the samples so far
+     */
+    private static final double MIN_PROBABILITY = 1E-10;
+    private BM bm;
+    private int numClusters;
+    private int dimension;
+    private int miniBatchSize = 100;
+    /**
+     * in (0.5,1]
+     */
+    private double stepSizeDecay = 0.6;
+    /**
+     * number of updates absorbed by the statistics; the random initial model counts as one
+     */
+    private int numSteps;
+    /**
+     * average gamma of each cluster
+     */
+    private double[] sumGammas;
+    /**
+     * format [cluster][dimension], average gamma*x
+     */
+    private double[][] weightedCounts;
+
+    public OnlineBMTrainer(int numClusters, int dimension, long randomSeed) {
+        this.numClusters = numClusters;
+        this.dimension = dimension;
+        this.bm = new BM(numClusters, dimension, randomSeed);
+        this.sumGammas = new double[numClusters];
+        this.weightedCounts = new double[numClusters][dimension];
+        for (int k=0;k<numClusters;k++){
+            sumGammas[k] = bm.mixtureCoefficients[k];
+            for (int d=0;d<dimension;d++){
+                weightedCounts[k][d] = bm.mixtureCoefficients[k]*bm.distributions[k][d].getP();
+            }
+        }
+        this.numSteps = 1;
+    }
+
+    public void setMiniBatchSize(int miniBatchSize) {
+        this.miniBatchSize = miniBatchSize;
+    }
+
+    public void setStepSizeDecay(double stepSizeDecay) {
+        this.stepSizeDecay = stepSizeDecay;
+    }
+
+    public BM getBm() {
+        return bm;
+    }
+
+    /**
+     * @param multiLabels read once per pass
+     * @param numPasses
+     * @return the trained model
+     */
+    public BM train(Iterable<MultiLabel> multiLabels, int numPasses){
+        for (int pass=0;pass<numPasses;pass++){
+            List<MultiLabel> miniBatch = new ArrayList<>(miniBatchSize);
+            for (MultiLabel multiLabel: multiLabels){
+                miniBatch.add(multiLabel);
+                if (miniBatch.size()==miniBatchSize){
+                    update(miniBatch);
+                    miniBatch.clear();
+                }
+            }
+            if (!miniBatch.isEmpty()){
+                update(miniBatch);
+            }
+            if (logger.isDebugEnabled()){
+                logger.debug("finish pass "+(pass+1)+" after "+numSteps+" steps");
+            }
+        }
+        return bm;
+    }
+
+    /**
+     * one stepwise EM update
+     */
+    public void update(List<MultiLabel> miniBatch){
+        double[][] gammas = miniBatch.parallelStream().map(bm::posteriors).toArray(double[][]::new);
+        double stepSize = Math.pow(numSteps+1, -stepSizeDecay);
+        IntStream.range(0, numClusters).parallel().forEach(k->{
+            double[] counts = weightedCounts[k];
+            for (int d=0;d<dimension;d++){
+                counts[d] *= 1-stepSize;
+            }
+            double sum = 0;
+            for (int i=0;i<gammas.length;i++){
+                double gamma = gammas[i][k];
+                sum += gamma;
+                for (int d: miniBatch.get(i).getMatchedLabels()){
+                    counts[d] += stepSize*gamma/gammas.length;
+                }
+            }
+            sumGammas[k] = (1-stepSize)*sumGammas[k] + stepSize*sum/gammas.length;
+            updateCluster(k);
+        });
+        bm.updateLogClusterConditioinalForEmpty();
+        numSteps += 1;
+    }
+
+    private void updateCluster(int k){
+        for (int d=0;d<dimension;d++){
+            double average = weightedCounts[k][d]/sumGammas[k];
+            // it may happen that average = 1.0000000000000022, for numerical reasons
+            if (average>=1){
+                average = 0.9999;
+            }
+            if (average<MIN_PROBABILITY){
+                average = MIN_PROBABILITY;
+            }
+            bm.distributions[k][d] = new BernoulliDistribution(average);
+        }
+        bm.mixtureCoefficients[k] = sumGammas[k];
+        bm.logMixtureCoefficients[k] = Math.log(sumGammas[k]);
+    }
+
+    /**
+     * negative log likelihood, to be minimized
+     */
+    public double getObjective(Iterable<MultiLabel> multiLabels){
+        double objective = 0;
+        for (MultiLabel multiLabel: multiLabels){
+            objective -= bm.logProbability(multiLabel);
+        }
+        return objective;
+    }
+}
@@ -69,20 +69,19 @@ public class GMM implements Serializable{
     }
 
     public double logDensity(RealVector instance){
-        double[] arr = new double[numComponents];
-        for (int k=0;k<numComponents;k++){
-            arr[k]=Math.log(mixtureCoefficients[k])+gaussianDistributions[k].logDensity(instance);
-        }
-        return MathUtil.logSumExp(arr);
+        return logDensity(instance.toArray());
+    }
+
+    public double logDensity(double[] instance){
+        return MathUtil.logSumExp(logJoint(instance));
     }
 
     public double[] posteriors(RealVector instance){
-        double[] arr = new double[numComponents];
-        for (int k=0;k<numComponents;k++){
-            arr[k]=Math.log(mixtureCoefficients[k])+gaussianDistributions[k].logDensity(instance);
-//            System.out.println("k="+k+", log density= "+gaussianDistributions[k].logDensity(instance));
-        }
-//        System.out.println("arry = "+Arrays.toString(arr));
+        return posteriors(instance.toArray());
+    }
+
+    public double[] posteriors(double[] instance){
+        double[] arr = logJoint(instance);
         double[] posteriors = new double[numComponents];
         double logDenominator = MathUtil.logSumExp(arr);
         for (int k=0;k<numComponents;k++){
@@ -91,6 +90,17 @@ public class GMM implements Serializable{
         return posteriors;
     }
 
+    /**
+     * log of mixture coefficient times component density, for each component
+     */
+    private double[] logJoint(double[] instance){
+        double[] arr = new double[numComponents];
+        for (int k=0;k<numComponents;k++){
+            arr[k]=Math.log(mixtureCoefficients[k])+gaussianDistributions[k].logDensity(instance);
+        }
+        return arr;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("GMM{");
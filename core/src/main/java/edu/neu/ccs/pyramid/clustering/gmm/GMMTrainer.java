@@ -4,37 +4,88 @@ import edu.neu.ccs.pyramid.util.Sampling;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealMatrix;
-import org.apache.commons.math3.linear.RealVector;
 
 import java.util.stream.IntStream;
 
+/**
+ * the M-step only needs the weighted moments of each component: sum of gamma, sum of gamma*x, and sum of gamma*x*x^T
+ * they are accumulated in primitive arrays, block by block, so that each entry of the second moment is updated
+ * once per block instead of once per instance
+ * mini-batch iterations follow stepwise EM (Cappe and Moulines, 2009): the moments, averaged over instances, are
+ * moved towards those of a random sample with step size (t+1)^-stepSizeDecay
+ */
 public class GMMTrainer {
+    private static final int BLOCK_SIZE = 64;
     private RealMatrix data;
+    /**
+     * rows of the data, shared with the matrix when possible
+     */
+    private double[][] rows;
     private double[][] gammas;
     private GMM gmm;
-    private RealMatrix stabilizer;
     private static double reg = 0.0001;
+    /**
+     * whether to ignore correlations between dimensions
+     */
+    private boolean diagonalCovariance = false;
+    /**
+     * 0 for full-batch iterations
+     */
+    private int miniBatchSize = 0;
+    /**
+     * in (0.5,1]
+     */
+    private double stepSizeDecay = 0.6;
+    /**
+     * number of updates absorbed by the running moments
+     */
+    private int numSteps = 0;
+    private Moments moments;
 
 
     public GMMTrainer(RealMatrix data, GMM gmm) {
         this.data = data;
+        if (data instanceof Array2DRowRealMatrix){
+            this.rows = ((Array2DRowRealMatrix) data).getDataRef();
+        } else {
+            this.rows = data.getData();
+        }
         this.gmm = gmm;
         this.gammas = new double[data.getRowDimension()][gmm.getNumComponents()];
         for (int i=0;i<data.getRowDimension();i++){
             int randomAssignment = Sampling.intUniform(0, gmm.getNumComponents()-1);
             gammas[i][randomAssignment] = 1;
         }
-        this.stabilizer = new Array2DRowRealMatrix(data.getColumnDimension(),data.getColumnDimension());
-        for (int i=0;i<stabilizer.getRowDimension();i++){
-            stabilizer.setEntry(i,i,reg);
-        }
+    }
+
+    public void setDiagonalCovariance(boolean diagonalCovariance) {
+        this.diagonalCovariance = diagonalCovariance;
+        this.moments = null;
+    }
+
+    /**
+     * @param miniBatchSize number of instances sampled in each iteration; 0 for full-batch iterations
+     */
+    public void setMiniBatchSize(int miniBatchSize) {
+        this.miniBatchSize = miniBatchSize;
+    }
+
+    public void setStepSizeDecay(double stepSizeDecay) {
+        this.stepSizeDecay = stepSizeDecay;
     }
 
     public void iterate(){
-        eStep();
-        mStep();
+        if (miniBatchSize>0){
+            miniBatchIterate();
+        } else {
+            eStep();
+            mStep();
+        }
     }
 
+    /**
+     * after mini-batch iterations, only the sampled instances are up to date
+     */
     public double[][] getGammas() {
         return gammas;
     }
@@ -45,47 +96,158 @@ public class GMMTrainer {
 
     public void eStep(){
         IntStream.range(0,data.getRowDimension()).parallel()
-                .forEach(i->gammas[i]=gmm.posteriors(data.getRowVector(i)));
+                .forEach(i->gammas[i]=gmm.posteriors(rows[i]));
     }
 
     public void mStep(){
+        moments = moments(IntStream.range(0, data.getRowDimension()).toArray());
+        numSteps = 1;
+        update();
+    }
+
+    /**
+     * E-step on a random sample, then M-step from the running moments
+     */
+    private void miniBatchIterate(){
+        int[] batch = Sampling.sampleWithReplacement(miniBatchSize, 0, data.getRowDimension()).toArray();
+        IntStream.range(0, batch.length).parallel()
+                .forEach(n->gammas[batch[n]]=gmm.posteriors(rows[batch[n]]));
+        Moments batchMoments = moments(batch);
+        double stepSize = Math.pow(numSteps+1, -stepSizeDecay);
+        if (moments==null){
+            moments = batchMoments;
+        } else {
+            moments.interpolate(batchMoments, stepSize);
+        }
+        numSteps += 1;
+        update();
+    }
+
+    /**
+     * set the mixture from the moments
+     */
+    private void update(){
+        int dim = data.getColumnDimension();
         IntStream.range(0,gmm.getNumComponents()).parallel()
                 .forEach(k->{
-                    double sumGamma = computeSumGamma(k);
-                    gmm.setMixtureCoefficient(k,sumGamma/data.getRowDimension());
-                    RealVector mean = computeMean(k, sumGamma);
-                    gmm.getGaussianDistributions()[k].setMean(mean);
-                    RealMatrix cov = computeCov(k, mean, sumGamma);
-                    RealMatrix stabilizedCov = stablize(cov);
-                    gmm.getGaussianDistributions()[k].setCovariance(stabilizedCov);
+                    double sumGamma = moments.sumGammas[k];
+                    gmm.setMixtureCoefficient(k,sumGamma);
+                    double[] mean = new double[dim];
+                    for (int a=0;a<dim;a++){
+                        mean[a] = moments.firstMoments[k][a]/sumGamma;
+                    }
+                    gmm.getGaussianDistributions()[k].setMean(new ArrayRealVector(mean, false));
+                    double[][] cov = new double[dim][dim];
+                    double scale = 1/sumGamma;
+                    double[][] secondMoment = moments.secondMoments[k];
+                    for (int a=0;a<dim;a++){
+                        if (diagonalCovariance){
+                            cov[a][a] = secondMoment[a][0]*scale - mean[a]*mean[a];
+                        } else {
+                            for (int b=a;b<dim;b++){
+                                cov[a][b] = secondMoment[a][b-a]*scale - mean[a]*mean[b];
+                                cov[b][a] = cov[a][b];
+                            }
+                        }
+                        cov[a][a] += reg;
+                    }
+                    gmm.getGaussianDistributions()[k].setCovariance(new Array2DRowRealMatrix(cov, false));
                 });
     }
 
-    private RealMatrix stablize(RealMatrix cov){
-        return cov.add(stabilizer);
+    /**
+     * moments of the given instances, averaged over them
+     */
+    private Moments moments(int[] instances){
+        int dim = data.getColumnDimension();
+        Moments moments = new Moments(gmm.getNumComponents(), dim, diagonalCovariance);
+        IntStream.range(0, gmm.getNumComponents()).parallel()
+                .forEach(k->accumulate(moments, k, instances));
+        return moments;
     }
 
-    private RealVector computeMean(int k, double sumGamma){
-        RealVector res = new ArrayRealVector(data.getColumnDimension());
-        for (int i=0;i<data.getRowDimension();i++){
-            res = res.add(data.getRowVector(i).mapMultiply(gammas[i][k]));
+    private void accumulate(Moments moments, int k, int[] instances){
+        int dim = data.getColumnDimension();
+        double[] firstMoment = moments.firstMoments[k];
+        double[][] secondMoment = moments.secondMoments[k];
+        // a block of instances, stored by column
+        double[][] columns = new double[dim][BLOCK_SIZE];
+        double[][] weightedColumns = new double[dim][BLOCK_SIZE];
+        double sumGamma = 0;
+        for (int start=0;start<instances.length;start+=BLOCK_SIZE){
+            int size = Math.min(BLOCK_SIZE, instances.length-start);
+            for (int r=0;r<size;r++){
+                int i = instances[start+r];
+                double gamma = gammas[i][k];
+                sumGamma += gamma;
+                double[] row = rows[i];
+                for (int a=0;a<dim;a++){
+                    columns[a][r] = row[a];
+                    weightedColumns[a][r] = gamma*row[a];
+                    firstMoment[a] += gamma*row[a];
+                }
+            }
+            // rank-size update of the upper triangle
+            for (int a=0;a<dim;a++){
+                double[] weighted = weightedColumns[a];
+                double[] target = secondMoment[a];
+                int last = diagonalCovariance ? a : dim-1;
+                for (int b=a;b<=last;b++){
+                    double[] column = columns[b];
+                    double sum = 0;
+                    for (int r=0;r<size;r++){
+                        sum += weighted[r]*column[r];
+                    }
+                    target[b-a] += sum;
+                }
+            }
+        }
+        int numInstances = instances.length;
+        moments.sumGammas[k] = sumGamma/numInstances;
+        for (int a=0;a<dim;a++){
+            firstMoment[a] /= numInstances;
+            double[] target = secondMoment[a];
+            for (int b=0;b<target.length;b++){
+                target[b] /= numInstances;
+            }
         }
-        return res.mapDivide(sumGamma);
     }
 
-    private RealMatrix computeCov(int k, RealVector mean, double sumGamma){
-        RealMatrix res = new Array2DRowRealMatrix(data.getColumnDimension(),data.getColumnDimension());
-        for (int i=0;i<data.getRowDimension();i++){
-            res = res.add(data.getRowVector(i).outerProduct(data.getRowVector(i)).scalarMultiply(gammas[i][k]));
+    /**
+     * weighted moments of each component, averaged over instances
+     * secondMoments[k][a][b-a] holds entry (a,b) of the upper triangle; only the diagonal for diagonal covariance
+     */
+    private static class Moments {
+        private double[] sumGammas;
+        private double[][] firstMoments;
+        private double[][][] secondMoments;
+
+        private Moments(int numComponents, int dim, boolean diagonal) {
+            this.sumGammas = new double[numComponents];
+            this.firstMoments = new double[numComponents][dim];
+            this.secondMoments = new double[numComponents][dim][];
+            for (int k=0;k<numComponents;k++){
+                for (int a=0;a<dim;a++){
+                    secondMoments[k][a] = new double[diagonal ? 1 : dim-a];
+                }
+            }
         }
-        return res.scalarMultiply(1/sumGamma).subtract(mean.outerProduct(mean));
-    }
 
-    private double computeSumGamma(int k){
-        double totalGamma = 0;
-        for (int i=0;i<data.getRowDimension();i++){
-            totalGamma += gammas[i][k];
+        /**
+         * this = (1-stepSize)*this + stepSize*other
+         */
+        private void interpolate(Moments other, double stepSize){
+            for (int k=0;k<sumGammas.length;k++){
+                sumGammas[k] = (1-stepSize)*sumGammas[k] + stepSize*other.sumGammas[k];
+                for (int a=0;a<firstMoments[k].length;a++){
+                    firstMoments[k][a] = (1-stepSize)*firstMoments[k][a] + stepSize*other.firstMoments[k][a];
+                    double[] target = secondMoments[k][a];
+                    double[] source = other.secondMoments[k][a];
+                    for (int b=0;b<target.length;b++){
+                        target[b] = (1-stepSize)*target[b] + stepSize*source[b];
+                    }
+                }
+            }
         }
-        return totalGamma;
     }
 }
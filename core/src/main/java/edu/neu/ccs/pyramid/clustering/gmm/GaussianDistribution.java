@@ -1,23 +1,36 @@
 package edu.neu.ccs.pyramid.clustering.gmm;
 
 import org.apache.commons.math3.linear.CholeskyDecomposition;
+import org.apache.commons.math3.linear.NonPositiveDefiniteMatrixException;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 public class GaussianDistribution implements Serializable{
     private static final long serialVersionUID = 1L;
     private RealVector mean;
     private RealMatrix covariance;
+    /**
+     * computed on request
+     */
     private RealMatrix inverseCovariance;
     // calculating determinant directly results in overflow or underflow
     // we should compute log determinant instead
     // use the method described in http://xcorr.net/2008/06/11/log-determinant-of-positive-definite-matrices-in-matlab/
     private double logDeterminant;
+    /**
+     * the quadratic form of the density is |L^-1 (x-mean)|^2, with the Cholesky factor L of the covariance
+     * for a diagonal covariance, only the square roots of the variances are kept
+     */
+    private transient double[][] lower;
+    private transient double[] standardDeviations;
+    private transient double[] meanValues;
 
     public GaussianDistribution(RealVector mean, RealMatrix covariance) {
-        this.mean = mean;
+        this.setMean(mean);
         this.setCovariance(covariance);
     }
 
@@ -32,33 +45,94 @@ public class GaussianDistribution implements Serializable{
 
     void setMean(RealVector mean) {
         this.mean = mean;
+        this.meanValues = mean.toArray();
     }
 
     public RealMatrix getCovariance() {
         return covariance;
     }
 
-    public RealMatrix getInverseCovariance() {
+    public synchronized RealMatrix getInverseCovariance() {
+        if (inverseCovariance==null){
+            inverseCovariance = new CholeskyDecomposition(covariance).getSolver().getInverse();
+        }
         return inverseCovariance;
     }
 
     void setCovariance(RealMatrix covariance) {
         this.covariance = covariance;
+        this.inverseCovariance = null;
+        factorize();
+    }
+
+    private void factorize(){
+        int dim = covariance.getRowDimension();
+        if (isDiagonal(covariance)){
+            this.lower = null;
+            this.standardDeviations = new double[dim];
+            double sum = 0;
+            for (int i=0;i<dim;i++){
+                double variance = covariance.getEntry(i,i);
+                if (variance<=CholeskyDecomposition.DEFAULT_ABSOLUTE_POSITIVITY_THRESHOLD){
+                    throw new NonPositiveDefiniteMatrixException(variance, i, CholeskyDecomposition.DEFAULT_ABSOLUTE_POSITIVITY_THRESHOLD);
+                }
+                standardDeviations[i] = Math.sqrt(variance);
+                sum += Math.log(standardDeviations[i]);
+            }
+            this.logDeterminant = 2*sum;
+            return;
+        }
         CholeskyDecomposition decomposition = new CholeskyDecomposition(covariance);
-        this.inverseCovariance = decomposition.getSolver().getInverse();
-        RealMatrix lMatrix = decomposition.getL();
+        double[][] lMatrix = decomposition.getL().getData();
         double sum = 0;
-        for (int i=0;i<lMatrix.getRowDimension();i++){
-            sum += Math.log(lMatrix.getEntry(i,i));
+        for (int i=0;i<lMatrix.length;i++){
+            sum += Math.log(lMatrix[i][i]);
         }
+        this.standardDeviations = null;
+        this.lower = lMatrix;
         this.logDeterminant = 2*sum;
     }
 
+    private static boolean isDiagonal(RealMatrix matrix){
+        for (int i=0;i<matrix.getRowDimension();i++){
+            for (int j=0;j<matrix.getColumnDimension();j++){
+                if (i!=j && matrix.getEntry(i,j)!=0){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     public double logDensity(RealVector x){
-        RealVector diff = x.subtract(mean);
-        int dim = mean.getDimension();
+        return logDensity(x.toArray());
+    }
+
+    /**
+     * solves L z = x-mean by forward substitution, without forming the inverse covariance
+     */
+    public double logDensity(double[] x){
+        int dim = meanValues.length;
+        double quadratic = 0;
+        if (lower==null){
+            for (int a=0;a<dim;a++){
+                double z = (x[a]-meanValues[a])/standardDeviations[a];
+                quadratic += z*z;
+            }
+        } else {
+            double[] z = new double[dim];
+            for (int a=0;a<dim;a++){
+                double[] row = lower[a];
+                double sum = x[a]-meanValues[a];
+                for (int b=0;b<a;b++){
+                    sum -= row[b]*z[b];
+                }
+                z[a] = sum/row[a];
+                quadratic += z[a]*z[a];
+            }
+        }
         return -0.5*dim*Math.log(2*Math.PI)-0.5*logDeterminant
-                -0.5*(inverseCovariance.preMultiply(diff).dotProduct(diff));
+                -0.5*quadratic;
 
     }
 
@@ -66,6 +140,12 @@ public class GaussianDistribution implements Serializable{
         return Math.exp(logDensity(x));
    }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.meanValues = mean.toArray();
+        factorize();
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("GaussianDistribution{");
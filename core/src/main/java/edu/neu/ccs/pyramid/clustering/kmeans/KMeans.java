@@ -1,35 +1,86 @@
 package edu.neu.ccs.pyramid.clustering.kmeans;
 
 import edu.neu.ccs.pyramid.dataset.DataSet;
-import edu.neu.ccs.pyramid.util.ArgMin;
-import edu.neu.ccs.pyramid.util.MathUtil;
+import edu.neu.ccs.pyramid.util.ArgMax;
 import edu.neu.ccs.pyramid.util.Sampling;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.IntStream;
 
+/**
+ * squared distances are computed as |x|^2 + |c|^2 - 2x.c over the non-zeros of x, with cached norms
+ * full-batch iterations skip distance computations with Hamerly's bounds:
+ * upper[i] bounds the distance from instance i to its center, lower[i] bounds the distance to any other center,
+ * and an instance cannot change cluster when upper[i] is below lower[i] or half the gap to the closest other center
+ * mini-batch iterations (Sculley, 2010) move each center to the running mean of the sampled instances assigned to it
+ */
 public class KMeans {
     private int numComponents;
     private Vector[] centers;
+    /**
+     * values of the centers, shared with the center vectors
+     */
+    private double[][] centerValues;
+    private double[] centerNorms;
     private DataSet dataSet;
+    private double[] rowNorms;
     private int[] assignments;
     private boolean[] assigned;
+    private double[] upperBounds;
+    private double[] lowerBounds;
+    /**
+     * whether the bounds hold for the current centers and assignments
+     */
+    private boolean boundsValid;
+    /**
+     * 0 for full-batch iterations
+     */
+    private int miniBatchSize = 0;
+    /**
+     * number of sampled instances each center has absorbed in mini-batch iterations
+     */
+    private double[] miniBatchCounts;
+    private boolean verbose = true;
 
     public KMeans(int numComponents, DataSet dataSet) {
         this.numComponents = numComponents;
         this.dataSet = dataSet;
         this.centers = new DenseVector[numComponents];
+        this.centerValues = new double[numComponents][];
+        this.centerNorms = new double[numComponents];
         this.assignments = new int[dataSet.getNumDataPoints()];
         this.assigned = new boolean[dataSet.getNumDataPoints()];
+        this.upperBounds = new double[dataSet.getNumDataPoints()];
+        this.lowerBounds = new double[dataSet.getNumDataPoints()];
+        this.miniBatchCounts = new double[numComponents];
+        this.rowNorms = rowNorms(dataSet);
     }
 
-    public void iterate(){
-        updateCenters();
-        assign(true);
+    /**
+     * @param miniBatchSize number of instances sampled in each iteration; 0 for full-batch iterations
+     */
+    public void setMiniBatchSize(int miniBatchSize) {
+        this.miniBatchSize = miniBatchSize;
+    }
+
+    /**
+     * whether to print the progress of each instance and cluster
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
 
+    public void iterate(){
+        if (miniBatchSize>0){
+            miniBatchIterate();
+        } else {
+            updateCenters();
+            assign(verbose);
+        }
     }
 
     public int getNumComponents() {
@@ -40,47 +91,72 @@ public class KMeans {
         return centers;
     }
 
+    /**
+     * after mini-batch iterations, only the sampled instances are up to date; call assign() first
+     */
     public int[] getAssignments() {
         return assignments;
     }
 
+    /**
+     * assign each instance to its nearest center
+     */
+    public void assign(){
+        assign(false);
+    }
+
     private void updateCenters(){
-        System.out.println("update cluster centroids");
-        IntStream.range(0,numComponents)
-                //todo
-//                .parallel()
-                .forEach(this::updateCenters);
+        if (verbose){
+            System.out.println("update cluster centroids");
+        }
+        List<List<Integer>> members = members(IntStream.range(0, dataSet.getNumDataPoints()).toArray());
+        double[][] oldValues = centerValues.clone();
+        // each instance is read once, by the task of its cluster
+        IntStream.range(0,numComponents).parallel()
+                .forEach(k->updateCenter(k, members.get(k)));
+        if (verbose){
+            for (int k=0;k<numComponents;k++){
+                System.out.println("update the centroid of cluster "+(k+1)+" based on "+members.get(k).size()+" instances in the cluster");
+            }
+        }
+        if (boundsValid){
+            updateBounds(oldValues);
+        }
     }
 
     public void randomInitialize(){
         for (int k=0;k<numComponents;k++){
             int dataIndex = Sampling.intUniform(0,dataSet.getNumDataPoints()-1);
-            centers[k] = dataSet.getRow(dataIndex);
+            setCenter(k, dataSet.getRow(dataIndex));
         }
-        assign(true);
+        Arrays.fill(miniBatchCounts, 0);
+        assign(verbose);
     }
 
     public void kmeansPlusPlusInitialize(){
-        KMeansPlusPlus kMeansPlusPlus = new KMeansPlusPlus(this.numComponents,this.dataSet);
-        kMeansPlusPlus.initialize(true);
+        KMeansPlusPlus kMeansPlusPlus = new KMeansPlusPlus(this.numComponents,this.dataSet,this.rowNorms);
+        kMeansPlusPlus.initialize(verbose);
         List<Vector> c = kMeansPlusPlus.getCenters();
         for (int k=0;k<numComponents;k++){
-            centers[k] = c.get(k);
+            setCenter(k, c.get(k));
         }
-        assign(true);
+        Arrays.fill(miniBatchCounts, 0);
+        assign(verbose);
     }
 
 
     public void kmeansPlusPlusInitialize(int numRuns){
-        System.out.println("initialize");
+        if (verbose){
+            System.out.println("initialize");
+        }
         List<Integer> bestIds = null;
         double bestObj = Double.POSITIVE_INFINITY;
         for (int r=0;r<numRuns;r++){
-            KMeansPlusPlus kMeansPlusPlus = new KMeansPlusPlus(this.numComponents,this.dataSet);
+            KMeansPlusPlus kMeansPlusPlus = new KMeansPlusPlus(this.numComponents,this.dataSet,this.rowNorms);
             kMeansPlusPlus.initialize(false);
             List<Integer> pickedIds = kMeansPlusPlus.getPickedIds();
             for (int k=0;k<numComponents;k++){
-                centers[k] = dataSet.getRow(pickedIds.get(k));
+                setCenter(k, dataSet.getRow(pickedIds.get(k)));
             }
             assign(false);
             double obj = objective();
@@ -91,11 +167,14 @@ public class KMeans {
         }
 
         for (int k=0;k<numComponents;k++){
-            centers[k] = dataSet.getRow(bestIds.get(k));
-            System.out.println("randomly pick instance "+(bestIds.get(k)+1)+" as the initial centroid for cluster "+(k+1));
+            setCenter(k, dataSet.getRow(bestIds.get(k)));
+            if (verbose){
+                System.out.println("randomly pick instance "+(bestIds.get(k)+1)+" as the initial centroid for cluster "+(k+1));
+            }
         }
         Arrays.fill(assigned,false);
-        assign(true);
+        Arrays.fill(miniBatchCounts, 0);
+        assign(verbose);
 
     }
 
@@ -104,65 +183,226 @@ public class KMeans {
                 .mapToDouble(this::objective).sum();
     }
     private double objective(int i){
-        return Math.pow(distance(dataSet.getRow(i),centers[assignments[i]]),2);
+        return squaredDistance(i, assignments[i]);
     }
 
-    private void updateCenters(int k){
+    private void setCenter(int k, Vector vector){
+        boundsValid = false;
+        double[] values = new double[dataSet.getNumFeatures()];
+        for (Vector.Element element: vector.nonZeroes()){
+            values[element.index()] = element.get();
+        }
+        setCenter(k, values);
+    }
 
-        Vector center = new DenseVector(dataSet.getNumFeatures());
-        double count = 0;
-        for (int i=0;i<dataSet.getNumDataPoints();i++){
-            if (assignments[i]==k){
-                Vector instance = dataSet.getRow(i);
-                for (int j=0;j<instance.size();j++){
-                    center.set(j, center.get(j)+instance.get(j));
-                }
-                count += 1;
-            }
+    private void setCenter(int k, double[] values){
+        centerValues[k] = values;
+        centers[k] = new DenseVector(values, true);
+        double norm = 0;
+        for (double value: values){
+            norm += value*value;
         }
-        center = center.divide(count);
-        centers[k] = center;
-        System.out.println("update the centroid of cluster "+(k+1)+" based on "+(int)count+" instances in the cluster");
+        centerNorms[k] = norm;
     }
 
-    private void assign(int i, boolean print){
-        int previousAssignment = assignments[i];
-        Vector vector = dataSet.getRow(i);
-        double[] distances = IntStream.range(0,numComponents).mapToDouble(k->distance(vector, centers[k]))
-                .toArray();
-        int assignedC =  ArgMin.argMin(distances);
-        assignments[i] = assignedC;
-        if (print){
-            if (assigned[i] && (previousAssignment!=assignedC)){
-                System.out.println("assign instance "+(i+1)+" to cluster "+(assignedC+1)+", previously in cluster "+(previousAssignment+1));
-            } else {
-                System.out.println("assign instance "+(i+1)+" to cluster "+(assignedC+1));
+    /**
+     * instances of each cluster, among the given ones
+     */
+    private List<List<Integer>> members(int[] instances){
+        List<List<Integer>> members = new ArrayList<>(numComponents);
+        for (int k=0;k<numComponents;k++){
+            members.add(new ArrayList<>());
+        }
+        for (int i: instances){
+            members.get(assignments[i]).add(i);
+        }
+        return members;
+    }
+
+    /**
+     * empty clusters keep their centers
+     */
+    private void updateCenter(int k, List<Integer> members){
+        if (members.isEmpty()){
+            return;
+        }
+        double[] sum = new double[dataSet.getNumFeatures()];
+        for (int i: members){
+            for (Vector.Element element: dataSet.getRow(i).nonZeroes()){
+                sum[element.index()] += element.get();
             }
         }
+        for (int j=0;j<sum.length;j++){
+            sum[j] /= members.size();
+        }
+        setCenter(k, sum);
+    }
 
+    /**
+     * loosen the bounds by how far the centers have moved
+     */
+    private void updateBounds(double[][] oldValues){
+        double[] drifts = IntStream.range(0, numComponents).parallel()
+                .mapToDouble(k->Math.sqrt(squaredDistance(oldValues[k], centerValues[k]))).toArray();
+        int farthest = ArgMax.argMax(drifts);
+        double maxDrift = drifts[farthest];
+        // instances of the farthest moving center only need the largest drift of the others
+        double otherMaxDrift = IntStream.range(0, numComponents).filter(k->k!=farthest)
+                .mapToDouble(k->drifts[k]).max().orElse(0);
+        IntStream.range(0, dataSet.getNumDataPoints()).parallel().forEach(i->{
+            int a = assignments[i];
+            upperBounds[i] += drifts[a];
+            lowerBounds[i] -= (a==farthest) ? otherMaxDrift : maxDrift;
+        });
+    }
 
-        assigned[i] = true;
+    /**
+     * half the distance from each center to its closest other center
+     */
+    private double[] halfGaps(){
+        double[][] gaps = new double[numComponents][numComponents];
+        IntStream.range(0, numComponents).parallel().forEach(k->{
+            for (int l=k+1;l<numComponents;l++){
+                gaps[k][l] = Math.sqrt(squaredDistance(centerValues[k], centerValues[l]));
+            }
+        });
+        double[] halfGaps = new double[numComponents];
+        Arrays.fill(halfGaps, Double.POSITIVE_INFINITY);
+        for (int k=0;k<numComponents;k++){
+            for (int l=k+1;l<numComponents;l++){
+                halfGaps[k] = Math.min(halfGaps[k], gaps[k][l]/2);
+                halfGaps[l] = Math.min(halfGaps[l], gaps[k][l]/2);
+            }
+        }
+        return halfGaps;
     }
 
+    /**
+     * assign instance i to its nearest center and make its bounds tight
+     */
+    private void assignExactly(int i){
+        int best = 0;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        double secondDistance = Double.POSITIVE_INFINITY;
+        for (int k=0;k<numComponents;k++){
+            double distance = squaredDistance(i, k);
+            if (distance<bestDistance){
+                secondDistance = bestDistance;
+                bestDistance = distance;
+                best = k;
+            } else if (distance<secondDistance){
+                secondDistance = distance;
+            }
+        }
+        assignments[i] = best;
+        upperBounds[i] = Math.sqrt(bestDistance);
+        lowerBounds[i] = Math.sqrt(secondDistance);
+    }
+
+    /**
+     * only compute distances when the bounds cannot rule out a closer center
+     */
+    private void assignWithBounds(int i, double[] halfGaps){
+        int a = assignments[i];
+        double bound = Math.max(halfGaps[a], lowerBounds[i]);
+        if (upperBounds[i]<=bound){
+            return;
+        }
+        upperBounds[i] = Math.sqrt(squaredDistance(i, a));
+        if (upperBounds[i]<=bound){
+            return;
+        }
+        assignExactly(i);
+    }
 
     private void assign(boolean print){
         if (print){
             System.out.println("assign each instance to its nearest cluster");
         }
+        int[] previousAssignments = print ? assignments.clone() : null;
+        if (boundsValid){
+            double[] halfGaps = halfGaps();
+            IntStream.range(0, dataSet.getNumDataPoints()).parallel()
+                    .forEach(i->assignWithBounds(i, halfGaps));
+        } else {
+            IntStream.range(0, dataSet.getNumDataPoints()).parallel()
+                    .forEach(this::assignExactly);
+            boundsValid = true;
+        }
+        if (print){
+            for (int i=0;i<dataSet.getNumDataPoints();i++){
+                int assignedC = assignments[i];
+                if (assigned[i] && (previousAssignments[i]!=assignedC)){
+                    System.out.println("assign instance "+(i+1)+" to cluster "+(assignedC+1)+", previously in cluster "+(previousAssignments[i]+1));
+                } else {
+                    System.out.println("assign instance "+(i+1)+" to cluster "+(assignedC+1));
+                }
+            }
+        }
+        Arrays.fill(assigned, true);
+    }
 
-        IntStream.range(0, dataSet.getNumDataPoints())
-                //todo
-//                .parallel()
-                .forEach(i->assign(i,print));
+    /**
+     * assign a random sample to the current centers, then move each center to the mean of all the instances
+     * it has absorbed so far
+     */
+    private void miniBatchIterate(){
+        int[] batch = Sampling.sampleWithReplacement(miniBatchSize, 0, dataSet.getNumDataPoints()).toArray();
+        Arrays.stream(batch).parallel().forEach(this::assignExactly);
+        // the bounds of the other instances do not follow the centers
+        boundsValid = false;
+        List<List<Integer>> members = members(batch);
+        IntStream.range(0, numComponents).parallel()
+                .forEach(k->miniBatchUpdateCenter(k, members.get(k)));
+        if (verbose){
+            System.out.println("update cluster centroids based on a sample of "+miniBatchSize+" instances");
+        }
     }
 
-    static double distance(Vector vector1, Vector vector2){
+    private void miniBatchUpdateCenter(int k, List<Integer> members){
+        if (members.isEmpty()){
+            return;
+        }
+        double previousCount = miniBatchCounts[k];
+        double count = previousCount + members.size();
+        double[] values = new double[dataSet.getNumFeatures()];
+        for (int j=0;j<values.length;j++){
+            values[j] = centerValues[k][j]*previousCount;
+        }
+        for (int i: members){
+            for (Vector.Element element: dataSet.getRow(i).nonZeroes()){
+                values[element.index()] += element.get();
+            }
+        }
+        for (int j=0;j<values.length;j++){
+            values[j] /= count;
+        }
+        miniBatchCounts[k] = count;
+        setCenter(k, values);
+    }
+
+    private double squaredDistance(int i, int k){
+        double[] center = centerValues[k];
+        double product = 0;
+        for (Vector.Element element: dataSet.getRow(i).nonZeroes()){
+            product += element.get()*center[element.index()];
+        }
+        // rounding can make the expansion slightly negative
+        return Math.max(rowNorms[i] + centerNorms[k] - 2*product, 0);
+    }
+
+    private static double squaredDistance(double[] first, double[] second){
         double sum = 0;
-        for (int i=0;i<vector1.size();i++){
-            double diff = (vector1.get(i)-vector2.get(i));
+        for (int j=0;j<first.length;j++){
+            double diff = first[j]-second[j];
             sum += diff*diff;
         }
-        return Math.pow(sum,0.5);
+        return sum;
+    }
+
+    static double[] rowNorms(DataSet dataSet){
+        return IntStream.range(0, dataSet.getNumDataPoints()).parallel()
+                .mapToDouble(i->dataSet.getRow(i).getLengthSquared()).toArray();
     }
 
 }
@@ -7,6 +7,7 @@ import org.apache.commons.math3.distribution.EnumeratedIntegerDistribution;
 import org.apache.mahout.math.Vector;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.IntStream;
 
@@ -14,15 +15,28 @@ public class KMeansPlusPlus {
     private int numComponents;
     private List<Vector> centers;
     private DataSet dataSet;
+    /**
+     * squared distance from each instance to its closest picked center
+     */
     private double[] distances;
+    private double[] rowNorms;
     private List<Integer> pickedIds;
 
 
     public KMeansPlusPlus(int numComponents, DataSet dataSet) {
+        this(numComponents, dataSet, KMeans.rowNorms(dataSet));
+    }
+
+    /**
+     * @param rowNorms squared norms of the rows, shared by repeated runs
+     */
+    KMeansPlusPlus(int numComponents, DataSet dataSet, double[] rowNorms) {
         this.numComponents = numComponents;
         this.dataSet = dataSet;
         this.centers = new ArrayList<>();
         this.distances = new double[dataSet.getNumDataPoints()];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        this.rowNorms = rowNorms;
         this.pickedIds = new ArrayList<>();
     }
 
@@ -38,17 +52,19 @@ public class KMeansPlusPlus {
             System.out.println("randomly pick instance "+(dataIndex+1)+" as the initial centroid for cluster "+centers.size());
         }
 
+        int[] indices = IntStream.range(0, dataSet.getNumDataPoints()).toArray();
         while(centers.size()<numComponents){
-            updateDistance();
+            updateDistance(dataIndex);
             double sum = MathUtil.arraySum(distances);
+            double[] probabilities = new double[distances.length];
             for (int i=0;i<distances.length;i++){
-                distances[i] /= sum;
+                probabilities[i] = distances[i]/sum;
             }
-            int[] indices = IntStream.range(0, dataSet.getNumDataPoints()).toArray();
-            EnumeratedIntegerDistribution dis = new EnumeratedIntegerDistribution(indices, distances);
+            EnumeratedIntegerDistribution dis = new EnumeratedIntegerDistribution(indices, probabilities);
             int sample = dis.sample();
             centers.add(dataSet.getRow(sample));
             pickedIds.add(sample);
+            dataIndex = sample;
             if (print){
                 System.out.println("randomly pick instance "+(sample+1)+" as the initial centroid for cluster "+centers.size());
             }
@@ -64,16 +80,18 @@ public class KMeansPlusPlus {
         return centers;
     }
 
-    private void updateDistance(int i){
-        double min = IntStream.range(0, centers.size())
-                .mapToDouble(k->KMeans.distance(dataSet.getRow(i),centers.get(k)))
-                .min().getAsDouble();
-        distances[i] = min*min;
+    /**
+     * only the newly picked center can be closer than the previous ones
+     */
+    private void updateDistance(int i, int picked){
+        double product = dataSet.getRow(i).dot(dataSet.getRow(picked));
+        double distance = Math.max(rowNorms[i] + rowNorms[picked] - 2*product, 0);
+        distances[i] = Math.min(distances[i], distance);
     }
 
-    private void updateDistance(){
+    private void updateDistance(int picked){
         IntStream.range(0, dataSet.getNumDataPoints()).parallel()
-                .forEach(i-> updateDistance(i));
+                .forEach(i-> updateDistance(i, picked));
     }
 
 
@@ -0,0 +1,441 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.feature.FeatureList;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * single-file binary format for sparse data sets
+ * the feature matrix is stored in CSR and CSC form and opened through FileChannel.map,
+ * so loading copies nothing and JVMs reading the same file share the page cache
+ * loaded data sets are CompressedSparseDataSet (or its classification/multi-label subclasses);
+ * labels and dictionaries are small and are read onto the heap
+ *
+ * layout, little-endian:
+ * header: magic, version, type, numDataPoints, numFeatures, missingValue, numClasses, numNonZeros, numLabelEntries
+ * matrix: rowOffsets, rowFeatureIndices, rowValues, columnOffsets, columnDataIndices, columnValues
+ * labels: clf: one label per data point; multi-label: labelOffsets, labelIndices
+ * dictionaries: id translator, label translator (size -1 if absent), serialized feature list
+ *
+ * each section is mapped as one buffer, so it is limited to 2GB:
+ * at most 536870911 non-zeros (4 bytes per entry); save() checks this before writing anything
+ */
+public class BinaryFormat {
+    private static final int MAGIC = 0x50595242;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 9*4;
+    private static final long MAX_SECTION_SIZE = Integer.MAX_VALUE;
+
+    private static final int TYPE_DATA_SET = 0;
+    private static final int TYPE_CLF = 1;
+    private static final int TYPE_ML_CLF = 2;
+
+    public static void save(DataSet dataSet, String binaryFile) throws IOException{
+        save(dataSet, new File(binaryFile));
+    }
+
+    public static void save(ClfDataSet dataSet, String binaryFile) throws IOException{
+        save(dataSet, new File(binaryFile));
+    }
+
+    public static void save(MultiLabelClfDataSet dataSet, String binaryFile) throws IOException{
+        save(dataSet, new File(binaryFile));
+    }
+
+    public static void save(DataSet dataSet, File binaryFile) throws IOException{
+        try (BinaryWriter writer = new BinaryWriter(binaryFile)){
+            writeMatrix(writer, dataSet, TYPE_DATA_SET, 0, 0);
+            writeDictionaries(writer, dataSet, null);
+        }
+    }
+
+    public static void save(ClfDataSet dataSet, File binaryFile) throws IOException{
+        try (BinaryWriter writer = new BinaryWriter(binaryFile)){
+            writeMatrix(writer, dataSet, TYPE_CLF, dataSet.getNumClasses(), 0);
+            for (int label: dataSet.getLabels()){
+                writer.writeInt(label);
+            }
+            writeDictionaries(writer, dataSet, dataSet.getLabelTranslator());
+        }
+    }
+
+    public static void save(MultiLabelClfDataSet dataSet, File binaryFile) throws IOException{
+        MultiLabel[] multiLabels = dataSet.getMultiLabels();
+        int numLabelEntries = 0;
+        for (MultiLabel multiLabel: multiLabels){
+            numLabelEntries += multiLabel.getNumMatchedLabels();
+        }
+        try (BinaryWriter writer = new BinaryWriter(binaryFile)){
+            writeMatrix(writer, dataSet, TYPE_ML_CLF, dataSet.getNumClasses(), numLabelEntries);
+            int offset = 0;
+            writer.writeInt(offset);
+            for (MultiLabel multiLabel: multiLabels){
+                offset += multiLabel.getNumMatchedLabels();
+                writer.writeInt(offset);
+            }
+            for (MultiLabel multiLabel: multiLabels){
+                for (int label: multiLabel.getMatchedLabelsOrdered()){
+                    writer.writeInt(label);
+                }
+            }
+            writeDictionaries(writer, dataSet, dataSet.getLabelTranslator());
+        }
+    }
+
+    /**
+     * @return whether the file starts with the magic number of this format
+     */
+    public static boolean isBinaryFormat(File file){
+        if (!file.isFile() || file.length()<HEADER_SIZE){
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))){
+            return Integer.reverseBytes(in.readInt())==MAGIC;
+        } catch (IOException e){
+            return false;
+        }
+    }
+
+    public static boolean isBinaryFormat(String file){
+        return isBinaryFormat(new File(file));
+    }
+
+    /**
+     * load features only, whatever the type of the file
+     */
+    public static CompressedSparseDataSet loadDataSet(String binaryFile) throws IOException, ClassNotFoundException {
+        return loadDataSet(new File(binaryFile));
+    }
+
+    public static CompressedSparseClfDataSet loadClfDataSet(String binaryFile) throws IOException, ClassNotFoundException {
+        return loadClfDataSet(new File(binaryFile));
+    }
+
+    public static CompressedSparseMLClfDataSet loadMultiLabelClfDataSet(String binaryFile) throws IOException, ClassNotFoundException {
+        return loadMultiLabelClfDataSet(new File(binaryFile));
+    }
+
+    public static CompressedSparseDataSet loadDataSet(File binaryFile) throws IOException, ClassNotFoundException {
+        try (BinaryReader reader = new BinaryReader(binaryFile)){
+            reader.skipLabels();
+            IdTranslator idTranslator = reader.readIdTranslator();
+            reader.readLabelTranslator();
+            FeatureList featureList = reader.readFeatureList();
+            return new CompressedSparseDataSet(reader.numDataPoints, reader.numFeatures, reader.missingValue,
+                    idTranslator, featureList, reader.storage);
+        }
+    }
+
+    public static CompressedSparseClfDataSet loadClfDataSet(File binaryFile) throws IOException, ClassNotFoundException {
+        try (BinaryReader reader = new BinaryReader(binaryFile)){
+            reader.checkType(TYPE_CLF);
+            int[] labels = new int[reader.numDataPoints];
+            for (int i=0;i<labels.length;i++){
+                labels[i] = reader.tail.getInt();
+            }
+            IdTranslator idTranslator = reader.readIdTranslator();
+            LabelTranslator labelTranslator = reader.readLabelTranslator();
+            FeatureList featureList = reader.readFeatureList();
+            return new CompressedSparseClfDataSet(reader.numDataPoints, reader.numFeatures, reader.missingValue,
+                    idTranslator, featureList, reader.storage, reader.numClasses, labels, labelTranslator);
+        }
+    }
+
+    public static CompressedSparseMLClfDataSet loadMultiLabelClfDataSet(File binaryFile) throws IOException, ClassNotFoundException {
+        try (BinaryReader reader = new BinaryReader(binaryFile)){
+            reader.checkType(TYPE_ML_CLF);
+            int[] labelOffsets = new int[reader.numDataPoints+1];
+            for (int i=0;i<labelOffsets.length;i++){
+                labelOffsets[i] = reader.tail.getInt();
+            }
+            MultiLabel[] multiLabels = new MultiLabel[reader.numDataPoints];
+            for (int i=0;i<multiLabels.length;i++){
+                multiLabels[i] = new MultiLabel();
+                for (int p=labelOffsets[i];p<labelOffsets[i+1];p++){
+                    multiLabels[i].addLabel(reader.tail.getInt());
+                }
+            }
+            IdTranslator idTranslator = reader.readIdTranslator();
+            LabelTranslator labelTranslator = reader.readLabelTranslator();
+            FeatureList featureList = reader.readFeatureList();
+            return new CompressedSparseMLClfDataSet(reader.numDataPoints, reader.numFeatures, reader.missingValue,
+                    idTranslator, featureList, reader.storage, reader.numClasses, multiLabels, labelTranslator);
+        }
+    }
+
+    private static void writeMatrix(BinaryWriter writer, DataSet dataSet, int type,
+                                    int numClasses, int numLabelEntries) throws IOException{
+        CompressedSparseDataSet.Storage storage = CompressedSparseDataSet.Storage.of(dataSet);
+        checkSectionSize(storage.rowFeatureIndices.limit());
+        writer.writeInt(MAGIC);
+        writer.writeInt(VERSION);
+        writer.writeInt(type);
+        writer.writeInt(dataSet.getNumDataPoints());
+        writer.writeInt(dataSet.getNumFeatures());
+        writer.writeInt(dataSet.hasMissingValue()?1:0);
+        writer.writeInt(numClasses);
+        writer.writeInt(storage.rowFeatureIndices.limit());
+        writer.writeInt(numLabelEntries);
+        writer.writeInts(storage.rowOffsets);
+        writer.writeInts(storage.rowFeatureIndices);
+        writer.writeFloats(storage.rowValues);
+        writer.writeInts(storage.columnOffsets);
+        writer.writeInts(storage.columnDataIndices);
+        writer.writeFloats(storage.columnValues);
+    }
+
+    private static void checkSectionSize(long numEntries) throws IOException{
+        if (4*numEntries>MAX_SECTION_SIZE){
+            throw new IOException("the binary data set format supports at most "+MAX_SECTION_SIZE/4
+                    +" non-zeros, but the data set has "+numEntries);
+        }
+    }
+
+    private static void writeDictionaries(BinaryWriter writer, DataSet dataSet, LabelTranslator labelTranslator) throws IOException{
+        IdTranslator idTranslator = dataSet.getIdTranslator();
+        String[] extIds = idTranslator.getAllExtIds();
+        writer.writeInt(extIds.length);
+        for (String extId: extIds){
+            writer.writeInt(idTranslator.toIntId(extId));
+            writer.writeString(extId);
+        }
+        if (labelTranslator==null){
+            writer.writeInt(-1);
+        } else {
+            writer.writeInt(labelTranslator.getNumClasses());
+            for (int k=0;k<labelTranslator.getNumClasses();k++){
+                writer.writeString(labelTranslator.toExtLabel(k));
+            }
+        }
+        // features have many subclasses, so the feature list keeps using java serialization
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bytes)){
+            objectOutputStream.writeObject(dataSet.getFeatureList());
+        }
+        writer.writeInt(bytes.size());
+        writer.writeBytes(bytes.toByteArray());
+    }
+
+    private static class BinaryWriter implements Closeable {
+        private FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(1<<20).order(ByteOrder.LITTLE_ENDIAN);
+
+        BinaryWriter(File file) throws IOException {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.exists()){
+                parent.mkdirs();
+            }
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void writeInt(int value) throws IOException{
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void writeInts(IntBuffer values) throws IOException{
+            for (int p=0;p<values.limit();p++){
+                writeInt(values.get(p));
+            }
+        }
+
+        void writeFloats(FloatBuffer values) throws IOException{
+            for (int p=0;p<values.limit();p++){
+                ensure(4);
+                buffer.putFloat(values.get(p));
+            }
+        }
+
+        void writeBytes(byte[] bytes) throws IOException{
+            int position = 0;
+            while (position<bytes.length){
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length-position);
+                buffer.put(bytes, position, length);
+                position += length;
+            }
+        }
+
+        /**
+         * null is written as length -1
+         */
+        void writeString(String value) throws IOException{
+            if (value==null){
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            writeBytes(bytes);
+        }
+
+        private void ensure(int numBytes) throws IOException{
+            if (buffer.remaining()<numBytes){
+                flush();
+            }
+        }
+
+        private void flush() throws IOException{
+            buffer.flip();
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+
+    /**
+     * maps the matrix sections and the remaining part of the file
+     */
+    private static class BinaryReader implements Closeable {
+        private FileChannel channel;
+        private int type;
+        private int numDataPoints;
+        private int numFeatures;
+        private boolean missingValue;
+        private int numClasses;
+        private int numLabelEntries;
+        private CompressedSparseDataSet.Storage storage;
+        /**
+         * labels and dictionaries, read sequentially
+         */
+        private ByteBuffer tail;
+
+        BinaryReader(File file) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt()!=MAGIC){
+                throw new IOException(file+" is not in the binary data set format");
+            }
+            int version = header.getInt();
+            if (version!=VERSION){
+                throw new IOException("unsupported binary data set version "+version);
+            }
+            this.type = header.getInt();
+            this.numDataPoints = header.getInt();
+            this.numFeatures = header.getInt();
+            this.missingValue = header.getInt()==1;
+            this.numClasses = header.getInt();
+            int numNonZeros = header.getInt();
+            this.numLabelEntries = header.getInt();
+
+            long position = HEADER_SIZE;
+            IntBuffer rowOffsets = mapInts(position, numDataPoints+1);
+            position += 4L*(numDataPoints+1);
+            IntBuffer rowFeatureIndices = mapInts(position, numNonZeros);
+            position += 4L*numNonZeros;
+            FloatBuffer rowValues = mapFloats(position, numNonZeros);
+            position += 4L*numNonZeros;
+            IntBuffer columnOffsets = mapInts(position, numFeatures+1);
+            position += 4L*(numFeatures+1);
+            IntBuffer columnDataIndices = mapInts(position, numNonZeros);
+            position += 4L*numNonZeros;
+            FloatBuffer columnValues = mapFloats(position, numNonZeros);
+            position += 4L*numNonZeros;
+            this.storage = new CompressedSparseDataSet.Storage(rowOffsets, rowFeatureIndices, rowValues,
+                    columnOffsets, columnDataIndices, columnValues);
+            this.tail = map(position, channel.size()-position);
+        }
+
+        void checkType(int expected) throws IOException{
+            if (type!=expected){
+                throw new IOException("the file holds a data set of type "+type+", not "+expected);
+            }
+        }
+
+        void skipLabels() throws IOException{
+            // in long arithmetic, the label section can be larger than 2GB
+            long length = 0;
+            if (type==TYPE_CLF){
+                length = 4L*numDataPoints;
+            } else if (type==TYPE_ML_CLF){
+                length = 4L*(numDataPoints+1L+numLabelEntries);
+            }
+            if (length>tail.remaining()){
+                throw new IOException("the labels take "+length+" bytes, but only "+tail.remaining()+" are left");
+            }
+            tail.position(tail.position()+(int)length);
+        }
+
+        IdTranslator readIdTranslator(){
+            IdTranslator idTranslator = new IdTranslator();
+            int size = tail.getInt();
+            for (int e=0;e<size;e++){
+                int intId = tail.getInt();
+                idTranslator.addDataWithoutCheck(intId, readString());
+            }
+            return idTranslator;
+        }
+
+        /**
+         * @return null if the data set had no label translator
+         */
+        LabelTranslator readLabelTranslator(){
+            int size = tail.getInt();
+            if (size<0){
+                return null;
+            }
+            String[] extLabels = new String[size];
+            for (int k=0;k<size;k++){
+                extLabels[k] = readString();
+            }
+            return new LabelTranslator(extLabels);
+        }
+
+        FeatureList readFeatureList() throws IOException, ClassNotFoundException{
+            byte[] bytes = new byte[tail.getInt()];
+            tail.get(bytes);
+            try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(bytes))){
+                return (FeatureList) objectInputStream.readObject();
+            }
+        }
+
+        private String readString(){
+            int length = tail.getInt();
+            if (length<0){
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            tail.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private IntBuffer mapInts(long position, int count) throws IOException{
+            return map(position, 4L*count).asIntBuffer();
+        }
+
+        private FloatBuffer mapFloats(long position, int count) throws IOException{
+            return map(position, 4L*count).asFloatBuffer();
+        }
+
+        private ByteBuffer map(long position, long size) throws IOException{
+            if (size>MAX_SECTION_SIZE){
+                throw new IOException("a section of the binary data set is larger than 2GB");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * mapped buffers stay valid after the channel is closed
+         */
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.feature.FeatureList;
+
+import java.util.Arrays;
+
+/**
+ * frozen sparse classification data set
+ * feature values are fixed, labels can still be changed
+ */
+public class CompressedSparseClfDataSet extends CompressedSparseDataSet implements ClfDataSet {
+    private static final long serialVersionUID = 1L;
+    private int numClasses;
+    private int[] labels;
+    private LabelTranslator labelTranslator;
+
+    private CompressedSparseClfDataSet(ClfDataSet dataSet) {
+        super(dataSet);
+        this.numClasses = dataSet.getNumClasses();
+        this.labels = Arrays.copyOf(dataSet.getLabels(), dataSet.getNumDataPoints());
+        this.labelTranslator = dataSet.getLabelTranslator();
+    }
+
+    CompressedSparseClfDataSet(int numDataPoints, int numFeatures, boolean missingValue,
+                               IdTranslator idTranslator, FeatureList featureList, Storage storage,
+                               int numClasses, int[] labels, LabelTranslator labelTranslator) {
+        super(numDataPoints, numFeatures, missingValue, idTranslator, featureList, storage);
+        this.numClasses = numClasses;
+        this.labels = labels;
+        this.labelTranslator = labelTranslator;
+    }
+
+    /**
+     * copy a classification data set, e.g. one built by ClfDataSetBuilder and filled, into a frozen one
+     * @param dataSet
+     * @return
+     */
+    public static CompressedSparseClfDataSet freeze(ClfDataSet dataSet){
+        return new CompressedSparseClfDataSet(dataSet);
+    }
+
+    @Override
+    public int getNumClasses() {
+        return this.numClasses;
+    }
+
+    @Override
+    public int[] getLabels() {
+        return this.labels;
+    }
+
+    @Override
+    public void setLabel(int dataPointIndex, int label) {
+        if (label<0||label>=this.numClasses){
+            throw new IllegalArgumentException("label<0||label>=this.numClasses");
+        }
+        this.labels[dataPointIndex]=label;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("number of classes = ").append(this.numClasses).append("\n");
+        sb.append(super.toString());
+        sb.append("labels = ").append(Arrays.toString(labels));
+        return sb.toString();
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("type = ").append("compressed sparse classification").append("\n");
+        sb.append("number of classes = ").append(this.numClasses);
+        return sb.toString();
+    }
+
+    @Override
+    public LabelTranslator getLabelTranslator() {
+        return labelTranslator;
+    }
+
+    @Override
+    public void setLabelTranslator(LabelTranslator labelTranslator) {
+        this.labelTranslator = labelTranslator;
+    }
+}
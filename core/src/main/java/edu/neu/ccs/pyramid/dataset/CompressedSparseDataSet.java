@@ -0,0 +1,225 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.feature.FeatureList;
+import org.apache.mahout.math.Vector;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * frozen sparse data set
+ * the matrix is stored once by rows (CSR) and once by columns (CSC) in primitive buffers;
+ * values are kept as floats, missing values as Float.NaN
+ * the buffers are either on heap (see freeze()) or memory-mapped from a file (see BinaryFormat)
+ * rows and columns are returned as read-only views over the buffers
+ * feature values cannot be changed
+ */
+public class CompressedSparseDataSet extends AbstractDataSet implements DataSet{
+    private static final long serialVersionUID = 1L;
+
+    private transient Storage storage;
+
+    CompressedSparseDataSet(DataSet dataSet) {
+        this(dataSet.getNumDataPoints(), dataSet.getNumFeatures(), dataSet.hasMissingValue(),
+                dataSet.getIdTranslator(), dataSet.getFeatureList(), Storage.of(dataSet));
+    }
+
+    CompressedSparseDataSet(int numDataPoints, int numFeatures, boolean missingValue,
+                            IdTranslator idTranslator, FeatureList featureList, Storage storage) {
+        super(numDataPoints, numFeatures, missingValue, idTranslator);
+        this.featureList = featureList;
+        this.storage = storage;
+    }
+
+    /**
+     * copy the features of a data set into a frozen one
+     * labels are not copied; see CompressedSparseClfDataSet and CompressedSparseMLClfDataSet
+     * @param dataSet
+     * @return
+     */
+    public static CompressedSparseDataSet freeze(DataSet dataSet){
+        return new CompressedSparseDataSet(dataSet);
+    }
+
+    /**
+     * data sets derived from this one by DataSetUtil are built as ordinary sequential sparse data sets
+     * @return
+     */
+    @Override
+    public Density density() {
+        return Density.SPARSE_SEQUENTIAL;
+    }
+
+    @Override
+    public Vector getColumn(int featureIndex) {
+        return new SparseBufferVector(numDataPoints, storage.columnDataIndices, storage.columnValues,
+                storage.columnOffsets.get(featureIndex), storage.columnOffsets.get(featureIndex+1));
+    }
+
+    @Override
+    public Vector getRow(int dataPointIndex) {
+        return new SparseBufferVector(numFeatures, storage.rowFeatureIndices, storage.rowValues,
+                storage.rowOffsets.get(dataPointIndex), storage.rowOffsets.get(dataPointIndex+1));
+    }
+
+    @Override
+    public void setFeatureValue(int dataPointIndex, int featureIndex, double featureValue) {
+        throw new UnsupportedOperationException("feature values of a frozen data set cannot be changed");
+    }
+
+    @Override
+    public boolean isDense() {
+        return false;
+    }
+
+    public int getNumNonZeros(){
+        return storage.rowFeatureIndices.limit();
+    }
+
+    Storage getStorage() {
+        return storage;
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("number of non-zeros = ").append(getNumNonZeros()).append("\n");
+        return sb.toString();
+    }
+
+    /**
+     * memory-mapped buffers are copied to heap arrays
+     */
+    private void writeObject(java.io.ObjectOutputStream out)
+            throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(toArray(storage.rowOffsets));
+        out.writeObject(toArray(storage.rowFeatureIndices));
+        out.writeObject(toArray(storage.rowValues));
+        out.writeObject(toArray(storage.columnOffsets));
+        out.writeObject(toArray(storage.columnDataIndices));
+        out.writeObject(toArray(storage.columnValues));
+    }
+
+    private void readObject(java.io.ObjectInputStream in)
+            throws IOException, ClassNotFoundException{
+        in.defaultReadObject();
+        storage = new Storage(IntBuffer.wrap((int[]) in.readObject()),
+                IntBuffer.wrap((int[]) in.readObject()),
+                FloatBuffer.wrap((float[]) in.readObject()),
+                IntBuffer.wrap((int[]) in.readObject()),
+                IntBuffer.wrap((int[]) in.readObject()),
+                FloatBuffer.wrap((float[]) in.readObject()));
+    }
+
+    private static int[] toArray(IntBuffer buffer){
+        int[] array = new int[buffer.limit()];
+        for (int p=0;p<array.length;p++){
+            array[p] = buffer.get(p);
+        }
+        return array;
+    }
+
+    private static float[] toArray(FloatBuffer buffer){
+        float[] array = new float[buffer.limit()];
+        for (int p=0;p<array.length;p++){
+            array[p] = buffer.get(p);
+        }
+        return array;
+    }
+
+    /**
+     * the CSR and CSC buffers; only absolute get is used, so the buffers can be shared by threads
+     */
+    static class Storage {
+        /**
+         * entries of row i are at positions rowOffsets[i] ... rowOffsets[i+1]-1
+         */
+        final IntBuffer rowOffsets;
+        final IntBuffer rowFeatureIndices;
+        final FloatBuffer rowValues;
+        /**
+         * entries of column j are at positions columnOffsets[j] ... columnOffsets[j+1]-1
+         */
+        final IntBuffer columnOffsets;
+        final IntBuffer columnDataIndices;
+        final FloatBuffer columnValues;
+
+        Storage(IntBuffer rowOffsets, IntBuffer rowFeatureIndices, FloatBuffer rowValues,
+                IntBuffer columnOffsets, IntBuffer columnDataIndices, FloatBuffer columnValues) {
+            this.rowOffsets = rowOffsets;
+            this.rowFeatureIndices = rowFeatureIndices;
+            this.rowValues = rowValues;
+            this.columnOffsets = columnOffsets;
+            this.columnDataIndices = columnDataIndices;
+            this.columnValues = columnValues;
+        }
+
+        /**
+         * copy the non-zero entries (including NaN) of a data set into heap buffers
+         */
+        static Storage of(DataSet dataSet){
+            if (dataSet instanceof CompressedSparseDataSet){
+                return ((CompressedSparseDataSet) dataSet).storage;
+            }
+            int numDataPoints = dataSet.getNumDataPoints();
+            int numFeatures = dataSet.getNumFeatures();
+
+            // rows
+            int[] rowOffsets = new int[numDataPoints+1];
+            for (int i=0;i<numDataPoints;i++){
+                int count = 0;
+                for (Vector.Element element: dataSet.getRow(i).nonZeroes()){
+                    if (element.get()!=0){
+                        count += 1;
+                    }
+                }
+                rowOffsets[i+1] = rowOffsets[i] + count;
+            }
+            int numNonZeros = rowOffsets[numDataPoints];
+            int[] rowFeatureIndices = new int[numNonZeros];
+            float[] rowValues = new float[numNonZeros];
+            int[] columnCounts = new int[numFeatures];
+            for (int i=0;i<numDataPoints;i++){
+                int start = rowOffsets[i];
+                int position = start;
+                Vector row = dataSet.getRow(i);
+                for (Vector.Element element: row.nonZeroes()){
+                    if (element.get()!=0){
+                        rowFeatureIndices[position] = element.index();
+                        position += 1;
+                    }
+                }
+                // random access vectors do not iterate in index order
+                Arrays.sort(rowFeatureIndices, start, position);
+                for (int p=start;p<position;p++){
+                    rowValues[p] = (float)row.get(rowFeatureIndices[p]);
+                    columnCounts[rowFeatureIndices[p]] += 1;
+                }
+            }
+
+            // columns, filled row by row so that data indices are sorted
+            int[] columnOffsets = new int[numFeatures+1];
+            for (int j=0;j<numFeatures;j++){
+                columnOffsets[j+1] = columnOffsets[j] + columnCounts[j];
+            }
+            int[] columnDataIndices = new int[numNonZeros];
+            float[] columnValues = new float[numNonZeros];
+            int[] next = Arrays.copyOf(columnOffsets, numFeatures);
+            for (int i=0;i<numDataPoints;i++){
+                for (int p=rowOffsets[i];p<rowOffsets[i+1];p++){
+                    int j = rowFeatureIndices[p];
+                    columnDataIndices[next[j]] = i;
+                    columnValues[next[j]] = rowValues[p];
+                    next[j] += 1;
+                }
+            }
+            return new Storage(IntBuffer.wrap(rowOffsets), IntBuffer.wrap(rowFeatureIndices),
+                    FloatBuffer.wrap(rowValues), IntBuffer.wrap(columnOffsets),
+                    IntBuffer.wrap(columnDataIndices), FloatBuffer.wrap(columnValues));
+        }
+    }
+}
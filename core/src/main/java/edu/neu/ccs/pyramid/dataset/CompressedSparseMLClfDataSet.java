@@ -0,0 +1,94 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.feature.FeatureList;
+
+/**
+ * frozen sparse multi-label classification data set
+ * feature values are fixed, labels can still be changed
+ */
+public class CompressedSparseMLClfDataSet extends CompressedSparseDataSet implements MultiLabelClfDataSet{
+    private static final long serialVersionUID = 1L;
+    private int numClasses;
+    private MultiLabel[] multiLabels;
+    private LabelTranslator labelTranslator;
+
+    private CompressedSparseMLClfDataSet(MultiLabelClfDataSet dataSet) {
+        super(dataSet);
+        this.numClasses = dataSet.getNumClasses();
+        MultiLabel[] labels = dataSet.getMultiLabels();
+        this.multiLabels = new MultiLabel[labels.length];
+        for (int i=0;i<labels.length;i++){
+            this.multiLabels[i] = labels[i].copy();
+        }
+        this.labelTranslator = dataSet.getLabelTranslator();
+    }
+
+    CompressedSparseMLClfDataSet(int numDataPoints, int numFeatures, boolean missingValue,
+                                 IdTranslator idTranslator, FeatureList featureList, Storage storage,
+                                 int numClasses, MultiLabel[] multiLabels, LabelTranslator labelTranslator) {
+        super(numDataPoints, numFeatures, missingValue, idTranslator, featureList, storage);
+        this.numClasses = numClasses;
+        this.multiLabels = multiLabels;
+        this.labelTranslator = labelTranslator;
+    }
+
+    /**
+     * copy a multi-label data set, e.g. one built by MLClfDataSetBuilder and filled, into a frozen one
+     * @param dataSet
+     * @return
+     */
+    public static CompressedSparseMLClfDataSet freeze(MultiLabelClfDataSet dataSet){
+        return new CompressedSparseMLClfDataSet(dataSet);
+    }
+
+    @Override
+    public int getNumClasses() {
+        return this.numClasses;
+    }
+
+    @Override
+    public MultiLabel[] getMultiLabels() {
+        return this.multiLabels;
+    }
+
+    @Override
+    public void addLabel(int dataPointIndex, int classIndex) {
+        this.multiLabels[dataPointIndex].addLabel(classIndex);
+    }
+
+    @Override
+    public void setLabels(int dataPointIndex, MultiLabel multiLabel) {
+        multiLabels[dataPointIndex] = multiLabel;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("numClasses=").append(numClasses).append("\n");
+        sb.append(super.toString());
+        sb.append("labels").append("\n");
+        for (int i=0;i<numDataPoints;i++){
+            sb.append(i).append(":").append(multiLabels[i]).append(",");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("type = ").append("compressed sparse multi-label classification").append("\n");
+        sb.append("number of classes = ").append(this.numClasses);
+        return sb.toString();
+    }
+
+    @Override
+    public LabelTranslator getLabelTranslator() {
+        return labelTranslator;
+    }
+
+    @Override
+    public void setLabelTranslator(LabelTranslator labelTranslator) {
+        this.labelTranslator = labelTranslator;
+    }
+}
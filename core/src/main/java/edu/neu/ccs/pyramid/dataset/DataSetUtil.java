@@ -469,6 +469,19 @@ public class DataSetUtil {
         return sample;
     }
 
+    /**
+     * read-only view of a subset of rows, without copying rows or labels
+     * columns are filtered from the parent data set on demand
+     * unlike sampleData, the indices should be increasing and unique
+     * the parent data set should not be modified while the view is in use
+     * @param dataSet
+     * @param indices
+     * @return
+     */
+    public static MultiLabelClfDataSet sampleView(MultiLabelClfDataSet dataSet, List<Integer> indices){
+        return new RowSubsetMLClfDataSet(dataSet, indices);
+    }
+
 
     /**
      * assuming they have different feature sets
@@ -54,6 +54,10 @@ public class IdTranslator implements Serializable {
         return extToInt.get(extId);
     }
 
+    public boolean containsExtId(String extId){
+        return extToInt.containsKey(extId);
+    }
+
     public String toExtId(int intId){
         return intToExt.get(intId);
     }
@@ -115,7 +115,9 @@ public class LibSvmFormat {
             throw new RuntimeException("labelTranslator.getNumClasses()!=numClasse");
         }
 
-        int numDataPoints = getNumDataPoints(libSvmFile);
+        SparseTextParser.Rows rows = new SparseTextParser(SparseTextParser.Syntax.SVM)
+                .setIndexOffset(-1).parse(new File(libSvmFile));
+        int numDataPoints = rows.getNumRows();
 
         ClfDataSet dataSet = ClfDataSetBuilder.getBuilder()
                 .numDataPoints(numDataPoints)
@@ -123,30 +125,10 @@ public class LibSvmFormat {
                 .numClasses(numClasses)
                 .dense(dense)
                 .build();
-        try (BufferedReader br = new BufferedReader(new FileReader(libSvmFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                // sometimes, they use more than one spaces
-                String[] lineSplit = line.split("\\s+");
-                int extIntLabel = (int)Double.parseDouble(lineSplit[0]);
-                String extLabel = ""+extIntLabel;
-                int label = labelTranslator.toIntLabel(extLabel);
-                dataSet.setLabel(dataIndex,label);
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0])-1;
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
-            }
+        rows.fillFeatures(dataSet);
+        for (int dataIndex=0;dataIndex<numDataPoints;dataIndex++){
+            String extLabel = ""+(int)rows.getLabel(dataIndex);
+            dataSet.setLabel(dataIndex,labelTranslator.toIntLabel(extLabel));
         }
         dataSet.setLabelTranslator(labelTranslator);
         return dataSet;
@@ -155,36 +137,18 @@ public class LibSvmFormat {
 
     public static RegDataSet loadRegDataSet(String libSvmFile,
                                             int numFeatures, boolean dense) throws IOException, ClassNotFoundException {
-        int numDataPoints = getNumDataPoints(libSvmFile);
+        SparseTextParser.Rows rows = new SparseTextParser(SparseTextParser.Syntax.SVM)
+                .setIndexOffset(-1).parse(new File(libSvmFile));
+        int numDataPoints = rows.getNumRows();
 
         RegDataSet dataSet = RegDataSetBuilder.getBuilder()
                 .numDataPoints(numDataPoints)
                 .numFeatures(numFeatures)
                 .dense(dense)
                 .build();
-        try (BufferedReader br = new BufferedReader(new FileReader(libSvmFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                // sometimes, they use more than one spaces
-                String[] lineSplit = line.split("\\s+");
-                double label = Double.parseDouble(lineSplit[0]);
-
-                dataSet.setLabel(dataIndex,label);
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0])-1;
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
-            }
+        rows.fillFeatures(dataSet);
+        for (int dataIndex=0;dataIndex<numDataPoints;dataIndex++){
+            dataSet.setLabel(dataIndex,rows.getLabel(dataIndex));
         }
         return dataSet;
     }
@@ -195,6 +159,11 @@ public class LibSvmFormat {
         ) {
             String line = null;
             while ((line=br.readLine())!=null){
+                // blank lines are skipped, like in SparseTextParser
+                line = line.trim();
+                if (line.isEmpty()){
+                    continue;
+                }
                 String[] lineSplit = line.split("\\s+");
                 int label = (int)Double.parseDouble(lineSplit[0]);
                 oldLabels.add(label);
@@ -225,7 +194,9 @@ public class LibSvmFormat {
 
     public static MultiLabelClfDataSet loadMultiLabelClfDataSet(String libSvmFile,
                                                                 boolean dense, int numFeatures, int numClasses) throws IOException, ClassNotFoundException {
-        int numDatapoints = getNumDataPoints(libSvmFile);
+        SparseTextParser.Rows rows = new SparseTextParser(SparseTextParser.Syntax.SVM)
+                .setIndexOffset(-1).setIntegerLabels(true).parse(new File(libSvmFile));
+        int numDatapoints = rows.getNumRows();
 //        int numClasses = getNumClasses(libSvmFile);
 //        int numFeatures = getnumFeatures(libSvmFile);
 
@@ -236,33 +207,12 @@ public class LibSvmFormat {
         MultiLabelClfDataSet dataSet = new MLClfDataSetBuilder().numClasses(numClasses)
                 .numFeatures(numFeatures).numDataPoints(numDatapoints).
                         density(Density.SPARSE_RANDOM).build();
-
-        try (BufferedReader br = new BufferedReader(new FileReader(libSvmFile));
-        ) {
-            String line = null;
-            int lineCount = 0;
-            while ((line=br.readLine()) != null) {
-                String[] lineInfo = line.split(" ");
-                // adding labels
-                String labels = lineInfo[0];
-                for (String label : labels.split(",")) {
-                    int l = Integer.parseInt(label);
-                    dataSet.addLabel(lineCount, l-1);
-//                    dataSet.addLabel(lineCount, l);
-                }
-                // adding feature
-                for (int i=1; i<lineInfo.length; i++) {
-                    String[] featureValue = lineInfo[i].split(":");
-                    int feature = Integer.parseInt(featureValue[0]);
-                    double value = Double.parseDouble(featureValue[1]);
-                    dataSet.setFeatureValue(lineCount, feature-1, value);
-                }
-                lineCount++;
+        rows.fillFeatures(dataSet);
+        for (int dataIndex=0;dataIndex<numDatapoints;dataIndex++){
+            for (int l=0;l<rows.getNumLabels(dataIndex);l++){
+                dataSet.addLabel(dataIndex, (int)rows.getLabel(dataIndex,l)-1);
             }
-            br.close();
         }
-
-
         return dataSet;
     }
 
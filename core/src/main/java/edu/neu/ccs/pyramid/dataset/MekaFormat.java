@@ -354,13 +354,13 @@ public class MekaFormat {
 
     private static MultiLabelClfDataSet loadMLClfDataset(File file, int numFeatures, int numClasses) throws IOException {
 
-        int numData = 0;
         Map<String, String> labelMap = new HashMap<>();
         Map<String, String> featureMap = new HashMap<>();
         BufferedReader br = new BufferedReader(new FileReader(file));
         String line;
         int featureCount = 0;
-        while((line=br.readLine())!=null) {
+        // attributes are declared before the data
+        while((line=br.readLine())!=null && !line.startsWith("@data")) {
             if (featureCount < numFeatures) {
                 if (line.startsWith("@attribute")) {
                     String[] splitLine = line.split(" ");
@@ -377,20 +377,24 @@ public class MekaFormat {
                     String labelIndex = Integer.toString(featureCount);
                     labelMap.put(labelIndex, labelName);
                     featureCount++;
-                } else if ((line.startsWith("{")) && (line.endsWith("}"))) {
-                    numData++;
                 }
             }
         }
         br.close();
-        System.out.println("numData: " + numData);
 
-        return loadMLClfDataset(file, numClasses, numFeatures, numData, labelMap, featureMap);
+        return loadMLClfDataset(file, numClasses, numFeatures, labelMap, featureMap);
 
     }
 
-    private static MultiLabelClfDataSet loadMLClfDataset(File file, int numClasses, int numFeatures, int numData,
+    /**
+     * the data lines are parsed in parallel, see SparseTextParser
+     */
+    private static MultiLabelClfDataSet loadMLClfDataset(File file, int numClasses, int numFeatures,
                                                          Map<String, String> labelMap, Map<String, String> featureMap) throws IOException {
+        SparseTextParser.Rows rows = new SparseTextParser(SparseTextParser.Syntax.MEKA)
+                .setLabelIndexStart(numFeatures).parse(file);
+        int numData = rows.getNumRows();
+        System.out.println("numData: " + numData);
         MultiLabelClfDataSet dataSet = MLClfDataSetBuilder.getBuilder()
                 .numDataPoints(numData).numClasses(numClasses).numFeatures(numFeatures)
                 .build();
@@ -417,34 +421,16 @@ public class MekaFormat {
         dataSet.setLabelTranslator(labelTranslator);
 
         // create feature matrix
-        BufferedReader br = new BufferedReader(new FileReader(file));
-        String line;
-        int dataCount = 0;
-        while((line=br.readLine()) != null) {
-            if ((line.startsWith("{")) && (line.endsWith("}"))) {
-                line = line.substring(1,line.length()-1);
-                String[] indexValues = line.split(", ");
-                for (String indexValue : indexValues) {
-                    String[] indexValuePair = indexValue.split(" ");
-                    String index = indexValuePair[0];
-                    String value = indexValuePair[1];
-                    if (labelMap.containsKey(index)) {
-                        double valueDouble = Double.parseDouble(value);
-                        if (valueDouble == 1.0) {
-                            dataSet.addLabel(dataCount, Integer.parseInt(index)-numFeatures);
-                        }
-                    } else if (featureMap.containsKey(index)) {
-                        double valueDouble = Double.parseDouble(value);
-                        int indexInt = Integer.parseInt(index);
-                        dataSet.setFeatureValue(dataCount,indexInt,valueDouble);
-                    } else {
-                        throw new RuntimeException("Index:" +index + " not found in the line: " + line);
-                    }
+        rows.fillFeatures(dataSet);
+        for (int dataCount=0; dataCount<numData; dataCount++) {
+            for (int l=0; l<rows.getNumLabels(dataCount); l++) {
+                int label = (int)rows.getLabel(dataCount, l);
+                if (!labelIndexMap.containsKey(label)) {
+                    throw new RuntimeException("Index:" + (label+numFeatures) + " not found in data point " + dataCount);
                 }
-                dataCount++;
+                dataSet.addLabel(dataCount, label);
             }
         }
-        br.close();
         return dataSet;
     }
 
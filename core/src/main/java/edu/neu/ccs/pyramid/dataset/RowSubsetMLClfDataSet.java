@@ -0,0 +1,207 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.feature.FeatureList;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * read-only view of a subset of rows of a multi-label data set
+ * rows and labels are shared with the parent data set, nothing is copied
+ * a column is built from the parent column the first time it is requested, and then cached;
+ * it has the same density as the parent column
+ * the parent data set should not be modified while the view is in use
+ * see DataSetUtil.sampleView()
+ */
+class RowSubsetMLClfDataSet implements MultiLabelClfDataSet {
+    private static final long serialVersionUID = 1L;
+
+    private final MultiLabelClfDataSet parent;
+    /**
+     * row i of the view is row rowIndices[i] of the parent
+     */
+    private final int[] rowIndices;
+    /**
+     * row of the view for each row of the parent, -1 if not in the view
+     */
+    private final int[] viewIndices;
+    private final MultiLabel[] multiLabels;
+    private final AtomicReferenceArray<Vector> columns;
+    private IdTranslator idTranslator;
+
+    /**
+     * @param parent
+     * @param rowIndices rows of the parent, in increasing order, without duplicates
+     */
+    RowSubsetMLClfDataSet(MultiLabelClfDataSet parent, List<Integer> rowIndices) {
+        this.parent = parent;
+        this.rowIndices = rowIndices.stream().mapToInt(Integer::intValue).toArray();
+        this.viewIndices = new int[parent.getNumDataPoints()];
+        Arrays.fill(viewIndices, -1);
+        MultiLabel[] parentLabels = parent.getMultiLabels();
+        this.multiLabels = new MultiLabel[this.rowIndices.length];
+        for (int i=0;i<this.rowIndices.length;i++){
+            int parentIndex = this.rowIndices[i];
+            if (i>0 && parentIndex<=this.rowIndices[i-1]){
+                throw new IllegalArgumentException("row indices should be increasing and unique");
+            }
+            viewIndices[parentIndex] = i;
+            multiLabels[i] = parentLabels[parentIndex];
+        }
+        this.columns = new AtomicReferenceArray<>(parent.getNumFeatures());
+    }
+
+    @Override
+    public int getNumDataPoints() {
+        return rowIndices.length;
+    }
+
+    @Override
+    public int getNumFeatures() {
+        return parent.getNumFeatures();
+    }
+
+    @Override
+    public Vector getColumn(int featureIndex) {
+        Vector column = columns.get(featureIndex);
+        if (column==null){
+            // concurrent callers may build the same column; only one copy is kept
+            columns.compareAndSet(featureIndex, null, buildColumn(featureIndex));
+            column = columns.get(featureIndex);
+        }
+        return column;
+    }
+
+    /**
+     * keep the parent entries whose rows are in the view
+     */
+    private Vector buildColumn(int featureIndex){
+        Vector parentColumn = parent.getColumn(featureIndex);
+        int numDataPoints = rowIndices.length;
+        Vector column;
+        switch (parent.density()){
+            case DENSE:
+                column = new DenseVector(numDataPoints);
+                break;
+            case SPARSE_SEQUENTIAL:
+                column = new SequentialAccessSparseVector(numDataPoints);
+                break;
+            default:
+                column = new RandomAccessSparseVector(numDataPoints);
+                break;
+        }
+        // parent rows are visited in increasing order for dense and sequential columns,
+        // so sequential columns are filled by appending
+        for (Vector.Element element: parentColumn.nonZeroes()){
+            int viewIndex = viewIndices[element.index()];
+            if (viewIndex>=0){
+                column.setQuick(viewIndex, element.get());
+            }
+        }
+        return column;
+    }
+
+    @Override
+    public Vector getRow(int dataPointIndex) {
+        return parent.getRow(rowIndices[dataPointIndex]);
+    }
+
+    @Override
+    public void setFeatureValue(int dataPointIndex, int featureIndex, double featureValue) {
+        throw new UnsupportedOperationException("a row subset view is read-only");
+    }
+
+    @Override
+    public boolean isDense() {
+        return parent.isDense();
+    }
+
+    @Override
+    public boolean hasMissingValue() {
+        return parent.hasMissingValue();
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("number of data points = ").append(getNumDataPoints()).append("\n");
+        sb.append("number of features = ").append(getNumFeatures()).append("\n");
+        sb.append("has missing value = ").append(hasMissingValue()).append("\n");
+        sb.append("type = ").append("row subset view of multi-label classification").append("\n");
+        sb.append("number of classes = ").append(getNumClasses());
+        return sb.toString();
+    }
+
+    /**
+     * built on first use
+     */
+    @Override
+    public synchronized IdTranslator getIdTranslator() {
+        if (idTranslator==null){
+            IdTranslator parentTranslator = parent.getIdTranslator();
+            idTranslator = new IdTranslator();
+            for (int i=0;i<rowIndices.length;i++){
+                idTranslator.addData(i, parentTranslator.toExtId(rowIndices[i]));
+            }
+        }
+        return idTranslator;
+    }
+
+    @Override
+    public synchronized void setIdTranslator(IdTranslator idTranslator) {
+        this.idTranslator = idTranslator;
+    }
+
+    @Override
+    public FeatureList getFeatureList() {
+        return parent.getFeatureList();
+    }
+
+    @Override
+    public void setFeatureList(FeatureList featureList) {
+        throw new UnsupportedOperationException("a row subset view is read-only");
+    }
+
+    @Override
+    public Density density() {
+        return parent.density();
+    }
+
+    /**
+     * the label objects are shared with the parent
+     */
+    @Override
+    public MultiLabel[] getMultiLabels() {
+        return multiLabels;
+    }
+
+    @Override
+    public void addLabel(int dataPointIndex, int classIndex) {
+        throw new UnsupportedOperationException("a row subset view is read-only");
+    }
+
+    @Override
+    public void setLabels(int dataPointIndex, MultiLabel multiLabel) {
+        throw new UnsupportedOperationException("a row subset view is read-only");
+    }
+
+    @Override
+    public int getNumClasses() {
+        return parent.getNumClasses();
+    }
+
+    @Override
+    public LabelTranslator getLabelTranslator() {
+        return parent.getLabelTranslator();
+    }
+
+    @Override
+    public void setLabelTranslator(LabelTranslator labelTranslator) {
+        throw new UnsupportedOperationException("a row subset view is read-only");
+    }
+}
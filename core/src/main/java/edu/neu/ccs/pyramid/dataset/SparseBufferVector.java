@@ -0,0 +1,213 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.AbstractVector;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.OrderedIntDoubleMapping;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.SparseRowMatrix;
+import org.apache.mahout.math.Vector;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * read-only sparse vector viewing a slice of shared index/value buffers,
+ * e.g. one row or one column of a CompressedSparseDataSet
+ * the buffers can be on heap or memory-mapped
+ * indices in the slice are sorted and distinct
+ * creating a view copies nothing
+ */
+public class SparseBufferVector extends AbstractVector {
+    private final IntBuffer indices;
+    private final FloatBuffer values;
+    private final int start;
+    private final int end;
+
+    /**
+     * @param size cardinality of the vector
+     * @param indices
+     * @param values
+     * @param start first position of the slice, inclusive
+     * @param end last position of the slice, exclusive
+     */
+    SparseBufferVector(int size, IntBuffer indices, FloatBuffer values, int start, int end) {
+        super(size);
+        this.indices = indices;
+        this.values = values;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    protected Iterator<Element> iterator() {
+        return new AllIterator();
+    }
+
+    @Override
+    protected Iterator<Element> iterateNonZero() {
+        return new NonZeroIterator();
+    }
+
+    @Override
+    protected Matrix matrixLike(int rows, int columns) {
+        return new SparseRowMatrix(rows, columns);
+    }
+
+    @Override
+    public boolean isDense() {
+        return false;
+    }
+
+    @Override
+    public boolean isSequentialAccess() {
+        return true;
+    }
+
+    @Override
+    public void mergeUpdates(OrderedIntDoubleMapping updates) {
+        throw new UnsupportedOperationException("SparseBufferVector is read-only");
+    }
+
+    @Override
+    public double getQuick(int index) {
+        int low = start;
+        int high = end-1;
+        while (low<=high){
+            int middle = (low+high)>>>1;
+            int middleIndex = indices.get(middle);
+            if (middleIndex<index){
+                low = middle+1;
+            } else if (middleIndex>index){
+                high = middle-1;
+            } else {
+                return values.get(middle);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public Vector like() {
+        return new SequentialAccessSparseVector(size());
+    }
+
+    @Override
+    public Vector like(int cardinality) {
+        return new SequentialAccessSparseVector(cardinality);
+    }
+
+    @Override
+    public void setQuick(int index, double value) {
+        throw new UnsupportedOperationException("SparseBufferVector is read-only");
+    }
+
+    @Override
+    public int getNumNondefaultElements() {
+        return end-start;
+    }
+
+    @Override
+    public double getLookupCost() {
+        return Math.max(1, Math.ceil(Math.log(getNumNondefaultElements()+1)/Math.log(2)));
+    }
+
+    @Override
+    public double getIteratorAdvanceCost() {
+        return 1;
+    }
+
+    @Override
+    public boolean isAddConstantTime() {
+        return false;
+    }
+
+    /**
+     * the element at a position of the slice
+     */
+    private final class SliceElement implements Element {
+        private int position;
+
+        @Override
+        public double get() {
+            return values.get(position);
+        }
+
+        @Override
+        public int index() {
+            return indices.get(position);
+        }
+
+        @Override
+        public void set(double value) {
+            throw new UnsupportedOperationException("SparseBufferVector is read-only");
+        }
+    }
+
+    /**
+     * the returned element is reused, as in Mahout vectors
+     */
+    private final class NonZeroIterator implements Iterator<Element> {
+        private final SliceElement element = new SliceElement();
+        private int next = start;
+
+        @Override
+        public boolean hasNext() {
+            return next<end;
+        }
+
+        @Override
+        public Element next() {
+            if (!hasNext()){
+                throw new NoSuchElementException();
+            }
+            element.position = next;
+            next += 1;
+            return element;
+        }
+    }
+
+    private final class AllIterator implements Iterator<Element> {
+        private int index = 0;
+        // position of the next stored entry
+        private int position = start;
+        private double value;
+        private final Element element = new Element() {
+            @Override
+            public double get() {
+                return value;
+            }
+
+            @Override
+            public int index() {
+                return index-1;
+            }
+
+            @Override
+            public void set(double value) {
+                throw new UnsupportedOperationException("SparseBufferVector is read-only");
+            }
+        };
+
+        @Override
+        public boolean hasNext() {
+            return index<size();
+        }
+
+        @Override
+        public Element next() {
+            if (!hasNext()){
+                throw new NoSuchElementException();
+            }
+            if (position<end && indices.get(position)==index){
+                value = values.get(position);
+                position += 1;
+            } else {
+                value = 0;
+            }
+            index += 1;
+            return element;
+        }
+    }
+}
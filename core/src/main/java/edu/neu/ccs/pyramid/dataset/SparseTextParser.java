@@ -0,0 +1,646 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.list.DoubleArrayList;
+import org.apache.mahout.math.list.IntArrayList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * parallel parser for sparse text matrix files (TREC, LibSVM, Meka)
+ * the file is split into byte ranges on line boundaries; each range is memory-mapped
+ * and tokenized by its own thread into primitive arrays, without creating strings
+ * the parsed rows are then written into a data set in bulk, without per-entry locking
+ */
+class SparseTextParser {
+    /**
+     * files smaller than this are parsed by a single thread
+     */
+    private static final long MIN_CHUNK_SIZE = 1L<<20;
+    /**
+     * a mapped range cannot exceed 2GB
+     */
+    private static final long MAX_CHUNK_SIZE = 1L<<30;
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int k=1;k<POWERS_OF_TEN.length;k++){
+            POWERS_OF_TEN[k] = POWERS_OF_TEN[k-1]*10;
+        }
+    }
+
+    enum Syntax {
+        /**
+         * one data point per line: labels index:value index:value ... # comment
+         * labels are separated by commas and may be empty; blank lines are skipped
+         */
+        SVM,
+        /**
+         * one data point per line: {index value, index value, ...}
+         * lines not starting with { are skipped
+         * entries with index >= labelIndexStart are labels when the value is 1
+         */
+        MEKA
+    }
+
+    private final Syntax syntax;
+    /**
+     * added to every feature index, e.g. -1 for 1-based files
+     */
+    private int indexOffset = 0;
+    private int labelIndexStart = Integer.MAX_VALUE;
+    /**
+     * whether SVM labels must be integers, as class indices are; otherwise they are parsed as doubles
+     */
+    private boolean integerLabels = false;
+
+    SparseTextParser(Syntax syntax) {
+        this.syntax = syntax;
+    }
+
+    SparseTextParser setIndexOffset(int indexOffset) {
+        this.indexOffset = indexOffset;
+        return this;
+    }
+
+    SparseTextParser setLabelIndexStart(int labelIndexStart) {
+        this.labelIndexStart = labelIndexStart;
+        return this;
+    }
+
+    SparseTextParser setIntegerLabels(boolean integerLabels) {
+        this.integerLabels = integerLabels;
+        return this;
+    }
+
+    Rows parse(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()){
+            long[] boundaries = split(channel);
+            int numChunks = boundaries.length-1;
+            Chunk[] chunks = new Chunk[numChunks];
+            try {
+                IntStream.range(0, numChunks).parallel().forEach(c -> {
+                    try {
+                        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                boundaries[c], boundaries[c+1]-boundaries[c]);
+                        chunks[c] = parse(buffer, boundaries[c]);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return new Rows(chunks);
+        }
+    }
+
+    /**
+     * @return start of each chunk, followed by the file size
+     */
+    private static long[] split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int numChunks = (int)Math.max(Math.min(Runtime.getRuntime().availableProcessors(), size/MIN_CHUNK_SIZE),
+                (size+MAX_CHUNK_SIZE-1)/MAX_CHUNK_SIZE);
+        numChunks = Math.max(numChunks, 1);
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        for (int c=1;c<numChunks;c++){
+            long position = Math.max(size/numChunks*c, boundaries.get(boundaries.size()-1));
+            // move to the beginning of the next line
+            long lineStart = -1;
+            while (lineStart<0 && position<size){
+                buffer.clear();
+                int numRead = channel.read(buffer, position);
+                for (int p=0;p<numRead;p++){
+                    if (buffer.get(p)=='\n'){
+                        lineStart = position+p+1;
+                        break;
+                    }
+                }
+                position += numRead;
+            }
+            if (lineStart<0){
+                break;
+            }
+            if (lineStart>boundaries.get(boundaries.size()-1)){
+                boundaries.add(lineStart);
+            }
+        }
+        if (boundaries.get(boundaries.size()-1)<size || boundaries.size()==1){
+            boundaries.add(size);
+        }
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private Chunk parse(ByteBuffer buffer, long offset){
+        Chunk chunk = new Chunk();
+        Tokenizer tokenizer = new Tokenizer(buffer, offset);
+        while (tokenizer.hasRemaining()){
+            if (syntax==Syntax.SVM){
+                parseSvmLine(tokenizer, chunk);
+            } else {
+                parseMekaLine(tokenizer, chunk);
+            }
+        }
+        return chunk;
+    }
+
+    private void parseSvmLine(Tokenizer tokenizer, Chunk chunk){
+        if (tokenizer.atBlankLine()){
+            tokenizer.skipLine();
+            tokenizer.nextLine();
+            return;
+        }
+        // labels, up to the first white space
+        while (!tokenizer.atWhiteSpace() && !tokenizer.atEndOfLine()){
+            if (tokenizer.peek()==','){
+                tokenizer.skip();
+                continue;
+            }
+            if (integerLabels){
+                chunk.labels.add(tokenizer.nextIntToken());
+            } else {
+                chunk.labels.add(tokenizer.nextDouble());
+            }
+        }
+        while (true){
+            tokenizer.skipWhiteSpace();
+            if (tokenizer.atEndOfLine()){
+                break;
+            }
+            // ignore things after #
+            if (tokenizer.peek()=='#'){
+                tokenizer.skipLine();
+                break;
+            }
+            int featureIndex = tokenizer.nextInt();
+            tokenizer.expect(':');
+            double featureValue = tokenizer.nextDouble();
+            chunk.addFeature(featureIndex+indexOffset, featureValue);
+        }
+        tokenizer.nextLine();
+        chunk.endRow();
+    }
+
+    private void parseMekaLine(Tokenizer tokenizer, Chunk chunk){
+        if (tokenizer.atEndOfLine() || tokenizer.peek()!='{'){
+            tokenizer.skipLine();
+            tokenizer.nextLine();
+            return;
+        }
+        tokenizer.skip();
+        while (true){
+            while (!tokenizer.atEndOfLine() && (tokenizer.atWhiteSpace() || tokenizer.peek()==',')){
+                tokenizer.skip();
+            }
+            if (tokenizer.atEndOfLine() || tokenizer.peek()=='}'){
+                break;
+            }
+            int index = tokenizer.nextInt();
+            tokenizer.skipWhiteSpace();
+            double value = tokenizer.nextDouble();
+            if (index>=labelIndexStart){
+                if (value==1.0){
+                    chunk.labels.add(index-labelIndexStart);
+                }
+            } else {
+                chunk.addFeature(index+indexOffset, value);
+            }
+        }
+        tokenizer.skipLine();
+        tokenizer.nextLine();
+        chunk.endRow();
+    }
+
+    /**
+     * rows parsed by one thread
+     */
+    private static class Chunk {
+        private int numRows;
+        private IntArrayList rowOffsets = new IntArrayList();
+        private IntArrayList featureIndices = new IntArrayList();
+        private DoubleArrayList featureValues = new DoubleArrayList();
+        private IntArrayList labelOffsets = new IntArrayList();
+        private DoubleArrayList labels = new DoubleArrayList();
+
+        Chunk() {
+            rowOffsets.add(0);
+            labelOffsets.add(0);
+        }
+
+        void addFeature(int featureIndex, double featureValue){
+            featureIndices.add(featureIndex);
+            featureValues.add(featureValue);
+        }
+
+        void endRow(){
+            numRows += 1;
+            rowOffsets.add(featureIndices.size());
+            labelOffsets.add(labels.size());
+        }
+    }
+
+    /**
+     * all parsed rows, in file order
+     * features are kept per chunk; labels are merged
+     */
+    static class Rows {
+        private final Chunk[] chunks;
+        private final int[] firstRows;
+        private final int numRows;
+        private final int[] labelOffsets;
+        private final double[] labels;
+
+        private Rows(Chunk[] chunks) {
+            this.chunks = chunks;
+            this.firstRows = new int[chunks.length];
+            int numRows = 0;
+            int numLabels = 0;
+            for (int c=0;c<chunks.length;c++){
+                firstRows[c] = numRows;
+                numRows += chunks[c].numRows;
+                numLabels += chunks[c].labels.size();
+            }
+            this.numRows = numRows;
+            this.labelOffsets = new int[numRows+1];
+            this.labels = new double[numLabels];
+            int row = 0;
+            int position = 0;
+            for (Chunk chunk: chunks){
+                for (int r=0;r<chunk.numRows;r++){
+                    labelOffsets[row] = position + chunk.labelOffsets.get(r);
+                    row += 1;
+                }
+                System.arraycopy(chunk.labels.elements(), 0, labels, position, chunk.labels.size());
+                position += chunk.labels.size();
+            }
+            labelOffsets[numRows] = numLabels;
+        }
+
+        int getNumRows() {
+            return numRows;
+        }
+
+        int getNumLabels(int row){
+            return labelOffsets[row+1]-labelOffsets[row];
+        }
+
+        double getLabel(int row, int labelIndex){
+            return labels[labelOffsets[row]+labelIndex];
+        }
+
+        /**
+         * the only label of a single-label row
+         */
+        double getLabel(int row){
+            if (getNumLabels(row)!=1){
+                throw new IllegalArgumentException("data point "+row+" has "+getNumLabels(row)+" labels, expected 1");
+            }
+            return getLabel(row, 0);
+        }
+
+        /**
+         * write all features into the data set
+         * the same entries are set as by calling setFeatureValue() row by row,
+         * but rows and columns are built in parallel without locking
+         */
+        void fillFeatures(DataSet dataSet){
+            if (numRows>dataSet.getNumDataPoints()){
+                throw new IllegalArgumentException("the file has "+numRows+" data points, but the data set only has "
+                        +dataSet.getNumDataPoints());
+            }
+            IntStream.range(0, chunks.length).parallel().forEach(c -> check(dataSet, c));
+            if (dataSet instanceof SparseDataSet){
+                SparseDataSet sparseDataSet = (SparseDataSet) dataSet;
+                RandomAccessSparseVector[] rows = sparseDataSet.featureRows;
+                RandomAccessSparseVector[] columns = sparseDataSet.featureColumns;
+                forEachRow((row, size) -> rows[row] = new RandomAccessSparseVector(dataSet.getNumFeatures(), Math.max(size,1)),
+                        (row, featureIndex, featureValue) -> rows[row].set(featureIndex, featureValue));
+                int[] columnSizes = columnSizes(dataSet.getNumFeatures());
+                for (int j=0;j<columnSizes.length;j++){
+                    columns[j] = new RandomAccessSparseVector(dataSet.getNumDataPoints(), Math.max(columnSizes[j],1));
+                }
+                forEachColumn(dataSet.getNumFeatures(), (column, row, featureValue) -> columns[column].set(row, featureValue));
+            } else if (dataSet instanceof SequentialSparseDataSet){
+                SequentialSparseDataSet sparseDataSet = (SequentialSparseDataSet) dataSet;
+                SequentialAccessSparseVector[] rows = sparseDataSet.featureRows;
+                SequentialAccessSparseVector[] columns = sparseDataSet.featureColumns;
+                forEachRow((row, size) -> rows[row] = new SequentialAccessSparseVector(dataSet.getNumFeatures(), size),
+                        (row, featureIndex, featureValue) -> rows[row].set(featureIndex, featureValue));
+                int[] columnSizes = columnSizes(dataSet.getNumFeatures());
+                for (int j=0;j<columnSizes.length;j++){
+                    columns[j] = new SequentialAccessSparseVector(dataSet.getNumDataPoints(), columnSizes[j]);
+                }
+                forEachColumn(dataSet.getNumFeatures(), (column, row, featureValue) -> columns[column].set(row, featureValue));
+            } else if (dataSet instanceof DenseDataSet){
+                // different rows write different cells of a column
+                DenseVector[] rows = ((DenseDataSet) dataSet).featureRows;
+                DenseVector[] columns = ((DenseDataSet) dataSet).featureColumns;
+                forEachRow((row, size) -> {}, (row, featureIndex, featureValue) -> {
+                    rows[row].set(featureIndex, featureValue);
+                    columns[featureIndex].set(row, featureValue);
+                });
+            } else {
+                for (int c=0;c<chunks.length;c++){
+                    Chunk chunk = chunks[c];
+                    for (int r=0;r<chunk.numRows;r++){
+                        for (int p=chunk.rowOffsets.get(r);p<chunk.rowOffsets.get(r+1);p++){
+                            dataSet.setFeatureValue(firstRows[c]+r, chunk.featureIndices.get(p), chunk.featureValues.get(p));
+                        }
+                    }
+                }
+            }
+        }
+
+        private void check(DataSet dataSet, int c){
+            Chunk chunk = chunks[c];
+            for (int r=0;r<chunk.numRows;r++){
+                for (int p=chunk.rowOffsets.get(r);p<chunk.rowOffsets.get(r+1);p++){
+                    int featureIndex = chunk.featureIndices.get(p);
+                    if (featureIndex<0 || featureIndex>=dataSet.getNumFeatures()){
+                        throw new IllegalArgumentException("data point "+(firstRows[c]+r)+" has feature index "
+                                +featureIndex+", but the data set has "+dataSet.getNumFeatures()+" features");
+                    }
+                    if ((!dataSet.hasMissingValue()) && Double.isNaN(chunk.featureValues.get(p))){
+                        throw new IllegalArgumentException("missing value is not allowed in this data set");
+                    }
+                }
+            }
+        }
+
+        /**
+         * chunks in parallel, rows of a chunk in order
+         */
+        private void forEachRow(RowInitializer initializer, EntryConsumer consumer){
+            IntStream.range(0, chunks.length).parallel().forEach(c -> {
+                Chunk chunk = chunks[c];
+                int[] rowOffsets = chunk.rowOffsets.elements();
+                int[] featureIndices = chunk.featureIndices.elements();
+                double[] featureValues = chunk.featureValues.elements();
+                for (int r=0;r<chunk.numRows;r++){
+                    int row = firstRows[c]+r;
+                    initializer.init(row, rowOffsets[r+1]-rowOffsets[r]);
+                    for (int p=rowOffsets[r];p<rowOffsets[r+1];p++){
+                        consumer.accept(row, featureIndices[p], featureValues[p]);
+                    }
+                }
+            });
+        }
+
+        private int[] columnSizes(int numFeatures){
+            int[] columnSizes = new int[numFeatures];
+            for (Chunk chunk: chunks){
+                for (int p=0;p<chunk.featureIndices.size();p++){
+                    columnSizes[chunk.featureIndices.get(p)] += 1;
+                }
+            }
+            return columnSizes;
+        }
+
+        /**
+         * transpose by counting, then build columns in parallel, each column in row order
+         */
+        private void forEachColumn(int numFeatures, EntryConsumer consumer){
+            int[] columnOffsets = new int[numFeatures+1];
+            int[] columnSizes = columnSizes(numFeatures);
+            for (int j=0;j<numFeatures;j++){
+                columnOffsets[j+1] = columnOffsets[j]+columnSizes[j];
+            }
+            int numEntries = columnOffsets[numFeatures];
+            int[] columnRows = new int[numEntries];
+            double[] columnValues = new double[numEntries];
+            int[] next = new int[numFeatures];
+            System.arraycopy(columnOffsets, 0, next, 0, numFeatures);
+            for (int c=0;c<chunks.length;c++){
+                Chunk chunk = chunks[c];
+                for (int r=0;r<chunk.numRows;r++){
+                    for (int p=chunk.rowOffsets.get(r);p<chunk.rowOffsets.get(r+1);p++){
+                        int j = chunk.featureIndices.get(p);
+                        columnRows[next[j]] = firstRows[c]+r;
+                        columnValues[next[j]] = chunk.featureValues.get(p);
+                        next[j] += 1;
+                    }
+                }
+            }
+            IntStream.range(0, numFeatures).parallel().forEach(j -> {
+                for (int p=columnOffsets[j];p<columnOffsets[j+1];p++){
+                    consumer.accept(j, columnRows[p], columnValues[p]);
+                }
+            });
+        }
+    }
+
+    private interface RowInitializer {
+        void init(int row, int numEntries);
+    }
+
+    private interface EntryConsumer {
+        void accept(int first, int second, double value);
+    }
+
+    /**
+     * reads numbers directly from the bytes of one chunk
+     */
+    private static class Tokenizer {
+        private final ByteBuffer buffer;
+        private final long offset;
+        private final int limit;
+        private int position;
+
+        Tokenizer(ByteBuffer buffer, long offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.limit = buffer.limit();
+        }
+
+        boolean hasRemaining(){
+            return position<limit;
+        }
+
+        byte peek(){
+            return buffer.get(position);
+        }
+
+        void skip(){
+            position += 1;
+        }
+
+        boolean atEndOfLine(){
+            return position>=limit || buffer.get(position)=='\n';
+        }
+
+        boolean atWhiteSpace(){
+            if (position>=limit){
+                return false;
+            }
+            byte b = buffer.get(position);
+            return b==' ' || b=='\t' || b=='\r';
+        }
+
+        void skipWhiteSpace(){
+            while (atWhiteSpace()){
+                position += 1;
+            }
+        }
+
+        /**
+         * whether the rest of the line only has white spaces
+         */
+        boolean atBlankLine(){
+            int p = position;
+            while (p<limit){
+                byte b = buffer.get(p);
+                if (b=='\n'){
+                    return true;
+                }
+                if (b!=' ' && b!='\t' && b!='\r'){
+                    return false;
+                }
+                p += 1;
+            }
+            return true;
+        }
+
+        void skipLine(){
+            while (!atEndOfLine()){
+                position += 1;
+            }
+        }
+
+        /**
+         * move past the end of the current line
+         */
+        void nextLine(){
+            if (position<limit){
+                position += 1;
+            }
+        }
+
+        void expect(char c){
+            if (position>=limit || buffer.get(position)!=c){
+                throw error("expected '"+c+"'");
+            }
+            position += 1;
+        }
+
+        int nextInt(){
+            int start = position;
+            boolean negative = false;
+            if (position<limit && (buffer.get(position)=='-' || buffer.get(position)=='+')){
+                negative = buffer.get(position)=='-';
+                position += 1;
+            }
+            long value = 0;
+            int numDigits = 0;
+            while (position<limit){
+                byte b = buffer.get(position);
+                if (b<'0' || b>'9'){
+                    break;
+                }
+                value = value*10 + (b-'0');
+                numDigits += 1;
+                position += 1;
+            }
+            if (numDigits==0 || numDigits>9){
+                // let Integer report the error, or parse the rare long integer
+                return Integer.parseInt(text(start));
+            }
+            return (int)(negative? -value: value);
+        }
+
+        /**
+         * a whole token, up to a white space or a comma, parsed by Integer.parseInt
+         * so that e.g. 1.0 is rejected
+         */
+        int nextIntToken(){
+            int start = position;
+            while (position<limit){
+                byte b = buffer.get(position);
+                if (b==' ' || b=='\t' || b=='\r' || b=='\n' || b==','){
+                    break;
+                }
+                position += 1;
+            }
+            try {
+                return Integer.parseInt(text(start));
+            } catch (NumberFormatException e) {
+                throw error("illegal integer "+text(start));
+            }
+        }
+
+        /**
+         * plain decimals with at most 15 significant digits are parsed exactly as m/10^k,
+         * which gives the same double as Double.parseDouble;
+         * anything else (exponents, NaN, long mantissas) goes through Double.parseDouble
+         */
+        double nextDouble(){
+            int start = position;
+            boolean negative = false;
+            if (position<limit && (buffer.get(position)=='-' || buffer.get(position)=='+')){
+                negative = buffer.get(position)=='-';
+                position += 1;
+            }
+            long mantissa = 0;
+            int numDigits = 0;
+            int numFractionDigits = 0;
+            boolean fraction = false;
+            boolean simple = true;
+            while (position<limit){
+                byte b = buffer.get(position);
+                if (b>='0' && b<='9'){
+                    if (numDigits<18){
+                        mantissa = mantissa*10 + (b-'0');
+                    }
+                    numDigits += 1;
+                    if (fraction){
+                        numFractionDigits += 1;
+                    }
+                } else if (b=='.' && !fraction){
+                    fraction = true;
+                } else if (b==' ' || b=='\t' || b=='\r' || b=='\n' || b==',' || b=='}'){
+                    break;
+                } else {
+                    // exponent, NaN, Infinity ...
+                    simple = false;
+                }
+                position += 1;
+            }
+            if (simple && numDigits>0 && numDigits<=15 && numFractionDigits<POWERS_OF_TEN.length){
+                double value = numFractionDigits==0? mantissa: mantissa/POWERS_OF_TEN[numFractionDigits];
+                return negative? -value: value;
+            }
+            try {
+                return Double.parseDouble(text(start));
+            } catch (NumberFormatException e) {
+                throw error("illegal number "+text(start));
+            }
+        }
+
+        private String text(int start){
+            byte[] bytes = new byte[position-start];
+            for (int p=start;p<position;p++){
+                bytes[p-start] = buffer.get(p);
+            }
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+
+        private IllegalArgumentException error(String message){
+            return new IllegalArgumentException(message+" at byte "+(offset+position));
+        }
+    }
+}
@@ -10,7 +10,6 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -116,6 +115,10 @@ public class TRECFormat {
 
     public static ClfDataSet loadClfDataSet(File trecFile, DataSetType dataSetType,
                                             boolean loadSettings) throws IOException, ClassNotFoundException {
+        // a single binary data set file is opened memory-mapped, see BinaryFormat
+        if (BinaryFormat.isBinaryFormat(trecFile)){
+            return BinaryFormat.loadClfDataSet(trecFile);
+        }
         boolean legalArg = ((dataSetType == DataSetType.CLF_DENSE)
                 ||(dataSetType==DataSetType.CLF_SPARSE));
         if (!legalArg){
@@ -144,6 +147,10 @@ public class TRECFormat {
 
     public static MultiLabelClfDataSet loadMultiLabelClfDataSet(File trecFile, DataSetType dataSetType,
                                             boolean loadSettings) throws IOException, ClassNotFoundException {
+        // a single binary data set file is opened memory-mapped, see BinaryFormat
+        if (BinaryFormat.isBinaryFormat(trecFile)){
+            return BinaryFormat.loadMultiLabelClfDataSet(trecFile);
+        }
         boolean legalArg = ((dataSetType == DataSetType.ML_CLF_DENSE)
                 ||(dataSetType==DataSetType.ML_CLF_SPARSE)||(dataSetType == DataSetType.ML_CLF_SEQ_SPARSE));
         if (!legalArg){
@@ -175,6 +182,10 @@ public class TRECFormat {
 
 
     public static MultiLabelClfDataSet loadMultiLabelClfDataSetAutoSparseRandom(File trecFile) throws IOException, ClassNotFoundException {
+        // a single binary data set file is opened memory-mapped, see BinaryFormat
+        if (BinaryFormat.isBinaryFormat(trecFile)){
+            return BinaryFormat.loadMultiLabelClfDataSet(trecFile);
+        }
         boolean dense = isDense(trecFile);
         if (dense){
             return loadMultiLabelClfDataSet(trecFile, DataSetType.ML_CLF_DENSE,true);
@@ -184,6 +195,10 @@ public class TRECFormat {
     }
 
     public static MultiLabelClfDataSet loadMultiLabelClfDataSetAutoSparseSequential(File trecFile) throws IOException, ClassNotFoundException {
+        // a single binary data set file is opened memory-mapped, see BinaryFormat
+        if (BinaryFormat.isBinaryFormat(trecFile)){
+            return BinaryFormat.loadMultiLabelClfDataSet(trecFile);
+        }
         boolean dense = isDense(trecFile);
         if (dense){
             return loadMultiLabelClfDataSet(trecFile, DataSetType.ML_CLF_DENSE,true);
@@ -335,71 +350,25 @@ public class TRECFormat {
 
     }
 
+    /**
+     * the matrix file is parsed in parallel, see SparseTextParser
+     */
     private static void fillClfDataSet(ClfDataSet dataSet, File trecFile) throws IOException {
         File matrixFile = new File(trecFile, TREC_MATRIX_FILE_NAME);
-        try (BufferedReader br = new BufferedReader(new FileReader(matrixFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                String[] lineSplit = line.split("\\s+");
-                int label = Integer.parseInt(lineSplit[0]);
-                dataSet.setLabel(dataIndex,label);
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0]);
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
-            }
+        SparseTextParser.Rows rows = new SparseTextParser(SparseTextParser.Syntax.SVM).setIntegerLabels(true).parse(matrixFile);
+        rows.fillFeatures(dataSet);
+        for (int dataIndex=0;dataIndex<rows.getNumRows();dataIndex++){
+            dataSet.setLabel(dataIndex,(int)rows.getLabel(dataIndex));
         }
     }
 
     private static void fillMultiLabelClfDataSet(MultiLabelClfDataSet dataSet, File trecFile) throws IOException {
         File matrixFile = new File(trecFile, TREC_MATRIX_FILE_NAME);
-        try (BufferedReader br = new BufferedReader(new FileReader(matrixFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                String[] lineSplit = line.split("\\s+");
-                // the line is not just a space
-                if (lineSplit.length>=1){
-                    String multiLabelString = null;
-                    try {
-                        multiLabelString = lineSplit[0];
-                    } catch (Exception e) {
-                        System.out.println("load data error happens");
-                        System.out.println("line number: " + dataIndex);
-                        System.out.println("line: " + line);
-                    }
-                    String[] multiLabelSplit = multiLabelString.split(Pattern.quote(","));
-                    for (String label: multiLabelSplit){
-                        if (label.equals("")) {
-                            continue;
-                        }
-                        dataSet.addLabel(dataIndex,Integer.parseInt(label));
-                    }
-                }
-
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0]);
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
+        SparseTextParser.Rows rows = new SparseTextParser(SparseTextParser.Syntax.SVM).setIntegerLabels(true).parse(matrixFile);
+        rows.fillFeatures(dataSet);
+        for (int dataIndex=0;dataIndex<rows.getNumRows();dataIndex++){
+            for (int l=0;l<rows.getNumLabels(dataIndex);l++){
+                dataSet.addLabel(dataIndex,(int)rows.getLabel(dataIndex,l));
             }
         }
     }
@@ -407,27 +376,10 @@ public class TRECFormat {
 
     private static void fillRegDataSet(RegDataSet dataSet, File trecFile) throws IOException {
         File matrixFile = new File(trecFile, TREC_MATRIX_FILE_NAME);
-        try (BufferedReader br = new BufferedReader(new FileReader(matrixFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                String[] lineSplit = line.split("\\s+");
-                double label = Double.parseDouble(lineSplit[0]);
-                dataSet.setLabel(dataIndex,label);
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0]);
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
-            }
+        SparseTextParser.Rows rows = new SparseTextParser(SparseTextParser.Syntax.SVM).parse(matrixFile);
+        rows.fillFeatures(dataSet);
+        for (int dataIndex=0;dataIndex<rows.getNumRows();dataIndex++){
+            dataSet.setLabel(dataIndex,rows.getLabel(dataIndex));
         }
     }
 
@@ -7,14 +7,19 @@ import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import edu.neu.ccs.pyramid.esplugins.PhraseCountQueryBuilder;
 import org.apache.commons.lang3.time.StopWatch;
@@ -29,6 +34,7 @@ import org.elasticsearch.action.admin.indices.analyze.AnalyzeResponse;
 import org.elasticsearch.action.admin.indices.mapping.get.GetFieldMappingsResponse;
 import org.elasticsearch.action.admin.indices.mapping.get.GetMappingsResponse;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.termvectors.TermVectorsResponse;
 import org.elasticsearch.client.Client;
@@ -37,6 +43,7 @@ import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.common.lucene.search.function.CombineFunction;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.*;
 import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
 import org.elasticsearch.index.query.functionscore.ScriptScoreFunctionBuilder;
@@ -44,12 +51,14 @@ import org.elasticsearch.node.Node;
 import org.elasticsearch.script.Script;
 //import org.elasticsearch.script.ScriptService.ScriptType;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.slice.SliceBuilder;
 import org.elasticsearch.transport.client.PreBuiltTransportClient;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 
+import edu.neu.ccs.pyramid.dataset.IdTranslator;
 import edu.neu.ccs.pyramid.feature.Ngram;
 import edu.neu.ccs.pyramid.feature.SpanNotNgram;
 
@@ -57,7 +66,7 @@ import edu.neu.ccs.pyramid.feature.SpanNotNgram;
 /**
  * Created by chengli on 8/20/14.
  */
-public class ESIndex implements AutoCloseable{
+public class ESIndex implements AutoCloseable, TermVectorSource{
     public static final String STRING_MISSING_VALUE = "MISSING";
 
     private static final Logger logger = LogManager.getLogger();
@@ -76,6 +85,13 @@ public class ESIndex implements AutoCloseable{
      */
     LoadingCache<String,Map<Integer,String>> termVectorCache;
 
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+    /**
+     * number of parallel slices and page size of bulk field fetches
+     */
+    int scrollSlices;
+    int scrollSize;
+
 
     public int getNumDocs() {
         return numDocs;
@@ -507,6 +523,129 @@ public class ESIndex implements AutoCloseable{
         return Float.parseFloat(object.toString());
     }
 
+    /**
+     * values of numeric fields for all documents of the translator
+     * documents are read from the source in bulk, instead of one request per document and field:
+     * the whole index with parallel sliced scrolls, or only the translator's documents by ids queries
+     * @param fields
+     * @param idTranslator only its documents are read
+     * @return for each field, values aligned to the int ids of the translator; NaN for missing values
+     */
+    public Map<String, float[]> getFloatFields(String[] fields, IdTranslator idTranslator){
+        Map<String, float[]> values = new HashMap<>();
+        for (String field: fields){
+            float[] column = new float[idTranslator.numData()];
+            Arrays.fill(column, Float.NaN);
+            values.put(field, column);
+        }
+        scrollSources(fields, idTranslator, (source, intId) -> {
+            for (String field: fields){
+                Object object = source.get(field);
+                if (object!=null){
+                    values.get(field)[intId] = Float.parseFloat(object.toString());
+                }
+            }
+        });
+        return values;
+    }
+
+    /**
+     * same as getFloatFields, for integer fields
+     * @param missingValue value for documents without the field
+     */
+    public Map<String, int[]> getIntFields(String[] fields, IdTranslator idTranslator, int missingValue){
+        Map<String, int[]> values = new HashMap<>();
+        for (String field: fields){
+            int[] column = new int[idTranslator.numData()];
+            Arrays.fill(column, missingValue);
+            values.put(field, column);
+        }
+        scrollSources(fields, idTranslator, (source, intId) -> {
+            for (String field: fields){
+                Object object = source.get(field);
+                if (object!=null){
+                    values.get(field)[intId] = Integer.parseInt(object.toString());
+                }
+            }
+        });
+        return values;
+    }
+
+    /**
+     * read the sources of the documents of the translator with source filtering
+     * if the translator covers the whole index, the index is scrolled, one slice per thread;
+     * otherwise only its documents are fetched, by ids queries of scrollSize ids each
+     * each document is passed once to the consumer, from any thread
+     */
+    private void scrollSources(String[] fields, IdTranslator idTranslator, ObjIntConsumer<Map<String, Object>> consumer){
+        Consumer<SearchHit> hitConsumer = hit -> {
+            if (idTranslator.containsExtId(hit.getId())){
+                Map<String, Object> source = hit.getSource();
+                consumer.accept(source==null ? new HashMap<>() : source, idTranslator.toIntId(hit.getId()));
+            }
+        };
+        if (idTranslator.numData()>=numDocs){
+            scroll(QueryBuilders.matchAllQuery(), fields, hitConsumer);
+            return;
+        }
+        String[] ids = idTranslator.getAllExtIds();
+        int numBatches = (ids.length+scrollSize-1)/scrollSize;
+        IntStream.range(0, numBatches).parallel().forEach(batch -> {
+            String[] batchIds = Arrays.copyOfRange(ids, batch*scrollSize, Math.min((batch+1)*scrollSize, ids.length));
+            SearchResponse response = client.prepareSearch(indexName).setTypes(documentType)
+                    .setSize(batchIds.length)
+                    .setQuery(QueryBuilders.idsQuery(documentType).addIds(batchIds))
+                    .setFetchSource(fields, null)
+                    .execute().actionGet();
+            for (SearchHit hit: response.getHits().getHits()){
+                hitConsumer.accept(hit);
+            }
+        });
+    }
+
+    /**
+     * ids of all documents matching the filter, read with parallel sliced scrolls
+     * @param filterQuery query in json, as the docFilter used when loading features
+     */
+    public Set<String> filterDocs(String filterQuery){
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        scroll(QueryBuilders.boolQuery().filter(QueryBuilders.wrapperQuery(filterQuery)), null,
+                hit -> ids.add(hit.getId()));
+        return ids;
+    }
+
+    /**
+     * scroll over the documents matching the query, one slice per thread
+     * @param fields source fields to fetch; null for ids only
+     */
+    private void scroll(QueryBuilder query, String[] fields, Consumer<SearchHit> consumer){
+        int numSlices = scrollSlices;
+        IntStream.range(0, numSlices).parallel().forEach(slice -> {
+            SearchRequestBuilder request = client.prepareSearch(indexName).setTypes(documentType)
+                    .setScroll(SCROLL_KEEP_ALIVE).setSize(scrollSize)
+                    .setQuery(query);
+            if (fields==null){
+                request.setFetchSource(false);
+            } else {
+                request.setFetchSource(fields, null);
+            }
+            // slicing requires at least 2 slices
+            if (numSlices>1){
+                request.slice(new SliceBuilder(slice, numSlices));
+            }
+            SearchResponse response = request.execute().actionGet();
+            String scrollId = response.getScrollId();
+            while (response.getHits().getHits().length>0){
+                for (SearchHit hit: response.getHits().getHits()){
+                    consumer.accept(hit);
+                }
+                response = client.prepareSearchScroll(scrollId).setScroll(SCROLL_KEEP_ALIVE).execute().actionGet();
+                scrollId = response.getScrollId();
+            }
+            client.prepareClearScroll().addScrollId(scrollId).execute().actionGet();
+        });
+    }
+
     /**
      * return all documents within ids that miss the field
      * @param field
@@ -630,8 +769,15 @@ public class ESIndex implements AutoCloseable{
                 .setSelectedFields(field).
                         execute().actionGet();
 
+        return termVector(response.getFields().terms(field));
+    }
+
+    /**
+     * position to term map of the term vector of a single document
+     * @param terms null if the document has no term in the field
+     */
+    static Map<Integer,String> termVector(Terms terms) throws IOException {
         Map<Integer,String> map = new HashMap<>();
-        Terms terms = response.getFields().terms(field);
         if (terms==null){
             return map;
         }
@@ -1470,6 +1616,8 @@ public class ESIndex implements AutoCloseable{
         private List<String> hosts = new ArrayList<>();
         private List<Integer> ports = new ArrayList<>();
         private int termVectorCacheSize = 10000;
+        private int scrollSlices = 4;
+        private int scrollSize = 1000;
 
 
 
@@ -1517,6 +1665,23 @@ public class ESIndex implements AutoCloseable{
         }
 
 
+        /**
+         * number of slices scrolled in parallel by bulk field fetches, such as getFloatFields()
+         */
+        public Builder setScrollSlices(int scrollSlices) {
+            this.scrollSlices = scrollSlices;
+            return this;
+        }
+
+        /**
+         * number of documents per scroll page of each slice
+         */
+        public Builder setScrollSize(int scrollSize) {
+            this.scrollSize = scrollSize;
+            return this;
+        }
+
+
         public ESIndex build() throws Exception {
             boolean legal = (clientType.equals("node"))||(clientType.equals("transport"));
             if (!legal){
@@ -1529,6 +1694,8 @@ public class ESIndex implements AutoCloseable{
             esIndex.clientType = clientType;
             esIndex.clusterName = clusterName;
             esIndex.bodyField = bodyField;
+            esIndex.scrollSlices = scrollSlices;
+            esIndex.scrollSize = scrollSize;
 
             if (clientType.equals("node")){
                 /**
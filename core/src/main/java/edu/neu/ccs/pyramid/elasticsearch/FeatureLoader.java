@@ -2,28 +2,57 @@ package edu.neu.ccs.pyramid.elasticsearch;
 
 import edu.neu.ccs.pyramid.dataset.*;
 import edu.neu.ccs.pyramid.feature.*;
+import edu.neu.ccs.pyramid.feature_extraction.NgramMatcher;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.map.OpenIntIntHashMap;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.search.SearchHit;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 /**
  * Created by chengli on 3/5/15.
  */
 public class FeatureLoader {
+    private static final Logger logger = LogManager.getLogger();
 
 
     public static void loadFeatures(ESIndex index, DataSet dataSet, FeatureList features,
                                     IdTranslator idTranslator, MatchScoreType matchScoreType, String docFilter,
                                     Map<String, float[]> fieldLength){
+        loadFeatures(index, dataSet, features.getAll(), idTranslator, matchScoreType, docFilter, fieldLength);
+    }
+
+    private static void loadFeatures(ESIndex index, DataSet dataSet, List<Feature> features,
+                                     IdTranslator idTranslator, MatchScoreType matchScoreType, String docFilter,
+                                     Map<String, float[]> fieldLength){
 //        ProgressBar progressBar = new ProgressBar(features.size());
-        IntStream.range(0,features.size())
+        // numerical features are fetched together in one pass over the index
+        List<Feature> numericalFeatures = new ArrayList<>();
+        List<Feature> otherFeatures = new ArrayList<>();
+        for (Feature feature: features){
+            if (feature instanceof CategoricalFeature || feature instanceof Ngram || feature instanceof CodeDescription){
+                otherFeatures.add(feature);
+            } else {
+                numericalFeatures.add(feature);
+            }
+        }
+        loadNumericalFeatures(index, dataSet, numericalFeatures, idTranslator);
+        IntStream.range(0,otherFeatures.size())
         		.parallel()
                 .forEach(i-> {
-                    Feature feature = features.get(i);
+                    Feature feature = otherFeatures.get(i);
                     if (feature instanceof CategoricalFeature){
                         loadCategoricalFeature(index,dataSet,(CategoricalFeature)feature,idTranslator, docFilter);
                     } else if (feature instanceof Ngram){
@@ -31,8 +60,6 @@ public class FeatureLoader {
                     } else if (feature instanceof CodeDescription) {
                         loadCodeDesFeatureTfidf(index, dataSet, feature, idTranslator, docFilter);
 //                        loadCodeDesFeature(index, dataSet, feature, idTranslator, docFilter);
-                    } else {
-                        loadNumericalFeature(index,dataSet,feature,idTranslator);
                     }
 
 //                    progressBar.incrementAndPrint();
@@ -41,6 +68,134 @@ public class FeatureLoader {
 //        System.out.println();
     }
 
+    /**
+     * same as above, except that ngram features are matched locally against the term vectors of the source
+     * in a single pass over the documents; ngrams that cannot be matched locally
+     * (unordered ngrams, scores from ES_ORIGINAL, or fields missing from a snapshot) still use one query per feature
+     * the docFilter is resolved to document ids once, so local matches are restricted to the same documents
+     * @param termVectorSource usually a TermVectorSnapshot
+     */
+    public static void loadFeatures(ESIndex index, TermVectorSource termVectorSource, DataSet dataSet, FeatureList features,
+                                    IdTranslator idTranslator, MatchScoreType matchScoreType, String docFilter,
+                                    Map<String, float[]> fieldLength){
+        List<Ngram> localNgrams = new ArrayList<>();
+        List<Feature> remoteFeatures = new ArrayList<>();
+        for (Feature feature: features.getAll()){
+            if (feature instanceof Ngram && matchScoreType!=MatchScoreType.ES_ORIGINAL
+                    && NgramMatcher.supports((Ngram)feature)
+                    && hasField(termVectorSource, ((Ngram)feature).getField())){
+                localNgrams.add((Ngram)feature);
+            } else {
+                remoteFeatures.add(feature);
+            }
+        }
+        Set<String> filteredDocs = null;
+        if (docFilter!=null && !docFilter.isEmpty() && !localNgrams.isEmpty()){
+            filteredDocs = index.filterDocs(docFilter);
+        }
+        loadNgramFeatures(termVectorSource, dataSet, localNgrams, idTranslator, filteredDocs, matchScoreType, fieldLength);
+        loadFeatures(index, dataSet, remoteFeatures, idTranslator, matchScoreType, docFilter, fieldLength);
+    }
+
+    private static boolean hasField(TermVectorSource termVectorSource, String field){
+        return !(termVectorSource instanceof TermVectorSnapshot) || ((TermVectorSnapshot) termVectorSource).containsField(field);
+    }
+
+    public static void loadNgramFeatures(TermVectorSource termVectorSource, DataSet dataSet, List<Ngram> ngrams,
+                                         IdTranslator idTranslator, MatchScoreType matchScoreType,
+                                         Map<String, float[]> fieldLength){
+        loadNgramFeatures(termVectorSource, dataSet, ngrams, idTranslator, null, matchScoreType, fieldLength);
+    }
+
+    /**
+     * match all ngrams of a field against each document in one pass, instead of one query per ngram
+     * documents are processed in parallel
+     * documents missing from the source are skipped and reported; their features stay 0
+     * @param filteredDocs only these documents get features; null for all documents
+     * @param matchScoreType BINARY, FREQUENCY or TFIFL
+     */
+    public static void loadNgramFeatures(TermVectorSource termVectorSource, DataSet dataSet, List<Ngram> ngrams,
+                                         IdTranslator idTranslator, Set<String> filteredDocs,
+                                         MatchScoreType matchScoreType, Map<String, float[]> fieldLength){
+        if (matchScoreType==MatchScoreType.ES_ORIGINAL){
+            throw new IllegalArgumentException("ES_ORIGINAL scores can only be computed by the index");
+        }
+        Map<String, List<Ngram>> ngramsByField = new LinkedHashMap<>();
+        for (Ngram ngram: ngrams){
+            ngramsByField.computeIfAbsent(ngram.getField(), field -> new ArrayList<>()).add(ngram);
+        }
+        for (String field: ngramsByField.keySet()){
+            if (!hasField(termVectorSource, field)){
+                throw new IllegalArgumentException("field "+field+" is not in the term vector snapshot");
+            }
+        }
+        for (Map.Entry<String, List<Ngram>> entry: ngramsByField.entrySet()){
+            String field = entry.getKey();
+            List<Ngram> fieldNgrams = entry.getValue();
+            NgramMatcher matcher = new NgramMatcher(fieldNgrams);
+            // snapshot term ids are translated once instead of looking up every token
+            int[] snapshotToMatcher = null;
+            if (termVectorSource instanceof TermVectorSnapshot){
+                TermVectorSnapshot snapshot = (TermVectorSnapshot) termVectorSource;
+                snapshotToMatcher = new int[snapshot.getNumTerms()];
+                for (int t=0;t<snapshotToMatcher.length;t++){
+                    snapshotToMatcher[t] = matcher.getTermId(snapshot.getTerm(t));
+                }
+            }
+            int[] translation = snapshotToMatcher;
+            AtomicInteger numMissingDocs = new AtomicInteger();
+            IntStream.range(0, idTranslator.numData()).parallel().forEach(algorithmId -> {
+                String id = idTranslator.toExtId(algorithmId);
+                if (filteredDocs!=null && !filteredDocs.contains(id)){
+                    return;
+                }
+                int[] tokens;
+                if (translation!=null){
+                    TermVectorSnapshot snapshot = (TermVectorSnapshot) termVectorSource;
+                    if (!snapshot.containsDoc(id)){
+                        numMissingDocs.incrementAndGet();
+                        return;
+                    }
+                    tokens = snapshot.getTokenIds(field, id);
+                    for (int p=0;p<tokens.length;p++){
+                        if (tokens[p]>=0){
+                            tokens[p] = translation[tokens[p]];
+                        }
+                    }
+                } else {
+                    Map<Integer,String> termVector = termVectorSource.getTermVectorFromIndex(field, id);
+                    if (termVector==null){
+                        numMissingDocs.incrementAndGet();
+                        return;
+                    }
+                    tokens = matcher.toTokens(termVector);
+                }
+                OpenIntIntHashMap counts = matcher.match(tokens);
+                counts.forEachPair((ngramIndex, count) -> {
+                    int featureIndex = fieldNgrams.get(ngramIndex).getIndex();
+                    double value;
+                    switch (matchScoreType){
+                        case BINARY:
+                            value = 1;
+                            break;
+                        case TFIFL:
+                            value = count/fieldLength.get(field)[algorithmId];
+                            break;
+                        default:
+                            value = count;
+                            break;
+                    }
+                    dataSet.setFeatureValue(algorithmId, featureIndex, value);
+                    return true;
+                });
+            });
+            if (numMissingDocs.get()>0){
+                logger.warn(numMissingDocs.get()+" documents have no term vectors of field "+field
+                        +" in the source; their ngram features are left as 0");
+            }
+        }
+    }
+
     public static void loadCategoricalFeature(ESIndex index, DataSet dataSet, CategoricalFeature feature,
                                               IdTranslator idTranslator, String docFilter){
 //        String[] dataIndexIds = idTranslator.getAllExtIds();
@@ -86,6 +241,42 @@ public class FeatureLoader {
     }
 
 
+    /**
+     * scores of one ngram as a sparse column over all data points, without building a data set
+     * @return vector of size idTranslator.numData()
+     */
+    public static Vector loadNgramFeature(ESIndex index, Ngram feature,
+                                          IdTranslator idTranslator, MatchScoreType matchScoreType, String docFilter,
+                                          Map<String, float[]> fieldLength){
+        SearchResponse response;
+        if (matchScoreType==MatchScoreType.FREQUENCY || matchScoreType==MatchScoreType.TFIFL){
+            response = index.spanNearFrequency(feature, docFilter, idTranslator.numData());
+        } else {
+            response = index.spanNear(feature, docFilter, idTranslator.numData());
+        }
+        SearchHit[] hits = response.getHits().getHits();
+        Vector vector = new RandomAccessSparseVector(idTranslator.numData());
+        for (SearchHit hit: hits){
+            String indexId = hit.getId();
+            float score = hit.getScore();
+            int algorithmId = idTranslator.toIntId(indexId);
+            switch (matchScoreType){
+                case BINARY:
+                    if (score>0){
+                        score = 1;
+                    }
+                    break;
+                case TFIFL:
+                    score = score/fieldLength.get(feature.getField())[algorithmId];
+                    break;
+                default:
+                    break;
+            }
+            vector.set(algorithmId, score);
+        }
+        return vector;
+    }
+
     private static void loadNgramFeatureOriginal(ESIndex index, DataSet dataSet, Ngram feature,
                                                  IdTranslator idTranslator, String docFilter){
         int featureIndex = feature.getIndex();
@@ -182,17 +373,29 @@ public class FeatureLoader {
 
     public static void loadNumericalFeature(ESIndex index, DataSet dataSet, Feature feature,
                                               IdTranslator idTranslator){
-        String[] dataIndexIds = idTranslator.getAllExtIds();
-        String variableName = feature.getName();
-        int featureIndex = feature.getIndex();
-        String source = feature.getSettings().get("source");
-        if (source.equals("field")){
-            Arrays.stream(dataIndexIds).forEach(id -> {
-                int algorithmId = idTranslator.toIntId(id);
-                //may return NaN
-                double value = index.getFloatField(id,variableName);
-                dataSet.setFeatureValue(algorithmId, featureIndex, value);
-            });
+        loadNumericalFeatures(index, dataSet, Arrays.asList(feature), idTranslator);
+    }
+
+    /**
+     * values of all numerical features are fetched in one bulk request per field set, see ESIndex.getFloatFields()
+     */
+    public static void loadNumericalFeatures(ESIndex index, DataSet dataSet, List<Feature> features,
+                                             IdTranslator idTranslator){
+        List<Feature> fieldFeatures = features.stream()
+                .filter(feature -> feature.getSettings().get("source").equals("field"))
+                .collect(Collectors.toList());
+        if (fieldFeatures.isEmpty()){
+            return;
+        }
+        String[] fields = fieldFeatures.stream().map(Feature::getName).distinct().toArray(String[]::new);
+        Map<String, float[]> values = index.getFloatFields(fields, idTranslator);
+        for (Feature feature: fieldFeatures){
+            int featureIndex = feature.getIndex();
+            float[] column = values.get(feature.getName());
+            for (int algorithmId=0;algorithmId<column.length;algorithmId++){
+                //may be NaN
+                dataSet.setFeatureValue(algorithmId, featureIndex, column[algorithmId]);
+            }
         }
     }
 
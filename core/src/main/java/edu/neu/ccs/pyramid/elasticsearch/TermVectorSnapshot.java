@@ -0,0 +1,427 @@
+package edu.neu.ccs.pyramid.elasticsearch;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.util.Bits;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * local snapshot of the positional term vectors of an index
+ * terms are replaced by ids from a term dictionary, and the token ids of each document and field
+ * are stored in position order in a memory-mapped file, so term vectors are read at memory speed
+ * instead of being fetched one document at a time from the cluster
+ * positions without terms (e.g. removed stop words) are stored as -1
+ *
+ * the snapshot is written once by export(), from an ESIndex or from a local Lucene index
+ * with term vectors (positions), and opened by load()
+ *
+ * layout, little-endian:
+ * header: magic, version, numDocs, numFields, numTerms, numTokens (long)
+ * tokens: token ids of (doc 0, field 0), (doc 0, field 1), ..., (doc 1, field 0), ...
+ * offsets: numDocs*numFields+1 longs; tokens of slot s are at positions offsets[s] ... offsets[s+1]-1
+ * dictionaries: field names, doc ids, terms
+ */
+public class TermVectorSnapshot implements TermVectorSource {
+    private static final Logger logger = LogManager.getLogger();
+    private static final int MAGIC = 0x50595456;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 5*4+8;
+    /**
+     * a mapped buffer holds at most 2GB, so tokens are mapped in segments of 2^SEGMENT_BITS ints
+     */
+    private static final int SEGMENT_BITS = 28;
+    private static final int BATCH_SIZE = 1000;
+
+    private final int numDocs;
+    private final String[] fields;
+    private final Map<String,Integer> fieldIndices;
+    private final String[] docIds;
+    private final Map<String,Integer> docIndices;
+    private final String[] terms;
+    private final Map<String,Integer> termIds;
+    private final IntBuffer[] tokenSegments;
+    private final LongBuffer offsets;
+
+    private TermVectorSnapshot(String[] fields, String[] docIds, String[] terms,
+                               IntBuffer[] tokenSegments, LongBuffer offsets) {
+        this.numDocs = docIds.length;
+        this.fields = fields;
+        this.fieldIndices = indexOf(fields);
+        this.docIds = docIds;
+        this.docIndices = indexOf(docIds);
+        this.terms = terms;
+        this.termIds = indexOf(terms);
+        this.tokenSegments = tokenSegments;
+        this.offsets = offsets;
+    }
+
+    public int getNumDocs() {
+        return numDocs;
+    }
+
+    public List<String> getAllDocs(){
+        return Collections.unmodifiableList(Arrays.asList(docIds));
+    }
+
+    public List<String> getFields(){
+        return Collections.unmodifiableList(Arrays.asList(fields));
+    }
+
+    public boolean containsDoc(String id){
+        return docIndices.containsKey(id);
+    }
+
+    public boolean containsField(String field){
+        return fieldIndices.containsKey(field);
+    }
+
+    public int getNumTerms(){
+        return terms.length;
+    }
+
+    public String getTerm(int termId){
+        return terms[termId];
+    }
+
+    /**
+     * @return -1 if the term does not occur in the snapshot
+     */
+    public int getTermId(String term){
+        return termIds.getOrDefault(term, -1);
+    }
+
+    /**
+     * @param field
+     * @param id document id
+     * @return term id at each position, -1 for positions without terms
+     */
+    public int[] getTokenIds(String field, String id){
+        int slot = slot(field, id);
+        long start = offsets.get(slot);
+        int length = (int)(offsets.get(slot+1)-start);
+        int[] tokenIds = new int[length];
+        for (int p=0;p<length;p++){
+            tokenIds[p] = token(start+p);
+        }
+        return tokenIds;
+    }
+
+    @Override
+    public Map<Integer,String> getTermVectorFromIndex(String field, String id){
+        int[] tokenIds = getTokenIds(field, id);
+        Map<Integer,String> map = new HashMap<>();
+        for (int position=0;position<tokenIds.length;position++){
+            if (tokenIds[position]>=0){
+                map.put(position, terms[tokenIds[position]]);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public List<String> getTermSequence(String field, String id){
+        int[] tokenIds = getTokenIds(field, id);
+        List<String> sequence = new ArrayList<>(tokenIds.length);
+        for (int tokenId: tokenIds){
+            if (tokenId>=0){
+                sequence.add(terms[tokenId]);
+            }
+        }
+        return sequence;
+    }
+
+    private int slot(String field, String id){
+        Integer fieldIndex = fieldIndices.get(field);
+        if (fieldIndex==null){
+            throw new IllegalArgumentException("field "+field+" is not in the snapshot");
+        }
+        Integer docIndex = docIndices.get(id);
+        if (docIndex==null){
+            throw new IllegalArgumentException("document "+id+" is not in the snapshot");
+        }
+        return docIndex*fields.length+fieldIndex;
+    }
+
+    private int token(long position){
+        return tokenSegments[(int)(position>>>SEGMENT_BITS)].get((int)(position&((1<<SEGMENT_BITS)-1)));
+    }
+
+    private static Map<String,Integer> indexOf(String[] values){
+        Map<String,Integer> map = new HashMap<>(values.length*2);
+        for (int i=0;i<values.length;i++){
+            map.put(values[i], i);
+        }
+        return map;
+    }
+
+    /**
+     * fetch the term vectors of the given documents and fields from the cluster and write them to a snapshot
+     * documents are fetched in parallel, in batches
+     */
+    public static void export(ESIndex index, String[] fields, String[] ids, File snapshotFile) throws IOException{
+        try (SnapshotWriter writer = new SnapshotWriter(snapshotFile, fields)){
+            for (int start=0;start<ids.length;start+=BATCH_SIZE){
+                String[] batch = Arrays.copyOfRange(ids, start, Math.min(start+BATCH_SIZE, ids.length));
+                List<List<Map<Integer,String>>> termVectors = Arrays.stream(batch).parallel()
+                        .map(id -> {
+                            List<Map<Integer,String>> doc = new ArrayList<>(fields.length);
+                            for (String field: fields){
+                                doc.add(index.getTermVectorFromIndex(field, id));
+                            }
+                            return doc;
+                        }).collect(Collectors.toList());
+                for (int i=0;i<batch.length;i++){
+                    writer.addDoc(batch[i], termVectors.get(i));
+                }
+                logger.info("exported term vectors of "+(start+batch.length)+" documents");
+            }
+            writer.finish();
+        }
+    }
+
+    public static void export(ESIndex index, String[] fields, File snapshotFile) throws IOException{
+        List<String> ids = index.getAllDocs();
+        export(index, fields, ids.toArray(new String[ids.size()]), snapshotFile);
+    }
+
+    /**
+     * write the term vectors of all live documents of a local Lucene index to a snapshot
+     * the fields should be indexed with term vectors and positions
+     * @param idField stored field holding the document id
+     */
+    public static void export(IndexReader reader, String idField, String[] fields, File snapshotFile) throws IOException{
+        Bits liveDocs = MultiFields.getLiveDocs(reader);
+        try (SnapshotWriter writer = new SnapshotWriter(snapshotFile, fields)){
+            for (int docId=0;docId<reader.maxDoc();docId++){
+                if (liveDocs!=null && !liveDocs.get(docId)){
+                    continue;
+                }
+                String id = reader.document(docId).get(idField);
+                List<Map<Integer,String>> doc = new ArrayList<>(fields.length);
+                for (String field: fields){
+                    doc.add(ESIndex.termVector(reader.getTermVector(docId, field)));
+                }
+                writer.addDoc(id, doc);
+            }
+            writer.finish();
+        }
+    }
+
+    public static TermVectorSnapshot load(String snapshotFile) throws IOException{
+        return load(new File(snapshotFile));
+    }
+
+    public static TermVectorSnapshot load(File snapshotFile) throws IOException{
+        try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)){
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt()!=MAGIC){
+                throw new IOException(snapshotFile+" is not a term vector snapshot");
+            }
+            int version = header.getInt();
+            if (version!=VERSION){
+                throw new IOException("unsupported term vector snapshot version "+version);
+            }
+            int numDocs = header.getInt();
+            int numFields = header.getInt();
+            int numTerms = header.getInt();
+            long numTokens = header.getLong();
+
+            int numSegments = (int)((numTokens+(1L<<SEGMENT_BITS)-1)>>>SEGMENT_BITS);
+            IntBuffer[] tokenSegments = new IntBuffer[numSegments];
+            for (int s=0;s<numSegments;s++){
+                long first = (long)s<<SEGMENT_BITS;
+                long count = Math.min(1L<<SEGMENT_BITS, numTokens-first);
+                tokenSegments[s] = map(channel, HEADER_SIZE+4*first, 4*count).asIntBuffer();
+            }
+            long position = HEADER_SIZE+4*numTokens;
+            long numSlots = (long)numDocs*numFields+1;
+            LongBuffer offsets = map(channel, position, 8*numSlots).asLongBuffer();
+            position += 8*numSlots;
+
+            ByteBuffer tail = map(channel, position, channel.size()-position);
+            String[] fields = readStrings(tail, numFields);
+            String[] docIds = readStrings(tail, numDocs);
+            String[] terms = readStrings(tail, numTerms);
+            return new TermVectorSnapshot(fields, docIds, terms, tokenSegments, offsets);
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException{
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String[] readStrings(ByteBuffer buffer, int size){
+        String[] strings = new String[size];
+        for (int i=0;i<size;i++){
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    /**
+     * tokens are streamed to a temporary file next to the snapshot as documents are added;
+     * offsets and dictionaries are kept on heap and written by finish(), followed by the header,
+     * then the temporary file replaces the snapshot
+     * closing without finish() deletes the temporary file, so a failed export never leaves a snapshot behind
+     */
+    private static class SnapshotWriter implements Closeable {
+        private File file;
+        private File tempFile;
+        private boolean finished = false;
+        private FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(1<<20).order(ByteOrder.LITTLE_ENDIAN);
+        private String[] fields;
+        private List<String> docIds = new ArrayList<>();
+        private Map<String,Integer> termIds = new HashMap<>();
+        private List<String> terms = new ArrayList<>();
+        private long[] offsets = new long[1];
+        private int numSlots = 0;
+        private long numTokens = 0;
+
+        SnapshotWriter(File file, String[] fields) throws IOException {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.exists()){
+                parent.mkdirs();
+            }
+            this.file = file;
+            this.tempFile = new File(parent, file.getName()+".tmp");
+            this.channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.fields = fields;
+            // the header is written last
+            channel.position(HEADER_SIZE);
+        }
+
+        /**
+         * @param termVectors one term vector per field
+         */
+        void addDoc(String id, List<Map<Integer,String>> termVectors) throws IOException{
+            docIds.add(id);
+            for (Map<Integer,String> termVector: termVectors){
+                if (termVector==null){
+                    throw new IOException("the term vectors of document "+id+" could not be fetched");
+                }
+                int length = 0;
+                for (int position: termVector.keySet()){
+                    length = Math.max(length, position+1);
+                }
+                for (int position=0;position<length;position++){
+                    String term = termVector.get(position);
+                    writeInt(term==null ? -1 : termId(term));
+                }
+                numTokens += length;
+                if (numSlots+1==offsets.length){
+                    offsets = Arrays.copyOf(offsets, offsets.length*2);
+                }
+                numSlots += 1;
+                offsets[numSlots] = numTokens;
+            }
+        }
+
+        private int termId(String term){
+            Integer termId = termIds.get(term);
+            if (termId==null){
+                termId = terms.size();
+                termIds.put(term, termId);
+                terms.add(term);
+            }
+            return termId;
+        }
+
+        private void writeInt(int value) throws IOException{
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        private void writeLong(long value) throws IOException{
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        private void writeString(String value) throws IOException{
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            int position = 0;
+            while (position<bytes.length){
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length-position);
+                buffer.put(bytes, position, length);
+                position += length;
+            }
+        }
+
+        private void ensure(int numBytes) throws IOException{
+            if (buffer.remaining()<numBytes){
+                flush();
+            }
+        }
+
+        private void flush() throws IOException{
+            buffer.flip();
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * complete the snapshot and move it into place
+         */
+        void finish() throws IOException{
+            try {
+                for (int s=0;s<=numSlots;s++){
+                    writeLong(offsets[s]);
+                }
+                for (String field: fields){
+                    writeString(field);
+                }
+                for (String id: docIds){
+                    writeString(id);
+                }
+                for (String term: terms){
+                    writeString(term);
+                }
+                flush();
+                channel.position(0);
+                writeInt(MAGIC);
+                writeInt(VERSION);
+                writeInt(docIds.size());
+                writeInt(fields.length);
+                writeInt(terms.size());
+                writeLong(numTokens);
+                flush();
+            } finally {
+                channel.close();
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            finished = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished){
+                channel.close();
+                Files.deleteIfExists(tempFile.toPath());
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package edu.neu.ccs.pyramid.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * positional term vectors of documents
+ * implemented by ESIndex (remote) and TermVectorSnapshot (local)
+ */
+public interface TermVectorSource {
+
+    /**
+     * @param field
+     * @param id document id
+     * @return term at each position; positions without terms (e.g. removed stop words) are absent
+     */
+    Map<Integer,String> getTermVectorFromIndex(String field, String id);
+
+    /**
+     * terms of a document in position order, gaps ignored
+     */
+    default List<String> getTermSequence(String field, String id){
+        Map<Integer,String> termVector = getTermVectorFromIndex(field, id);
+        List<Integer> positions = new ArrayList<>(termVector.keySet());
+        positions.sort(null);
+        List<String> sequence = new ArrayList<>(positions.size());
+        for (int position: positions){
+            sequence.add(termVector.get(position));
+        }
+        return sequence;
+    }
+}
@@ -0,0 +1,324 @@
+package edu.neu.ccs.pyramid.feature_extraction;
+
+import org.apache.mahout.math.list.IntArrayList;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * document frequencies of ngrams over token id sequences
+ * an ngram is a fixed-width array of term ids, stored inline in open-addressing tables, so no object is
+ * created per ngram; documents are split into chunks, each chunk is counted into its own table,
+ * and the tables are merged at the end
+ * each ngram is counted at most once per document
+ *
+ * with a sketch width, a count-min sketch of the document frequencies is built in a first pass,
+ * and the second pass only keeps ngrams whose estimated frequency reaches the minimum count;
+ * the sketch never underestimates, so the result is exact, while the tables only hold frequent candidates
+ * documents are read twice in this mode
+ */
+public class NgramCounter {
+    private static final int SKETCH_DEPTH = 4;
+
+    /**
+     * offsets of the terms of an ngram from its start position; all templates have length n
+     */
+    private final int[][] templates;
+    private final int n;
+    private int minCount = 1;
+    private int sketchWidth = 0;
+
+    /**
+     * @param templates position templates, e.g. {0,1} and {0,2} for bigrams with slop 1
+     */
+    public NgramCounter(int[][] templates) {
+        this.templates = templates;
+        this.n = templates[0].length;
+        for (int[] template: templates){
+            if (template.length!=n){
+                throw new IllegalArgumentException("all templates should have the same length");
+            }
+        }
+    }
+
+    public NgramCounter(List<List<Integer>> templates){
+        this(templates.stream().map(list -> list.stream().mapToInt(Integer::intValue).toArray())
+                .toArray(int[][]::new));
+    }
+
+    /**
+     * contiguous ngrams
+     */
+    public static NgramCounter contiguous(int n){
+        int[] template = new int[n];
+        for (int k=0;k<n;k++){
+            template[k] = k;
+        }
+        return new NgramCounter(new int[][]{template});
+    }
+
+    /**
+     * ngrams with lower document frequencies are dropped from the result
+     */
+    public NgramCounter setMinCount(int minCount) {
+        this.minCount = minCount;
+        return this;
+    }
+
+    /**
+     * number of counters per row of the count-min sketch, rounded up to a power of 2; 0 disables the sketch
+     * the sketch only pays off when minCount is well above 1
+     */
+    public NgramCounter setSketchWidth(int sketchWidth) {
+        this.sketchWidth = sketchWidth;
+        return this;
+    }
+
+    /**
+     * @param numDocs
+     * @param documents token ids of each document; negative ids, e.g. position gaps, are not part of any ngram
+     * @return ngrams with document frequency >= minCount
+     */
+    public Table count(int numDocs, IntFunction<int[]> documents){
+        int numChunks = Math.min(numDocs, 4*ForkJoinPool.getCommonPoolParallelism());
+        if (numChunks==0){
+            return new Table(n);
+        }
+        AtomicIntegerArray sketch = null;
+        int sketchMask = 0;
+        if (sketchWidth>0 && minCount>1){
+            int width = Integer.highestOneBit(Math.max(sketchWidth-1, 1))<<1;
+            sketch = new AtomicIntegerArray(SKETCH_DEPTH*width);
+            sketchMask = width-1;
+            AtomicIntegerArray finalSketch = sketch;
+            int finalMask = sketchMask;
+            IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+                Table docNgrams = new Table(n);
+                for (int doc=start(chunk, numChunks, numDocs);doc<start(chunk+1, numChunks, numDocs);doc++){
+                    collect(documents.apply(doc), docNgrams);
+                    for (int e=0;e<docNgrams.usedSlots.size();e++){
+                        long hash = docNgrams.hashes[docNgrams.usedSlots.get(e)];
+                        for (int row=0;row<SKETCH_DEPTH;row++){
+                            finalSketch.incrementAndGet(sketchIndex(hash, row, finalMask));
+                        }
+                    }
+                    docNgrams.clear();
+                }
+            });
+        }
+        AtomicIntegerArray finalSketch = sketch;
+        int finalMask = sketchMask;
+        Table merged = IntStream.range(0, numChunks).parallel().mapToObj(chunk -> {
+            Table table = new Table(n);
+            Table docNgrams = new Table(n);
+            for (int doc=start(chunk, numChunks, numDocs);doc<start(chunk+1, numChunks, numDocs);doc++){
+                collect(documents.apply(doc), docNgrams);
+                for (int e=0;e<docNgrams.usedSlots.size();e++){
+                    int slot = docNgrams.usedSlots.get(e);
+                    if (finalSketch==null || estimate(finalSketch, docNgrams.hashes[slot], finalMask)>=minCount){
+                        table.add(docNgrams.keys, slot*n, docNgrams.hashes[slot], 1);
+                    }
+                }
+                docNgrams.clear();
+            }
+            return table;
+        }).reduce(NgramCounter::merge).get();
+        return merged.filter(minCount);
+    }
+
+    /**
+     * distinct ngrams of a document
+     */
+    private void collect(int[] tokens, Table docNgrams){
+        int[] key = new int[n];
+        for (int[] template: templates){
+            int span = template[n-1];
+            for (int start=0;start+span<tokens.length;start++){
+                boolean valid = true;
+                for (int k=0;k<n;k++){
+                    key[k] = tokens[start+template[k]];
+                    if (key[k]<0){
+                        valid = false;
+                        break;
+                    }
+                }
+                if (valid){
+                    docNgrams.add(key, 0, hash(key, 0, n), 1);
+                }
+            }
+        }
+    }
+
+    private static int start(int chunk, int numChunks, int numDocs){
+        return (int)((long)chunk*numDocs/numChunks);
+    }
+
+    private static Table merge(Table table1, Table table2){
+        Table larger = table1.size>=table2.size ? table1 : table2;
+        Table smaller = larger==table1 ? table2 : table1;
+        for (int e=0;e<smaller.usedSlots.size();e++){
+            int slot = smaller.usedSlots.get(e);
+            larger.add(smaller.keys, slot*smaller.width, smaller.hashes[slot], smaller.counts[slot]);
+        }
+        return larger;
+    }
+
+    private static int sketchIndex(long hash, int row, int mask){
+        int h1 = (int)hash;
+        int h2 = (int)(hash>>>32);
+        return row*(mask+1) + ((h1+row*h2)&mask);
+    }
+
+    private static int estimate(AtomicIntegerArray sketch, long hash, int mask){
+        int estimate = Integer.MAX_VALUE;
+        for (int row=0;row<SKETCH_DEPTH;row++){
+            estimate = Math.min(estimate, sketch.get(sketchIndex(hash, row, mask)));
+        }
+        return estimate;
+    }
+
+    static long hash(int[] keys, int offset, int width){
+        long hash = 0x9E3779B97F4A7C15L;
+        for (int k=0;k<width;k++){
+            hash = (hash^keys[offset+k])*0xBF58476D1CE4E5B9L;
+            hash ^= hash>>>31;
+        }
+        return hash;
+    }
+
+    /**
+     * open-addressing table from fixed-width int keys to counts
+     */
+    public static class Table {
+        private final int width;
+        private int[] keys;
+        private long[] hashes;
+        private int[] counts;
+        private boolean[] used;
+        /**
+         * occupied slots in insertion order
+         */
+        private IntArrayList usedSlots;
+        private int size;
+
+        Table(int width) {
+            this.width = width;
+            allocate(16);
+        }
+
+        private void allocate(int capacity){
+            keys = new int[capacity*width];
+            hashes = new long[capacity];
+            counts = new int[capacity];
+            used = new boolean[capacity];
+            usedSlots = new IntArrayList();
+            size = 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * @param visitor called with the key at keys[offset] ... keys[offset+width-1] and its count
+         */
+        public void forEach(Visitor visitor){
+            for (int e=0;e<usedSlots.size();e++){
+                int slot = usedSlots.get(e);
+                visitor.visit(keys, slot*width, counts[slot]);
+            }
+        }
+
+        /**
+         * @return 0 if the key is absent
+         */
+        public int getCount(int[] key){
+            int slot = find(key, 0, hash(key, 0, width));
+            return used[slot] ? counts[slot] : 0;
+        }
+
+        void add(int[] source, int offset, long hash, int count){
+            if (2*(size+1)>used.length){
+                rehash();
+            }
+            int slot = find(source, offset, hash);
+            if (!used[slot]){
+                used[slot] = true;
+                System.arraycopy(source, offset, keys, slot*width, width);
+                hashes[slot] = hash;
+                usedSlots.add(slot);
+                size += 1;
+            }
+            counts[slot] += count;
+        }
+
+        /**
+         * reset only the occupied slots, so that a small table can be reused for every document
+         */
+        void clear(){
+            for (int e=0;e<usedSlots.size();e++){
+                int slot = usedSlots.get(e);
+                used[slot] = false;
+                counts[slot] = 0;
+            }
+            usedSlots.clear();
+            size = 0;
+        }
+
+        Table filter(int minCount){
+            if (minCount<=1){
+                return this;
+            }
+            Table filtered = new Table(width);
+            for (int e=0;e<usedSlots.size();e++){
+                int slot = usedSlots.get(e);
+                if (counts[slot]>=minCount){
+                    filtered.add(keys, slot*width, hashes[slot], counts[slot]);
+                }
+            }
+            return filtered;
+        }
+
+        private int find(int[] source, int offset, long hash){
+            int mask = used.length-1;
+            int slot = (int)hash&mask;
+            while (used[slot] && (hashes[slot]!=hash || !sameKey(slot, source, offset))){
+                slot = (slot+1)&mask;
+            }
+            return slot;
+        }
+
+        private boolean sameKey(int slot, int[] source, int offset){
+            int start = slot*width;
+            for (int k=0;k<width;k++){
+                if (keys[start+k]!=source[offset+k]){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash(){
+            int[] oldKeys = keys;
+            long[] oldHashes = hashes;
+            int[] oldCounts = counts;
+            IntArrayList oldSlots = usedSlots;
+            allocate(used.length*2);
+            for (int e=0;e<oldSlots.size();e++){
+                int slot = oldSlots.get(e);
+                add(oldKeys, slot*width, oldHashes[slot], oldCounts[slot]);
+            }
+        }
+    }
+
+    public interface Visitor {
+        void visit(int[] keys, int offset, int count);
+    }
+}
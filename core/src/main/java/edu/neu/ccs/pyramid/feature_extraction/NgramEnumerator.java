@@ -2,8 +2,11 @@ package edu.neu.ccs.pyramid.feature_extraction;
 
 import com.google.common.collect.ConcurrentHashMultiset;
 import com.google.common.collect.Multiset;
-import edu.neu.ccs.pyramid.elasticsearch.ESIndex;
+import edu.neu.ccs.pyramid.elasticsearch.TermVectorSnapshot;
+import edu.neu.ccs.pyramid.elasticsearch.TermVectorSource;
 import edu.neu.ccs.pyramid.feature.Ngram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -14,37 +17,45 @@ import java.util.stream.Collectors;
  * Created by chengli on 1/15/15.
  */
 public class NgramEnumerator {
+    private static final Logger logger = LogManager.getLogger();
 
-    public static Multiset<Ngram> gatherNgram(ESIndex index, String[] ids, NgramTemplate template){
-        Multiset<Ngram> multiset = ConcurrentHashMultiset.create();
-        String field = template.getField();
-        Arrays.stream(ids).parallel().forEach(id -> {
-            Map<Integer,String> termVector = index.getTermVectorFromIndex(field, id);
-            add(termVector,multiset,template);
-        });
-        return multiset;
+    public static Multiset<Ngram> gatherNgram(TermVectorSource index, String[] ids, NgramTemplate template){
+        return gatherNgram(index, ids, template, 1);
     }
 
-    public static Multiset<Ngram> gatherNgram(ESIndex index, String[] ids, NgramTemplate template, int minDF){
-        Multiset<Ngram> multiset = ConcurrentHashMultiset.create();
+    public static Multiset<Ngram> gatherNgram(TermVectorSource index, String[] ids, NgramTemplate template, int minDF){
+        return gatherNgram(index, ids, template, minDF, 0);
+    }
+
+    /**
+     * document frequencies of the ngrams of a template, each ngram is counted once per document
+     * @param sketchWidth width of the count-min sketch used to prune rare ngrams, 0 for no sketch;
+     *                    documents are read twice when the sketch is used, see NgramCounter
+     * @return ngrams with document frequency >= minDF
+     */
+    public static Multiset<Ngram> gatherNgram(TermVectorSource index, String[] ids, NgramTemplate template,
+                                              int minDF, int sketchWidth){
         String field = template.getField();
-        Arrays.stream(ids).parallel().forEach(id -> {
-            Map<Integer,String> termVector = index.getTermVectorFromIndex(field, id);
-            add(termVector,multiset,template);
+        TermIds termIds = new TermIds(index);
+        NgramCounter.Table table = new NgramCounter(template.getPositionTemplate())
+                .setMinCount(minDF).setSketchWidth(sketchWidth)
+                .count(ids.length, i -> termIds.sequence(field, ids[i]));
+        termIds.warnMissingDocs(field);
+        Multiset<Ngram> multiset = ConcurrentHashMultiset.create();
+        table.forEach((keys, offset, count) -> {
+            Ngram ngram = new Ngram();
+            ngram.setNgram(termIds.toNgram(keys, offset, table.getWidth()));
+            ngram.setSlop(template.getSlop());
+            ngram.setField(field);
+            ngram.setInOrder(true);
+            multiset.add(ngram, count);
         });
-        Multiset<Ngram> filtered = ConcurrentHashMultiset.create();
-        for (Multiset.Entry entry: multiset.entrySet()){
-            Ngram ngram = (Ngram)entry.getElement();
-            int count = entry.getCount();
-            if (count>=minDF){
-                filtered.add(ngram,count);
-            }
-        }
-        return filtered;
+        return multiset;
     }
 
     /**
      * gather ngrams with document frequency >= threshold
+     * ngrams do not span position gaps
      * @param index
      * @param ids
      * @param n
@@ -52,23 +63,15 @@ public class NgramEnumerator {
      * @return
      * @throws Exception
      */
-    public static List<String> gatherNgrams(ESIndex index,String field,
+    public static List<String> gatherNgrams(TermVectorSource index,String field,
                                      String[] ids, int n, int minDf) throws Exception{
-        Map<String,Integer> counts = new ConcurrentHashMap<>();
-        Arrays.stream(ids).parallel().forEach(id -> {
-            Map<Integer,String> termVector = index.getTermVectorFromIndex(field, id);
-            Map<String, Integer> localCount = NgramEnumerator.getNgramCounts(termVector,n);
-            for (Map.Entry<String, Integer> entry: localCount.entrySet()){
-                String ngram = entry.getKey();
-                int oldCount = counts.getOrDefault(ngram,0);
-                //document count += 1
-                int newCount = oldCount + 1;
-                counts.put(ngram,newCount);
-            }
-        });
-        return counts.entrySet().parallelStream().filter(entry -> entry.getValue()>=minDf)
-                .map(Map.Entry::getKey).collect(Collectors.toList());
-
+        TermIds termIds = new TermIds(index);
+        NgramCounter.Table table = NgramCounter.contiguous(n).setMinCount(minDf)
+                .count(ids.length, i -> termIds.positions(field, ids[i]));
+        termIds.warnMissingDocs(field);
+        List<String> ngrams = new ArrayList<>(table.size());
+        table.forEach((keys, offset, count) -> ngrams.add(termIds.toNgram(keys, offset, n)));
+        return ngrams;
     }
 
     /**
@@ -172,4 +175,93 @@ public class NgramEnumerator {
                 .sorted(comparator).map(Map.Entry::getValue).collect(Collectors.toList());
         add(source,multiset,template);
     }
+
+    /**
+     * term ids of the documents of a source
+     * snapshot term ids are used directly; other sources get ids from a dictionary filled on the fly
+     * documents missing from a snapshot have no terms, and are counted
+     */
+    private static class TermIds {
+        private final TermVectorSource source;
+        private final TermVectorSnapshot snapshot;
+        private final Map<String,Integer> ids = new ConcurrentHashMap<>();
+        private final List<String> terms = new ArrayList<>();
+        private final Set<String> missingDocs = ConcurrentHashMap.newKeySet();
+
+        TermIds(TermVectorSource source) {
+            this.source = source;
+            this.snapshot = source instanceof TermVectorSnapshot ? (TermVectorSnapshot) source : null;
+        }
+
+        /**
+         * term ids in position order, gaps ignored
+         */
+        int[] sequence(String field, String id){
+            if (snapshot!=null){
+                if (isMissing(id)){
+                    return new int[0];
+                }
+                return Arrays.stream(snapshot.getTokenIds(field, id)).filter(tokenId -> tokenId>=0).toArray();
+            }
+            return source.getTermSequence(field, id).stream().mapToInt(this::id).toArray();
+        }
+
+        /**
+         * term id at each position, -1 for positions without terms
+         */
+        int[] positions(String field, String id){
+            if (snapshot!=null){
+                if (isMissing(id)){
+                    return new int[0];
+                }
+                return snapshot.getTokenIds(field, id);
+            }
+            Map<Integer,String> termVector = source.getTermVectorFromIndex(field, id);
+            int length = termVector.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1)+1;
+            int[] positions = new int[length];
+            Arrays.fill(positions, -1);
+            for (Map.Entry<Integer,String> entry: termVector.entrySet()){
+                positions[entry.getKey()] = id(entry.getValue());
+            }
+            return positions;
+        }
+
+        private boolean isMissing(String id){
+            if (snapshot.containsDoc(id)){
+                return false;
+            }
+            // a set, since documents are read twice when a sketch is used
+            missingDocs.add(id);
+            return true;
+        }
+
+        void warnMissingDocs(String field){
+            if (!missingDocs.isEmpty()){
+                logger.warn(missingDocs.size()+" documents are not in the snapshot; no ngrams of field "+field
+                        +" are gathered from them");
+            }
+        }
+
+        private int id(String term){
+            Integer id = ids.get(term);
+            if (id!=null){
+                return id;
+            }
+            synchronized (this){
+                return ids.computeIfAbsent(term, t -> {
+                    terms.add(t);
+                    return terms.size()-1;
+                });
+            }
+        }
+
+        String toNgram(int[] keys, int offset, int n){
+            List<String> list = new ArrayList<>(n);
+            for (int k=0;k<n;k++){
+                int termId = keys[offset+k];
+                list.add(snapshot!=null ? snapshot.getTerm(termId) : terms.get(termId));
+            }
+            return Ngram.toNgramString(list);
+        }
+    }
 }
@@ -0,0 +1,194 @@
+package edu.neu.ccs.pyramid.feature_extraction;
+
+import edu.neu.ccs.pyramid.feature.Ngram;
+import org.apache.mahout.math.list.IntArrayList;
+import org.apache.mahout.math.map.OpenIntIntHashMap;
+import org.apache.mahout.math.map.OpenLongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * matches many ngrams against a token sequence in a single pass
+ * the ngrams are stored in a trie over term ids; from each position of the sequence,
+ * the trie is walked forward, and each term is matched at its earliest position after the previous term,
+ * within the slop of the ngrams below the current node
+ * this follows the ordered span near query of Lucene: a match is counted for every position of the
+ * first term whose greedy match has at most slop unmatched positions
+ * only in-order ngrams and unigrams are supported, see supports()
+ */
+public class NgramMatcher {
+    private final int numNgrams;
+    /**
+     * term to term id, for the terms of the ngrams only
+     */
+    private final Map<String,Integer> termIds;
+    /**
+     * child of node n for term t at key n<<32|t
+     */
+    private final OpenLongIntHashMap children;
+    /**
+     * largest slop of the ngrams below each node
+     */
+    private final IntArrayList maxSlops;
+    /**
+     * ngrams ending at each node, with their slops
+     */
+    private final List<IntArrayList> terminalNgrams;
+    private final List<IntArrayList> terminalSlops;
+    private final IntArrayList numChildren;
+
+    /**
+     * @param ngrams ngrams of one field; ngram i is reported as index i
+     */
+    public NgramMatcher(List<Ngram> ngrams) {
+        this.numNgrams = ngrams.size();
+        this.termIds = new HashMap<>();
+        this.children = new OpenLongIntHashMap();
+        this.maxSlops = new IntArrayList();
+        this.terminalNgrams = new ArrayList<>();
+        this.terminalSlops = new ArrayList<>();
+        this.numChildren = new IntArrayList();
+        int root = addNode();
+        for (int i=0;i<ngrams.size();i++){
+            Ngram ngram = ngrams.get(i);
+            if (!supports(ngram)){
+                throw new IllegalArgumentException("unordered ngram "+ngram.getNgram()+" is not supported");
+            }
+            int slop = ngram.getSlop();
+            int node = root;
+            maxSlops.set(node, Math.max(maxSlops.get(node), slop));
+            for (String term: ngram.getTerms()){
+                Integer termId = termIds.get(term);
+                if (termId==null){
+                    termId = termIds.size();
+                    termIds.put(term, termId);
+                }
+                long key = key(node, termId);
+                int child;
+                if (children.containsKey(key)){
+                    child = children.get(key);
+                } else {
+                    child = addNode();
+                    children.put(key, child);
+                    numChildren.set(node, numChildren.get(node)+1);
+                }
+                node = child;
+                maxSlops.set(node, Math.max(maxSlops.get(node), slop));
+            }
+            terminalNgrams.get(node).add(i);
+            terminalSlops.get(node).add(slop);
+        }
+    }
+
+    /**
+     * @return whether the ngram can be matched by this class
+     */
+    public static boolean supports(Ngram ngram){
+        return ngram.isInOrder() || ngram.getN()==1;
+    }
+
+    public int getNumNgrams() {
+        return numNgrams;
+    }
+
+    /**
+     * @return -1 if the term is not in any ngram
+     */
+    public int getTermId(String term){
+        return termIds.getOrDefault(term, -1);
+    }
+
+    /**
+     * token sequence of a term vector
+     * @param termVector position to term
+     * @return term id at each position, -1 for positions without terms or with terms not in any ngram
+     */
+    public int[] toTokens(Map<Integer,String> termVector){
+        int length = 0;
+        for (int position: termVector.keySet()){
+            length = Math.max(length, position+1);
+        }
+        int[] tokens = new int[length];
+        Arrays.fill(tokens, -1);
+        for (Map.Entry<Integer,String> entry: termVector.entrySet()){
+            tokens[entry.getKey()] = getTermId(entry.getValue());
+        }
+        return tokens;
+    }
+
+    /**
+     * count the matches of all ngrams in a token sequence
+     * @param tokens term ids of this matcher in position order, negative for positions that cannot match
+     * @return ngram index to number of matches, for ngrams with at least one match
+     */
+    public OpenIntIntHashMap match(int[] tokens){
+        OpenIntIntHashMap counts = new OpenIntIntHashMap();
+        for (int position=0;position<tokens.length;position++){
+            if (tokens[position]<0){
+                continue;
+            }
+            int child = children.get(key(0, tokens[position]));
+            // OpenLongIntHashMap returns 0 for missing keys; the root is node 0
+            if (child>0){
+                visit(tokens, child, position, 0, counts);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @param node node reached by matching its term at position
+     * @param gap unmatched positions so far
+     */
+    private void visit(int[] tokens, int node, int position, int gap, OpenIntIntHashMap counts){
+        IntArrayList ngrams = terminalNgrams.get(node);
+        IntArrayList slops = terminalSlops.get(node);
+        for (int e=0;e<ngrams.size();e++){
+            if (gap<=slops.get(e)){
+                counts.adjustOrPutValue(ngrams.get(e), 1, 1);
+            }
+        }
+        if (numChildren.get(node)==0){
+            return;
+        }
+        int last = Math.min(tokens.length-1, position+1+maxSlops.get(node)-gap);
+        for (int next=position+1;next<=last;next++){
+            int term = tokens[next];
+            if (term<0 || !isFirstOccurrence(tokens, position+1, next)){
+                continue;
+            }
+            int child = children.get(key(node, term));
+            if (child>0){
+                visit(tokens, child, next, gap+next-position-1, counts);
+            }
+        }
+    }
+
+    /**
+     * terms are matched at their earliest position only
+     */
+    private static boolean isFirstOccurrence(int[] tokens, int start, int position){
+        for (int p=start;p<position;p++){
+            if (tokens[p]==tokens[position]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int addNode(){
+        maxSlops.add(0);
+        numChildren.add(0);
+        terminalNgrams.add(new IntArrayList(0));
+        terminalSlops.add(new IntArrayList(0));
+        return maxSlops.size()-1;
+    }
+
+    private static long key(int node, int term){
+        return ((long)node<<32)|term;
+    }
+}
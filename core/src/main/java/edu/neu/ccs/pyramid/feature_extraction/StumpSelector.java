@@ -1,18 +1,13 @@
 package edu.neu.ccs.pyramid.feature_extraction;
 
-import edu.neu.ccs.pyramid.dataset.DataSet;
-import edu.neu.ccs.pyramid.dataset.DataSetBuilder;
 import edu.neu.ccs.pyramid.dataset.IdTranslator;
-import edu.neu.ccs.pyramid.dataset.SparseDataSet;
 import edu.neu.ccs.pyramid.elasticsearch.ESIndex;
 import edu.neu.ccs.pyramid.elasticsearch.FeatureLoader;
 import edu.neu.ccs.pyramid.feature.Ngram;
 import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeConfig;
-import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeTrainer;
-import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
-import edu.neu.ccs.pyramid.util.Serialization;
+import edu.neu.ccs.pyramid.regression.regression_tree.StumpScorer;
+import org.apache.mahout.math.Vector;
 
-import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -33,30 +28,26 @@ public class StumpSelector {
                              Ngram feature,
                              IdTranslator idTranslator, FeatureLoader.MatchScoreType matchScoreType, String docFilter,
                                   Map<String, float[]> fieldLength){
-        Ngram ngram = null;
-        try {
-            ngram = (Ngram) Serialization.deepCopy(feature);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
-        }
-        ngram.setIndex(0);
-        
-        DataSet dataSet = new SparseDataSet(labels[0].length,1, false, null);
-        FeatureLoader.loadNgramFeature(index, dataSet, ngram, idTranslator, matchScoreType, docFilter, fieldLength);
-        double[] scores = new double[labels.length];
-        for (int l=0;l<scores.length;l++){
-            double score = score(dataSet, labels[l]);
-            scores[l] = score;
-        }
-        return scores;
+        return scores(index, scorer(labels), feature, idTranslator, matchScoreType, docFilter, fieldLength);
     }
 
-    private static double score(DataSet dataSet, double[] labels){
+    /**
+     * same as above, with label statistics computed once by scorer(labels) and shared by all features
+     */
+    public static double[] scores(ESIndex index, StumpScorer scorer,
+                                  Ngram feature,
+                                  IdTranslator idTranslator, FeatureLoader.MatchScoreType matchScoreType, String docFilter,
+                                  Map<String, float[]> fieldLength){
+        Vector featureValues = FeatureLoader.loadNgramFeature(index, feature, idTranslator, matchScoreType, docFilter, fieldLength);
+        return scorer.scores(featureValues);
+    }
+
+    /**
+     * @param labels size = num labels * num data
+     */
+    public static StumpScorer scorer(double[][] labels){
         RegTreeConfig regTreeConfig = new RegTreeConfig()
                 .setMaxNumLeaves(2);
-        RegressionTree tree = RegTreeTrainer.fit(regTreeConfig, dataSet, labels);
-        return tree.getRoot().getReduction();
+        return new StumpScorer(regTreeConfig, labels);
     }
 }
@@ -1,8 +1,6 @@
 package edu.neu.ccs.pyramid.multilabel_classification;
 
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
-import org.apache.mahout.math.DenseVector;
-import org.apache.mahout.math.Vector;
 
 import java.util.*;
 
@@ -22,16 +20,20 @@ public class DynamicProgramming {
      */
     private int numLabels;
 
+    /**
+     * most probable assignment; every other assignment is obtained by flipping some uncertain labels of it
+     */
+    private MultiLabel mode;
 
     /**
-     * cache for the Vectors, we had returned so far.
+     * labels with probabilities between 0 and 1, sorted by increasing flip cost
      */
-    private Set<MultiLabel> cache;
+    private int[] uncertainLabels;
 
     /**
-     * labels with probabilities between 0 and 1
+     * decrease of the log probability when flipping uncertain label uncertainLabels[i] away from the mode
      */
-    private List<Integer> uncertainLabels;
+    private double[] flipCosts;
 
     /**
      *
@@ -40,37 +42,13 @@ public class DynamicProgramming {
     public DynamicProgramming(double[] probabilities){
         double[][] probs = new double[probabilities.length][2];
         double[][] logProbs = new double[probabilities.length][2];
-        this.uncertainLabels = new ArrayList<>();
         for (int l=0;l<probabilities.length;l++){
             probs[l][0] = 1-probabilities[l];
             probs[l][1] = probabilities[l];
             logProbs[l][0] = Math.log(probs[l][0]);
             logProbs[l][1] = Math.log(probs[l][1]);
-            if (probabilities[l]!=0 && probabilities[l]!=1){
-                uncertainLabels.add(l);
-            }
-        }
-
-        this.numLabels = probs.length;
-        this.probs = probs;
-        this.logProbs = logProbs;
-        cache = new HashSet<>();
-
-        queue = new PriorityQueue<>();
-        MultiLabel multiLabel = new MultiLabel();
-
-        double logProb = 0.0;
-        for (int l=0; l<numLabels; l++) {
-            if (this.probs[l][1] >= 0.5) {
-                multiLabel.addLabel(l);
-                logProb += this.logProbs[l][1];
-            } else {
-                logProb += this.logProbs[l][0];
-            }
         }
-        queue.add(new Candidate(multiLabel, logProb));
-
-        cache.add(multiLabel);
+        initialize(probs, logProbs);
     }
 
     /**
@@ -80,36 +58,46 @@ public class DynamicProgramming {
      * @param logProbs
      */
     public DynamicProgramming(double[][] probs, double[][] logProbs){
+        initialize(probs, logProbs);
+    }
 
-
+    private void initialize(double[][] probs, double[][] logProbs){
         this.numLabels = probs.length;
         this.probs = probs;
         this.logProbs = logProbs;
-        cache = new HashSet<>();
 
         queue = new PriorityQueue<>();
-        MultiLabel multiLabel = new MultiLabel();
-
-        this.uncertainLabels = new ArrayList<>();
-        for (int l=0;l<numLabels;l++){
-            double p = probs[l][1];
-            if (p!=0 && p!=1){
-                uncertainLabels.add(l);
-            }
-        }
+        mode = new MultiLabel();
 
+        List<Integer> uncertain = new ArrayList<>();
         double logProb = 0.0;
         for (int l=0; l<numLabels; l++) {
-            if (this.probs[l][1] >= 0.5) {
-                multiLabel.addLabel(l);
+            double p = this.probs[l][1];
+            if (p!=0 && p!=1){
+                uncertain.add(l);
+            }
+            if (p >= 0.5) {
+                mode.addLabel(l);
                 logProb += this.logProbs[l][1];
             } else {
                 logProb += this.logProbs[l][0];
             }
         }
-        queue.add(new Candidate(multiLabel, logProb));
 
-        cache.add(multiLabel);
+        this.uncertainLabels = uncertain.stream().sorted(Comparator.comparing(this::flipCost)).mapToInt(l->l).toArray();
+        this.flipCosts = new double[uncertainLabels.length];
+        for (int i=0;i<uncertainLabels.length;i++){
+            flipCosts[i] = flipCost(uncertainLabels[i]);
+        }
+        queue.add(new Candidate(null, -1, logProb));
+    }
+
+    private double flipCost(int label){
+        if (mode.matchClass(label)){
+            return logProbs[label][1] - logProbs[label][0];
+        } else {
+            return logProbs[label][0] - logProbs[label][1];
+        }
     }
 
     public PriorityQueue<Candidate> getQueue() {
@@ -123,7 +111,7 @@ public class DynamicProgramming {
      */
     public double nextHighestProb() {
         if (queue.size() > 0) {
-            return queue.peek().probability;
+            return queue.peek().getProbability();
         }
         return 0;
     }
@@ -141,13 +129,11 @@ public class DynamicProgramming {
 
     /**
      * find the next multiLabel with highest probability.
-     * And update the queue by flipping every label.
      * @return
      */
     public MultiLabel nextHighestVector() {
         if (queue.size() > 0) {
-            flipLabels(queue.peek());
-            return queue.poll().multiLabel;
+            return nextHighest().getMultiLabel();
         }
 
         return new MultiLabel();
@@ -156,59 +142,46 @@ public class DynamicProgramming {
 
     public Candidate nextHighest(){
         if (queue.size() > 0) {
-            flipLabels(queue.peek());
-            return queue.poll();
+            Candidate candidate = queue.poll();
+            addSuccessors(candidate);
+            return candidate;
         }
         MultiLabel multiLabel = new MultiLabel();
         Candidate candidate = new Candidate(multiLabel, Double.NEGATIVE_INFINITY);
         return candidate;
     }
 
-
     /**
-     * flip each bit in given multiLabel, and calculate its
-     * log probability, if it is not cached yet, put it into
-     * the max queue.
-     * @param data
+     * the next k multiLabels with highest probabilities, fewer if there are no more
+     * @param k
+     * @return
      */
-    private void flipLabels(Candidate data) {
-
-        double prevlogProb = data.logProbability;
-        MultiLabel multiLabel = data.multiLabel;
-        // only flip uncertain labels
-        for (int l: uncertainLabels) {
-            MultiLabel flipped = multiLabel.copy();
-            flipped.flipLabel(l);
-            double logProb;
-            if (flipped.matchClass(l)){
-                logProb = prevlogProb - this.logProbs[l][0] + this.logProbs[l][1];
-            } else {
-                logProb = prevlogProb - this.logProbs[l][1] + this.logProbs[l][0];
-            }
-
-            if (!cache.contains(flipped)) {
-                queue.add(new Candidate(flipped, logProb));
-                cache.add(flipped);
-            }
-
+    public List<Candidate> nextHighest(int k){
+        List<Candidate> candidates = new ArrayList<>(k);
+        while (candidates.size()<k && queue.size()>0){
+            candidates.add(nextHighest());
         }
+        return candidates;
     }
 
+
     /**
-     * given a multiLabel, return the cluster probability.
-     * @param vector
-     * @return
+     * every assignment corresponds to the set of uncertain labels flipped away from the mode.
+     * a set whose largest flipped position is i has at most two successors: i+1 added, or i replaced by i+1.
+     * with positions sorted by flip cost, successors are never more probable than the set itself,
+     * and every set is generated exactly once, so no visited sets need to be kept,
+     * and the queue grows by at most one candidate per returned one.
+     * @param data
      */
-    private double calculateProb(DenseVector vector) {
-        double logProb = 0.0;
-        for (int l=0; l<numLabels; l++) {
-            if (vector.get(l) == 1.0) {
-                logProb += this.logProbs[l][1];
-            } else {
-                logProb += this.logProbs[l][0];
-            }
+    private void addSuccessors(Candidate data) {
+        int next = data.lastFlipped+1;
+        if (next>=uncertainLabels.length){
+            return;
+        }
+        queue.add(new Candidate(data, next, data.logProbability - flipCosts[next]));
+        if (data.lastFlipped>=0){
+            queue.add(new Candidate(data.prefix, next, data.prefix.logProbability - flipCosts[next]));
         }
-        return logProb;
     }
 
     public String toString() {
@@ -217,17 +190,41 @@ public class DynamicProgramming {
 
 
     public class Candidate implements Comparable<Candidate> {
-        private final MultiLabel multiLabel;
+        /**
+         * candidate with the same flipped labels except the last one; null for the mode
+         */
+        private final Candidate prefix;
+        /**
+         * position of the last flipped label in uncertainLabels; -1 for the mode
+         */
+        private final int lastFlipped;
+        private MultiLabel multiLabel;
         private final double logProbability;
-        private final double probability;
 
         Candidate(MultiLabel multiLabel, double logProbability) {
+            this.prefix = null;
+            this.lastFlipped = -1;
             this.multiLabel = multiLabel;
             this.logProbability = logProbability;
-            this.probability = Math.exp(logProbability);
         }
 
+        private Candidate(Candidate prefix, int lastFlipped, double logProbability) {
+            this.prefix = prefix;
+            this.lastFlipped = lastFlipped;
+            this.logProbability = logProbability;
+        }
+
+        /**
+         * built on first use
+         */
         public MultiLabel getMultiLabel() {
+            if (multiLabel==null){
+                MultiLabel flipped = mode.copy();
+                for (Candidate candidate = this; candidate.lastFlipped>=0; candidate = candidate.prefix){
+                    flipped.flipLabel(uncertainLabels[candidate.lastFlipped]);
+                }
+                multiLabel = flipped;
+            }
             return multiLabel;
         }
 
@@ -236,17 +233,16 @@ public class DynamicProgramming {
         }
 
         public double getProbability() {
-            return probability;
+            return Math.exp(logProbability);
         }
 
         @Override
         public int compareTo(Candidate o) {
-            return Double.valueOf(o.logProbability).compareTo(logProbability);
+            return Double.compare(o.logProbability, logProbability);
         }
 
         public String toString() {
-            return "prob: " + String.format("%.3f", Math.exp(logProbability)) + "\tvetcor: " + multiLabel;
+            return "prob: " + String.format("%.3f", Math.exp(logProbability)) + "\tvetcor: " + getMultiLabel();
         }
     }
 }
-
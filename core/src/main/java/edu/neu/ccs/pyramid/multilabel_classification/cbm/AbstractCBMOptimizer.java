@@ -13,6 +13,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.mahout.math.Vector;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.IntStream;
 
@@ -49,6 +50,13 @@ public abstract class AbstractCBMOptimizer {
 
     protected boolean parallelBinaryUpdates =true;
 
+    // initialize with a BM trained by online EM instead of full-batch EM
+    protected boolean onlineInitialization = false;
+    protected int onlineInitializationRuns = 10;
+    protected int onlineInitializationPasses = 1;
+    // label sets the online BM is trained on; null for those of the data set
+    protected Iterable<MultiLabel> initializationLabels;
+
     public AbstractCBMOptimizer(CBM cbm, MultiLabelClfDataSet dataSet) {
         this.cbm = cbm;
         this.dataSet = dataSet;
@@ -101,8 +109,46 @@ public abstract class AbstractCBMOptimizer {
         this.skipDataThreshold = skipDataThreshold;
     }
 
+    public void setOnlineInitialization(boolean onlineInitialization) {
+        this.onlineInitialization = onlineInitialization;
+    }
+
+    /**
+     * number of random starts of online EM; the BM with the best likelihood is used
+     */
+    public void setOnlineInitializationRuns(int onlineInitializationRuns) {
+        this.onlineInitializationRuns = onlineInitializationRuns;
+    }
+
+    /**
+     * number of passes over the label sets in each run of online EM
+     */
+    public void setOnlineInitializationPasses(int onlineInitializationPasses) {
+        this.onlineInitializationPasses = onlineInitializationPasses;
+    }
+
+    /**
+     * label sets to train the online BM on, e.g. streamed from disk; by default those of the data set
+     * they are read once per pass, and once more per run to evaluate
+     */
+    public void setInitializationLabels(Iterable<MultiLabel> initializationLabels) {
+        this.initializationLabels = initializationLabels;
+    }
+
+    /**
+     * initialize the memberships with a BM fitted to the label sets, then perform an M step
+     */
     public void initialize(){
-        gammas = BMSelector.selectGammas(dataSet.getNumClasses(),dataSet.getMultiLabels(), cbm.getNumComponents());
+        if (onlineInitialization){
+            Iterable<MultiLabel> multiLabels = initializationLabels;
+            if (multiLabels==null){
+                multiLabels = Arrays.asList(dataSet.getMultiLabels());
+            }
+            gammas = CBMInitializer.onlineGammas(dataSet, multiLabels, cbm.getNumComponents(),
+                    onlineInitializationRuns, onlineInitializationPasses);
+        } else {
+            gammas = BMSelector.selectGammas(dataSet.getNumClasses(),dataSet.getMultiLabels(), cbm.getNumComponents());
+        }
         if (logger.isDebugEnabled()){
             logger.debug("performing M step");
         }
@@ -178,6 +224,8 @@ public abstract class AbstractCBMOptimizer {
         if (logger.isDebugEnabled()){
             logger.debug("start updateBinaryClassifiers");
         }
+        // the packed form would not follow the updates
+        cbm.unpackBinaryClassifiers();
         IntStream.range(0, cbm.numComponents).forEach(this::updateBinaryClassifiers);
         if (logger.isDebugEnabled()){
             logger.debug("finish updateBinaryClassifiers");
@@ -225,11 +273,11 @@ public abstract class AbstractCBMOptimizer {
         }
 
 
-        MultiLabelClfDataSet activeDataSet = DataSetUtil.sampleData(dataSet, activeIndices);
-        int activeFeatures = (int) IntStream.range(0, activeDataSet.getNumFeatures()).filter(j->activeDataSet.getColumn(j).getNumNonZeroElements()>0).count();
+        // active indices are increasing, so a view can be used instead of a copy
+        MultiLabelClfDataSet activeDataSet = DataSetUtil.sampleView(dataSet, activeIndices);
         if (logger.isDebugEnabled()){
             logger.debug("active dataset created");
-            logger.debug("number of active features = "+activeFeatures);
+            logger.debug("number of active features = "+numActiveFeatures(activeDataSet));
         }
 
         // to please lambda
@@ -245,6 +293,25 @@ public abstract class AbstractCBMOptimizer {
     }
 
 
+    /**
+     * count from rows, so that columns of the view are not built only for logging
+     */
+    private static int numActiveFeatures(MultiLabelClfDataSet activeDataSet){
+        boolean[] active = new boolean[activeDataSet.getNumFeatures()];
+        for (int i=0;i<activeDataSet.getNumDataPoints();i++){
+            for (Vector.Element element: activeDataSet.getRow(i).nonZeroes()){
+                active[element.index()] = true;
+            }
+        }
+        int count = 0;
+        for (boolean a: active){
+            if (a){
+                count += 1;
+            }
+        }
+        return count;
+    }
+
     protected void skipOrUpdateBinaryClassifier(int component, int label, MultiLabelClfDataSet activeDataSet,
                                                 double[] activeGammas, double totalWeight){
         StopWatch stopWatch = new StopWatch();
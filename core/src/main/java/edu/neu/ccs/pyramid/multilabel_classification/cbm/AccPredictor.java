@@ -27,6 +27,18 @@ public class AccPredictor implements PluginPredictor<CBM> {
     @Override
     public MultiLabel predict(Vector vector) {
         BMDistribution bmDistribution = new BMDistribution(cbm, vector, componentContributionThreshold);
+        return predictByDynamic(bmDistribution);
+    }
+
+    /**
+     * predict from a distribution that is already computed
+     * @param bmDistribution full distribution of the vector, see CBM.computeBM()
+     */
+    public MultiLabel predict(BMDistribution bmDistribution) {
+        return predictByDynamic(bmDistribution.threshold(componentContributionThreshold));
+    }
+
+    private MultiLabel predictByDynamic(BMDistribution bmDistribution){
         CBMPredictor cbmPredictor = new CBMPredictor(bmDistribution);
         cbmPredictor.setAllowEmpty(cbm.getAllowEmpty());
         return cbmPredictor.predictByDynamic();
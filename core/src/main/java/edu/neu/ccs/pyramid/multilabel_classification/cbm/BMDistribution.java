@@ -37,6 +37,11 @@ public class BMDistribution {
         this.numLabels = cbm.numLabels;
         this.numComponents = cbm.numComponents;
         this.logProportions = cbm.multiClassClassifier.predictLogClassProbs(x);
+        PackedBinaryClassifiers packed = cbm.packedBinaryClassifiers;
+        if (packed!=null){
+            this.logClassProbs = packed.predictLogClassProbs(x);
+            return;
+        }
         this.logClassProbs = new double[numComponents][numLabels][2];
         for (int k = 0; k< numComponents; k++){
             for (int l=0;l<numLabels;l++){
@@ -70,6 +75,13 @@ public class BMDistribution {
         //todo
 //        System.out.println("active components = "+numComponents);
         this.logProportions = activeComponents.stream().mapToDouble(k->allLogProportions[k]).toArray();
+        PackedBinaryClassifiers packed = cbm.packedBinaryClassifiers;
+        // the packed classifiers score all components at once, which only pays off if most components are active
+        if (packed!=null && 2*numComponents>=cbm.numComponents){
+            double[][][] allLogClassProbs = packed.predictLogClassProbs(x);
+            this.logClassProbs = activeComponents.stream().map(k->allLogClassProbs[k]).toArray(double[][][]::new);
+            return;
+        }
         this.logClassProbs = new double[numComponents][numLabels][2];
         for (int k = 0; k< numComponents; k++){
             for (int l=0;l<numLabels;l++){
@@ -79,6 +91,34 @@ public class BMDistribution {
 //        System.out.println(this.toString());
     }
 
+    private BMDistribution(int numLabels, double[] logProportions, double[][][] logClassProbs) {
+        this.numLabels = numLabels;
+        this.numComponents = logProportions.length;
+        this.logProportions = logProportions;
+        this.logClassProbs = logClassProbs;
+    }
+
+    /**
+     * skip components with small contributions
+     * gives the same distribution as BMDistribution(cbm, x, threshold), without evaluating the classifiers again
+     * the arrays of the active components are shared with this distribution
+     * @param threshold
+     */
+    public BMDistribution threshold(double threshold){
+        if (ifSupport){
+            throw new IllegalStateException("cannot threshold a distribution over a support");
+        }
+        double logThreshold = Math.log(threshold);
+        int[] activeComponents = IntStream.range(0, numComponents).filter(k->logProportions[k]>=logThreshold).toArray();
+        double[] activeLogProportions = new double[activeComponents.length];
+        double[][][] activeLogClassProbs = new double[activeComponents.length][][];
+        for (int k=0;k<activeComponents.length;k++){
+            activeLogProportions[k] = logProportions[activeComponents[k]];
+            activeLogClassProbs[k] = logClassProbs[activeComponents[k]];
+        }
+        return new BMDistribution(numLabels, activeLogProportions, activeLogClassProbs);
+    }
+
 
     BMDistribution(CBMS cbms, Vector x) {
         this.numLabels = cbms.numLabels;
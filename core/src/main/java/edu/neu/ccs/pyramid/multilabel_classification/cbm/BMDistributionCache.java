@@ -0,0 +1,39 @@
+package edu.neu.ccs.pyramid.multilabel_classification.cbm;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import edu.neu.ccs.pyramid.dataset.DataSet;
+
+/**
+ * full mixture distributions of the rows of a data set, for repeated queries on the same rows
+ * each distribution is computed once while it stays in the cache; the least recently used ones are dropped first
+ * a distribution takes numComponents*numLabels*2 doubles, so the size should be chosen with the memory in mind
+ * the predictors take the distributions through predict(BMDistribution)
+ */
+public class BMDistributionCache {
+    private final LoadingCache<Integer, BMDistribution> distributions;
+
+    /**
+     * @param cbm
+     * @param dataSet
+     * @param maximumSize maximum number of distributions kept
+     */
+    public BMDistributionCache(CBM cbm, DataSet dataSet, int maximumSize) {
+        this.distributions = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build(new CacheLoader<Integer, BMDistribution>() {
+                    @Override
+                    public BMDistribution load(Integer dataPointIndex) throws Exception {
+                        return cbm.computeBM(dataSet.getRow(dataPointIndex));
+                    }
+                });
+    }
+
+    /**
+     * safe to call from multiple threads; a row is computed only once at a time
+     */
+    public BMDistribution get(int dataPointIndex){
+        return distributions.getUnchecked(dataPointIndex);
+    }
+}
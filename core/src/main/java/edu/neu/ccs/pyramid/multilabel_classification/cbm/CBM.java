@@ -30,6 +30,8 @@ import java.util.stream.IntStream;
  */
 public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelClassifier.AssignmentProbEstimator, Serializable {
     private static final long serialVersionUID = 2L;
+    // components with smaller proportions are skipped when computing marginals
+    private static final double CLASS_PROB_PI_THRESHOLD = 0.1;
     int numLabels;
     int numComponents;
     private int numFeatures;
@@ -46,6 +48,8 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
     ProbabilityEstimator multiClassClassifier;
     private String binaryClassifierType;
     private String multiClassClassifierType;
+    // inference-only form of the binary classifiers, see packBinaryClassifiers()
+    transient PackedBinaryClassifiers packedBinaryClassifiers;
 
     private CBM() {
     }
@@ -81,6 +85,29 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
         return bmDistribution.posteriorMembership(y, noiseLabelWeights);
     }
 
+    /**
+     * pack the logistic regression binary classifiers, so that all of them are scored in a single pass over the input
+     * this speeds up prediction; the packed form does not follow later changes of the classifiers,
+     * so call it after training; CBM optimizers drop the packed form when they update the classifiers
+     * the packed form is not serialized
+     * @return whether any binary classifier is packed
+     */
+    public boolean packBinaryClassifiers(){
+        if (!PackedBinaryClassifiers.isPackable(binaryClassifiers, numFeatures)){
+            packedBinaryClassifiers = null;
+            return false;
+        }
+        packedBinaryClassifiers = new PackedBinaryClassifiers(binaryClassifiers, numFeatures);
+        return true;
+    }
+
+    /**
+     * drop the packed form; called by optimizers before they update the binary classifiers
+     */
+    void unpackBinaryClassifiers(){
+        packedBinaryClassifiers = null;
+    }
+
     // takes time
     public BMDistribution computeBM(Vector x){
         return new BMDistribution(this, x);
@@ -240,10 +267,19 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
      */
     public double[] predictClassProbs(Vector vector){
         //todo threshold
-        BMDistribution bmDistribution = new BMDistribution(this, vector, 0.1);
+        BMDistribution bmDistribution = new BMDistribution(this, vector, CLASS_PROB_PI_THRESHOLD);
         return bmDistribution.marginals();
     }
 
+    /**
+     * compute marginal probabilities P(y_l|x) from a distribution that is already computed
+     * @param bmDistribution full distribution of x, see computeBM()
+     * @return
+     */
+    public double[] predictClassProbs(BMDistribution bmDistribution){
+        return bmDistribution.threshold(CLASS_PROB_PI_THRESHOLD).marginals();
+    }
+
     /**
      * predict Sign(E(y|x))
      * @param vector
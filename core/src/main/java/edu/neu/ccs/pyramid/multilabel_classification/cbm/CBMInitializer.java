@@ -1,9 +1,14 @@
 package edu.neu.ccs.pyramid.multilabel_classification.cbm;
 
+import edu.neu.ccs.pyramid.clustering.bm.BM;
 import edu.neu.ccs.pyramid.clustering.bm.BMSelector;
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
 import edu.neu.ccs.pyramid.util.MathUtil;
 
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
 
 /**
  * Created by chengli on 10/26/15.
@@ -16,13 +21,50 @@ public class CBMInitializer {
         for (int i=0;i<dataSet.getNumDataPoints();i++){
             for (int k = 0; k< cbm.getNumComponents(); k++){
                 optimizer.gammas[i][k] = gamms[i][k];
-                optimizer.gammasT[k][i] = gamms[i][k];
             }
         }
         System.out.println("performing M step");
         optimizer.mStep();
     }
 
+    /**
+     * same as initialize, but the BM is trained with online EM, so that its cost does not grow with the number of
+     * EM iterations times the number of data points
+     * @param numRuns number of random starts; the BM with the best likelihood is used
+     * @param numPasses number of passes over the label sets in each run
+     */
+    public static void onlineInitialize(CBM cbm, MultiLabelClfDataSet dataSet, CBMOptimizer optimizer,
+                                        int numRuns, int numPasses){
+        onlineInitialize(cbm, dataSet, optimizer, Arrays.asList(dataSet.getMultiLabels()), numRuns, numPasses);
+    }
+
+    /**
+     * same as above, with the BM trained on the given label sets, e.g. streamed from disk
+     * @param multiLabels read once per pass, and once more per run to evaluate
+     */
+    public static void onlineInitialize(CBM cbm, MultiLabelClfDataSet dataSet, CBMOptimizer optimizer,
+                                        Iterable<MultiLabel> multiLabels, int numRuns, int numPasses){
+        double[][] gammas = onlineGammas(dataSet, multiLabels, cbm.getNumComponents(), numRuns, numPasses);
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            System.arraycopy(gammas[i], 0, optimizer.gammas[i], 0, cbm.getNumComponents());
+        }
+        System.out.println("performing M step");
+        optimizer.mStep();
+    }
+
+    /**
+     * memberships of the data points under a BM trained with online EM on the given label sets
+     * @return format [#data][#components]
+     */
+    static double[][] onlineGammas(MultiLabelClfDataSet dataSet, Iterable<MultiLabel> multiLabels, int numComponents,
+                                   int numRuns, int numPasses){
+        BM bm = BMSelector.selectOnline(dataSet.getNumClasses(), multiLabels, numComponents, numRuns, numPasses);
+        double[][] gammas = new double[dataSet.getNumDataPoints()][];
+        IntStream.range(0, dataSet.getNumDataPoints()).parallel()
+                .forEach(i-> gammas[i] = bm.posteriors(dataSet.getMultiLabels()[i]));
+        return gammas;
+    }
+
     public static void randInitialize(CBM CBM, MultiLabelClfDataSet dataSet, CBMOptimizer optimizer) {
         int K = CBM.getNumComponents();
 
@@ -35,7 +77,6 @@ public class CBMInitializer {
             for (int k=0; k<K; k++) {
                 double value = dist[k]/sum;
                 optimizer.gammas[i][k] = value;
-                optimizer.gammasT[k][i] = value;
             }
         }
         optimizer.mStep();
@@ -46,7 +87,6 @@ public class CBMInitializer {
         for (int i=0;i<dataSet.getNumDataPoints();i++){
             for (int k = 0; k< cbm.getNumComponents(); k++){
                 optimizer.gammas[i][k] = gamms[i][k];
-                optimizer.gammasT[k][i] = gamms[i][k];
             }
         }
         System.out.println("performing M step");
@@ -65,7 +105,6 @@ public class CBMInitializer {
             for (int k=0; k<K; k++) {
                 double value = dist[k]/sum;
                 optimizer.gammas[i][k] = value;
-                optimizer.gammasT[k][i] = value;
             }
         }
         optimizer.mStep();
@@ -77,7 +116,6 @@ public class CBMInitializer {
         for (int i=0; i<dataSet.getNumDataPoints(); i++) {
             for (int k=0; k<K; k++) {
                 optimizer.gammas[i][k] = avgValue;
-                optimizer.gammasT[k][i] = avgValue;
             }
         }
         optimizer.mStep();
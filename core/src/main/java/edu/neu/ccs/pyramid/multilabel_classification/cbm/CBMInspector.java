@@ -28,10 +28,20 @@ public class CBMInspector {
 
 
     public static String topLabels(CBM cbm, Vector vector, double probabilityThreshold){
-        double[] marginals = cbm.predictClassProbs(vector);
+        return topLabels(cbm.predictClassProbs(vector), probabilityThreshold);
+    }
+
+    /**
+     * @param bmDistribution full distribution of the vector, see CBM.computeBM()
+     */
+    public static String topLabels(CBM cbm, BMDistribution bmDistribution, double probabilityThreshold){
+        return topLabels(cbm.predictClassProbs(bmDistribution), probabilityThreshold);
+    }
+
+    private static String topLabels(double[] marginals, double probabilityThreshold){
         List<Pair<Integer, Double>> list = new ArrayList<>();
         Comparator<Pair<Integer, Double>> comparator = Comparator.comparing(Pair::getSecond);
-        for (int l=0;l<cbm.getNumClasses();l++){
+        for (int l=0;l<marginals.length;l++){
             list.add(new Pair<>(l, marginals[l]));
         }
 
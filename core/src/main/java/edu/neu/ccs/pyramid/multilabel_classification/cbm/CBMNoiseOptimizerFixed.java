@@ -43,6 +43,8 @@ public class CBMNoiseOptimizerFixed {
 
     // format [#labels][#data][2]
     // to be fit by binary classifiers
+    // kept for all labels, unlike in CBMOptimizer: the soft targets come from the [#data][#combinations] arrays below,
+    // which already grow with the number of data points times the number of distinct label sets
     private double[][][] binaryTargetsDistributions;
 
     // lr parameters
@@ -321,6 +323,8 @@ public class CBMNoiseOptimizerFixed {
         if (logger.isDebugEnabled()){
             logger.debug("start updateBinaryClassifiers()");
         }
+        // the packed form would not follow the updates
+        cbm.unpackBinaryClassifiers();
         IntStream.range(0, cbm.numComponents).forEach(this::updateBinaryClassifiers);
         if (logger.isDebugEnabled()){
             logger.debug("finish updateBinaryClassifiers()");
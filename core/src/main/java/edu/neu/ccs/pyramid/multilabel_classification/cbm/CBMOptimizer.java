@@ -5,6 +5,7 @@ import edu.neu.ccs.pyramid.classification.lkboost.LKBOutputCalculator;
 import edu.neu.ccs.pyramid.classification.lkboost.LKBoost;
 import edu.neu.ccs.pyramid.classification.lkboost.LKBoostOptimizer;
 import edu.neu.ccs.pyramid.classification.logistic_regression.*;
+import edu.neu.ccs.pyramid.dataset.DataSetUtil;
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
 import edu.neu.ccs.pyramid.eval.Entropy;
@@ -16,6 +17,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.mahout.math.Vector;
 
+import java.util.Arrays;
 import java.util.stream.IntStream;
 
 /**
@@ -40,13 +42,8 @@ public class CBMOptimizer {
     private Terminator terminator;
 
     // format [#data][#components]
+    // columns and binary targets are derived once per pass over the binary classifiers, see gammaColumns and targetsDistribution
     double[][] gammas;
-    // format [#components][#data]
-    double[][] gammasT;
-
-    // format [#labels][#data][2]
-    // to be fit by binary classifiers
-    private double[][][] targetsDistributions;
     private boolean isParallel = true;
 
     // for deterministic annealing
@@ -82,8 +79,10 @@ public class CBMOptimizer {
     private double[] noiseSetWeights;
     private double[] jointProbs;
     private double noiseGammaLabel = 0;
+    // format [#data][#labels], only kept when noiseGammaLabel != 0; otherwise all label weights are 1
     private double[][] noiseLabelWeights;
     private double[][] marginals;
+    private double[] unitLabelWeights;
 
     private int parameterUpdatesPerIter = 10;
 
@@ -96,32 +95,16 @@ public class CBMOptimizer {
         this.terminator.setGoal(Terminator.Goal.MINIMIZE);
 
         this.gammas = new double[dataSet.getNumDataPoints()][cbm.getNumComponents()];
-        this.gammasT = new double[cbm.getNumComponents()][dataSet.getNumDataPoints()];
         double average = 1.0/ cbm.getNumComponents();
         for (int n=0;n<dataSet.getNumDataPoints();n++){
             for (int k = 0; k< cbm.getNumComponents(); k++){
                 gammas[n][k] = average;
-                gammasT[k][n] = average;
-            }
-        }
-
-
-        this.targetsDistributions = new double[cbm.getNumClasses()][dataSet.getNumDataPoints()][2];
-        for (int n=0; n<dataSet.getNumDataPoints(); n++) {
-            // first mark all labels as negative
-            for (int l=0;l<cbm.getNumClasses(); l++){
-                this.targetsDistributions[l][n][0] = 1;
-            }
-            MultiLabel multiLabel = dataSet.getMultiLabels()[n];
-            for (int l: multiLabel.getMatchedLabels()){
-                this.targetsDistributions[l][n][0] = 0;
-                this.targetsDistributions[l][n][1] = 1;
             }
         }
         this.jointProbs = new double[dataSet.getNumDataPoints()];
         this.noiseSetWeights = new double[dataSet.getNumDataPoints()];
-        this.marginals = new double[dataSet.getNumDataPoints()][dataSet.getNumClasses()];
-        this.noiseLabelWeights = new double[dataSet.getNumDataPoints()][dataSet.getNumClasses()];
+        this.unitLabelWeights = new double[dataSet.getNumClasses()];
+        Arrays.fill(unitLabelWeights, 1);
     }
 
     private void updateJointProbs(){
@@ -143,6 +126,9 @@ public class CBMOptimizer {
     }
 
     private void updateMarginals(){
+        if (marginals==null){
+            marginals = new double[dataSet.getNumDataPoints()][dataSet.getNumClasses()];
+        }
         IntStream.range(0,dataSet.getNumDataPoints()).parallel()
                 .forEach(i-> {
                     double[] predictedMarginals = cbm.predictClassProbs(dataSet.getRow(i));
@@ -160,7 +146,9 @@ public class CBMOptimizer {
         double total = 0;
         double n = dataSet.getNumDataPoints();
         double numLabels = dataSet.getNumClasses();
-
+        if (noiseLabelWeights==null){
+            noiseLabelWeights = new double[dataSet.getNumDataPoints()][dataSet.getNumClasses()];
+        }
 
         for (int i=0;i<n;i++){
             for (int l=0;l<numLabels;l++){
@@ -182,6 +170,10 @@ public class CBMOptimizer {
 
     public void setNoiseGammaLabel(double noiseGammaLabel) {
         this.noiseGammaLabel = noiseGammaLabel;
+        if (noiseGammaLabel==0){
+            marginals = null;
+            noiseLabelWeights = null;
+        }
     }
 
     public void setPriorVarianceMultiClass(double priorVarianceMultiClass) {
@@ -228,10 +220,17 @@ public class CBMOptimizer {
         this.temperature = temperature;
     }
 
+    /**
+     * @return label weights, format [#data][#labels]; null if noiseGammaLabel = 0, i.e. all label weights are 1
+     */
     public double[][] getNoiseLabelWeights() {
         return noiseLabelWeights;
     }
 
+    private double[] noiseLabelWeights(int dataIndex){
+        return noiseLabelWeights==null ? unitLabelWeights : noiseLabelWeights[dataIndex];
+    }
+
 
     public double[] getNoiseSetWeights() {
         return noiseSetWeights;
@@ -247,10 +246,15 @@ public class CBMOptimizer {
     }
 
     public void iterate() {
-        updateJointProbs();
+        // with gamma = 0, all weights are 1 and the predictions behind them are not needed
+        if (noiseGammaSet!=0){
+            updateJointProbs();
+        }
         updateSetWeights();
-        updateMarginals();
-        updateLabelWeights();
+        if (noiseGammaLabel!=0){
+            updateMarginals();
+            updateLabelWeights();
+        }
         eStep();
         mStep();
         this.terminator.add(getObjective());
@@ -277,10 +281,9 @@ public class CBMOptimizer {
     private void updateGamma(int n) {
         Vector x = dataSet.getRow(n);
         MultiLabel y = dataSet.getMultiLabels()[n];
-        double[] posterior = cbm.posteriorMembership(x, y, noiseLabelWeights[n]);
+        double[] posterior = cbm.posteriorMembership(x, y, noiseLabelWeights(n));
         for (int k=0; k<cbm.numComponents; k++) {
             gammas[n][k] = posterior[k];
-            gammasT[k][n] = posterior[k];
         }
     }
 
@@ -300,32 +303,66 @@ public class CBMOptimizer {
         if (logger.isDebugEnabled()){
             logger.debug("start updateBinaryClassifiers");
         }
-        IntStream.range(0, cbm.numComponents).forEach(this::updateBinaryClassifiers);
+        // the packed form would not follow the updates
+        cbm.unpackBinaryClassifiers();
+        double[][] gammaColumns = gammaColumns();
+        if (cbm.getBinaryClassifierType().equals("boost")){
+            // no parallel for boosting
+            IntStream.range(0, cbm.numLabels).forEach(l -> updateBinaryClassifiers(l, gammaColumns));
+        } else {
+            IntStream.range(0, cbm.numLabels).parallel().forEach(l -> updateBinaryClassifiers(l, gammaColumns));
+        }
         if (logger.isDebugEnabled()){
             logger.debug("finish updateBinaryClassifiers");
         }
     }
 
-    //todo pay attention to parallelism
-    private void updateBinaryClassifiers(int component){
+    /**
+     * update the classifiers of one label in all components
+     * the targets of the label are built once and shared by the components
+     */
+    private void updateBinaryClassifiers(int labelIndex, double[][] gammaColumns){
         String type = cbm.getBinaryClassifierType();
-        switch (type){
-            case "lr":
-                IntStream.range(0, cbm.numLabels).parallel().forEach(l-> updateBinaryLogisticRegression(component,l));
-                break;
-            case "boost":
-                // no parallel for boosting
-                IntStream.range(0, cbm.numLabels).forEach(l -> updateBinaryBoosting(component, l));
-                break;
-            case "elasticnet":
-                IntStream.range(0, cbm.numLabels).parallel().forEach(l-> updateBinaryLogisticRegressionEL(component,l));
-                break;
-            default:
-                throw new IllegalArgumentException("unknown type: " + cbm.getBinaryClassifierType());
+        double[][] targets = targetsDistribution(labelIndex);
+        for (int k=0;k<cbm.numComponents;k++){
+            switch (type){
+                case "lr":
+                    updateBinaryLogisticRegression(k, labelIndex, gammaColumns[k], targets);
+                    break;
+                case "boost":
+                    updateBinaryBoosting(k, labelIndex, gammaColumns[k], targets);
+                    break;
+                case "elasticnet":
+                    updateBinaryLogisticRegressionEL(k, labelIndex, gammaColumns[k], targets);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown type: " + type);
+            }
         }
     }
 
-    private void updateBinaryBoosting(int componentIndex, int labelIndex){
+    /**
+     * gammas of all data points for each component, format [#components][#data]
+     */
+    private double[][] gammaColumns(){
+        double[][] columns = new double[cbm.numComponents][dataSet.getNumDataPoints()];
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (int k=0;k<cbm.numComponents;k++){
+                columns[k][i] = gammas[i][k];
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * binary targets of one label, format [#data][2]
+     * built from the multi-labels when the label is visited instead of being kept for all labels
+     */
+    private double[][] targetsDistribution(int labelIndex){
+        return DataSetUtil.labelsToDistributions(DataSetUtil.toBinaryLabels(dataSet.getMultiLabels(), labelIndex), 2);
+    }
+
+    private void updateBinaryBoosting(int componentIndex, int labelIndex, double[] weights, double[][] targets){
         int numIterations = numIterationsBinary;
         double shrinkage = shrinkageBinary;
         LKBoost boost = (LKBoost)this.cbm.binaryClassifiers[componentIndex][labelIndex];
@@ -334,22 +371,22 @@ public class CBMOptimizer {
         RegTreeFactory regTreeFactory = new RegTreeFactory(regTreeConfig);
         regTreeFactory.setLeafOutputCalculator(new LKBOutputCalculator(2));
         LKBoostOptimizer optimizer = new LKBoostOptimizer(boost,dataSet, regTreeFactory,
-                gammasT[componentIndex],targetsDistributions[labelIndex]);
+                weights,targets);
         optimizer.setShrinkage(shrinkage);
         optimizer.initialize();
         optimizer.iterate(numIterations);
     }
 
-    private void updateBinaryLogisticRegression(int componentIndex, int labelIndex){
+    private void updateBinaryLogisticRegression(int componentIndex, int labelIndex, double[] weights, double[][] targets){
         RidgeLogisticOptimizer ridgeLogisticOptimizer;
         double[] instanceWeights = new double[dataSet.getNumDataPoints()];
         for (int i=0;i<dataSet.getNumDataPoints();i++){
             //todo do not multiply by noiseSetWeight ?
-            instanceWeights[i] = gammasT[componentIndex][i] *noiseSetWeights[i] * noiseLabelWeights[i][labelIndex];
+            instanceWeights[i] = weights[i] *noiseSetWeights[i] * noiseLabelWeights(i)[labelIndex];
         }
         // no parallelism
         ridgeLogisticOptimizer = new RidgeLogisticOptimizer((LogisticRegression)cbm.binaryClassifiers[componentIndex][labelIndex],
-                dataSet, instanceWeights, targetsDistributions[labelIndex], priorVarianceBinary, false);
+                dataSet, instanceWeights, targets, priorVarianceBinary, false);
         //TODO maximum iterations
         ridgeLogisticOptimizer.getOptimizer().getTerminator().setMaxIteration(parameterUpdatesPerIter);
         ridgeLogisticOptimizer.optimize();
@@ -358,9 +395,9 @@ public class CBMOptimizer {
 //        }
     }
 
-    private void updateBinaryLogisticRegressionEL(int componentIndex, int labelIndex) {
+    private void updateBinaryLogisticRegressionEL(int componentIndex, int labelIndex, double[] weights, double[][] targets) {
         ElasticNetLogisticTrainer elasticNetLogisticTrainer = new ElasticNetLogisticTrainer.Builder((LogisticRegression)
-                cbm.binaryClassifiers[componentIndex][labelIndex], dataSet, 2, targetsDistributions[labelIndex], gammasT[componentIndex])
+                cbm.binaryClassifiers[componentIndex][labelIndex], dataSet, 2, targets, weights)
                 .setRegularization(regularizationBinary)
                 .setL1Ratio(l1RatioBinary)
                 .setLineSearch(lineSearch).build();
@@ -463,45 +500,52 @@ public class CBMOptimizer {
 
 
     private double binaryObj(){
-        return IntStream.range(0, cbm.numComponents).mapToDouble(this::binaryObj).sum();
-    }
-
-    private double binaryObj(int clusterIndex){
-        return IntStream.range(0, cbm.numLabels).parallel().mapToDouble(l->binaryObj(clusterIndex,l)).sum();
+        double[][] gammaColumns = gammaColumns();
+        return IntStream.range(0, cbm.numLabels).parallel().mapToDouble(l->binaryObj(l, gammaColumns)).sum();
+    }
+
+    /**
+     * objective of the classifiers of one label in all components, sharing the targets of the label
+     */
+    private double binaryObj(int classIndex, double[][] gammaColumns){
+        double[][] targets = targetsDistribution(classIndex);
+        double sum = 0;
+        for (int k=0;k<cbm.numComponents;k++){
+            sum += binaryObj(k, classIndex, gammaColumns[k], targets);
+        }
+        return sum;
     }
 
-    private double binaryObj(int clusterIndex, int classIndex){
+    private double binaryObj(int clusterIndex, int classIndex, double[] weights, double[][] targets){
         String type = cbm.getBinaryClassifierType();
         switch (type){
             case "lr":
-                return binaryLRObj(clusterIndex, classIndex);
+                return binaryLRObj(clusterIndex, classIndex, weights, targets);
             case "boost":
-                return binaryBoostObj(clusterIndex, classIndex);
+                return binaryBoostObj(clusterIndex, classIndex, weights, targets);
             case "elasticnet":
                 // todo
-                return binaryLRELObj(clusterIndex, classIndex);
+                return binaryLRELObj(clusterIndex, classIndex, weights, targets);
             default:
                 throw new IllegalArgumentException("unknown type: " + type);
         }
     }
 
-    private double binaryLRELObj(int clusterIndex, int classIndex) {
+    private double binaryLRELObj(int clusterIndex, int classIndex, double[] weights, double[][] targets) {
         LogisticLoss logisticLoss = new LogisticLoss((LogisticRegression) cbm.binaryClassifiers[clusterIndex][classIndex],
-                dataSet, gammasT[clusterIndex], targetsDistributions[classIndex], regularizationBinary, l1RatioBinary, false);
+                dataSet, weights, targets, regularizationBinary, l1RatioBinary, false);
         return logisticLoss.getValueEL();
     }
 
     // consider regularization penalty
-    private double binaryLRObj(int clusterIndex, int classIndex) {
+    private double binaryLRObj(int clusterIndex, int classIndex, double[] weights, double[][] targets) {
             LogisticLoss logisticLoss = new LogisticLoss((LogisticRegression) cbm.binaryClassifiers[clusterIndex][classIndex],
-                    dataSet, gammasT[clusterIndex], targetsDistributions[classIndex], priorVarianceBinary, false);
+                    dataSet, weights, targets, priorVarianceBinary, false);
             return logisticLoss.getValue();
     }
 
-    private double binaryBoostObj(int clusterIndex, int classIndex){
+    private double binaryBoostObj(int clusterIndex, int classIndex, double[] weights, double[][] targets){
         Classifier.ProbabilityEstimator estimator = cbm.binaryClassifiers[clusterIndex][classIndex];
-        double[][] targets = targetsDistributions[classIndex];
-        double[] weights = gammasT[clusterIndex];
         return KLDivergence.kl(estimator, dataSet, targets, weights);
     }
 
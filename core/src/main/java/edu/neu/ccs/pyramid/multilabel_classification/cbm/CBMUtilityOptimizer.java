@@ -43,6 +43,8 @@ public class CBMUtilityOptimizer {
 
     // format [#labels][#data][2]
     // to be fit by binary classifiers
+    // kept for all labels, unlike in CBMOptimizer: the soft targets come from the [#data][#combinations] arrays below,
+    // which already grow with the number of data points times the number of distinct label sets
     private double[][][] binaryTargetsDistributions;
 
     // lr parameters
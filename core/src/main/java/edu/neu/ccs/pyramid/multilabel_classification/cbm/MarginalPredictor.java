@@ -27,6 +27,18 @@ public class MarginalPredictor implements PluginPredictor<CBM> {
     @Override
     public MultiLabel predict(Vector vector) {
         BMDistribution bmDistribution = new BMDistribution(cbm, vector, piThreshold);
+        return predictByMarginals(bmDistribution);
+    }
+
+    /**
+     * predict from a distribution that is already computed
+     * @param bmDistribution full distribution of the vector, see CBM.computeBM()
+     */
+    public MultiLabel predict(BMDistribution bmDistribution) {
+        return predictByMarginals(bmDistribution.threshold(piThreshold));
+    }
+
+    private MultiLabel predictByMarginals(BMDistribution bmDistribution){
         double[] probs = bmDistribution.marginals();
         MultiLabel prediction = new MultiLabel();
         for (int l=0;l<cbm.getNumClasses();l++){
@@ -0,0 +1,178 @@
+package edu.neu.ccs.pyramid.multilabel_classification.cbm;
+
+import edu.neu.ccs.pyramid.classification.Classifier;
+import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticRegression;
+import edu.neu.ccs.pyramid.classification.logistic_regression.Weights;
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+
+/**
+ * inference-only form of the binary classifiers of a CBM
+ * a binary logistic regression only depends on the difference of its two class scores, so the weight differences
+ * of all logistic regressions are packed into one sparse feature-major matrix, and the scores of all
+ * numComponents x numLabels classifiers are computed in a single pass over the non-zeros of the input,
+ * instead of one sparse dot product per classifier
+ * any other kind of classifier, e.g. the prior probability classifiers of skipped labels, is called as it is
+ * the packed form does not follow later changes of the classifiers
+ */
+class PackedBinaryClassifiers {
+    private final int numComponents;
+    private final int numLabels;
+    /**
+     * score difference (class 1 minus class 0) of classifier k*numLabels+l without features
+     */
+    private final double[] biases;
+    /**
+     * non-zero weight differences of feature j are at featureStarts[j] ... featureStarts[j+1]-1
+     */
+    private final int[] featureStarts;
+    private final int[] classifierIndices;
+    private final double[] weights;
+    /**
+     * classifiers that are not packed, null for packed ones
+     */
+    private final Classifier.ProbabilityEstimator[] others;
+
+    PackedBinaryClassifiers(Classifier.ProbabilityEstimator[][] binaryClassifiers, int numFeatures) {
+        this.numComponents = binaryClassifiers.length;
+        this.numLabels = binaryClassifiers[0].length;
+        int numClassifiers = numComponents*numLabels;
+        this.biases = new double[numClassifiers];
+        this.others = new Classifier.ProbabilityEstimator[numClassifiers];
+        // non-zero weight differences of each packed classifier, as feature indices and values
+        int[][] packedFeatures = new int[numClassifiers][];
+        double[][] packedDifferences = new double[numClassifiers][];
+        // count first so that the arrays are allocated only once
+        int[] counts = new int[numFeatures];
+        for (int k=0;k<numComponents;k++){
+            for (int l=0;l<numLabels;l++){
+                int c = k*numLabels+l;
+                Classifier.ProbabilityEstimator classifier = binaryClassifiers[k][l];
+                if (isPackable(classifier, numFeatures)){
+                    Weights classifierWeights = ((LogisticRegression) classifier).getWeights();
+                    biases[c] = classifierWeights.getBiasForClass(1) - classifierWeights.getBiasForClass(0);
+                    differences(classifierWeights, numFeatures, packedFeatures, packedDifferences, c);
+                    for (int j: packedFeatures[c]){
+                        counts[j] += 1;
+                    }
+                } else {
+                    others[c] = classifier;
+                }
+            }
+        }
+        this.featureStarts = new int[numFeatures+1];
+        for (int j=0;j<numFeatures;j++){
+            featureStarts[j+1] = featureStarts[j]+counts[j];
+        }
+        this.classifierIndices = new int[featureStarts[numFeatures]];
+        this.weights = new double[featureStarts[numFeatures]];
+        int[] positions = new int[numFeatures];
+        System.arraycopy(featureStarts, 0, positions, 0, numFeatures);
+        for (int c=0;c<numClassifiers;c++){
+            if (packedFeatures[c]==null){
+                continue;
+            }
+            int[] features = packedFeatures[c];
+            double[] differences = packedDifferences[c];
+            for (int i=0;i<features.length;i++){
+                int j = features[i];
+                classifierIndices[positions[j]] = c;
+                weights[positions[j]] = differences[i];
+                positions[j] += 1;
+            }
+        }
+    }
+
+    /**
+     * non-zero differences (class 1 minus class 0) of the feature weights, from the non-zero weights of each class
+     * a feature shows up once: from class 1 if its class 1 weight is non-zero, otherwise from class 0
+     */
+    private static void differences(Weights classifierWeights, int numFeatures, int[][] packedFeatures,
+                                    double[][] packedDifferences, int c){
+        Vector class0 = classifierWeights.getWeightsWithoutBiasForClass(0);
+        Vector class1 = classifierWeights.getWeightsWithoutBiasForClass(1);
+        int[] features = new int[16];
+        double[] differences = new double[16];
+        int size = 0;
+        for (Vector.Element element: class1.nonZeroes()){
+            double difference = element.get() - class0.getQuick(element.index());
+            if (difference!=0){
+                if (size==features.length){
+                    features = Arrays.copyOf(features, 2*size);
+                    differences = Arrays.copyOf(differences, 2*size);
+                }
+                features[size] = element.index();
+                differences[size] = difference;
+                size += 1;
+            }
+        }
+        for (Vector.Element element: class0.nonZeroes()){
+            if (class1.getQuick(element.index())==0){
+                if (size==features.length){
+                    features = Arrays.copyOf(features, 2*size);
+                    differences = Arrays.copyOf(differences, 2*size);
+                }
+                features[size] = element.index();
+                differences[size] = -element.get();
+                size += 1;
+            }
+        }
+        packedFeatures[c] = Arrays.copyOf(features, size);
+        packedDifferences[c] = Arrays.copyOf(differences, size);
+    }
+
+    /**
+     * @return whether any classifier is packed
+     */
+    static boolean isPackable(Classifier.ProbabilityEstimator[][] binaryClassifiers, int numFeatures){
+        for (Classifier.ProbabilityEstimator[] classifiers: binaryClassifiers){
+            for (Classifier.ProbabilityEstimator classifier: classifiers){
+                if (isPackable(classifier, numFeatures)){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPackable(Classifier.ProbabilityEstimator classifier, int numFeatures){
+        return classifier instanceof LogisticRegression && ((LogisticRegression) classifier).getNumClasses()==2
+                && ((LogisticRegression) classifier).getNumFeatures()==numFeatures;
+    }
+
+    /**
+     * @return log class probabilities, format [numComponents][numLabels][2]
+     */
+    double[][][] predictLogClassProbs(Vector x){
+        double[] scores = biases.clone();
+        for (Vector.Element element: x.nonZeroes()){
+            int j = element.index();
+            double value = element.get();
+            for (int p=featureStarts[j];p<featureStarts[j+1];p++){
+                scores[classifierIndices[p]] += weights[p]*value;
+            }
+        }
+        double[][][] logClassProbs = new double[numComponents][numLabels][];
+        for (int k=0;k<numComponents;k++){
+            for (int l=0;l<numLabels;l++){
+                int c = k*numLabels+l;
+                if (others[c]!=null){
+                    logClassProbs[k][l] = others[c].predictLogClassProbs(x);
+                } else {
+                    // log sigmoid of the score difference, without overflow
+                    double score = scores[c];
+                    logClassProbs[k][l] = new double[]{-softplus(score), -softplus(-score)};
+                }
+            }
+        }
+        return logClassProbs;
+    }
+
+    /**
+     * log(1+exp(z))
+     */
+    private static double softplus(double z){
+        return Math.max(z, 0) + Math.log1p(Math.exp(-Math.abs(z)));
+    }
+}
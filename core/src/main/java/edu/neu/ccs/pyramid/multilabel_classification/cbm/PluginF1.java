@@ -80,8 +80,30 @@ public class PluginF1 implements PluginPredictor<CBM>{
         return pred;
     }
 
+    /**
+     * predict from a distribution that is already computed
+     * @param bmDistribution full distribution of the vector, see CBM.computeBM()
+     */
+    public MultiLabel predict(BMDistribution bmDistribution) {
+        switch (predictionMode){
+            case "support":
+                BMDistribution thresholded = bmDistribution.threshold(piThreshold);
+                double[] probs = support.stream().mapToDouble(multiLabel -> Math.exp(thresholded.logProbability(multiLabel)))
+                        .toArray();
+                return predictBySupport(probs);
+            case "sampling":
+                return predictBySampling(bmDistribution.sample(numSamples));
+            default:
+                throw new IllegalArgumentException("unknown mode");
+        }
+    }
+
     private MultiLabel predictBySampling(Vector vector){
         List<MultiLabel> samples = cbm.samples(vector, numSamples);
+        return predictBySampling(samples);
+    }
+
+    private MultiLabel predictBySampling(List<MultiLabel> samples){
         GeneralF1Predictor generalF1Predictor = new GeneralF1Predictor();
         generalF1Predictor.setMaxSize(maxSize);
         return generalF1Predictor.predict(cbm.getNumClasses(), samples);
@@ -97,6 +119,10 @@ public class PluginF1 implements PluginPredictor<CBM>{
 
     private MultiLabel predictBySupport(Vector vector){
         double[] probs = cbm.predictAssignmentProbs(vector,support, piThreshold);
+        return predictBySupport(probs);
+    }
+
+    private MultiLabel predictBySupport(double[] probs){
         GeneralF1Predictor generalF1Predictor = new GeneralF1Predictor();
         generalF1Predictor.setMaxSize(maxSize);
         return generalF1Predictor.predict(cbm.getNumClasses(),support,probs);
@@ -8,6 +8,7 @@ import edu.neu.ccs.pyramid.classification.logistic_regression.ElasticNetLogistic
 import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticLoss;
 import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticRegression;
 import edu.neu.ccs.pyramid.classification.logistic_regression.RidgeLogisticOptimizer;
+import edu.neu.ccs.pyramid.dataset.DataSetUtil;
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
 import edu.neu.ccs.pyramid.eval.Entropy;
@@ -37,13 +38,8 @@ public class SparkCBMOptimizer {
     private Terminator terminator;
 
     // format [#data][#components]
+    // columns and binary targets are derived once per pass over the binary classifiers, see gammaColumns and targetsDistribution
     double[][] gammas;
-    // format [#components][#data]
-    double[][] gammasT;
-
-    // format [#labels][#data][2]
-    // to be fit by binary classifiers
-    private double[][][] targetsDistributions;
 
 
     // for deterministic annealing
@@ -75,7 +71,6 @@ public class SparkCBMOptimizer {
     //spark
     private JavaSparkContext sparkContext;
     private Broadcast<MultiLabelClfDataSet> dataSetBroadCast;
-    private Broadcast<double[][][]> targetDisBroadCast;
 
 
 
@@ -86,32 +81,16 @@ public class SparkCBMOptimizer {
         this.terminator.setGoal(Terminator.Goal.MINIMIZE);
 
         this.gammas = new double[dataSet.getNumDataPoints()][cbm.getNumComponents()];
-        this.gammasT = new double[cbm.getNumComponents()][dataSet.getNumDataPoints()];
         double average = 1.0/ cbm.getNumComponents();
         for (int n=0;n<dataSet.getNumDataPoints();n++){
             for (int k = 0; k< cbm.getNumComponents(); k++){
                 gammas[n][k] = average;
-                gammasT[k][n] = average;
-            }
-        }
-
-
-        this.targetsDistributions = new double[cbm.getNumClasses()][dataSet.getNumDataPoints()][2];
-        for (int n=0; n<dataSet.getNumDataPoints(); n++) {
-            // first mark all labels as negative
-            for (int l=0;l<cbm.getNumClasses(); l++){
-                this.targetsDistributions[l][n][0] = 1;
-            }
-            MultiLabel multiLabel = dataSet.getMultiLabels()[n];
-            for (int l: multiLabel.getMatchedLabels()){
-                this.targetsDistributions[l][n][0] = 0;
-                this.targetsDistributions[l][n][1] = 1;
             }
         }
 
         this.sparkContext = sparkContext;
+        // the executors build the binary targets from the multi-labels of the broadcast data set
         this.dataSetBroadCast = sparkContext.broadcast(dataSet);
-        this.targetDisBroadCast = sparkContext.broadcast(targetsDistributions);
     }
 
     public void setPriorVarianceMultiClass(double priorVarianceMultiClass) {
@@ -193,7 +172,6 @@ public class SparkCBMOptimizer {
         double[] posterior = cbm.posteriorMembership(x, y);
         for (int k=0; k<cbm.numComponents; k++) {
             gammas[n][k] = posterior[k];
-            gammasT[k][n] = posterior[k];
         }
     }
 
@@ -217,31 +195,42 @@ public class SparkCBMOptimizer {
 
 
         Classifier.ProbabilityEstimator[][] localBinaryClassifiers = cbm.binaryClassifiers;
-        double[][] localGammasT  = gammasT;
         Broadcast<MultiLabelClfDataSet> localDataSetBroadcast = dataSetBroadCast;
-        Broadcast<double[][][]> localTargetsBroadcast = targetDisBroadCast;
         double localVariance = priorVarianceBinary;
 
 
+        // the gamma columns are shipped once, not with every task
+        Broadcast<double[][]> gammaColumnsBroadcast = sparkContext.broadcast(gammaColumns());
+
+        // one task per label, so that the targets of the label are built once and shared by the components
         List<BinaryTask> binaryTaskList = new ArrayList<>();
-        for (int k=0;k<cbm.numComponents;k++){
-            for (int l=0;l<cbm.numLabels;l++){
-                LogisticRegression logisticRegression = (LogisticRegression)localBinaryClassifiers[k][l];
-                double[] weights = localGammasT[k];
-                binaryTaskList.add(new BinaryTask(k,l, logisticRegression, weights));
+        for (int l=0;l<cbm.numLabels;l++){
+            LogisticRegression[] logisticRegressions = new LogisticRegression[cbm.numComponents];
+            for (int k=0;k<cbm.numComponents;k++){
+                logisticRegressions[k] = (LogisticRegression)localBinaryClassifiers[k][l];
             }
+            binaryTaskList.add(new BinaryTask(l, logisticRegressions));
         }
 
         JavaRDD<BinaryTask> binaryTaskRDD = sparkContext.parallelize(binaryTaskList, binaryTaskList.size());
-        List<BinaryTaskResult> results = binaryTaskRDD.map(binaryTask-> {
+        List<BinaryTaskResult> results = binaryTaskRDD.flatMap(binaryTask-> {
             int labelIndex = binaryTask.classIndex;
             //todo move this to rdd
             // each element in rdd should contain its full information
-            return updateBinaryLogisticRegression(binaryTask.componentIndex, binaryTask.classIndex, binaryTask.logisticRegression,
-                    localDataSetBroadcast.value(), binaryTask.weights, localTargetsBroadcast.value()[labelIndex],localVariance);
-
+            MultiLabelClfDataSet localDataSet = localDataSetBroadcast.value();
+            double[][] localGammaColumns = gammaColumnsBroadcast.value();
+            double[][] targets = targetsDistribution(localDataSet, labelIndex);
+            List<BinaryTaskResult> labelResults = new ArrayList<>();
+            for (int k=0;k<binaryTask.logisticRegressions.length;k++){
+                labelResults.add(updateBinaryLogisticRegression(k, labelIndex, binaryTask.logisticRegressions[k],
+                        localDataSet, localGammaColumns[k], targets, localVariance));
+            }
+            return labelResults.iterator();
         })
         .collect();
+        gammaColumnsBroadcast.unpersist();
+        // the packed form would not follow the new classifiers
+        cbm.unpackBinaryClassifiers();
         for (BinaryTaskResult result: results){
             cbm.binaryClassifiers[result.componentIndex][result.classIndex] = result.binaryClassifier;
         }
@@ -290,6 +279,27 @@ public class SparkCBMOptimizer {
 
 
 
+    /**
+     * gammas of all data points for each component, format [#components][#data]
+     */
+    private double[][] gammaColumns(){
+        double[][] columns = new double[cbm.numComponents][dataSet.getNumDataPoints()];
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (int k=0;k<cbm.numComponents;k++){
+                columns[k][i] = gammas[i][k];
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * binary targets of one label, format [#data][2]
+     * built from the multi-labels when the label is visited instead of being kept for all labels
+     */
+    private static double[][] targetsDistribution(MultiLabelClfDataSet dataSet, int labelIndex){
+        return DataSetUtil.labelsToDistributions(DataSetUtil.toBinaryLabels(dataSet.getMultiLabels(), labelIndex), 2);
+    }
+
     private static BinaryTaskResult updateBinaryLogisticRegression(int componentIndex, int labelIndex, LogisticRegression logisticRegression,
                                                             MultiLabelClfDataSet dataSet, double[] weights,
                                                             double[][] targets, double variance){
@@ -409,45 +419,52 @@ public class SparkCBMOptimizer {
 
 
     private double binaryObj(){
-        return IntStream.range(0, cbm.numComponents).mapToDouble(this::binaryObj).sum();
+        double[][] gammaColumns = gammaColumns();
+        return IntStream.range(0, cbm.numLabels).parallel().mapToDouble(l->binaryObj(l, gammaColumns)).sum();
     }
 
-    private double binaryObj(int clusterIndex){
-        return IntStream.range(0, cbm.numLabels).parallel().mapToDouble(l->binaryObj(clusterIndex,l)).sum();
+    /**
+     * objective of the classifiers of one label in all components, sharing the targets of the label
+     */
+    private double binaryObj(int classIndex, double[][] gammaColumns){
+        double[][] targets = targetsDistribution(dataSet, classIndex);
+        double sum = 0;
+        for (int k=0;k<cbm.numComponents;k++){
+            sum += binaryObj(k, classIndex, gammaColumns[k], targets);
+        }
+        return sum;
     }
 
-    private double binaryObj(int clusterIndex, int classIndex){
+    private double binaryObj(int clusterIndex, int classIndex, double[] weights, double[][] targets){
         String type = cbm.getBinaryClassifierType();
         switch (type){
             case "lr":
-                return binaryLRObj(clusterIndex, classIndex);
+                return binaryLRObj(clusterIndex, classIndex, weights, targets);
             case "boost":
-                return binaryBoostObj(clusterIndex, classIndex);
+                return binaryBoostObj(clusterIndex, classIndex, weights, targets);
             case "elasticnet":
                 // todo
-                return binaryLRELObj(clusterIndex, classIndex);
+                return binaryLRELObj(clusterIndex, classIndex, weights, targets);
             default:
                 throw new IllegalArgumentException("unknown type: " + type);
         }
     }
 
-    private double binaryLRELObj(int clusterIndex, int classIndex) {
+    private double binaryLRELObj(int clusterIndex, int classIndex, double[] weights, double[][] targets) {
         LogisticLoss logisticLoss = new LogisticLoss((LogisticRegression) cbm.binaryClassifiers[clusterIndex][classIndex],
-                dataSet, gammasT[clusterIndex], targetsDistributions[classIndex], regularizationBinary, l1RatioBinary, false);
+                dataSet, weights, targets, regularizationBinary, l1RatioBinary, false);
         return logisticLoss.getValueEL();
     }
 
     // consider regularization penalty
-    private double binaryLRObj(int clusterIndex, int classIndex) {
+    private double binaryLRObj(int clusterIndex, int classIndex, double[] weights, double[][] targets) {
         LogisticLoss logisticLoss = new LogisticLoss((LogisticRegression) cbm.binaryClassifiers[clusterIndex][classIndex],
-                dataSet, gammasT[clusterIndex], targetsDistributions[classIndex], priorVarianceBinary, false);
+                dataSet, weights, targets, priorVarianceBinary, false);
         return logisticLoss.getValue();
     }
 
-    private double binaryBoostObj(int clusterIndex, int classIndex){
+    private double binaryBoostObj(int clusterIndex, int classIndex, double[] weights, double[][] targets){
         Classifier.ProbabilityEstimator estimator = cbm.binaryClassifiers[clusterIndex][classIndex];
-        double[][] targets = targetsDistributions[classIndex];
-        double[] weights = gammasT[clusterIndex];
         return KLDivergence.kl(estimator, dataSet, targets, weights);
     }
 
@@ -547,17 +564,14 @@ public class SparkCBMOptimizer {
     }
 
     private static class BinaryTask implements Serializable{
-        public BinaryTask(int componentIndex, int classIndex, LogisticRegression logisticRegression, double[] weights) {
-            this.componentIndex = componentIndex;
+        public BinaryTask(int classIndex, LogisticRegression[] logisticRegressions) {
             this.classIndex = classIndex;
-            this.logisticRegression = logisticRegression;
-            this.weights = weights;
+            this.logisticRegressions = logisticRegressions;
         }
 
-        int componentIndex;
         int classIndex;
-        LogisticRegression logisticRegression;
-        double[] weights;
+        // one per component
+        LogisticRegression[] logisticRegressions;
     }
 
 
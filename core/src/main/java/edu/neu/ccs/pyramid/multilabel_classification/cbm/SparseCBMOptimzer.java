@@ -84,6 +84,8 @@ public class SparseCBMOptimzer {
     }
 
     public void updateAllBinary(){
+        // the packed form would not follow the updates
+        cbm.unpackBinaryClassifiers();
         for (int k=0;k<cbm.getNumComponents();k++){
             updateEffectiveData(k);
             final int com = k;
@@ -86,6 +86,7 @@ public class HMLGBTrainer {
              * parallel by data
              */
             this.updateClassScores(regressor, k);
+            releaseTrainingAssignment(regressor);
         }
 
         /**
@@ -156,10 +157,29 @@ public class HMLGBTrainer {
     private void updateClassScores(Regressor regressor, int k){
         DataSet dataSet= this.config.getDataSet();
         int numDataPoints = dataSet.getNumDataPoints();
+        // a freshly trained tree already knows which leaves the training data reach
+        if (regressor instanceof RegressionTree && ((RegressionTree)regressor).hasTrainingAssignment(dataSet)){
+            RegressionTree tree = (RegressionTree)regressor;
+            double[] predictions = tree.predictTrainingData(dataSet);
+            IntStream.range(0, numDataPoints).parallel()
+                    .forEach(dataIndex -> this.scoreMatrix.increment(dataIndex,k,predictions[dataIndex]));
+            return;
+        }
         IntStream.range(0, numDataPoints).parallel()
                 .forEach(dataIndex -> this.updateClassScore(regressor, k, dataIndex));
     }
 
+    /**
+     * the tree is final once it is added and the scores are updated,
+     * the leaves reached by the training data are no longer needed
+     * @param regressor
+     */
+    private static void releaseTrainingAssignment(Regressor regressor){
+        if (regressor instanceof RegressionTree){
+            ((RegressionTree)regressor).releaseTrainingAssignment();
+        }
+    }
+
     /**
      * update one score
      * @param regressor
@@ -57,9 +57,26 @@ public class BucketInfo {
 
 
     public void add(Pair<Double,Integer> pair){
-        final int numBuckets = this.counts.length;
+        add(pair.getFirst(), pair.getSecond());
+    }
+
+    /**
+     * add one prediction without boxing
+     * @param prob predicted probability in [0,1]
+     * @param label 1 if the prediction is correct, 0 otherwise
+     */
+    public void add(double prob, double label){
+        int index = bucketIndex(prob, this.counts.length);
+        this.counts[index] += 1;
+        this.sumProbs[index] += prob;
+        this.sums[index] += label;
+    }
+
+    /**
+     * equal-width buckets over [0,1]; out-of-range probabilities go to the first or last bucket
+     */
+    public static int bucketIndex(double prob, int numBuckets){
         double bucketLength = 1.0/numBuckets;
-        double prob = pair.getFirst();
         int index = (int)Math.floor(prob/bucketLength);
         if (index<0){
             index=0;
@@ -67,9 +84,20 @@ public class BucketInfo {
         if (index>=numBuckets){
             index = numBuckets-1;
         }
-        this.counts[index] += 1;
-        this.sumProbs[index] += prob;
-        this.sums[index]+=pair.getSecond();
+        return index;
+    }
+
+    /**
+     * @return centers of the buckets
+     */
+    public double[] getLocations(){
+        final int numBuckets = this.counts.length;
+        double bucketLength = 1.0/numBuckets;
+        double[] locations = new double[numBuckets];
+        for (int i=0;i<numBuckets;i++){
+            locations[i]= i*bucketLength + 0.5*bucketLength;
+        }
+        return locations;
     }
 
 //    public static BucketInfo addTo(BucketInfo bucketInfo, Pair<Double,Integer> pair){
@@ -16,6 +16,7 @@ public class IMLGBConfig {
     private int numSplitIntervals;
     private boolean usePrior;
     private int numActiveFeatures;
+    private boolean histogramSplit;
 
     boolean usePrior() {
         return usePrior;
@@ -46,6 +47,10 @@ public class IMLGBConfig {
         return numActiveFeatures;
     }
 
+    boolean isHistogramSplit() {
+        return histogramSplit;
+    }
+
     public static class Builder {
         /**
          * required
@@ -61,6 +66,7 @@ public class IMLGBConfig {
         private int numSplitIntervals =100;
         private boolean usePrior = true;
         private int numActiveFeatures=20;
+        private boolean histogramSplit = false;
 
         public Builder(MultiLabelClfDataSet dataSet) {
             this.dataSet = dataSet;
@@ -97,6 +103,14 @@ public class IMLGBConfig {
             return this;
         }
 
+        /**
+         * search splits over bins computed once per data set
+         */
+        public Builder histogramSplit(boolean histogramSplit) {
+            this.histogramSplit = histogramSplit;
+            return this;
+        }
+
         //todo add setter for active featureList
 
         public IMLGBConfig build() {
@@ -115,5 +129,6 @@ public class IMLGBConfig {
         this.numSplitIntervals = builder.numSplitIntervals;
         this.usePrior = builder.usePrior;
         this.numActiveFeatures = builder.numActiveFeatures;
+        this.histogramSplit = builder.histogramSplit;
     }
 }
@@ -252,8 +252,7 @@ public class IMLGBInspector {
         if (pluginPredictor instanceof HammingPredictor || pluginPredictor instanceof MacroF1Predictor){
             labelSetRanking = new ArrayList<>();
             DynamicProgramming dp = new DynamicProgramming(classProbs);
-            for (int c=0;c<labelSetLimit;c++){
-                DynamicProgramming.Candidate candidate = dp.nextHighest();
+            for (DynamicProgramming.Candidate candidate: dp.nextHighest(labelSetLimit)){
                 MultiLabel multiLabel = candidate.getMultiLabel();
                 double setProb = candidate.getProbability();
                 MultiLabelPredictionAnalysis.LabelSetProbInfo labelSetProbInfo = new MultiLabelPredictionAnalysis.LabelSetProbInfo(multiLabel, setProb, labelTranslator);
@@ -3,18 +3,15 @@ package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
 import edu.neu.ccs.pyramid.regression.IsotonicRegression;
-import edu.neu.ccs.pyramid.util.Pair;
 import org.apache.mahout.math.Vector;
 import scala.Serializable;
 
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 public class IMLGBIsotonicScaling implements Serializable{
     private static final long serialVersionUID = 1L;
+    private static final int NUM_BUCKETS = 10000;
     private IsotonicRegression isotonicRegression;
     private IMLGradientBoosting boosting;
 
@@ -22,21 +19,16 @@ public class IMLGBIsotonicScaling implements Serializable{
 //        System.out.println("calibrating with isotonic regression");
         this.boosting = boosting;
         List<MultiLabel> allAssignments = boosting.getAssignments();
-        Stream<Pair<Double,Integer>> stream =  IntStream.range(0, multiLabelClfDataSet.getNumDataPoints()).parallel()
-                .boxed().flatMap(i-> {
+        // each thread accumulates into its own buckets, which are merged at the end
+        BucketInfo total = IntStream.range(0, multiLabelClfDataSet.getNumDataPoints()).parallel()
+                .collect(() -> new BucketInfo(NUM_BUCKETS), (bucketInfo, i) -> {
                     double[] probs = boosting.predictAllAssignmentProbsWithConstraint(multiLabelClfDataSet.getRow(i));
-                    Stream<Pair<Double,Integer>> pairs = IntStream.range(0, probs.length).mapToObj(a -> {
-                        Pair<Double, Integer> pair = new Pair<>();
-                        pair.setFirst(probs[a]);
-                        pair.setSecond(0);
-                        if (allAssignments.get(a).equals(multiLabelClfDataSet.getMultiLabels()[i])) {
-                            pair.setSecond(1);
-                        }
-                        return pair;
-                    });
-                    return pairs;
-                });
-        isotonicRegression = new IsotonicRegression(stream);
+                    int truth = allAssignments.indexOf(multiLabelClfDataSet.getMultiLabels()[i]);
+                    for (int a=0;a<probs.length;a++){
+                        bucketInfo.add(probs[a], a==truth ? 1 : 0);
+                    }
+                }, BucketInfo::addAll);
+        isotonicRegression = new IsotonicRegression(total);
     }
 
 
@@ -1,5 +1,6 @@
 package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
 
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
 import edu.neu.ccs.pyramid.regression.IsotonicRegression;
 
@@ -19,45 +20,13 @@ public class IMLGBLabelIsotonicScaling implements Serializable {
         for (int l= 0; l < imlGradientBoosting.getNumClasses(); l++) {
             final int calssIndex = l;
             final int numBuckets = 10000;
-            double bucketLength = 1.0 / numBuckets;
-            double[] locations = new double[numBuckets];
-            for (int j = 0; j < numBuckets; j++) {
-                locations[j] = j * bucketLength + 0.5 * bucketLength;
-            }
-            BucketInfo empty = new BucketInfo(numBuckets);
-            BucketInfo total;
-            total = IntStream.range(0, multiLabelClfDataSet.getNumDataPoints()).parallel()
-                    .mapToObj(i -> {
+            // each thread accumulates into its own buckets, which are merged at the end
+            BucketInfo total = IntStream.range(0, multiLabelClfDataSet.getNumDataPoints()).parallel()
+                    .collect(() -> new BucketInfo(numBuckets), (bucketInfo, i) -> {
                         double prob = imlGradientBoosting.predictClassProb(multiLabelClfDataSet.getRow(i), calssIndex);
-                        double[] count = new double[numBuckets];
-                        double[] sum = new double[numBuckets];
-                        double[] sumProbs = new double[numBuckets];
-                        int index = (int) Math.floor(prob / bucketLength);
-                        if (index < 0) {
-                            index = 0;
-                        }
-                        if (index >= numBuckets) {
-                            index = numBuckets - 1;
-                        }
-                        count[index] += 1;
-                        sumProbs[index] += prob;
-                        if (multiLabelClfDataSet.getMultiLabels()[i].matchClass(calssIndex)) {
-                            sum[index] += 1;
-                        } else {
-                            sum[index] += 0;
-                        }
-
-                        return new BucketInfo(count, sum, sumProbs);
-                    }).collect(()->new BucketInfo(numBuckets), BucketInfo::addAll, BucketInfo::addAll);
-            double[] counts = total.counts;
-            double[] sums = total.sums;
-            double[] accs = new double[counts.length];
-            for (int k = 0; k < counts.length; k++) {
-                if (counts[k] != 0) {
-                    accs[k] = sums[k] / counts[k];
-                }
-            }
-            IsotonicRegression isotonicRegression = new IsotonicRegression(locations, accs, counts);
+                        bucketInfo.add(prob, multiLabelClfDataSet.getMultiLabels()[i].matchClass(calssIndex) ? 1 : 0);
+                    }, BucketInfo::addAll);
+            IsotonicRegression isotonicRegression = new IsotonicRegression(total);
             isotonicRegressionList.add(isotonicRegression);
         }
     }
@@ -75,36 +44,14 @@ public class IMLGBLabelIsotonicScaling implements Serializable {
 
     public BucketInfo getBucketInfo(MultiLabelClfDataSet multiLabelClfDataSet){
         final int numBuckets = 10;
-        double bucketLength = 1.0/numBuckets;
-
-        BucketInfo empty = new BucketInfo(numBuckets);
-        BucketInfo total;
-        total = IntStream.range(0, multiLabelClfDataSet.getNumDataPoints()).parallel()
-                .mapToObj(i->{
+        BucketInfo total = IntStream.range(0, multiLabelClfDataSet.getNumDataPoints()).parallel()
+                .collect(() -> new BucketInfo(numBuckets), (bucketInfo, i) -> {
                     double[] probs = imlGradientBoosting.predictClassProbs(multiLabelClfDataSet.getRow(i));
-                    double[] calibratedProbs = IntStream.range(0, probs.length)
-                            .mapToDouble(j->isotonicRegressionList.get(j).predict(probs[j])).toArray();
-                    double[] count = new double[numBuckets];
-                    double[] sum = new double[numBuckets];
-                    double[] sumProbs = new double[numBuckets];
+                    MultiLabel multiLabel = multiLabelClfDataSet.getMultiLabels()[i];
                     for (int a=0;a<probs.length;a++){
-                        int index = (int)Math.floor(calibratedProbs[a]/bucketLength);
-                        if (index<0){
-                            index=0;
-                        }
-                        if (index>=numBuckets){
-                            index = numBuckets-1;
-                        }
-                        count[index] += 1;
-                        sumProbs[index] += calibratedProbs[a];
-                        if (multiLabelClfDataSet.getMultiLabels()[i].matchClass(a)){
-                            sum[index] += 1;
-                        } else {
-                            sum[index] += 0;
-                        }
+                        bucketInfo.add(isotonicRegressionList.get(a).predict(probs[a]), multiLabel.matchClass(a) ? 1 : 0);
                     }
-                    return new BucketInfo(count, sum, sumProbs);
-                }).collect(()->new BucketInfo(numBuckets), BucketInfo::addAll, BucketInfo::addAll);
+                }, BucketInfo::addAll);
         return total;
     }
 
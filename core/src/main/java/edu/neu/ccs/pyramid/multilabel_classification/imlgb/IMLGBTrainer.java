@@ -109,6 +109,7 @@ public class IMLGBTrainer {
                         this.boosting.addRegressor(regressor, k);
 
                         this.updateStagedClassScores(regressor,k);
+                        releaseTrainingAssignment(regressor);
                     }
                 });
     }
@@ -127,6 +128,7 @@ public class IMLGBTrainer {
                         this.boosting.addRegressor(regressor, k);
 
                         this.updateStagedClassScores(regressor,k);
+                        releaseTrainingAssignment(regressor);
                     }
                 });
 
@@ -141,6 +143,7 @@ public class IMLGBTrainer {
                         this.boosting.addRegressor(regressor, k);
 
                         this.updateStagedClassScores(regressor,k);
+                        releaseTrainingAssignment(regressor);
                     }
                 });
         }
@@ -159,6 +162,7 @@ public class IMLGBTrainer {
                             }
                             Regressor regressor = this.fitClassK(k, activeFeatureLists[k], true);
                             this.boosting.addRegressor(regressor, k);
+                            releaseTrainingAssignment(regressor);
                         }
                     });
 
@@ -172,6 +176,7 @@ public class IMLGBTrainer {
                             }
                             Regressor regressor = this.fitClassK(k, activeFeatureLists[k], false);
                             this.boosting.addRegressor(regressor, k);
+                            releaseTrainingAssignment(regressor);
                         }
                     });
 
@@ -269,10 +274,30 @@ public class IMLGBTrainer {
     private void updateStagedClassScores(Regressor regressor, int k){
         DataSet dataSet= this.config.getDataSet();
         int numDataPoints = dataSet.getNumDataPoints();
+        // a freshly trained tree already knows which leaves the training data reach
+        if (regressor instanceof RegressionTree && ((RegressionTree)regressor).hasTrainingAssignment(dataSet)){
+            RegressionTree tree = (RegressionTree)regressor;
+            double[] predictions = tree.predictTrainingData(dataSet);
+            for (int dataIndex=0;dataIndex<numDataPoints;dataIndex++){
+                this.scoreMatrix.increment(dataIndex,k,predictions[dataIndex]);
+            }
+            return;
+        }
         IntStream.range(0, numDataPoints)
                 .forEach(dataIndex -> this.updateStagedClassScore(regressor, k, dataIndex));
     }
 
+    /**
+     * the tree is final once it is added and the scores are staged (if at all),
+     * the leaves reached by the training data are no longer needed
+     * @param regressor
+     */
+    private static void releaseTrainingAssignment(Regressor regressor){
+        if (regressor instanceof RegressionTree){
+            ((RegressionTree)regressor).releaseTrainingAssignment();
+        }
+    }
+
     /**
      * update one score
      * @param regressor
@@ -342,6 +367,7 @@ public class IMLGBTrainer {
             regTreeConfig.setNumSplitIntervals(this.config.getNumSplitIntervals());
             regTreeConfig.setParallel(false);
             regTreeConfig.setNumActiveFeatures(this.config.getNumActiveFeatures());
+            regTreeConfig.setHistogramSplit(this.config.isHistogramSplit());
 
             RegressionTree regressionTree = ActiveRegTreeTrainer.fit(regTreeConfig,
                     this.config.getDataSet(),
@@ -367,6 +393,7 @@ public class IMLGBTrainer {
             regTreeConfig.setNumSplitIntervals(this.config.getNumSplitIntervals());
             regTreeConfig.setParallel(false);
             regTreeConfig.setNumActiveFeatures(this.config.getNumActiveFeatures());
+            regTreeConfig.setHistogramSplit(this.config.isHistogramSplit());
 
             RegressionTree regressionTree = ActiveRegTreeTrainer.fit(regTreeConfig,
                     this.config.getDataSet(),
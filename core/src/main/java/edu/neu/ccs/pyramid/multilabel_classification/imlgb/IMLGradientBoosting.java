@@ -1,11 +1,13 @@
 package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
 
 import edu.neu.ccs.pyramid.dataset.CachedAccessOnlyVector;
+import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.LabelTranslator;
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.feature.FeatureList;
 import edu.neu.ccs.pyramid.multilabel_classification.MultiLabelClassifier;
 import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.regression_tree.CompiledTreeEnsemble;
 import edu.neu.ccs.pyramid.util.MathUtil;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.RandomAccessSparseVector;
@@ -34,6 +36,10 @@ public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstim
     private LabelTranslator labelTranslator;
     @Deprecated
     private PredictFashion predictFashion = PredictFashion.INDEPENDENT;
+    /**
+     * compiled form used by batch prediction, dropped whenever regressors change
+     */
+    private transient volatile CompiledTreeEnsemble compiled;
 
     public IMLGradientBoosting(int numClasses) {
         this.numClasses = numClasses;
@@ -58,6 +64,7 @@ public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstim
 
     void addRegressor(Regressor regressor, int k){
         this.regressors.get(k).add(regressor);
+        this.compiled = null;
     }
 
 
@@ -112,6 +119,37 @@ public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstim
         return scores;
     }
 
+    /**
+     * batch prediction over blocks of rows
+     * trees are compiled once and evaluated tree by tree across each block
+     * the compiled form is reused until regressors are added or removed
+     * @param dataSet
+     * @return scores[dataIndex][classIndex]
+     */
+    public double[][] predictClassScores(DataSet dataSet){
+        CompiledTreeEnsemble compiledTrees = this.compiled;
+        if (compiledTrees==null){
+            compiledTrees = compile();
+            this.compiled = compiledTrees;
+        }
+        return compiledTrees.scores(dataSet);
+    }
+
+    /**
+     * batch prediction over blocks of rows
+     * @param dataSet
+     * @return probs[dataIndex][classIndex]
+     */
+    public double[][] predictClassProbs(DataSet dataSet){
+        double[][] scores = predictClassScores(dataSet);
+        IntStream.range(0, scores.length).parallel().forEach(i -> {
+            for (int k=0;k<numClasses;k++){
+                scores[i][k] = classProb(scores[i][k]);
+            }
+        });
+        return scores;
+    }
+
     public double[] predictClassScores(Vector vector, boolean[] shouldStop){
         int numClasses = this.numClasses;
         double[] scores = new double[numClasses];
@@ -125,13 +163,22 @@ public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstim
 
 
     double[] predictClassScoresCachedInput(Vector vector){
-        Vector cachedVector = new CachedAccessOnlyVector((RandomAccessSparseVector) vector);
-        return predictClassScores(cachedVector);
+        return predictClassScores(cached(vector));
     }
 
     double[] predictClassScoresCachedInput(Vector vector, boolean[] shouldStop){
-        Vector cachedVector = new CachedAccessOnlyVector((RandomAccessSparseVector) vector);
-        return predictClassScores(cachedVector, shouldStop);
+        return predictClassScores(cached(vector), shouldStop);
+    }
+
+    /**
+     * only hash-based vectors benefit from the value cache;
+     * other vectors, e.g. rows of a frozen data set, are used as they are
+     */
+    private static Vector cached(Vector vector){
+        if (vector instanceof RandomAccessSparseVector){
+            return new CachedAccessOnlyVector((RandomAccessSparseVector) vector);
+        }
+        return vector;
     }
 
 
@@ -139,16 +186,30 @@ public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstim
         return this.regressors.get(k);
     }
 
+    /**
+     * pack the regressors of all classes into primitive arrays for fast prediction
+     * the compiled form is a snapshot; regressors added later are not included
+     * @return one score per class
+     */
+    public CompiledTreeEnsemble compile(){
+        return CompiledTreeEnsemble.compile(regressors);
+    }
+
     public void cutTail(int classIndex, int numTreesToKeep){
         int size = getRegressors(classIndex).size();
         // assuming the first regressor is the prior
         getRegressors(classIndex).subList(numTreesToKeep+1, size).clear();
+        this.compiled = null;
     }
 
 
     //todo think about this when having assignments, maybe doesn't matter much
     public double predictClassProb(Vector vector, int classIndex){
         double score = predictClassScore(vector,classIndex);
+        return classProb(score);
+    }
+
+    private static double classProb(double score){
         double logNumerator = score;
         double[] scores = new double[2];
         scores[0] = 0;
@@ -62,6 +62,10 @@ public class EarlyStopper implements Serializable{
         return bestValue;
     }
 
+    public Goal getGoal() {
+        return goal;
+    }
+
     public enum Goal{
         MAXIMIZE, MINIMIZE
     }
@@ -0,0 +1,300 @@
+package edu.neu.ccs.pyramid.optimization;
+
+import edu.neu.ccs.pyramid.util.Serialization;
+import org.apache.commons.lang3.time.StopWatch;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/**
+ * hyper parameter search over candidates grouped in paths
+ * candidates of a path are tried one after another, and with warm starts, each one starts from the best model of
+ * the previous one, e.g. along a regularization path from strong to weak regularization; paths are tried concurrently;
+ * without warm starts, every candidate is a path of its own
+ * all trials, and the parallel streams inside them, run in one pool, so numThreads bounds the total number of threads;
+ * by default there is one thread, and candidates are tried one at a time
+ *
+ * each trial is monitored by its own early stopper, and iterations are counted from the start of the trial,
+ * without the iterations of its warm start model; with successive halving, a trial that reaches a rung
+ * (minIterations, minIterations*reduction, minIterations*reduction^2, ...) only continues if its best value so far
+ * is among the top 1/reduction of the values recorded at that rung; trials reach rungs asynchronously,
+ * so the first trial at each rung always continues
+ * the model at the best iteration of each trial is kept, so the best candidate does not need to be retrained
+ */
+public class TuningScheduler<H, M extends Serializable> {
+    private final Supplier<EarlyStopper> earlyStopperSupplier;
+    private final EarlyStopper.Goal goal;
+    private int monitorInterval = 1;
+    private int numThreads = 1;
+    private boolean warmStart = false;
+    // 0 disables successive halving
+    private int halvingMinIterations = 0;
+    private double halvingReduction = 3;
+
+    // values recorded at each rung
+    private List<List<Double>> rungs;
+    private Result<H> best;
+    private M bestModel;
+
+    /**
+     * @param earlyStopperSupplier creates a new early stopper for each trial
+     */
+    public TuningScheduler(Supplier<EarlyStopper> earlyStopperSupplier) {
+        this.earlyStopperSupplier = earlyStopperSupplier;
+        this.goal = earlyStopperSupplier.get().getGoal();
+    }
+
+    /**
+     * evaluate trials every k iterations
+     */
+    public void setMonitorInterval(int monitorInterval) {
+        this.monitorInterval = monitorInterval;
+    }
+
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public void setWarmStart(boolean warmStart) {
+        this.warmStart = warmStart;
+    }
+
+    /**
+     * number of iterations at the first rung; 0 disables successive halving
+     */
+    public void setHalvingMinIterations(int halvingMinIterations) {
+        this.halvingMinIterations = halvingMinIterations;
+    }
+
+    /**
+     * a fraction 1/reduction of the trials continues at each rung, and the next rung is reduction times further
+     */
+    public void setHalvingReduction(double halvingReduction) {
+        if (halvingReduction<=1){
+            throw new IllegalArgumentException("halvingReduction should be greater than 1");
+        }
+        this.halvingReduction = halvingReduction;
+    }
+
+    /**
+     * @param paths candidates grouped in paths
+     * @param trialFactory
+     * @return results of all candidates, in the order of the paths
+     */
+    public List<Result<H>> search(List<List<H>> paths, TrialFactory<H,M> trialFactory) throws Exception{
+        List<List<H>> scheduled = paths;
+        if (!warmStart){
+            scheduled = new ArrayList<>();
+            for (List<H> path: paths){
+                for (H candidate: path){
+                    List<H> single = new ArrayList<>();
+                    single.add(candidate);
+                    scheduled.add(single);
+                }
+            }
+        }
+        rungs = new ArrayList<>();
+        best = null;
+        bestModel = null;
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            List<ForkJoinTask<List<Result<H>>>> tasks = new ArrayList<>();
+            for (List<H> path: scheduled){
+                tasks.add(pool.submit(() -> runPath(path, trialFactory)));
+            }
+            List<Result<H>> results = new ArrayList<>();
+            for (ForkJoinTask<List<Result<H>>> task: tasks){
+                results.addAll(task.get());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return best result of the last search
+     */
+    public Result<H> getBest() {
+        return best;
+    }
+
+    /**
+     * @return model at the best iteration of the best candidate of the last search
+     */
+    public M getBestModel() {
+        return bestModel;
+    }
+
+    private List<Result<H>> runPath(List<H> path, TrialFactory<H,M> trialFactory) throws Exception{
+        List<Result<H>> results = new ArrayList<>();
+        M previous = null;
+        int previousIterations = 0;
+        for (H candidate: path){
+            StopWatch stopWatch = new StopWatch();
+            stopWatch.start();
+            M start = null;
+            int offset = 0;
+            if (previous!=null){
+                // the previous model may also be the best model, so the trial gets a copy
+                start = copy(previous);
+                offset = previousIterations;
+            }
+            Trial<M> trial = trialFactory.newTrial(candidate, start);
+            EarlyStopper earlyStopper = earlyStopperSupplier.get();
+            M trialBestModel = null;
+            boolean pruned = false;
+            int rung = 0;
+            // iterations of this trial, so that warm started trials reach the rungs like the others
+            for (int iter=1;true;iter++){
+                trial.iterate();
+                if (iter%monitorInterval==0){
+                    earlyStopper.add(iter, trial.evaluate());
+                    if (earlyStopper.getBestIteration()==iter){
+                        trialBestModel = copy(trial.getModel());
+                    }
+                    if (earlyStopper.shouldStop()){
+                        break;
+                    }
+                    if (halvingMinIterations>0 && iter>=rungIterations(rung)){
+                        if (!promote(rung, earlyStopper.getBestValue())){
+                            pruned = true;
+                            break;
+                        }
+                        rung += 1;
+                    }
+                }
+            }
+            Result<H> result = new Result<>(candidate, earlyStopper.getBestIteration(), offset,
+                    earlyStopper.getBestValue(), pruned, stopWatch.getTime());
+            offer(result, trialBestModel);
+            results.add(result);
+            previous = trialBestModel;
+            previousIterations = offset+result.bestIteration;
+        }
+        return results;
+    }
+
+    private int rungIterations(int rung){
+        return (int)Math.round(halvingMinIterations*Math.pow(halvingReduction, rung));
+    }
+
+    /**
+     * record the value at the rung
+     * @return whether the value is among the top 1/reduction of the values recorded so far
+     */
+    private synchronized boolean promote(int rung, double value){
+        while (rungs.size()<=rung){
+            rungs.add(new ArrayList<>());
+        }
+        List<Double> values = rungs.get(rung);
+        values.add(value);
+        int numPromoted = (int)Math.ceil(values.size()/halvingReduction);
+        long numBetter = values.stream().filter(v -> isBetter(v, value)).count();
+        return numBetter<numPromoted;
+    }
+
+    private synchronized void offer(Result<H> result, M model){
+        if (best==null || isBetter(result.bestValue, best.bestValue)){
+            best = result;
+            bestModel = model;
+        }
+    }
+
+    private boolean isBetter(double value, double reference){
+        if (goal==EarlyStopper.Goal.MAXIMIZE){
+            return value>reference;
+        } else {
+            return value<reference;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private M copy(M model) throws Exception{
+        return (M) Serialization.deepCopy(model);
+    }
+
+    /**
+     * training of one candidate
+     */
+    public interface Trial<M> {
+        /**
+         * one training iteration
+         */
+        void iterate();
+
+        /**
+         * @return validation value of the current model
+         */
+        double evaluate();
+
+        M getModel();
+    }
+
+    @FunctionalInterface
+    public interface TrialFactory<H,M> {
+        /**
+         * @param candidate
+         * @param warmStart model to start from, owned by the trial; null if the trial starts from scratch
+         */
+        Trial<M> newTrial(H candidate, M warmStart) throws Exception;
+    }
+
+    public static class Result<H> {
+        private final H candidate;
+        private final int bestIteration;
+        private final int warmStartIterations;
+        private final double bestValue;
+        private final boolean pruned;
+        private final long time;
+
+        Result(H candidate, int bestIteration, int warmStartIterations, double bestValue, boolean pruned, long time) {
+            this.candidate = candidate;
+            this.bestIteration = bestIteration;
+            this.warmStartIterations = warmStartIterations;
+            this.bestValue = bestValue;
+            this.pruned = pruned;
+            this.time = time;
+        }
+
+        public H getCandidate() {
+            return candidate;
+        }
+
+        /**
+         * @return best iteration, counted from the start of the trial, without the iterations of the warm start model
+         */
+        public int getBestIteration() {
+            return bestIteration;
+        }
+
+        /**
+         * @return total iterations behind the warm start model; 0 if the trial started from scratch
+         */
+        public int getWarmStartIterations() {
+            return warmStartIterations;
+        }
+
+        public double getBestValue() {
+            return bestValue;
+        }
+
+        /**
+         * @return whether the trial was stopped by successive halving
+         */
+        public boolean isPruned() {
+            return pruned;
+        }
+
+        /**
+         * @return time spent on the trial in milliseconds
+         */
+        public long getTime() {
+            return time;
+        }
+    }
+}
@@ -84,10 +84,29 @@ public abstract class GBOptimizer {
 
     protected void updateStagedScores(Regressor regressor, int ensembleIndex){
         int numDataPoints = dataSet.getNumDataPoints();
+        // a freshly trained tree already knows which leaves the training data reach
+        if (regressor instanceof RegressionTree && ((RegressionTree)regressor).hasTrainingAssignment(dataSet)){
+            RegressionTree tree = (RegressionTree)regressor;
+            double[] predictions = tree.predictTrainingData(dataSet);
+            IntStream.range(0, numDataPoints).parallel()
+                    .forEach(dataIndex -> this.scoreMatrix.increment(dataIndex,ensembleIndex,predictions[dataIndex]));
+            return;
+        }
         IntStream.range(0, numDataPoints).parallel()
                 .forEach(dataIndex -> this.updateStagedScore(regressor,ensembleIndex,dataIndex));
     }
 
+    /**
+     * the tree is final once it is added and the scores are staged,
+     * the leaves reached by the training data are no longer needed
+     * @param regressor
+     */
+    protected static void releaseTrainingAssignment(Regressor regressor){
+        if (regressor instanceof RegressionTree){
+            ((RegressionTree)regressor).releaseTrainingAssignment();
+        }
+    }
+
     public void iterate(){
         if (!isInitialized){
             throw new RuntimeException("GBOptimizer is not initialized");
@@ -97,6 +116,7 @@ public abstract class GBOptimizer {
             shrink(regressor);
             boosting.getEnsemble(k).add(regressor);
             updateStagedScores(regressor,k);
+            releaseTrainingAssignment(regressor);
         }
         updateOthers();
     }
@@ -1,11 +1,16 @@
 package edu.neu.ccs.pyramid.optimization.gradient_boosting;
 
+import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.feature.FeatureList;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.regression_tree.CompiledTreeEnsemble;
 import org.apache.mahout.math.Vector;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Created by chengli on 10/1/15.
@@ -15,6 +20,11 @@ public class GradientBoosting implements Serializable{
     protected int numEnsembles;
     protected List<Ensemble> ensembles;
     protected FeatureList featureList;
+    /**
+     * compiled form used by batch scoring, rebuilt once regressors are added or removed
+     */
+    private transient CompiledTreeEnsemble compiled;
+    private transient int[] compiledSizes;
 
     
     public GradientBoosting(int numEnsembles) {
@@ -46,6 +56,41 @@ public class GradientBoosting implements Serializable{
         return scores;
     }
 
+    /**
+     * batch scoring
+     * trees are compiled once and evaluated tree by tree over blocks of rows
+     * the compiled form is reused until the ensembles change size
+     * @param dataSet
+     * @return scores[dataIndex][ensembleIndex]
+     */
+    public double[][] scores(DataSet dataSet){
+        return compiled().scores(dataSet);
+    }
+
+    /**
+     * ensembles are modified through getEnsemble(), so changes are detected by their sizes
+     * regressors should not be modified in place once added
+     */
+    private synchronized CompiledTreeEnsemble compiled(){
+        int[] sizes = ensembles.stream().mapToInt(ensemble -> ensemble.getRegressors().size()).toArray();
+        if (compiled==null || !Arrays.equals(sizes, compiledSizes)){
+            compiled = compile();
+            compiledSizes = sizes;
+        }
+        return compiled;
+    }
+
+    /**
+     * pack all ensembles into primitive arrays for fast prediction
+     * the compiled form is a snapshot; regressors added later are not included
+     * @return one score per ensemble
+     */
+    public CompiledTreeEnsemble compile(){
+        List<List<Regressor>> regressors = ensembles.stream().map(Ensemble::getRegressors)
+                .collect(Collectors.toList());
+        return CompiledTreeEnsemble.compile(regressors);
+    }
+
     public FeatureList getFeatureList() {
         return featureList;
     }
@@ -59,7 +59,9 @@ public class IsotonicRegression implements Serializable{
     }
 
     public IsotonicRegression(WeightedInput weightedInput) {
-        this(weightedInput.locationNonEmpty, weightedInput.accsNonempty, weightedInput.countsNonEmpty);
+        // bucket locations are already sorted
+        this.locations = weightedInput.locationNonEmpty;
+        this.values = fit(weightedInput.accsNonempty, weightedInput.countsNonEmpty);
     }
 
 
@@ -68,6 +70,14 @@ public class IsotonicRegression implements Serializable{
         this(new WeightedInput(stream));
     }
 
+    /**
+     * fit on the accuracy of each non-empty bucket, weighted by its count
+     * @param bucketInfo predictions accumulated with BucketInfo.add(prob, label)
+     */
+    public IsotonicRegression(BucketInfo bucketInfo){
+        this(new WeightedInput(bucketInfo));
+    }
+
 
     public String displayCalibrationResult(Stream<Pair<Double, Integer>> stream){
         final int numBuckets = 10;
@@ -249,17 +259,11 @@ public class IsotonicRegression implements Serializable{
         private double[] countsNonEmpty;
 
         public WeightedInput(Stream<Pair<Double,Integer>> stream) {
-            final int numBuckets = 10000;
-            double bucketLength = 1.0/numBuckets;
-            double[] locations = new double[numBuckets];
-            for (int i=0;i<numBuckets;i++){
-                locations[i]= i*bucketLength + 0.5*bucketLength;
-            }
-
-
-            BucketInfo total;
-            total=stream.collect(()->new BucketInfo(numBuckets),BucketInfo::add, BucketInfo::addAll);
+            this(stream.collect(()->new BucketInfo(10000),BucketInfo::add, BucketInfo::addAll));
+        }
 
+        public WeightedInput(BucketInfo total) {
+            double[] locations = total.getLocations();
             double[] counts = total.counts;
             double[] sums = total.sums;
 
@@ -25,4 +25,16 @@ public class MedianOutputCalculator implements LeafOutputCalculator {
 //        double[] a = nonZeros.stream().mapToDouble(b->b).toArray();
 //        return MathUtil.median(a);
     }
+
+    /**
+     * data points outside the leaf have zero weights and never decide the weighted median
+     */
+    @Override
+    public double getLeafOutput(int[] dataIndices, double[] probabilities, double[] labels) {
+        double[] leafLabels = new double[dataIndices.length];
+        for (int k=0;k<dataIndices.length;k++){
+            leafLabels[k] = labels[dataIndices[k]];
+        }
+        return MathUtil.weightedMedian(leafLabels, probabilities);
+    }
 }
@@ -2,11 +2,9 @@ package edu.neu.ccs.pyramid.regression.regression_tree;
 
 import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.RegDataSet;
-import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
 import java.util.*;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 public class ActiveRegTreeTrainer {
@@ -56,14 +54,12 @@ public class ActiveRegTreeTrainer {
             tree.numNodes += 1;
 
 
+            TrainingBuffers buffers = new TrainingBuffers(dataSet.getNumDataPoints());
+
             //root gets all active data points
-            double[] rootProbs = new double[dataSet.getNumDataPoints()];
-            for (int dataPoint=0; dataPoint<dataSet.getNumDataPoints();dataPoint++){
-                rootProbs[dataPoint]=weights[dataPoint];
-            }
-            tree.root.setProbs(rootProbs);
+            tree.root.setMembership(Membership.root(weights));
             //parallel
-            updateNode(tree.root, regTreeConfig,dataSet,labels,activeFeatures,true);
+            updateNode(tree.root, regTreeConfig,dataSet,labels,weights,buffers,activeFeatures,true);
             tree.leaves.add(tree.root);
             tree.root.setLeaf(true);
             tree.allNodes.add(tree.root);
@@ -79,14 +75,15 @@ public class ActiveRegTreeTrainer {
                 Optional<Node> leafToSplitOptional = findLeafToSplit(tree.leaves);
                 if (leafToSplitOptional.isPresent()){
                     Node leafToSplit = leafToSplitOptional.get();
-                    splitNode(tree, leafToSplit,regTreeConfig,dataSet,labels, activeFeatures);
+                    splitNode(tree, leafToSplit,regTreeConfig,dataSet,labels,weights,buffers,activeFeatures);
                 } else {
                     break;
                 }
             }
 
             //parallel
-            setLeavesOutputs(regTreeConfig, tree.leaves,leafOutputCalculator, labels);
+            setLeavesOutputs(regTreeConfig, tree.leaves,leafOutputCalculator, labels, weights);
+            keepTrainingAssignment(tree, dataSet, weights);
             cleanLeaves(tree.leaves);
             normalizeReductions(tree,dataSet);
             return tree;
@@ -102,14 +99,12 @@ public class ActiveRegTreeTrainer {
             tree.numNodes += 1;
 
 
+            TrainingBuffers buffers = new TrainingBuffers(dataSet.getNumDataPoints());
+
             //root gets all active data points
-            double[] rootProbs = new double[dataSet.getNumDataPoints()];
-            for (int dataPoint=0; dataPoint<dataSet.getNumDataPoints();dataPoint++){
-                rootProbs[dataPoint]=weights[dataPoint];
-            }
-            tree.root.setProbs(rootProbs);
+            tree.root.setMembership(Membership.root(weights));
             //parallel
-            updateNode(tree.root, regTreeConfig,dataSet,labels,activeFeatures,false);
+            updateNode(tree.root, regTreeConfig,dataSet,labels,weights,buffers,activeFeatures,false);
             tree.leaves.add(tree.root);
             tree.root.setLeaf(true);
             tree.allNodes.add(tree.root);
@@ -125,14 +120,15 @@ public class ActiveRegTreeTrainer {
                 Optional<Node> leafToSplitOptional = findLeafToSplit(tree.leaves);
                 if (leafToSplitOptional.isPresent()){
                     Node leafToSplit = leafToSplitOptional.get();
-                    splitNode(tree, leafToSplit,regTreeConfig,dataSet,labels,activeFeatures);
+                    splitNode(tree, leafToSplit,regTreeConfig,dataSet,labels,weights,buffers,activeFeatures);
                 } else {
                     break;
                 }
             }
 
             //parallel
-            setLeavesOutputs(regTreeConfig, tree.leaves,leafOutputCalculator, labels);
+            setLeavesOutputs(regTreeConfig, tree.leaves,leafOutputCalculator, labels, weights);
+            keepTrainingAssignment(tree, dataSet, weights);
             cleanLeaves(tree.leaves);
             normalizeReductions(tree,dataSet);
             return tree;
@@ -166,21 +162,14 @@ public class ActiveRegTreeTrainer {
      * @param dataSet
      */
     private static void splitNode(RegressionTree tree, Node leafToSplit, RegTreeConfig regTreeConfig,
-                                  DataSet dataSet, double[] labels, List<Integer> activeFeatures) {
-        int numDataPoints = dataSet.getNumDataPoints();
-
+                                  DataSet dataSet, double[] labels, double[] weights,
+                                  TrainingBuffers buffers, List<Integer> activeFeatures) {
         /**
          * split this leaf node
          */
         int featureIndex = leafToSplit.getFeatureIndex();
         double threshold = leafToSplit.getThreshold();
-        Vector inputVector = dataSet.getColumn(featureIndex);
-        Vector columnVector;
-        if (inputVector.isDense()){
-            columnVector = inputVector;
-        } else {
-            columnVector = new DenseVector(inputVector);
-        }
+        Vector columnVector = dataSet.getColumn(featureIndex);
         /**
          * create children
          */
@@ -191,41 +180,22 @@ public class ActiveRegTreeTrainer {
         rightChild.setId(tree.numNodes);
         tree.numNodes += 1;
 
-        double[] parentProbs = leafToSplit.getProbs();
-        double[] leftProbs = new double[numDataPoints];
-        double[] rightProbs = new double[numDataPoints];
-        IntStream intStream = IntStream.range(0,numDataPoints);
-        if (regTreeConfig.isParallel()){
-            intStream = intStream.parallel();
-        }
-        intStream.forEach(i->{
-            double featureValue = columnVector.get(i);
-            if (Double.isNaN(featureValue)){
-                // go to both branches probabilistically
-                leftProbs[i] = parentProbs[i]*leafToSplit.getLeftProb();
-                rightProbs[i] = parentProbs[i]*leafToSplit.getRightProb();
-            } else {
-                //<= go left, > go right
-                if (featureValue<=threshold){
-                    leftProbs[i] = parentProbs[i];
-                    rightProbs[i] = 0;
-                } else {
-                    leftProbs[i] = 0;
-                    rightProbs[i] = parentProbs[i];
-                }
-            }
-        });
+        // missing values go to both branches probabilistically
+        double[] featureValues = buffers.loadFeatureValues(columnVector);
+        Membership[] children = leafToSplit.getMembership().split(featureValues, weights,
+                threshold, leafToSplit.getLeftProb(), leafToSplit.getRightProb());
+        buffers.clearFeatureValues(columnVector);
 
-        leftChild.setProbs(leftProbs);
-        rightChild.setProbs(rightProbs);
+        leftChild.setMembership(children[0]);
+        rightChild.setMembership(children[1]);
 
 
         //the last two leaves need not to be updated completely
         //as we don't need to split them later
         int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
         if (tree.leaves.size()!=maxNumLeaves-1){
-            updateNode(leftChild,regTreeConfig,dataSet,labels, activeFeatures,false);
-            updateNode(rightChild,regTreeConfig,dataSet,labels, activeFeatures,false);
+            updateNode(leftChild,regTreeConfig,dataSet,labels,weights,buffers,activeFeatures,false);
+            updateNode(rightChild,regTreeConfig,dataSet,labels,weights,buffers,activeFeatures,false);
         }
 
 
@@ -239,7 +209,7 @@ public class ActiveRegTreeTrainer {
          * update leaves, remove the parent, and add children
          */
         leafToSplit.setLeaf(false);
-        leafToSplit.clearProbs();
+        leafToSplit.clearMembership();
         tree.leaves.remove(leafToSplit);
         leftChild.setLeaf(true);
         rightChild.setLeaf(true);
@@ -251,16 +221,20 @@ public class ActiveRegTreeTrainer {
 
     /**
      * parallel
-     * given probs, fill other information
+     * given membership, fill other information
      * @param node
      */
     private static void updateNode(Node node,
                                    RegTreeConfig regTreeConfig,
                                    DataSet dataSet,
-                                   double[] labels, List<Integer> activeFeatures, boolean fullScan) {
+                                   double[] labels, double[] weights, TrainingBuffers buffers,
+                                   List<Integer> activeFeatures, boolean fullScan) {
+        Membership membership = node.getMembership();
+        Splitter.GlobalStats globalStats = new Splitter.GlobalStats(labels,weights,membership);
+        double[] probs = buffers.loadProbs(membership,weights);
         if(fullScan){
             Optional<SplitResult> splitResultOptional = Splitter.split(regTreeConfig,
-                    dataSet,labels,node.getProbs(),activeFeatures,true);
+                    dataSet,labels,probs,activeFeatures,true,globalStats);
             if (splitResultOptional.isPresent()){
                 SplitResult splitResult = splitResultOptional.get();
                 node.setFeatureIndex(splitResult.getFeatureIndex());
@@ -278,7 +252,7 @@ public class ActiveRegTreeTrainer {
 
         }else{
             Optional<SplitResult> splitResultOptional = Splitter.split(regTreeConfig,
-                    dataSet,labels,node.getProbs(),activeFeatures,false);
+                    dataSet,labels,probs,activeFeatures,false,globalStats);
             if (splitResultOptional.isPresent()){
                 SplitResult splitResult = splitResultOptional.get();
                 node.setFeatureIndex(splitResult.getFeatureIndex());
@@ -294,31 +268,45 @@ public class ActiveRegTreeTrainer {
                 node.setSplitable(false);
             }
         }
+        buffers.clearProbs(membership);
+    }
 
+    /**
+     * remember which leaves the training data points reached,
+     * so that boosting can update training scores without walking the tree
+     */
+    private static void keepTrainingAssignment(RegressionTree tree, DataSet dataSet, double[] weights){
+        List<Membership> memberships = new ArrayList<>(tree.leaves.size());
+        for (Node leaf: tree.leaves){
+            memberships.add(leaf.getMembership());
+        }
+        tree.setTrainingAssignment(dataSet, memberships, weights);
     }
 
     private static void cleanLeaves(List<Node> leaves){
         for (Node leaf: leaves){
-            leaf.clearProbs();
+            leaf.clearMembership();
         }
     }
 
 
     /**
      * parallel
+     * only the members of each leaf are passed to the calculator
      */
-    private static void setLeavesOutputs(RegTreeConfig regTreeConfig, List<Node> leaves, LeafOutputCalculator calculator, double[] labels){
+    private static void setLeavesOutputs(RegTreeConfig regTreeConfig, List<Node> leaves, LeafOutputCalculator calculator,
+                                         double[] labels, double[] weights){
         Stream<Node> stream = leaves.stream();
         if (regTreeConfig.isParallel()){
             stream = stream.parallel();
         }
 
-        stream.forEach(leaf -> setLeafOutput(leaf, calculator, labels));
+        stream.forEach(leaf -> setLeafOutput(leaf, calculator, labels, weights));
     }
 
-    private static void setLeafOutput(Node leaf, LeafOutputCalculator calculator, double[] labels){
-        double[] probs = leaf.getProbs();
-        double output = calculator.getLeafOutput(probs, labels);
+    private static void setLeafOutput(Node leaf, LeafOutputCalculator calculator, double[] labels, double[] weights){
+        Membership membership = leaf.getMembership();
+        double output = calculator.getLeafOutput(membership.allIndices(), membership.allProbs(weights), labels);
         leaf.setValue(output);
     }
 
@@ -0,0 +1,316 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * one-time quantization of all feature columns of a data set into small integer bin codes
+ * each column keeps the data indices of its non-zero entries and one bin code per entry;
+ * zeros are implicit and missing values get a reserved code
+ * the data set should not be modified after it is binned
+ */
+public class BinnedDataSet {
+    /**
+     * binned columns are shared by all trees trained on the same data set
+     * the data set is only weakly referenced so the cache never keeps it alive
+     */
+    private static final Map<DataSet, BinnedDataSet> cache = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private int numDataPoints;
+    private int maxNumBins;
+    private BinnedFeature[] features;
+    /**
+     * row view of the same non-zero entries, built on first use
+     * entries of row i are in [rowStarts[i], rowStarts[i+1]), sorted by feature index
+     */
+    private int[] rowStarts;
+    private int[] rowFeatures;
+    private short[] rowCodes;
+
+    private BinnedDataSet(int numDataPoints, int maxNumBins, BinnedFeature[] features) {
+        this.numDataPoints = numDataPoints;
+        this.maxNumBins = maxNumBins;
+        this.features = features;
+    }
+
+    /**
+     * quantize each column into at most maxNumBins bins
+     * if a column has no more than maxNumBins distinct values, each value gets its own bin;
+     * otherwise the range of the column is cut into maxNumBins intervals of equal width
+     * @param dataSet
+     * @param maxNumBins
+     * @return
+     */
+    public static BinnedDataSet build(DataSet dataSet, int maxNumBins){
+        if (maxNumBins<=1 || maxNumBins>=Short.MAX_VALUE){
+            throw new IllegalArgumentException("maxNumBins must be between 2 and "+(Short.MAX_VALUE-1));
+        }
+        int numDataPoints = dataSet.getNumDataPoints();
+        BinnedFeature[] features = IntStream.range(0, dataSet.getNumFeatures()).parallel()
+                .mapToObj(j -> new BinnedFeature(dataSet.getColumn(j), numDataPoints, maxNumBins))
+                .toArray(BinnedFeature[]::new);
+        return new BinnedDataSet(numDataPoints, maxNumBins, features);
+    }
+
+    /**
+     * return the cached binned version of the data set, build it if necessary
+     * @param dataSet
+     * @param maxNumBins
+     * @return
+     */
+    public static BinnedDataSet getOrBuild(DataSet dataSet, int maxNumBins){
+        synchronized (cache){
+            BinnedDataSet binned = cache.get(dataSet);
+            if (binned==null || binned.maxNumBins!=maxNumBins
+                    || binned.numDataPoints!=dataSet.getNumDataPoints()
+                    || binned.features.length!=dataSet.getNumFeatures()){
+                binned = build(dataSet, maxNumBins);
+                cache.put(dataSet, binned);
+            }
+            return binned;
+        }
+    }
+
+    public int getNumDataPoints() {
+        return numDataPoints;
+    }
+
+    public int getNumFeatures() {
+        return features.length;
+    }
+
+    public int getMaxNumBins() {
+        return maxNumBins;
+    }
+
+    BinnedFeature getFeature(int featureIndex){
+        return features[featureIndex];
+    }
+
+    int[] getRowStarts(){
+        buildRows();
+        return rowStarts;
+    }
+
+    int[] getRowFeatures(){
+        buildRows();
+        return rowFeatures;
+    }
+
+    /**
+     * bin codes parallel to row features
+     */
+    short[] getRowCodes(){
+        buildRows();
+        return rowCodes;
+    }
+
+    /**
+     * transpose the binned columns, so that the entries of a subset of rows can be visited
+     * without scanning whole columns
+     */
+    private synchronized void buildRows(){
+        if (rowStarts!=null){
+            return;
+        }
+        int[] starts = new int[numDataPoints+1];
+        for (BinnedFeature feature: features){
+            for (int i: feature.getIndices()){
+                starts[i+1] += 1;
+            }
+        }
+        for (int i=0;i<numDataPoints;i++){
+            starts[i+1] += starts[i];
+        }
+        int[] next = Arrays.copyOf(starts, numDataPoints);
+        int[] featureIndices = new int[starts[numDataPoints]];
+        short[] codes = new short[starts[numDataPoints]];
+        for (int j=0;j<features.length;j++){
+            BinnedFeature feature = features[j];
+            int[] indices = feature.getIndices();
+            for (int k=0;k<indices.length;k++){
+                int position = next[indices[k]];
+                featureIndices[position] = j;
+                codes[position] = (short)feature.getCode(k);
+                next[indices[k]] += 1;
+            }
+        }
+        this.rowFeatures = featureIndices;
+        this.rowCodes = codes;
+        this.rowStarts = starts;
+    }
+
+
+    static class BinnedFeature {
+        /**
+         * data indices of non-zero (including NaN) entries
+         */
+        private int[] indices;
+        /**
+         * bin codes of non-zero entries, parallel to indices
+         * unsigned bytes if the feature has few bins, shorts otherwise
+         */
+        private byte[] byteCodes;
+        private short[] shortCodes;
+        /**
+         * upper boundaries of bins, inclusive
+         * values in bin b satisfy uppers[b-1] < value <= uppers[b]
+         */
+        private double[] uppers;
+        /**
+         * whether each bin holds exactly one distinct value
+         */
+        private boolean exact;
+        /**
+         * the bin containing zero; -1 if the column has no zero
+         */
+        private int zeroBin;
+
+        BinnedFeature(Vector column, int numDataPoints, int maxNumBins) {
+            int numNonZeros = column.getNumNonZeroElements();
+            int[] nonZeroIndices = new int[numNonZeros];
+            double[] nonZeroValues = new double[numNonZeros];
+            int size = 0;
+            for (Vector.Element element: column.nonZeroes()){
+                nonZeroIndices[size] = element.index();
+                nonZeroValues[size] = element.get();
+                size += 1;
+            }
+            this.indices = Arrays.copyOf(nonZeroIndices, size);
+            // nonZeroes() may skip explicitly stored zeros, count zeros from what is left
+            boolean hasZero = size<numDataPoints;
+
+            double[] presentValues = Arrays.stream(nonZeroValues, 0, size)
+                    .filter(value -> !Double.isNaN(value)).toArray();
+            if (hasZero){
+                presentValues = Arrays.copyOf(presentValues, presentValues.length+1);
+            }
+            Arrays.sort(presentValues);
+            double[] distinct = distinct(presentValues);
+
+            if (distinct.length==0){
+                this.uppers = new double[0];
+            } else if (distinct.length<=maxNumBins){
+                this.uppers = distinct;
+                this.exact = true;
+            } else {
+                double min = distinct[0];
+                double max = distinct[distinct.length-1];
+                double binLength = (max-min)/maxNumBins;
+                this.uppers = new double[maxNumBins];
+                for (int b=0;b<maxNumBins;b++){
+                    uppers[b] = min + (b+1)*binLength;
+                }
+                uppers[maxNumBins-1] = max;
+            }
+
+            int numBins = uppers.length;
+            if (hasZero){
+                this.zeroBin = findBin(0);
+            } else {
+                this.zeroBin = -1;
+            }
+            if (numBins<255){
+                this.byteCodes = new byte[size];
+                for (int k=0;k<size;k++){
+                    byteCodes[k] = (byte)code(nonZeroValues[k]);
+                }
+            } else {
+                this.shortCodes = new short[size];
+                for (int k=0;k<size;k++){
+                    shortCodes[k] = (short)code(nonZeroValues[k]);
+                }
+            }
+        }
+
+        int getNumBins(){
+            return uppers.length;
+        }
+
+        /**
+         * @return reserved code for missing values
+         */
+        int getMissingCode(){
+            return uppers.length;
+        }
+
+        int getNumNonZeros(){
+            return indices.length;
+        }
+
+        int[] getIndices() {
+            return indices;
+        }
+
+        /**
+         * bin code of the k-th non-zero entry
+         * @param k position in indices, not data index
+         * @return
+         */
+        int getCode(int k){
+            if (byteCodes!=null){
+                return byteCodes[k] & 0xFF;
+            } else {
+                return shortCodes[k];
+            }
+        }
+
+        int getZeroBin() {
+            return zeroBin;
+        }
+
+        double getUpper(int bin){
+            return uppers[bin];
+        }
+
+        /**
+         * @return a lower bound of values in the bin, exclusive unless the bin is exact
+         */
+        double getLower(int bin){
+            if (exact || bin==0){
+                return uppers[bin];
+            }
+            return uppers[bin-1];
+        }
+
+        private int code(double value){
+            if (Double.isNaN(value)){
+                return getMissingCode();
+            }
+            return findBin(value);
+        }
+
+        /**
+         * first bin whose upper boundary is no less than the value
+         */
+        private int findBin(double value){
+            int position = Arrays.binarySearch(uppers, value);
+            if (position<0){
+                position = -position-1;
+            }
+            // only possible with round off errors
+            if (position>=uppers.length){
+                position = uppers.length-1;
+            }
+            return position;
+        }
+
+        private static double[] distinct(double[] sorted){
+            int size = 0;
+            double[] distinct = new double[sorted.length];
+            for (int i=0;i<sorted.length;i++){
+                if (size==0 || sorted[i]!=distinct[size-1]){
+                    distinct[size] = sorted[i];
+                    size += 1;
+                }
+            }
+            return Arrays.copyOf(distinct, size);
+        }
+    }
+}
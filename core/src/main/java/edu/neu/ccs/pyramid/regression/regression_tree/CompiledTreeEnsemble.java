@@ -0,0 +1,271 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.regression.ConstantRegressor;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import org.apache.mahout.math.Vector;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * immutable, inference-only form of one or more sums of regression trees,
+ * e.g. the ensembles of a gradient boosting model, one per class
+ * all nodes of all trees are packed into primitive arrays in pre-order,
+ * so the left child of an internal node always follows the node itself
+ * prediction walks the arrays without allocating any object
+ * constant regressors are stored as single-leaf trees;
+ * any other kind of regressor is kept as it is and called through predict()
+ */
+public class CompiledTreeEnsemble implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * number of rows scored together by batch prediction
+     */
+    private static final int BLOCK_SIZE = 256;
+
+    private final int numScores;
+    /**
+     * trees of score k are roots[treeStarts[k]] ... roots[treeStarts[k+1]-1]
+     */
+    private final int[] treeStarts;
+    private final int[] roots;
+    /**
+     * -1 for leaves
+     */
+    private final int[] featureIndices;
+    /**
+     * split threshold of an internal node, output value of a leaf
+     */
+    private final double[] values;
+    private final int[] rightChildren;
+    /**
+     * probabilities of a missing value going to the left/right child
+     */
+    private final double[] leftProbs;
+    private final double[] rightProbs;
+    /**
+     * regressors that cannot be compiled, one array per score
+     */
+    private final Regressor[][] others;
+
+    private CompiledTreeEnsemble(Builder builder) {
+        this.numScores = builder.numScores;
+        this.treeStarts = builder.treeStarts;
+        this.roots = builder.roots.stream().mapToInt(Integer::intValue).toArray();
+        this.featureIndices = builder.featureIndices;
+        this.values = builder.values;
+        this.rightChildren = builder.rightChildren;
+        this.leftProbs = builder.leftProbs;
+        this.rightProbs = builder.rightProbs;
+        this.others = new Regressor[numScores][];
+        for (int k=0;k<numScores;k++){
+            others[k] = builder.others.get(k).toArray(new Regressor[0]);
+        }
+    }
+
+    /**
+     * @param regressors regressors of each score
+     * @return
+     */
+    public static CompiledTreeEnsemble compile(List<List<Regressor>> regressors){
+        int numScores = regressors.size();
+        // count first so that the arrays are allocated only once
+        int numNodes = 0;
+        for (List<Regressor> regressorsScoreK: regressors){
+            for (Regressor regressor: regressorsScoreK){
+                if (regressor instanceof RegressionTree){
+                    numNodes += countNodes(((RegressionTree) regressor).getRoot());
+                } else if (regressor instanceof ConstantRegressor){
+                    numNodes += 1;
+                }
+            }
+        }
+        Builder builder = new Builder(numScores, numNodes);
+        for (int k=0;k<numScores;k++){
+            builder.treeStarts[k] = builder.roots.size();
+            for (Regressor regressor: regressors.get(k)){
+                if (regressor instanceof RegressionTree){
+                    builder.roots.add(builder.next);
+                    builder.next = builder.copy(((RegressionTree) regressor).getRoot(), builder.next);
+                } else if (regressor instanceof ConstantRegressor){
+                    builder.roots.add(builder.next);
+                    builder.setLeaf(builder.next, ((ConstantRegressor) regressor).getScore());
+                    builder.next += 1;
+                } else {
+                    builder.others.get(k).add(regressor);
+                }
+            }
+        }
+        builder.treeStarts[numScores] = builder.roots.size();
+        return new CompiledTreeEnsemble(builder);
+    }
+
+    public int getNumScores() {
+        return numScores;
+    }
+
+    /**
+     * @return total number of nodes of all trees
+     */
+    public int getNumNodes(){
+        return featureIndices.length;
+    }
+
+    public double score(Vector vector, int scoreIndex){
+        double score = 0;
+        for (int t=treeStarts[scoreIndex];t<treeStarts[scoreIndex+1];t++){
+            score += predict(vector, roots[t]);
+        }
+        for (Regressor regressor: others[scoreIndex]){
+            score += regressor.predict(vector);
+        }
+        return score;
+    }
+
+    public double[] scores(Vector vector){
+        double[] scores = new double[numScores];
+        scores(vector, scores);
+        return scores;
+    }
+
+    /**
+     * write all scores into the given array, so repeated calls do not allocate
+     * @param vector
+     * @param scores length = number of scores
+     */
+    public void scores(Vector vector, double[] scores){
+        for (int k=0;k<numScores;k++){
+            scores[k] = score(vector, k);
+        }
+    }
+
+    /**
+     * scores of all data points, computed block by block in parallel
+     * @param dataSet
+     * @return scores[dataIndex][scoreIndex]
+     */
+    public double[][] scores(DataSet dataSet){
+        int numDataPoints = dataSet.getNumDataPoints();
+        double[][] scores = new double[numDataPoints][numScores];
+        int numBlocks = (numDataPoints+BLOCK_SIZE-1)/BLOCK_SIZE;
+        IntStream.range(0, numBlocks).parallel().forEach(b -> {
+            int start = b*BLOCK_SIZE;
+            int end = Math.min(start+BLOCK_SIZE, numDataPoints);
+            scores(dataSet, start, end, scores);
+        });
+        return scores;
+    }
+
+    /**
+     * score the rows [start, end) tree by tree, so that the nodes of one tree are visited
+     * for the whole block before moving to the next tree
+     * the result for each row is the same as score(Vector, int)
+     * @param dataSet
+     * @param start first row, inclusive
+     * @param end last row, exclusive
+     * @param scores scores[dataIndex][scoreIndex]; rows in the block are overwritten
+     */
+    public void scores(DataSet dataSet, int start, int end, double[][] scores){
+        int blockSize = end-start;
+        Vector[] rows = new Vector[blockSize];
+        for (int r=0;r<blockSize;r++){
+            rows[r] = dataSet.getRow(start+r);
+            Arrays.fill(scores[start+r], 0);
+        }
+        for (int k=0;k<numScores;k++){
+            for (int t=treeStarts[k];t<treeStarts[k+1];t++){
+                int root = roots[t];
+                for (int r=0;r<blockSize;r++){
+                    scores[start+r][k] += predict(rows[r], root);
+                }
+            }
+            for (Regressor regressor: others[k]){
+                for (int r=0;r<blockSize;r++){
+                    scores[start+r][k] += regressor.predict(rows[r]);
+                }
+            }
+        }
+    }
+
+    /**
+     * a missing value sends the vector down both branches, weighted by the branch probabilities
+     */
+    private double predict(Vector vector, int node){
+        while (featureIndices[node]>=0){
+            double featureValue = vector.get(featureIndices[node]);
+            if (Double.isNaN(featureValue)){
+                return leftProbs[node]*predict(vector, node+1)
+                        + rightProbs[node]*predict(vector, rightChildren[node]);
+            }
+            if (featureValue<=values[node]){
+                node = node+1;
+            } else {
+                node = rightChildren[node];
+            }
+        }
+        return values[node];
+    }
+
+    private static int countNodes(Node node){
+        if (node.isLeaf()){
+            return 1;
+        }
+        return 1 + countNodes(node.getLeftChild()) + countNodes(node.getRightChild());
+    }
+
+    private static class Builder {
+        private int numScores;
+        private int[] treeStarts;
+        private List<Integer> roots = new ArrayList<>();
+        private List<List<Regressor>> others;
+        private int[] featureIndices;
+        private double[] values;
+        private int[] rightChildren;
+        private double[] leftProbs;
+        private double[] rightProbs;
+        // next free position
+        private int next;
+
+        Builder(int numScores, int numNodes) {
+            this.numScores = numScores;
+            this.treeStarts = new int[numScores+1];
+            this.others = new ArrayList<>(numScores);
+            for (int k=0;k<numScores;k++){
+                others.add(new ArrayList<>());
+            }
+            this.featureIndices = new int[numNodes];
+            this.values = new double[numNodes];
+            this.rightChildren = new int[numNodes];
+            this.leftProbs = new double[numNodes];
+            this.rightProbs = new double[numNodes];
+        }
+
+        /**
+         * copy the sub-tree in pre-order
+         * @return the next free position
+         */
+        int copy(Node node, int position){
+            if (node.isLeaf()){
+                setLeaf(position, node.getValue());
+                return position+1;
+            }
+            featureIndices[position] = node.getFeatureIndex();
+            values[position] = node.getThreshold();
+            leftProbs[position] = node.getLeftProb();
+            rightProbs[position] = node.getRightProb();
+            int rightPosition = copy(node.getLeftChild(), position+1);
+            rightChildren[position] = rightPosition;
+            return copy(node.getRightChild(), rightPosition);
+        }
+
+        void setLeaf(int position, double value){
+            featureIndices[position] = -1;
+            values[position] = value;
+            rightChildren[position] = -1;
+        }
+    }
+}
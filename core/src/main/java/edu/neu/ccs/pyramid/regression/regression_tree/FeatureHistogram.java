@@ -0,0 +1,145 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+/**
+ * per-node statistics of one binned feature
+ * only non-zero entries are accumulated; the zero bin is derived from global statistics
+ */
+class FeatureHistogram {
+    // probabilistic count of each bin
+    private double[] counts;
+    // sum of labels weighted by probabilities of each bin
+    private double[] weightedSums;
+    // number of entries with non-zero probabilities of each bin
+    private int[] binaryCounts;
+
+    private int nonZeroBinaryCount;
+    private int nanBinaryCount;
+    private double nanProbCount;
+    private double nanWeightedLabelSum;
+
+    private FeatureHistogram(int numBins) {
+        this.counts = new double[numBins];
+        this.weightedSums = new double[numBins];
+        this.binaryCounts = new int[numBins];
+    }
+
+    /**
+     * scan the non-zero entries of the feature once
+     * @param feature
+     * @param labels
+     * @param probs
+     * @return
+     */
+    static FeatureHistogram build(BinnedDataSet.BinnedFeature feature, double[] labels, double[] probs){
+        FeatureHistogram histogram = empty(feature);
+        int[] indices = feature.getIndices();
+        int missingCode = feature.getMissingCode();
+        for (int k=0;k<indices.length;k++){
+            int i = indices[k];
+            double prob = probs[i];
+            if (prob>0){
+                histogram.add(feature.getCode(k), missingCode, prob, prob*labels[i]);
+            }
+        }
+        return histogram;
+    }
+
+    static FeatureHistogram empty(BinnedDataSet.BinnedFeature feature){
+        return new FeatureHistogram(feature.getNumBins());
+    }
+
+    /**
+     * add one non-zero entry with positive probability
+     */
+    void add(int code, int missingCode, double prob, double weightedLabel){
+        if (code==missingCode){
+            nanBinaryCount += 1;
+            nanProbCount += prob;
+            nanWeightedLabelSum += weightedLabel;
+        } else {
+            nonZeroBinaryCount += 1;
+            binaryCounts[code] += 1;
+            counts[code] += prob;
+            weightedSums[code] += weightedLabel;
+        }
+    }
+
+    /**
+     * histogram of a child derived from the histograms of its parent and its sibling
+     * only valid when every entry of the parent goes to exactly one child
+     * @param parent
+     * @param sibling
+     * @return parent - sibling
+     */
+    static FeatureHistogram subtract(FeatureHistogram parent, FeatureHistogram sibling){
+        int numBins = parent.getNumBins();
+        FeatureHistogram histogram = new FeatureHistogram(numBins);
+        for (int b=0;b<numBins;b++){
+            int binaryCount = parent.binaryCounts[b] - sibling.binaryCounts[b];
+            histogram.binaryCounts[b] = binaryCount;
+            // avoid leaving round off errors in empty bins
+            if (binaryCount>0){
+                histogram.counts[b] = parent.counts[b] - sibling.counts[b];
+                histogram.weightedSums[b] = parent.weightedSums[b] - sibling.weightedSums[b];
+            }
+        }
+        histogram.nonZeroBinaryCount = parent.nonZeroBinaryCount - sibling.nonZeroBinaryCount;
+        histogram.nanBinaryCount = parent.nanBinaryCount - sibling.nanBinaryCount;
+        if (histogram.nanBinaryCount>0){
+            histogram.nanProbCount = parent.nanProbCount - sibling.nanProbCount;
+            histogram.nanWeightedLabelSum = parent.nanWeightedLabelSum - sibling.nanWeightedLabelSum;
+        }
+        return histogram;
+    }
+
+    double getCount(int bin){
+        return counts[bin];
+    }
+
+    double getWeightedSum(int bin){
+        return weightedSums[bin];
+    }
+
+    int getBinaryCount(int bin){
+        return binaryCounts[bin];
+    }
+
+    int getNumBins(){
+        return counts.length;
+    }
+
+    int getNonZeroBinaryCount() {
+        return nonZeroBinaryCount;
+    }
+
+    int getNanBinaryCount() {
+        return nanBinaryCount;
+    }
+
+    double getNanProbCount() {
+        return nanProbCount;
+    }
+
+    double getNanWeightedLabelSum() {
+        return nanWeightedLabelSum;
+    }
+
+    /**
+     * @return sum of probabilities of present non-zero values
+     */
+    double getNonZeroProbCount(){
+        double sum = 0;
+        for (double count: counts){
+            sum += count;
+        }
+        return sum;
+    }
+
+    double getNonZeroWeightedLabelSum(){
+        double sum = 0;
+        for (double weightedSum: weightedSums){
+            sum += weightedSum;
+        }
+        return sum;
+    }
+}
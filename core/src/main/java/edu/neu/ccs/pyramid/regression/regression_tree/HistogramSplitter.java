@@ -0,0 +1,125 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import java.util.Optional;
+
+/**
+ * finds the best split of one feature from the histogram of its pre-computed bins
+ * follows the same rules as IntervalSplitter:
+ * zeros go to the bin containing zero, missing values are spread over all bins by percentage,
+ * and the threshold between two non-empty bins lies in the middle of the gap between them
+ */
+class HistogramSplitter {
+
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       BinnedDataSet.BinnedFeature feature,
+                                       double[] labels,
+                                       double[] probs,
+                                       int featureIndex,
+                                       Splitter.GlobalStats globalStats){
+        if (!isSplitable(feature)){
+            return Optional.empty();
+        }
+        FeatureHistogram histogram = FeatureHistogram.build(feature, labels, probs);
+        return findBest(regTreeConfig, feature, histogram, featureIndex, globalStats);
+    }
+
+    /**
+     * @return false if the feature can never be split, at any node
+     */
+    static boolean isSplitable(BinnedDataSet.BinnedFeature feature){
+        return feature.getNumNonZeros()>0 && feature.getNumBins()>=2;
+    }
+
+    static Optional<SplitResult> findBest(RegTreeConfig regTreeConfig,
+                                          BinnedDataSet.BinnedFeature feature,
+                                          FeatureHistogram histogram,
+                                          int featureIndex,
+                                          Splitter.GlobalStats globalStats){
+        int numBins = feature.getNumBins();
+        if (numBins<2){
+            return Optional.empty();
+        }
+        double[] counts = new double[numBins];
+        double[] weightedSums = new double[numBins];
+        boolean[] present = new boolean[numBins];
+        int numPresentBins = 0;
+        for (int b=0;b<numBins;b++){
+            counts[b] = histogram.getCount(b);
+            weightedSums[b] = histogram.getWeightedSum(b);
+            if (histogram.getBinaryCount(b)>0){
+                present[b] = true;
+                numPresentBins += 1;
+            }
+        }
+
+        // for zero values, do all of them together, as they all go to the same bin
+        int zeroBinaryCount = globalStats.getBinaryCount() - histogram.getNonZeroBinaryCount()
+                - histogram.getNanBinaryCount();
+        int zeroBin = feature.getZeroBin();
+        if (zeroBinaryCount>0 && zeroBin>=0){
+            counts[zeroBin] += globalStats.getProbabilisticCount() - histogram.getNonZeroProbCount()
+                    - histogram.getNanProbCount();
+            weightedSums[zeroBin] += globalStats.getWeightedLabelSum() - histogram.getNonZeroWeightedLabelSum()
+                    - histogram.getNanWeightedLabelSum();
+            if (!present[zeroBin]){
+                present[zeroBin] = true;
+                numPresentBins += 1;
+            }
+        }
+
+        // no range, do nothing
+        if (numPresentBins<2){
+            return Optional.empty();
+        }
+
+        // assign missing values to every bin probabilistically
+        if (histogram.getNanBinaryCount()>0){
+            double nanProbCount = histogram.getNanProbCount();
+            double nanWeightedLabelSum = histogram.getNanWeightedLabelSum();
+            for (int b=0;b<numBins;b++){
+                double percentage = counts[b]/globalStats.getProbabilisticCount();
+                counts[b] += percentage*nanProbCount;
+                weightedSums[b] += percentage*nanWeightedLabelSum;
+            }
+        }
+
+        double totalSum = 0;
+        double totalCount = 0;
+        for (int b=0;b<numBins;b++){
+            totalCount += counts[b];
+            totalSum += weightedSums[b];
+        }
+
+        int minDataPerLeaf = regTreeConfig.getMinDataPerLeaf();
+        SplitResult best = null;
+        double leftSum = 0;
+        double leftCount = 0;
+        int previous = -1;
+        for (int b=0;b<numBins;b++){
+            if (!present[b]){
+                continue;
+            }
+            if (previous>=0){
+                double rightSum = totalSum - leftSum;
+                double rightCount = totalCount - leftCount;
+                if (leftCount>=minDataPerLeaf && rightCount>=minDataPerLeaf){
+                    double reduction = leftSum * leftSum / leftCount +
+                            rightSum * rightSum / rightCount
+                            - totalSum * totalSum / totalCount;
+                    if (best==null || reduction>best.getReduction()){
+                        double threshold = (feature.getUpper(previous)+feature.getLower(b))/2;
+                        best = new SplitResult().setFeatureIndex(featureIndex)
+                                .setLeftCount(leftCount)
+                                .setRightCount(rightCount)
+                                .setReduction(reduction)
+                                .setThreshold(threshold);
+                    }
+                }
+            }
+            leftCount += counts[b];
+            leftSum += weightedSums[b];
+            previous = b;
+        }
+        return Optional.ofNullable(best);
+    }
+}
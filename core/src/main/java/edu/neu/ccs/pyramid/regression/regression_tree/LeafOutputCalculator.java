@@ -14,4 +14,21 @@ public interface LeafOutputCalculator {
      * @return output of the leaf node
      */
     double getLeafOutput(double[] probabilities, double[] labels);
+
+    /**
+     * same as above, but only data points at the leaf node are given
+     * the default implementation expands them into dense probabilities;
+     * calculators should override it to avoid the dense array
+     * @param dataIndices data points at the leaf node
+     * @param probabilities probabilities of these data points
+     * @param labels labels of all data points
+     * @return output of the leaf node
+     */
+    default double getLeafOutput(int[] dataIndices, double[] probabilities, double[] labels){
+        double[] dense = new double[labels.length];
+        for (int k=0;k<dataIndices.length;k++){
+            dense[dataIndices[k]] = probabilities[k];
+        }
+        return getLeafOutput(dense, labels);
+    }
 }
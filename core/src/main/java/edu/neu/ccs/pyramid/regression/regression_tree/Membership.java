@@ -0,0 +1,192 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import java.util.Arrays;
+
+/**
+ * data points that reach a node
+ * a data point that reaches the node without meeting any missing value is only stored by its index,
+ * and its probability equals its weight;
+ * a data point that reaches the node through missing values is stored with its fractional probability
+ * memory is proportional to the number of data points in the node
+ */
+class Membership {
+    /**
+     * data points that reach the node deterministically
+     */
+    private int[] indices;
+    /**
+     * data points that reach the node through missing values
+     */
+    private int[] fractionalIndices;
+    private double[] fractionalProbs;
+
+    private Membership(int[] indices, int[] fractionalIndices, double[] fractionalProbs) {
+        this.indices = indices;
+        this.fractionalIndices = fractionalIndices;
+        this.fractionalProbs = fractionalProbs;
+    }
+
+    /**
+     * root gets all data points with positive weights
+     * @param weights
+     * @return
+     */
+    static Membership root(double[] weights){
+        int size = 0;
+        int[] indices = new int[weights.length];
+        for (int i=0;i<weights.length;i++){
+            if (weights[i]>0){
+                indices[size] = i;
+                size += 1;
+            }
+        }
+        return new Membership(Arrays.copyOf(indices,size), new int[0], new double[0]);
+    }
+
+    /**
+     * number of data points with positive probabilities
+     */
+    int size(){
+        return indices.length + fractionalIndices.length;
+    }
+
+    int[] getIndices() {
+        return indices;
+    }
+
+    int[] getFractionalIndices() {
+        return fractionalIndices;
+    }
+
+    double[] getFractionalProbs() {
+        return fractionalProbs;
+    }
+
+    /**
+     * write probabilities of members into a dense array
+     * @param weights
+     * @param probs all zeros before filling
+     */
+    void fill(double[] weights, double[] probs){
+        for (int i: indices){
+            probs[i] = weights[i];
+        }
+        for (int k=0;k<fractionalIndices.length;k++){
+            probs[fractionalIndices[k]] = fractionalProbs[k];
+        }
+    }
+
+    /**
+     * reset probabilities of members in a dense array to zero
+     * @param probs
+     */
+    void clear(double[] probs){
+        for (int i: indices){
+            probs[i] = 0;
+        }
+        for (int i: fractionalIndices){
+            probs[i] = 0;
+        }
+    }
+
+    /**
+     * @return data indices of all members, deterministic ones first
+     */
+    int[] allIndices(){
+        int[] all = Arrays.copyOf(indices, size());
+        System.arraycopy(fractionalIndices, 0, all, indices.length, fractionalIndices.length);
+        return all;
+    }
+
+    /**
+     * @return probabilities of all members, parallel to allIndices()
+     */
+    double[] allProbs(double[] weights){
+        double[] all = new double[size()];
+        for (int k=0;k<indices.length;k++){
+            all[k] = weights[indices[k]];
+        }
+        System.arraycopy(fractionalProbs, 0, all, indices.length, fractionalProbs.length);
+        return all;
+    }
+
+    /**
+     * <= threshold go left, > threshold go right, missing values go to both branches probabilistically
+     * @param featureValues values of the split feature, at least for all members
+     * @param weights
+     * @param threshold
+     * @param leftProb probability of a missing value falling into the left child
+     * @param rightProb probability of a missing value falling into the right child
+     * @return left and right memberships
+     */
+    Membership[] split(double[] featureValues, double[] weights,
+                       double threshold, double leftProb, double rightProb){
+        Builder left = new Builder(indices.length);
+        Builder right = new Builder(indices.length);
+        for (int i: indices){
+            double featureValue = featureValues[i];
+            if (Double.isNaN(featureValue)){
+                left.addFractional(i, weights[i]*leftProb);
+                right.addFractional(i, weights[i]*rightProb);
+            } else if (featureValue<=threshold){
+                left.add(i);
+            } else {
+                right.add(i);
+            }
+        }
+        for (int k=0;k<fractionalIndices.length;k++){
+            int i = fractionalIndices[k];
+            double prob = fractionalProbs[k];
+            double featureValue = featureValues[i];
+            if (Double.isNaN(featureValue)){
+                left.addFractional(i, prob*leftProb);
+                right.addFractional(i, prob*rightProb);
+            } else if (featureValue<=threshold){
+                left.addFractional(i, prob);
+            } else {
+                right.addFractional(i, prob);
+            }
+        }
+        Membership[] children = new Membership[2];
+        children[0] = left.build();
+        children[1] = right.build();
+        return children;
+    }
+
+    private static class Builder {
+        private int[] indices;
+        private int size;
+        private int[] fractionalIndices = new int[0];
+        private double[] fractionalProbs = new double[0];
+        private int fractionalSize;
+
+        Builder(int capacity) {
+            this.indices = new int[capacity];
+        }
+
+        void add(int index){
+            indices[size] = index;
+            size += 1;
+        }
+
+        void addFractional(int index, double prob){
+            if (prob<=0){
+                return;
+            }
+            if (fractionalSize==fractionalIndices.length){
+                int capacity = Math.max(16, fractionalSize*2);
+                fractionalIndices = Arrays.copyOf(fractionalIndices, capacity);
+                fractionalProbs = Arrays.copyOf(fractionalProbs, capacity);
+            }
+            fractionalIndices[fractionalSize] = index;
+            fractionalProbs[fractionalSize] = prob;
+            fractionalSize += 1;
+        }
+
+        Membership build(){
+            return new Membership(Arrays.copyOf(indices,size),
+                    Arrays.copyOf(fractionalIndices,fractionalSize),
+                    Arrays.copyOf(fractionalProbs,fractionalSize));
+        }
+    }
+}
@@ -44,8 +44,16 @@ public class Node implements Serializable {
     private double rightProb;
 
 
-    //todo this should be transient? maybe doesn't matter as it is cleaned
-    private double[] probs;
+    /**
+     * data points that reach this node, only kept during training
+     */
+    private transient Membership membership;
+
+    /**
+     * for histogram split
+     * kept until both children have been evaluated
+     */
+    private transient FeatureHistogram[] histograms;
 
     boolean isSplitable() {
         return splitable;
@@ -98,12 +106,12 @@ public class Node implements Serializable {
         return this;
     }
 
-    double[] getProbs() {
-        return probs;
+    Membership getMembership() {
+        return membership;
     }
 
-    Node setProbs(double[] probs) {
-        this.probs = probs;
+    Node setMembership(Membership membership) {
+        this.membership = membership;
         return this;
     }
 
@@ -142,11 +150,24 @@ public class Node implements Serializable {
 
 
 
+    FeatureHistogram[] getHistograms() {
+        return histograms;
+    }
+
+    Node setHistograms(FeatureHistogram[] histograms) {
+        this.histograms = histograms;
+        return this;
+    }
+
+    void clearHistograms(){
+        this.histograms = null;
+    }
+
     /**
      * after split, free memory
      */
-    void clearProbs(){
-        this.probs=null;
+    void clearMembership(){
+        this.membership=null;
     }
 
     double getLeftProb() {
@@ -12,6 +12,11 @@ public class RegTreeConfig {
     private int minDataPerLeaf=0;
     private boolean parallel=true;
     private int numActiveFeatures=10;
+    /**
+     * whether to search splits over bins computed once per data set
+     * instead of intervals recomputed at every node
+     */
+    private boolean histogramSplit=false;
 
 
     public RegTreeConfig setMaxNumLeaves(int maxNumLeaves) {
@@ -42,6 +47,18 @@ public class RegTreeConfig {
         return this;
     }
 
+    /**
+     * when enabled, each feature column is quantized once into at most numSplitIntervals bins,
+     * and the quantization is reused by all nodes and all trees trained on the same data set
+     * the data set should not be modified during training
+     * @param histogramSplit
+     * @return
+     */
+    public RegTreeConfig setHistogramSplit(boolean histogramSplit) {
+        this.histogramSplit = histogramSplit;
+        return this;
+    }
+
     int getMaxNumLeaves() {
         return maxNumLeaves;
     }
@@ -64,4 +81,8 @@ public class RegTreeConfig {
     public boolean isParallel() {
         return parallel;
     }
+
+    public boolean isHistogramSplit() {
+        return histogramSplit;
+    }
 }
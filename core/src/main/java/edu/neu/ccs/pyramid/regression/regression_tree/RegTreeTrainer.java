@@ -2,11 +2,9 @@ package edu.neu.ccs.pyramid.regression.regression_tree;
 
 import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.RegDataSet;
-import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
 import java.util.*;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -50,14 +48,12 @@ public class RegTreeTrainer {
         tree.numNodes += 1;
 
 
+        TrainingBuffers buffers = new TrainingBuffers(dataSet.getNumDataPoints());
+
         //root gets all active data points
-        double[] rootProbs = new double[dataSet.getNumDataPoints()];
-        for (int dataPoint=0; dataPoint<dataSet.getNumDataPoints();dataPoint++){
-            rootProbs[dataPoint]=weights[dataPoint];
-        }
-        tree.root.setProbs(rootProbs);
+        tree.root.setMembership(Membership.root(weights));
         //parallel
-        updateNode(tree.root, regTreeConfig,dataSet,labels);
+        updateNode(tree.root, regTreeConfig,dataSet,labels,weights,buffers);
         tree.leaves.add(tree.root);
         tree.root.setLeaf(true);
         tree.allNodes.add(tree.root);
@@ -73,14 +69,15 @@ public class RegTreeTrainer {
             Optional<Node> leafToSplitOptional = findLeafToSplit(tree.leaves);
             if (leafToSplitOptional.isPresent()){
                 Node leafToSplit = leafToSplitOptional.get();
-                splitNode(tree, leafToSplit,regTreeConfig,dataSet,labels);
+                splitNode(tree, leafToSplit,regTreeConfig,dataSet,labels,weights,buffers);
             } else {
                 break;
             }
         }
 
         //parallel
-        setLeavesOutputs(regTreeConfig, tree.leaves,leafOutputCalculator, labels);
+        setLeavesOutputs(regTreeConfig, tree.leaves,leafOutputCalculator, labels, weights);
+        keepTrainingAssignment(tree, dataSet, weights);
         cleanLeaves(tree.leaves);
         normalizeReductions(tree,dataSet);
         return tree;
@@ -103,21 +100,14 @@ public class RegTreeTrainer {
      * @param dataSet
      */
     private static void splitNode(RegressionTree tree, Node leafToSplit, RegTreeConfig regTreeConfig,
-                                  DataSet dataSet, double[] labels) {
-        int numDataPoints = dataSet.getNumDataPoints();
-
+                                  DataSet dataSet, double[] labels, double[] weights,
+                                  TrainingBuffers buffers) {
         /**
          * split this leaf node
          */
         int featureIndex = leafToSplit.getFeatureIndex();
         double threshold = leafToSplit.getThreshold();
-        Vector inputVector = dataSet.getColumn(featureIndex);
-        Vector columnVector;
-        if (inputVector.isDense()){
-            columnVector = inputVector;
-        } else {
-            columnVector = new DenseVector(inputVector);
-        }
+        Vector columnVector = dataSet.getColumn(featureIndex);
         /**
          * create children
          */
@@ -128,41 +118,25 @@ public class RegTreeTrainer {
         rightChild.setId(tree.numNodes);
         tree.numNodes += 1;
 
-        double[] parentProbs = leafToSplit.getProbs();
-        double[] leftProbs = new double[numDataPoints];
-        double[] rightProbs = new double[numDataPoints];
-        IntStream intStream = IntStream.range(0,numDataPoints);
-        if (regTreeConfig.isParallel()){
-            intStream = intStream.parallel();
-        }
-        intStream.forEach(i->{
-            double featureValue = columnVector.get(i);
-            if (Double.isNaN(featureValue)){
-                // go to both branches probabilistically
-                leftProbs[i] = parentProbs[i]*leafToSplit.getLeftProb();
-                rightProbs[i] = parentProbs[i]*leafToSplit.getRightProb();
-            } else {
-                //<= go left, > go right
-                if (featureValue<=threshold){
-                    leftProbs[i] = parentProbs[i];
-                    rightProbs[i] = 0;
-                } else {
-                    leftProbs[i] = 0;
-                    rightProbs[i] = parentProbs[i];
-                }
-            }
-        });
+        // missing values go to both branches probabilistically
+        double[] featureValues = buffers.loadFeatureValues(columnVector);
+        Membership[] children = leafToSplit.getMembership().split(featureValues, weights,
+                threshold, leafToSplit.getLeftProb(), leafToSplit.getRightProb());
+        buffers.clearFeatureValues(columnVector);
 
-        leftChild.setProbs(leftProbs);
-        rightChild.setProbs(rightProbs);
+        leftChild.setMembership(children[0]);
+        rightChild.setMembership(children[1]);
 
 
         //the last two leaves need not to be updated completely
         //as we don't need to split them later
         int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
         if (tree.leaves.size()!=maxNumLeaves-1){
-            updateNode(leftChild,regTreeConfig,dataSet,labels);
-            updateNode(rightChild,regTreeConfig,dataSet,labels);
+            if (regTreeConfig.isHistogramSplit()){
+                setChildrenHistograms(leafToSplit,leftChild,rightChild,regTreeConfig,dataSet,labels,weights);
+            }
+            updateNode(leftChild,regTreeConfig,dataSet,labels,weights,buffers);
+            updateNode(rightChild,regTreeConfig,dataSet,labels,weights,buffers);
         }
 
 
@@ -176,7 +150,8 @@ public class RegTreeTrainer {
          * update leaves, remove the parent, and add children
          */
         leafToSplit.setLeaf(false);
-        leafToSplit.clearProbs();
+        leafToSplit.clearMembership();
+        leafToSplit.clearHistograms();
         tree.leaves.remove(leafToSplit);
         leftChild.setLeaf(true);
         rightChild.setLeaf(true);
@@ -188,15 +163,33 @@ public class RegTreeTrainer {
 
     /**
      * parallel
-     * given probs, fill other information
+     * given membership, fill other information
      * @param node
      */
     private static void updateNode(Node node,
                                    RegTreeConfig regTreeConfig,
                                    DataSet dataSet,
-                                   double[] labels) {
-        Optional<SplitResult> splitResultOptional = Splitter.split(regTreeConfig,
-                dataSet,labels,node.getProbs());
+                                   double[] labels,
+                                   double[] weights,
+                                   TrainingBuffers buffers) {
+        Membership membership = node.getMembership();
+        Splitter.GlobalStats globalStats = new Splitter.GlobalStats(labels,weights,membership);
+        Optional<SplitResult> splitResultOptional;
+        if (regTreeConfig.isHistogramSplit()){
+            BinnedDataSet binnedDataSet = BinnedDataSet.getOrBuild(dataSet, regTreeConfig.getNumSplitIntervals());
+            if (node.getHistograms()==null){
+                double[] probs = buffers.loadProbs(membership,weights);
+                node.setHistograms(Splitter.histograms(regTreeConfig,binnedDataSet,labels,probs));
+                buffers.clearProbs(membership);
+            }
+            splitResultOptional = Splitter.split(regTreeConfig,
+                    binnedDataSet,node.getHistograms(),globalStats);
+        } else {
+            double[] probs = buffers.loadProbs(membership,weights);
+            splitResultOptional = Splitter.split(regTreeConfig,
+                    dataSet,labels,probs,globalStats);
+            buffers.clearProbs(membership);
+        }
         if (splitResultOptional.isPresent()){
             SplitResult splitResult = splitResultOptional.get();
             node.setFeatureIndex(splitResult.getFeatureIndex());
@@ -210,31 +203,85 @@ public class RegTreeTrainer {
             node.setSplitable(true);
         } else{
             node.setSplitable(false);
+            // histograms are only needed for splitting
+            node.clearHistograms();
+        }
+    }
+
+    /**
+     * only visit the rows of the child with fewer data points;
+     * the histograms of the other child are parent - sibling
+     * not applicable if some data points with missing values go to both children
+     */
+    private static void setChildrenHistograms(Node parent, Node leftChild, Node rightChild,
+                                              RegTreeConfig regTreeConfig,
+                                              DataSet dataSet,
+                                              double[] labels,
+                                              double[] weights){
+        FeatureHistogram[] parentHistograms = parent.getHistograms();
+        if (parentHistograms==null){
+            return;
+        }
+        int parentCount = parent.getMembership().size();
+        int leftCount = leftChild.getMembership().size();
+        int rightCount = rightChild.getMembership().size();
+        if (leftCount+rightCount!=parentCount){
+            return;
+        }
+        Node smaller;
+        Node larger;
+        if (leftCount<=rightCount){
+            smaller = leftChild;
+            larger = rightChild;
+        } else {
+            smaller = rightChild;
+            larger = leftChild;
+        }
+        BinnedDataSet binnedDataSet = BinnedDataSet.getOrBuild(dataSet, regTreeConfig.getNumSplitIntervals());
+        // only the rows of the smaller child are visited
+        FeatureHistogram[] smallerHistograms = Splitter.histograms(regTreeConfig,binnedDataSet,labels,
+                smaller.getMembership(),weights);
+        smaller.setHistograms(smallerHistograms);
+        larger.setHistograms(Splitter.subtract(regTreeConfig,parentHistograms,smallerHistograms));
+    }
+
+    /**
+     * remember which leaves the training data points reached,
+     * so that boosting can update training scores without walking the tree
+     */
+    private static void keepTrainingAssignment(RegressionTree tree, DataSet dataSet, double[] weights){
+        List<Membership> memberships = new ArrayList<>(tree.leaves.size());
+        for (Node leaf: tree.leaves){
+            memberships.add(leaf.getMembership());
         }
+        tree.setTrainingAssignment(dataSet, memberships, weights);
     }
 
     private static void cleanLeaves(List<Node> leaves){
         for (Node leaf: leaves){
-            leaf.clearProbs();
+            leaf.clearMembership();
+            leaf.clearHistograms();
         }
     }
 
 
     /**
      * parallel
+     * only the members of each leaf are passed to the calculator
      */
-    private static void setLeavesOutputs(RegTreeConfig regTreeConfig, List<Node> leaves, LeafOutputCalculator calculator, double[] labels){
+    private static void setLeavesOutputs(RegTreeConfig regTreeConfig, List<Node> leaves, LeafOutputCalculator calculator,
+                                         double[] labels, double[] weights){
         Stream<Node> stream = leaves.stream();
         if (regTreeConfig.isParallel()){
             stream = stream.parallel();
         }
 
-        stream.forEach(leaf -> setLeafOutput(leaf, calculator, labels));
+        stream.forEach(leaf -> setLeafOutput(leaf, calculator, labels, weights));
     }
 
-    private static void setLeafOutput(Node leaf, LeafOutputCalculator calculator, double[] labels){
-        double[] probs = leaf.getProbs();
-        double output = calculator.getLeafOutput(probs, labels);
+    private static void setLeafOutput(Node leaf, LeafOutputCalculator calculator, double[] labels, double[] weights){
+        Membership membership = leaf.getMembership();
+        double output = calculator.getLeafOutput(membership.allIndices(), membership.allProbs(weights), labels);
         leaf.setValue(output);
     }
 
@@ -1,5 +1,6 @@
 package edu.neu.ccs.pyramid.regression.regression_tree;
 
+import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.feature.FeatureList;
 import edu.neu.ccs.pyramid.regression.GeneralTreeRule;
 import edu.neu.ccs.pyramid.regression.Regressor;
@@ -9,6 +10,7 @@ import java.io.Serializable;
 
 import java.util.*;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.stream.IntStream;
 
 import org.dmg.pmml.DataType;
 import org.dmg.pmml.FieldName;
@@ -50,6 +52,14 @@ public class RegressionTree implements Regressor, Serializable {
 
     private FeatureList featureList;
 
+    /**
+     * leaves reached by the training data points, aligned with leaves
+     * attached by the trainer and released once the training scores are updated
+     */
+    private transient DataSet trainingDataSet;
+    private transient List<Membership> trainingMemberships;
+    private transient double[] trainingWeights;
+
     protected RegressionTree() {
         this.numNodes = 0;
         this.leaves = new ArrayList<>();
@@ -105,6 +115,66 @@ public class RegressionTree implements Regressor, Serializable {
         return root;
     }
 
+    void setTrainingAssignment(DataSet trainingDataSet, List<Membership> trainingMemberships, double[] trainingWeights){
+        this.trainingDataSet = trainingDataSet;
+        this.trainingMemberships = trainingMemberships;
+        this.trainingWeights = trainingWeights;
+    }
+
+    /**
+     * @return whether the leaves reached by the data points of the training set are still known
+     */
+    public boolean hasTrainingAssignment(DataSet dataSet){
+        return trainingDataSet!=null && trainingDataSet==dataSet;
+    }
+
+    /**
+     * free the memory used by the training assignment
+     */
+    public void releaseTrainingAssignment(){
+        this.trainingDataSet = null;
+        this.trainingMemberships = null;
+        this.trainingWeights = null;
+    }
+
+    /**
+     * predictions of all data points in the training set
+     * reuses the leaves data points reached during training, so the tree is not walked again;
+     * data points that did not take part in training (zero weights) are predicted normally
+     * reflects the current leaf values, so shrinkage applied after training is respected
+     * @param dataSet the data set the tree was trained on
+     * @return
+     */
+    public double[] predictTrainingData(DataSet dataSet){
+        int numDataPoints = dataSet.getNumDataPoints();
+        double[] predictions = new double[numDataPoints];
+        if (!hasTrainingAssignment(dataSet)){
+            IntStream.range(0, numDataPoints).parallel()
+                    .forEach(i -> predictions[i] = predict(dataSet.getRow(i)));
+            return predictions;
+        }
+        boolean[] assigned = new boolean[numDataPoints];
+        for (int l=0;l<leaves.size();l++){
+            double value = leaves.get(l).getValue();
+            Membership membership = trainingMemberships.get(l);
+            for (int i: membership.getIndices()){
+                predictions[i] += value;
+                assigned[i] = true;
+            }
+            // fractional probabilities include the weights of data points
+            int[] fractionalIndices = membership.getFractionalIndices();
+            double[] fractionalProbs = membership.getFractionalProbs();
+            for (int k=0;k<fractionalIndices.length;k++){
+                int i = fractionalIndices[k];
+                predictions[i] += value*fractionalProbs[k]/trainingWeights[i];
+                assigned[i] = true;
+            }
+        }
+        IntStream.range(0, numDataPoints).parallel().filter(i -> !assigned[i])
+                .forEach(i -> predictions[i] = predict(dataSet.getRow(i)));
+        return predictions;
+    }
+
     @Override
     public double predict(Vector vector){
         Optional<Double> predictionNoMissing = predictNoMissingValue(vector);
@@ -31,9 +31,23 @@ public class Splitter {
                                        double[] labels,
                                        double[] probs){
         GlobalStats globalStats = new GlobalStats(labels,probs);
+        return split(regTreeConfig,dataSet,labels,probs,globalStats);
+    }
+
+    /**
+     *
+     * @param globalStats statistics of probs, computed by the caller
+     * @return best valid splitResult, possibly nothing
+     */
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       DataSet dataSet,
+                                       double[] labels,
+                                       double[] probs,
+                                       GlobalStats globalStats){
         if (logger.isDebugEnabled()){
             logger.debug("global statistics = "+globalStats);
         }
+        BinnedDataSet binnedDataSet = binnedDataSet(regTreeConfig, dataSet);
 
         List<Integer> featureIndices = IntStream.range(0, dataSet.getNumFeatures()).boxed().collect(Collectors.toList());
 
@@ -43,7 +57,7 @@ public class Splitter {
             stream = stream.parallel();
         }
         // the list might be empty
-        return stream.map(featureIndex -> split(regTreeConfig, dataSet, labels, probs, featureIndex, globalStats))
+        return stream.map(featureIndex -> split(regTreeConfig, dataSet, binnedDataSet, labels, probs, featureIndex, globalStats))
                 .filter(Optional::isPresent)
                 .map(Optional::get)
                 .max(Comparator.comparing(SplitResult::getReduction));
@@ -51,6 +65,151 @@ public class Splitter {
 
 
 
+    /**
+     * search splits over histograms that have already been computed for the node
+     * @param histograms one histogram per feature, null for features that can never be split
+     * @return best valid splitResult, possibly nothing
+     */
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       BinnedDataSet binnedDataSet,
+                                       FeatureHistogram[] histograms,
+                                       GlobalStats globalStats){
+        if (logger.isDebugEnabled()){
+            logger.debug("global statistics = "+globalStats);
+        }
+        IntStream intStream = IntStream.range(0, histograms.length);
+        if (regTreeConfig.isParallel()){
+            intStream = intStream.parallel();
+        }
+        return intStream.filter(featureIndex -> histograms[featureIndex]!=null)
+                .mapToObj(featureIndex -> HistogramSplitter.findBest(regTreeConfig,
+                        binnedDataSet.getFeature(featureIndex), histograms[featureIndex], featureIndex, globalStats))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .max(Comparator.comparing(SplitResult::getReduction));
+    }
+
+    /**
+     * build histograms of all features for a node
+     * @return one histogram per feature, null for features that can never be split
+     */
+    static FeatureHistogram[] histograms(RegTreeConfig regTreeConfig,
+                                         BinnedDataSet binnedDataSet,
+                                         double[] labels,
+                                         double[] probs){
+        FeatureHistogram[] histograms = new FeatureHistogram[binnedDataSet.getNumFeatures()];
+        IntStream intStream = IntStream.range(0, histograms.length);
+        if (regTreeConfig.isParallel()){
+            intStream = intStream.parallel();
+        }
+        intStream.forEach(featureIndex -> {
+            BinnedDataSet.BinnedFeature feature = binnedDataSet.getFeature(featureIndex);
+            if (HistogramSplitter.isSplitable(feature)){
+                histograms[featureIndex] = FeatureHistogram.build(feature, labels, probs);
+            }
+        });
+        return histograms;
+    }
+
+    /**
+     * same as above, but only visits the non-zero entries of the members, through the row view
+     * the cost depends on the size of the node instead of the size of the data set
+     * features are cut into blocks, each block is filled by one task
+     */
+    static FeatureHistogram[] histograms(RegTreeConfig regTreeConfig,
+                                         BinnedDataSet binnedDataSet,
+                                         double[] labels,
+                                         Membership membership,
+                                         double[] weights){
+        int numFeatures = binnedDataSet.getNumFeatures();
+        FeatureHistogram[] histograms = new FeatureHistogram[numFeatures];
+        int[] missingCodes = new int[numFeatures];
+        for (int j=0;j<numFeatures;j++){
+            BinnedDataSet.BinnedFeature feature = binnedDataSet.getFeature(j);
+            if (HistogramSplitter.isSplitable(feature)){
+                histograms[j] = FeatureHistogram.empty(feature);
+                missingCodes[j] = feature.getMissingCode();
+            }
+        }
+        int[] rowStarts = binnedDataSet.getRowStarts();
+        int[] rowFeatures = binnedDataSet.getRowFeatures();
+        short[] rowCodes = binnedDataSet.getRowCodes();
+        int[] indices = membership.getIndices();
+        int[] fractionalIndices = membership.getFractionalIndices();
+        double[] fractionalProbs = membership.getFractionalProbs();
+
+        int numBlocks = 1;
+        if (regTreeConfig.isParallel()){
+            numBlocks = Math.min(numFeatures, 4*ForkJoinPool.getCommonPoolParallelism());
+        }
+        int blockSize = (numFeatures+numBlocks-1)/Math.max(numBlocks,1);
+        IntStream intStream = IntStream.range(0, numBlocks);
+        if (regTreeConfig.isParallel()){
+            intStream = intStream.parallel();
+        }
+        intStream.forEach(block -> {
+            int from = block*blockSize;
+            int to = Math.min(from+blockSize, numFeatures);
+            for (int i: indices){
+                addRow(histograms, missingCodes, rowStarts, rowFeatures, rowCodes, i, weights[i], labels[i], from, to);
+            }
+            for (int k=0;k<fractionalIndices.length;k++){
+                int i = fractionalIndices[k];
+                addRow(histograms, missingCodes, rowStarts, rowFeatures, rowCodes, i, fractionalProbs[k], labels[i], from, to);
+            }
+        });
+        return histograms;
+    }
+
+    private static void addRow(FeatureHistogram[] histograms, int[] missingCodes,
+                               int[] rowStarts, int[] rowFeatures, short[] rowCodes,
+                               int dataIndex, double prob, double label, int from, int to){
+        if (prob<=0){
+            return;
+        }
+        int start = rowStarts[dataIndex];
+        int end = rowStarts[dataIndex+1];
+        if (from>0){
+            start = Arrays.binarySearch(rowFeatures, start, end, from);
+            if (start<0){
+                start = -start-1;
+            }
+        }
+        double weightedLabel = prob*label;
+        for (int position=start;position<end;position++){
+            int featureIndex = rowFeatures[position];
+            if (featureIndex>=to){
+                break;
+            }
+            FeatureHistogram histogram = histograms[featureIndex];
+            if (histogram!=null){
+                histogram.add(rowCodes[position], missingCodes[featureIndex], prob, weightedLabel);
+            }
+        }
+    }
+
+    /**
+     * derive histograms of a child from histograms of its parent and its sibling
+     */
+    static FeatureHistogram[] subtract(RegTreeConfig regTreeConfig,
+                                       FeatureHistogram[] parentHistograms,
+                                       FeatureHistogram[] siblingHistograms){
+        FeatureHistogram[] histograms = new FeatureHistogram[parentHistograms.length];
+        IntStream intStream = IntStream.range(0, histograms.length);
+        if (regTreeConfig.isParallel()){
+            intStream = intStream.parallel();
+        }
+        intStream.forEach(featureIndex -> {
+            if (parentHistograms[featureIndex]!=null){
+                histograms[featureIndex] = FeatureHistogram.subtract(parentHistograms[featureIndex],
+                        siblingHistograms[featureIndex]);
+            }
+        });
+        return histograms;
+    }
+
+
+
     // TODO this is for active feature faster boosting
 
     static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
@@ -59,8 +218,19 @@ public class Splitter {
                                        double[] probs,
                                        List<Integer> activeFeatures,
                                        boolean fullScan){
+        GlobalStats globalStats = new GlobalStats(labels,probs);
+        return split(regTreeConfig,dataSet,labels,probs,activeFeatures,fullScan,globalStats);
+    }
+
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       DataSet dataSet,
+                                       double[] labels,
+                                       double[] probs,
+                                       List<Integer> activeFeatures,
+                                       boolean fullScan,
+                                       GlobalStats globalStats){
+        BinnedDataSet binnedDataSet = binnedDataSet(regTreeConfig, dataSet);
         if(fullScan){
-            GlobalStats globalStats = new GlobalStats(labels,probs);
             if (logger.isDebugEnabled()){
                 logger.debug("global statistics = "+globalStats);
             }
@@ -69,7 +239,7 @@ public class Splitter {
             PriorityQueue<Optional<SplitResult>> fQueue = new PriorityQueue<>(comparator);
 
             for(int i=0;i<dataSet.getNumFeatures();i++){
-                Optional<SplitResult> singleFeatureBest=split(regTreeConfig,dataSet,labels,probs,i,globalStats);
+                Optional<SplitResult> singleFeatureBest=split(regTreeConfig,dataSet,binnedDataSet,labels,probs,i,globalStats);
                 if (singleFeatureBest.isPresent()){
                     fQueue.add(singleFeatureBest);
                 }
@@ -88,7 +258,6 @@ public class Splitter {
             return result;
 
         }else{
-            GlobalStats globalStats = new GlobalStats(labels,probs);
             if (logger.isDebugEnabled()){
                 logger.debug("global statistics = "+globalStats);
             }
@@ -98,7 +267,7 @@ public class Splitter {
                 stream = stream.parallel();
             }
             // the list might be empty
-            return stream.map(featureIndex -> split(regTreeConfig, dataSet, labels, probs, featureIndex, globalStats))
+            return stream.map(featureIndex -> split(regTreeConfig, dataSet, binnedDataSet, labels, probs, featureIndex, globalStats))
                     .filter(Optional::isPresent)
                     .map(Optional::get)
                     .max(Comparator.comparing(SplitResult::getReduction));
@@ -111,17 +280,37 @@ public class Splitter {
 
 
 
+    /**
+     *
+     * @param binnedDataSet null if histogram split is not used
+     */
     private static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
                                        DataSet dataSet,
+                                       BinnedDataSet binnedDataSet,
                                        double[] labels,
                                        double[] probs,
                                        int featureIndex,
                                        GlobalStats globalStats){
+        if (binnedDataSet!=null){
+            return HistogramSplitter.split(regTreeConfig,binnedDataSet.getFeature(featureIndex),
+                    labels,probs,featureIndex,globalStats);
+        }
 
         return IntervalSplitter.split(regTreeConfig,dataSet,labels,
                     probs,featureIndex, globalStats);
     }
 
+    /**
+     * bins are computed once per data set and shared by all nodes and trees
+     * @return null if histogram split is not used
+     */
+    private static BinnedDataSet binnedDataSet(RegTreeConfig regTreeConfig, DataSet dataSet){
+        if (!regTreeConfig.isHistogramSplit()){
+            return null;
+        }
+        return BinnedDataSet.getOrBuild(dataSet, regTreeConfig.getNumSplitIntervals());
+    }
+
 
     static class GlobalStats {
         //\sum _i p_i * y_i
@@ -144,6 +333,30 @@ public class Splitter {
             }
         }
 
+        /**
+         * only visit members of the node
+         * @param labels
+         * @param weights
+         * @param membership
+         */
+        GlobalStats(double[] labels,
+                    double[] weights,
+                    Membership membership) {
+            for (int i: membership.getIndices()){
+                double prob = weights[i];
+                WeightedLabelSum += labels[i]*prob;
+                probabilisticCount += prob;
+            }
+            int[] fractionalIndices = membership.getFractionalIndices();
+            double[] fractionalProbs = membership.getFractionalProbs();
+            for (int k=0;k<fractionalIndices.length;k++){
+                double prob = fractionalProbs[k];
+                WeightedLabelSum += labels[fractionalIndices[k]]*prob;
+                probabilisticCount += prob;
+            }
+            binaryCount = membership.size();
+        }
+
         public double getWeightedLabelSum() {
             return WeightedLabelSum;
         }
@@ -0,0 +1,252 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+
+/**
+ * reductions of the best regression stumps on one feature, for many label columns at once
+ * gives the same numbers as fitting a 2-leaf tree with RegTreeTrainer on a data set containing only this feature,
+ * once per label, with unit weights and interval splits
+ * label sums are precomputed, so the cost of scoring a feature only depends on the number of its non-zero values,
+ * the labels of those data points, and the number of labels
+ */
+public class StumpScorer {
+    private final int numDataPoints;
+    private final int numLabels;
+    private final int numSplitIntervals;
+    private final int minDataPerLeaf;
+    /**
+     * non-zero labels of data point i are at docStarts[i] ... docStarts[i+1]-1
+     */
+    private final int[] docStarts;
+    private final int[] docLabels;
+    private final double[] docValues;
+    /**
+     * label sums over all data points
+     */
+    private final double[] totals;
+
+    /**
+     * @param regTreeConfig only the number of split intervals and the minimum data per leaf are used
+     * @param labels format [numLabels][numDataPoints]
+     */
+    public StumpScorer(RegTreeConfig regTreeConfig, double[][] labels) {
+        this.numLabels = labels.length;
+        this.numDataPoints = labels[0].length;
+        this.numSplitIntervals = regTreeConfig.getNumSplitIntervals();
+        this.minDataPerLeaf = regTreeConfig.getMinDataPerLeaf();
+        this.totals = new double[numLabels];
+        this.docStarts = new int[numDataPoints+1];
+        for (int l=0;l<numLabels;l++){
+            for (int i=0;i<numDataPoints;i++){
+                if (labels[l][i]!=0){
+                    docStarts[i+1] += 1;
+                    totals[l] += labels[l][i];
+                }
+            }
+        }
+        for (int i=0;i<numDataPoints;i++){
+            docStarts[i+1] += docStarts[i];
+        }
+        this.docLabels = new int[docStarts[numDataPoints]];
+        this.docValues = new double[docStarts[numDataPoints]];
+        int[] positions = Arrays.copyOf(docStarts, numDataPoints);
+        for (int l=0;l<numLabels;l++){
+            for (int i=0;i<numDataPoints;i++){
+                if (labels[l][i]!=0){
+                    docLabels[positions[i]] = l;
+                    docValues[positions[i]] = labels[l][i];
+                    positions[i] += 1;
+                }
+            }
+        }
+    }
+
+    public int getNumLabels() {
+        return numLabels;
+    }
+
+    /**
+     * safe to call from multiple threads
+     * @param featureValues values of one feature over all data points, without NaN
+     * @return normalized reduction of the best split for each label; 0 if the feature cannot be split
+     */
+    public double[] scores(Vector featureValues){
+        double[] scores = new double[numLabels];
+        int numMatched = 0;
+        for (Vector.Element element: featureValues.nonZeroes()){
+            if (Double.isNaN(element.get())){
+                throw new IllegalArgumentException("missing values are not supported");
+            }
+            if (element.get()!=0){
+                numMatched += 1;
+            }
+        }
+        int[] matched = new int[numMatched];
+        double[] matchedValues = new double[numMatched];
+        int m = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (Vector.Element element: featureValues.nonZeroes()){
+            double value = element.get();
+            if (value!=0){
+                matched[m] = element.index();
+                matchedValues[m] = value;
+                m += 1;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        int zeroCount = numDataPoints - numMatched;
+        if (zeroCount>0){
+            min = Math.min(min, 0);
+            max = Math.max(max, 0);
+        }
+        if (numMatched==0 || min==max){
+            return scores;
+        }
+
+        // same intervals as IntervalSplitter
+        double intervalLength = (max-min)/numSplitIntervals;
+        int[] intervalCounts = new int[numSplitIntervals];
+        int[] intervalOfMatched = new int[numMatched];
+        for (int j=0;j<numMatched;j++){
+            intervalOfMatched[j] = IntervalSplitter.getIntervalIndex(matchedValues[j], min, intervalLength, numSplitIntervals);
+            intervalCounts[intervalOfMatched[j]] += 1;
+        }
+        int zeroInterval = -1;
+        if (zeroCount>0){
+            zeroInterval = IntervalSplitter.getIntervalIndex(0, min, intervalLength, numSplitIntervals);
+            intervalCounts[zeroInterval] += zeroCount;
+        }
+        // matched data points grouped by interval
+        int[] intervalStarts = new int[numSplitIntervals+1];
+        for (int j=0;j<numMatched;j++){
+            intervalStarts[intervalOfMatched[j]+1] += 1;
+        }
+        for (int t=0;t<numSplitIntervals;t++){
+            intervalStarts[t+1] += intervalStarts[t];
+        }
+        int[] byInterval = new int[numMatched];
+        int[] positions = Arrays.copyOf(intervalStarts, numSplitIntervals);
+        for (int j=0;j<numMatched;j++){
+            byInterval[positions[intervalOfMatched[j]]] = matched[j];
+            positions[intervalOfMatched[j]] += 1;
+        }
+
+        // splits are between consecutive non-empty intervals; split g leaves the first g+1 of them on the left
+        int numGroups = 0;
+        int[] groups = new int[numSplitIntervals];
+        for (int t=0;t<numSplitIntervals;t++){
+            if (intervalCounts[t]>0){
+                groups[numGroups] = t;
+                numGroups += 1;
+            }
+        }
+        double[] leftCounts = new double[numGroups];
+        double cumulative = 0;
+        for (int g=0;g<numGroups;g++){
+            cumulative += intervalCounts[groups[g]];
+            leftCounts[g] = cumulative;
+        }
+        int firstSplit = 0;
+        while (firstSplit<numGroups-1 && leftCounts[firstSplit]<minDataPerLeaf){
+            firstSplit += 1;
+        }
+        int lastSplit = numGroups-2;
+        while (lastSplit>=0 && numDataPoints-leftCounts[lastSplit]<minDataPerLeaf){
+            lastSplit -= 1;
+        }
+        if (firstSplit>lastSplit){
+            return scores;
+        }
+
+        // label sums of the data points in the zero interval
+        double[] zeroSums = null;
+        if (zeroInterval!=-1){
+            zeroSums = totals.clone();
+            for (int i: matched){
+                for (int p=docStarts[i];p<docStarts[i+1];p++){
+                    zeroSums[docLabels[p]] -= docValues[p];
+                }
+            }
+        }
+
+        // sweep the groups from left to right, keeping the left sum of each label
+        // for a fixed left sum, the reduction is convex in the left count,
+        // so the best split of a label is at the first or the last split of a range where its left sum is constant;
+        // these are the splits around groups containing the label, and the first and last valid splits
+        double[] leftSums = new double[numLabels];
+        double[] best = new double[numLabels];
+        Arrays.fill(best, Double.NEGATIVE_INFINITY);
+        for (int g=0;g<numGroups;g++){
+            int interval = groups[g];
+            boolean before = g-1>=firstSplit && g-1<=lastSplit;
+            boolean after = g>=firstSplit && g<=lastSplit;
+            if (g-1==lastSplit){
+                for (int l=0;l<numLabels;l++){
+                    update(best, leftSums, l, leftCounts[g-1]);
+                }
+            }
+            // labels of this group, evaluated before any of their sums change
+            if (before){
+                if (interval==zeroInterval){
+                    for (int l=0;l<numLabels;l++){
+                        update(best, leftSums, l, leftCounts[g-1]);
+                    }
+                } else {
+                    for (int q=intervalStarts[interval];q<intervalStarts[interval+1];q++){
+                        int i = byInterval[q];
+                        for (int p=docStarts[i];p<docStarts[i+1];p++){
+                            update(best, leftSums, docLabels[p], leftCounts[g-1]);
+                        }
+                    }
+                }
+            }
+            if (interval==zeroInterval){
+                for (int l=0;l<numLabels;l++){
+                    leftSums[l] += zeroSums[l];
+                }
+            }
+            for (int q=intervalStarts[interval];q<intervalStarts[interval+1];q++){
+                int i = byInterval[q];
+                for (int p=docStarts[i];p<docStarts[i+1];p++){
+                    leftSums[docLabels[p]] += docValues[p];
+                }
+            }
+            if (after){
+                if (interval==zeroInterval || g==firstSplit){
+                    for (int l=0;l<numLabels;l++){
+                        update(best, leftSums, l, leftCounts[g]);
+                    }
+                } else {
+                    for (int q=intervalStarts[interval];q<intervalStarts[interval+1];q++){
+                        int i = byInterval[q];
+                        for (int p=docStarts[i];p<docStarts[i+1];p++){
+                            update(best, leftSums, docLabels[p], leftCounts[g]);
+                        }
+                    }
+                }
+            }
+        }
+        for (int l=0;l<numLabels;l++){
+            // same normalization as RegTreeTrainer
+            scores[l] = best[l]/numDataPoints;
+        }
+        return scores;
+    }
+
+    private void update(double[] best, double[] leftSums, int label, double leftCount){
+        double leftSum = leftSums[label];
+        double totalSum = totals[label];
+        double rightSum = totalSum - leftSum;
+        double rightCount = numDataPoints - leftCount;
+        double reduction = leftSum * leftSum / leftCount +
+                rightSum * rightSum / rightCount
+                - totalSum * totalSum / numDataPoints;
+        if (reduction>best[label]){
+            best[label] = reduction;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import org.apache.mahout.math.Vector;
+
+/**
+ * dense scratch arrays shared by all nodes of one tree during training
+ * only entries of the node being processed are non-zero, and they are reset after use,
+ * so each tree allocates them once instead of once per node
+ */
+class TrainingBuffers {
+    /**
+     * probabilities of the data points in the current node
+     */
+    private double[] probs;
+    /**
+     * values of the current split feature
+     */
+    private double[] featureValues;
+
+    TrainingBuffers(int numDataPoints) {
+        this.probs = new double[numDataPoints];
+        this.featureValues = new double[numDataPoints];
+    }
+
+    /**
+     * @return dense probabilities of the members
+     */
+    double[] loadProbs(Membership membership, double[] weights){
+        membership.fill(weights, probs);
+        return probs;
+    }
+
+    void clearProbs(Membership membership){
+        membership.clear(probs);
+    }
+
+    /**
+     * @return dense values of the column, including NaN
+     */
+    double[] loadFeatureValues(Vector column){
+        for (Vector.Element element: column.nonZeroes()){
+            featureValues[element.index()] = element.get();
+        }
+        return featureValues;
+    }
+
+    void clearFeatureValues(Vector column){
+        for (Vector.Element element: column.nonZeroes()){
+            featureValues[element.index()] = 0;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package edu.neu.ccs.pyramid.clustering.bm;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.dataset.DataSetBuilder;
+import edu.neu.ccs.pyramid.dataset.Density;
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+import org.apache.commons.lang3.time.StopWatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class OnlineBMTrainerTest {
+
+    public static void main(String[] args) throws Exception{
+        test1();
+    }
+
+    /**
+     * label sets drawn from 4 clusters, each with its own frequent labels
+     */
+    private static MultiLabel[] generate(int numDataPoints, int numLabels, Random random){
+        MultiLabel[] multiLabels = new MultiLabel[numDataPoints];
+        for (int i=0;i<numDataPoints;i++){
+            int cluster = random.nextInt(4);
+            MultiLabel multiLabel = new MultiLabel();
+            for (int l=0;l<numLabels;l++){
+                double p = (l%4==cluster) ? 0.6 : 0.02;
+                if (random.nextDouble()<p){
+                    multiLabel.addLabel(l);
+                }
+            }
+            multiLabels[i] = multiLabel;
+        }
+        return multiLabels;
+    }
+
+    /**
+     * online EM should reach about the same likelihood as full-batch EM, also when streaming from a file
+     */
+    private static void test1() throws Exception{
+        int numLabels = 50;
+        MultiLabel[] multiLabels = generate(20000, numLabels, new Random(0));
+        List<MultiLabel> list = Arrays.asList(multiLabels);
+
+        DataSet dataSet = DataSetBuilder.getBuilder()
+                .numDataPoints(multiLabels.length)
+                .numFeatures(numLabels)
+                .density(Density.SPARSE_RANDOM)
+                .build();
+        for (int i=0;i<multiLabels.length;i++){
+            for (int label: multiLabels[i].getMatchedLabels()){
+                dataSet.setFeatureValue(i,label,1);
+            }
+        }
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        BMTrainer batchTrainer = new BMTrainer(dataSet, 4, 0);
+        batchTrainer.train();
+        System.out.println("full-batch time = "+stopWatch);
+        System.out.println("full-batch objective = "+batchTrainer.getObjective());
+
+        // like full-batch EM, a single run can get stuck with a dead cluster, so pick the best of several starts
+        stopWatch = new StopWatch();
+        stopWatch.start();
+        BM online = BMSelector.selectOnline(numLabels, list, 4, 3, 3);
+        System.out.println("online time for 3 runs = "+stopWatch);
+        System.out.println("online objective = "+list.stream().mapToDouble(multiLabel -> -online.logProbability(multiLabel)).sum());
+
+        File file = File.createTempFile("label_sets", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), list.stream()
+                .map(multiLabel -> multiLabel.getMatchedLabelsOrdered().stream().map(Object::toString)
+                        .collect(Collectors.joining(" ")))
+                .collect(Collectors.toList()));
+        Iterable<MultiLabel> stream = () -> lines(file);
+        // same seed and passes, so the streamed model should match the in-memory one
+        OnlineBMTrainer memoryTrainer = new OnlineBMTrainer(4, numLabels, 1);
+        memoryTrainer.train(list, 3);
+        OnlineBMTrainer streamTrainer = new OnlineBMTrainer(4, numLabels, 1);
+        streamTrainer.train(stream, 3);
+        double memoryObjective = memoryTrainer.getObjective(list);
+        double streamObjective = streamTrainer.getObjective(list);
+        System.out.println("in-memory objective = "+memoryObjective);
+        System.out.println("streamed objective = "+streamObjective);
+        System.out.println("difference = "+Math.abs(memoryObjective-streamObjective));
+        System.out.println(streamTrainer.getBm());
+    }
+
+    /**
+     * label sets read from a file; the file is closed once the iterator is exhausted
+     */
+    private static Iterator<MultiLabel> lines(File file){
+        Stream<String> lines;
+        try {
+            lines = Files.lines(file.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Iterator<String> iterator = lines.iterator();
+        return new Iterator<MultiLabel>() {
+            @Override
+            public boolean hasNext() {
+                boolean hasNext = iterator.hasNext();
+                if (!hasNext){
+                    lines.close();
+                }
+                return hasNext;
+            }
+
+            @Override
+            public MultiLabel next() {
+                return parse(iterator.next());
+            }
+        };
+    }
+
+    private static MultiLabel parse(String line){
+        MultiLabel multiLabel = new MultiLabel();
+        for (String label: line.split(" ")){
+            if (!label.isEmpty()){
+                multiLabel.addLabel(Integer.parseInt(label));
+            }
+        }
+        return multiLabel;
+    }
+}
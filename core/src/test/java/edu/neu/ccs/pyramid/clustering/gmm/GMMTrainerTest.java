@@ -23,6 +23,7 @@ import java.util.stream.IntStream;
 public class GMMTrainerTest {
     public static void main(String[] args) throws Exception{
 //        test2();
+//        synthetic();
 //        fashion();
         spam();
     }
@@ -59,6 +60,43 @@ public class GMMTrainerTest {
     }
 
 
+    /**
+     * full, diagonal and mini-batch EM on correlated gaussians
+     */
+    private static void synthetic() throws Exception{
+        Random random = new Random(0);
+        int rows = 3000;
+        int dim = 10;
+        int numComponents = 3;
+        RealMatrix data = new Array2DRowRealMatrix(rows,dim);
+        for (int i=0;i<rows;i++){
+            int k = i%numComponents;
+            double shared = random.nextGaussian();
+            for (int j=0;j<dim;j++){
+                data.setEntry(i,j,5*k+shared*(j%3)+random.nextGaussian());
+            }
+        }
+
+        String[] modes = {"full","diagonal","mini-batch"};
+        for (String mode: modes){
+            GMM gmm = new GMM(dim,numComponents, data);
+            GMMTrainer trainer = new GMMTrainer(data, gmm);
+            trainer.setDiagonalCovariance(mode.equals("diagonal"));
+            int numIterations = 30;
+            if (mode.equals("mini-batch")){
+                trainer.setMiniBatchSize(300);
+                numIterations = 100;
+            }
+            long start = System.currentTimeMillis();
+            for (int i=0;i<numIterations;i++){
+                trainer.iterate();
+            }
+            double logLikelihood = IntStream.range(0,data.getRowDimension()).parallel()
+                    .mapToDouble(j->gmm.logDensity(data.getRowVector(j))).sum();
+            System.out.println(mode+": log likelihood = "+logLikelihood+", time = "+(System.currentTimeMillis()-start)+" ms");
+        }
+    }
+
     private static void test1() throws Exception{
         MultiLabelClfDataSet dataSet = TRECFormat.loadMultiLabelClfDataSet("/Users/chengli/Downloads/scene/train_test_split/train", DataSetType.ML_CLF_DENSE,true);
         RealMatrix data = new Array2DRowRealMatrix(dataSet.getNumDataPoints(),dataSet.getNumFeatures());
@@ -3,8 +3,10 @@ package edu.neu.ccs.pyramid.clustering.kmeans;
 
 import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.DataSetBuilder;
+import edu.neu.ccs.pyramid.dataset.Density;
 import edu.neu.ccs.pyramid.eval.Accuracy;
 import edu.neu.ccs.pyramid.util.ArgMax;
+import edu.neu.ccs.pyramid.util.ArgMin;
 import org.apache.commons.io.FileUtils;
 import org.apache.mahout.math.Vector;
 
@@ -20,6 +22,7 @@ public class KMeansTest{
     public static void main(String[] args) throws Exception{
 
         mnist();
+//        sparse();
 //        mnistSubgroup(2);
 //        fashion();
 //        fashiSubgroup(9);
@@ -186,6 +189,67 @@ public class KMeansTest{
     }
 
 
+    /**
+     * pruned assignments should match the nearest centers computed from scratch
+     */
+    private static void sparse(){
+        Random random = new Random(0);
+        int rows = 5000;
+        int numFeatures = 2000;
+        int numComponents = 50;
+        DataSet dataSet = DataSetBuilder.getBuilder()
+                .numDataPoints(rows)
+                .numFeatures(numFeatures)
+                .density(Density.SPARSE_RANDOM)
+                .build();
+        for (int i=0;i<rows;i++){
+            // each instance mostly uses the features of one topic
+            int topic = random.nextInt(numComponents);
+            for (int n=0;n<30;n++){
+                int j = random.nextDouble()<0.8 ? topic*40+random.nextInt(40) : random.nextInt(numFeatures);
+                dataSet.setFeatureValue(i,j,random.nextDouble());
+            }
+        }
+
+        KMeans kMeans = new KMeans(numComponents, dataSet);
+        kMeans.setVerbose(false);
+        kMeans.randomInitialize();
+        List<Double> objectives = new ArrayList<>();
+        int mismatches = 0;
+        long start = System.currentTimeMillis();
+        for (int iter=1;iter<=20;iter++){
+            kMeans.iterate();
+            objectives.add(kMeans.objective());
+            int[] assignment = kMeans.getAssignments();
+            for (int i=0;i<rows;i++){
+                if (!(nearest(dataSet.getRow(i), kMeans.getCenters())==assignment[i])){
+                    mismatches += 1;
+                }
+            }
+        }
+        System.out.println("time = "+(System.currentTimeMillis()-start)+" ms");
+        System.out.println("assignments different from the nearest centers = "+mismatches);
+        System.out.println("training objective changes: "+objectives);
+
+        KMeans miniBatch = new KMeans(numComponents, dataSet);
+        miniBatch.setVerbose(false);
+        miniBatch.setMiniBatchSize(500);
+        miniBatch.randomInitialize();
+        for (int iter=1;iter<=50;iter++){
+            miniBatch.iterate();
+        }
+        miniBatch.assign();
+        System.out.println("mini-batch objective = "+miniBatch.objective());
+    }
+
+    private static int nearest(Vector vector, Vector[] centers){
+        double[] distances = new double[centers.length];
+        for (int k=0;k<centers.length;k++){
+            distances[k] = vector.getDistanceSquared(centers[k]);
+        }
+        return ArgMin.argMin(distances);
+    }
+
     private static double purity(int[] assignment, int[] labels, int numLabels, int numClusters){
         int[] clusterLabels = new int[numClusters];
         for (int k=0;k<numClusters;k++){
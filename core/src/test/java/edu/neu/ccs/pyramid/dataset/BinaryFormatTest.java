@@ -0,0 +1,64 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.io.File;
+import java.util.Random;
+
+public class BinaryFormatTest {
+    public static void main(String[] args) throws Exception{
+        test1();
+    }
+
+    /**
+     * a multi-label data set should survive a round trip through the binary format
+     */
+    private static void test1() throws Exception{
+        Random random = new Random(0);
+        MultiLabelClfDataSet dataSet = MLClfDataSetBuilder.getBuilder()
+                .numDataPoints(200).numFeatures(20).numClasses(3)
+                .missingValue(true).density(Density.SPARSE_RANDOM).build();
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (int j=0;j<dataSet.getNumFeatures();j++){
+                if (random.nextDouble()<0.2){
+                    dataSet.setFeatureValue(i,j,random.nextInt(8)*0.5);
+                }
+                if (random.nextDouble()<0.02){
+                    dataSet.setFeatureValue(i,j,Double.NaN);
+                }
+            }
+            dataSet.addLabel(i,random.nextInt(3));
+            if (random.nextBoolean()){
+                dataSet.addLabel(i,random.nextInt(3));
+            }
+        }
+        File file = File.createTempFile("binary_format_test",".bin");
+        file.deleteOnExit();
+        BinaryFormat.save(dataSet, file);
+        System.out.println("is binary format = "+BinaryFormat.isBinaryFormat(file));
+        MultiLabelClfDataSet loaded = TRECFormat.loadMultiLabelClfDataSetAutoSparseSequential(file);
+        System.out.println(loaded.getMetaInfo());
+        int numMismatches = 0;
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (int j=0;j<dataSet.getNumFeatures();j++){
+                if (Double.compare(dataSet.getRow(i).get(j),loaded.getRow(i).get(j))!=0){
+                    numMismatches += 1;
+                }
+            }
+            if (!dataSet.getMultiLabels()[i].equals(loaded.getMultiLabels()[i])){
+                numMismatches += 1;
+            }
+            if (!dataSet.getIdTranslator().toExtId(i).equals(loaded.getIdTranslator().toExtId(i))){
+                numMismatches += 1;
+            }
+        }
+        for (int j=0;j<dataSet.getNumFeatures();j++){
+            for (int i=0;i<dataSet.getNumDataPoints();i++){
+                if (Double.compare(dataSet.getColumn(j).get(i),loaded.getColumn(j).get(i))!=0){
+                    numMismatches += 1;
+                }
+            }
+        }
+        System.out.println("number of mismatches = "+numMismatches);
+        System.out.println(loaded.getLabelTranslator());
+        System.out.println(loaded.getFeatureList().size());
+    }
+}
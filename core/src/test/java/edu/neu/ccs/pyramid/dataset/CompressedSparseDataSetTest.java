@@ -0,0 +1,93 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeConfig;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeTrainer;
+import org.apache.mahout.math.Vector;
+
+import java.io.*;
+import java.util.Random;
+
+public class CompressedSparseDataSetTest {
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+        test3();
+    }
+
+    private static MultiLabelClfDataSet random(){
+        Random random = new Random(0);
+        MultiLabelClfDataSet dataSet = MLClfDataSetBuilder.getBuilder()
+                .numDataPoints(500).numFeatures(30).numClasses(4)
+                .missingValue(true).density(Density.SPARSE_RANDOM).build();
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (int j=0;j<dataSet.getNumFeatures();j++){
+                if (random.nextDouble()<0.2){
+                    dataSet.setFeatureValue(i,j,random.nextInt(8)*0.5);
+                }
+                if (random.nextDouble()<0.02){
+                    dataSet.setFeatureValue(i,j,Double.NaN);
+                }
+            }
+            dataSet.addLabel(i,random.nextInt(4));
+        }
+        return dataSet;
+    }
+
+    /**
+     * rows and columns should hold the same values
+     */
+    private static void test1(){
+        MultiLabelClfDataSet dataSet = random();
+        CompressedSparseMLClfDataSet frozen = CompressedSparseMLClfDataSet.freeze(dataSet);
+        System.out.println(frozen.getMetaInfo());
+        int numMismatches = 0;
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (int j=0;j<dataSet.getNumFeatures();j++){
+                double expected = dataSet.getRow(i).get(j);
+                if (Double.compare(expected,frozen.getRow(i).get(j))!=0
+                        || Double.compare(expected,frozen.getColumn(j).get(i))!=0){
+                    numMismatches += 1;
+                }
+            }
+            if (!dataSet.getMultiLabels()[i].equals(frozen.getMultiLabels()[i])){
+                numMismatches += 1;
+            }
+        }
+        int numNonZeros = 0;
+        for (int j=0;j<frozen.getNumFeatures();j++){
+            for (Vector.Element element: frozen.getColumn(j).nonZeroes()){
+                numNonZeros += 1;
+            }
+        }
+        System.out.println("number of mismatches = "+numMismatches);
+        System.out.println("non-zeros in columns = "+numNonZeros+", expected "+frozen.getNumNonZeros());
+    }
+
+    /**
+     * a tree trained on the frozen data set should be the same
+     */
+    private static void test2(){
+        MultiLabelClfDataSet dataSet = random();
+        CompressedSparseMLClfDataSet frozen = CompressedSparseMLClfDataSet.freeze(dataSet);
+        double[] labels = new double[dataSet.getNumDataPoints()];
+        for (int i=0;i<labels.length;i++){
+            labels[i] = dataSet.getMultiLabels()[i].matchClass(0)?1:0;
+        }
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(5);
+        System.out.println(RegTreeTrainer.fit(regTreeConfig,dataSet,labels));
+        System.out.println(RegTreeTrainer.fit(regTreeConfig,frozen,labels));
+    }
+
+    private static void test3() throws Exception{
+        CompressedSparseMLClfDataSet frozen = CompressedSparseMLClfDataSet.freeze(random());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)){
+            out.writeObject(frozen);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))){
+            CompressedSparseMLClfDataSet copy = (CompressedSparseMLClfDataSet)in.readObject();
+            System.out.println(copy.getRow(3).asFormatString().equals(frozen.getRow(3).asFormatString()));
+            System.out.println(copy.getColumn(3).asFormatString().equals(frozen.getColumn(3).asFormatString()));
+        }
+    }
+}
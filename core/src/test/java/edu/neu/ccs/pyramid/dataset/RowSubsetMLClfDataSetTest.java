@@ -0,0 +1,68 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class RowSubsetMLClfDataSetTest {
+    public static void main(String[] args) {
+        for (Density density: Density.values()){
+            test1(density);
+        }
+    }
+
+    /**
+     * a view should have the same rows, columns and labels as a copy made by sampleData
+     */
+    private static void test1(Density density){
+        Random random = new Random(0);
+        MultiLabelClfDataSet dataSet = MLClfDataSetBuilder.getBuilder()
+                .numDataPoints(1000).numFeatures(50).numClasses(5)
+                .missingValue(true).density(density).build();
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (int j=0;j<dataSet.getNumFeatures();j++){
+                if (random.nextDouble()<0.1){
+                    dataSet.setFeatureValue(i,j,random.nextGaussian());
+                }
+                if (random.nextDouble()<0.01){
+                    dataSet.setFeatureValue(i,j,Double.NaN);
+                }
+            }
+            dataSet.addLabel(i,random.nextInt(5));
+        }
+        List<Integer> indices = new ArrayList<>();
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            if (random.nextDouble()<0.3){
+                indices.add(i);
+            }
+        }
+        MultiLabelClfDataSet copy = DataSetUtil.sampleData(dataSet, indices);
+        MultiLabelClfDataSet view = DataSetUtil.sampleView(dataSet, indices);
+        // columns requested concurrently
+        IntStream.range(0, 4*dataSet.getNumFeatures()).parallel().forEach(j -> view.getColumn(j%dataSet.getNumFeatures()));
+        int numMismatches = 0;
+        for (int i=0;i<copy.getNumDataPoints();i++){
+            for (int j=0;j<copy.getNumFeatures();j++){
+                if (Double.compare(copy.getRow(i).get(j),view.getRow(i).get(j))!=0){
+                    numMismatches += 1;
+                }
+                if (Double.compare(copy.getColumn(j).get(i),view.getColumn(j).get(i))!=0){
+                    numMismatches += 1;
+                }
+            }
+            if (!copy.getMultiLabels()[i].equals(view.getMultiLabels()[i])){
+                numMismatches += 1;
+            }
+            if (!copy.getIdTranslator().toExtId(i).equals(view.getIdTranslator().toExtId(i))){
+                numMismatches += 1;
+            }
+        }
+        for (int j=0;j<copy.getNumFeatures();j++){
+            if (copy.getColumn(j).getNumNonZeroElements()!=view.getColumn(j).getNumNonZeroElements()){
+                numMismatches += 1;
+            }
+        }
+        System.out.println(density+": number of data points = "+view.getNumDataPoints()+", number of mismatches = "+numMismatches);
+    }
+}
@@ -0,0 +1,154 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+public class SparseTextParserTest {
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+        test3();
+        test4();
+    }
+
+    /**
+     * TREC files written by TRECFormat.save should be read back exactly, for every density
+     * the file is large enough to be split into several chunks
+     */
+    private static void test1() throws Exception{
+        MultiLabelClfDataSet dataSet = randomDataSet(30000, 100, 4, true);
+        File trecFile = Files.createTempDirectory("sparse_text_parser_test").toFile();
+        TRECFormat.save(dataSet, trecFile);
+        System.out.println("matrix file size = "+new File(trecFile, "feature_matrix.txt").length());
+        for (DataSetType dataSetType: new DataSetType[]{DataSetType.ML_CLF_SPARSE, DataSetType.ML_CLF_SEQ_SPARSE, DataSetType.ML_CLF_DENSE}){
+            long start = System.currentTimeMillis();
+            MultiLabelClfDataSet loaded = TRECFormat.loadMultiLabelClfDataSet(trecFile, dataSetType, true);
+            System.out.println(dataSetType+": loaded in "+(System.currentTimeMillis()-start)+" ms, number of mismatches = "
+                    +numMismatches(dataSet, loaded));
+        }
+    }
+
+    /**
+     * LibSVM regression files use 1-based feature indices
+     */
+    private static void test2() throws Exception{
+        Random random = new Random(1);
+        RegDataSet dataSet = RegDataSetBuilder.getBuilder().numDataPoints(500).numFeatures(30).dense(false).build();
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (int j=0;j<dataSet.getNumFeatures();j++){
+                if (random.nextDouble()<0.2){
+                    dataSet.setFeatureValue(i,j,random.nextGaussian());
+                }
+            }
+            dataSet.setLabel(i,random.nextGaussian());
+        }
+        File libSvmFile = File.createTempFile("sparse_text_parser_test",".svm");
+        libSvmFile.deleteOnExit();
+        LibSvmFormat.save(dataSet, libSvmFile.getAbsolutePath());
+        RegDataSet loaded = LibSvmFormat.loadRegDataSet(libSvmFile.getAbsolutePath(), 30, false);
+        int numMismatches = numFeatureMismatches(dataSet, loaded);
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            if (dataSet.getLabels()[i]!=loaded.getLabels()[i]){
+                numMismatches += 1;
+            }
+        }
+        System.out.println("LibSVM: number of mismatches = "+numMismatches);
+    }
+
+    /**
+     * labels of Meka files are stored as features after the real features
+     * Meka data sets do not allow missing values
+     */
+    private static void test3() throws Exception{
+        MultiLabelClfDataSet dataSet = randomDataSet(500, 30, 5, false);
+        File mekaFile = File.createTempFile("sparse_text_parser_test",".arff");
+        mekaFile.deleteOnExit();
+        MekaFormat.save(dataSet, mekaFile.getAbsolutePath(), "test");
+        MultiLabelClfDataSet loaded = MekaFormat.loadMLClfDataset(mekaFile.getAbsolutePath(), 30, 5, "sparse");
+        System.out.println("Meka: number of mismatches = "+numMismatches(dataSet, loaded));
+    }
+
+    /**
+     * blank lines are not data points; class labels must be integers
+     */
+    private static void test4() throws Exception{
+        File file = File.createTempFile("sparse_text_parser_test",".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "1,2 0:1.5 3:2\n\n  \n0 1:1\n\n".getBytes("UTF-8"));
+        SparseTextParser.Rows rows = new SparseTextParser(SparseTextParser.Syntax.SVM)
+                .setIntegerLabels(true).parse(file);
+        System.out.println("number of rows = "+rows.getNumRows()+", labels of the first row = "
+                +rows.getLabel(0,0)+","+rows.getLabel(0,1));
+
+        Files.write(file.toPath(), "1.0 0:1.5\n".getBytes("UTF-8"));
+        try {
+            new SparseTextParser(SparseTextParser.Syntax.SVM).setIntegerLabels(true).parse(file);
+            System.out.println("non-integer label accepted");
+        } catch (IllegalArgumentException e){
+            System.out.println("non-integer label rejected: "+e.getMessage());
+        }
+    }
+
+    private static MultiLabelClfDataSet randomDataSet(int numDataPoints, int numFeatures, int numClasses, boolean missingValue){
+        Random random = new Random(0);
+        MultiLabelClfDataSet dataSet = MLClfDataSetBuilder.getBuilder()
+                .numDataPoints(numDataPoints).numFeatures(numFeatures).numClasses(numClasses)
+                .missingValue(missingValue).density(Density.SPARSE_RANDOM).build();
+        for (int i=0;i<numDataPoints;i++){
+            for (int j=0;j<numFeatures;j++){
+                double u = random.nextDouble();
+                if (u<0.05){
+                    // short decimals
+                    dataSet.setFeatureValue(i,j,random.nextInt(1000)*0.01);
+                } else if (u<0.08){
+                    // full precision
+                    dataSet.setFeatureValue(i,j,-random.nextDouble());
+                } else if (u<0.09){
+                    // exponents
+                    dataSet.setFeatureValue(i,j,random.nextDouble()*1e-8);
+                } else if (missingValue && u<0.095){
+                    dataSet.setFeatureValue(i,j,Double.NaN);
+                }
+            }
+            for (int k=0;k<numClasses;k++){
+                if (random.nextDouble()<0.3){
+                    dataSet.addLabel(i,k);
+                }
+            }
+        }
+        return dataSet;
+    }
+
+    private static int numMismatches(MultiLabelClfDataSet expected, MultiLabelClfDataSet actual){
+        int numMismatches = numFeatureMismatches(expected, actual);
+        for (int i=0;i<expected.getNumDataPoints();i++){
+            if (!expected.getMultiLabels()[i].equals(actual.getMultiLabels()[i])){
+                numMismatches += 1;
+            }
+        }
+        return numMismatches;
+    }
+
+    private static int numFeatureMismatches(DataSet expected, DataSet actual){
+        int numMismatches = 0;
+        if (expected.getNumDataPoints()!=actual.getNumDataPoints()){
+            return Integer.MAX_VALUE;
+        }
+        for (int i=0;i<expected.getNumDataPoints();i++){
+            Vector expectedRow = expected.getRow(i);
+            Vector actualRow = actual.getRow(i);
+            for (int j=0;j<expected.getNumFeatures();j++){
+                if (Double.compare(expectedRow.get(j),actualRow.get(j))!=0){
+                    numMismatches += 1;
+                }
+                if (Double.compare(expectedRow.get(j),actual.getColumn(j).get(i))!=0){
+                    numMismatches += 1;
+                }
+            }
+        }
+        return numMismatches;
+    }
+}
@@ -0,0 +1,68 @@
+package edu.neu.ccs.pyramid.elasticsearch;
+
+import edu.neu.ccs.pyramid.dataset.IdTranslator;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.node.Node;
+
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ESIndexFieldsTest {
+
+    public static void main(String[] args) throws Exception{
+        test1();
+    }
+
+    /**
+     * bulk fetched fields should match fields fetched one document at a time, on a local embedded node
+     */
+    private static void test1() throws Exception{
+        Settings settings = Settings.builder()
+                .put("path.home", Files.createTempDirectory("es").toString())
+                .put("transport.type", "local")
+                .put("http.enabled", false)
+                .put("cluster.name", "test")
+                .build();
+        try (Node node = new Node(settings)){
+            node.start();
+            ESIndex index = new ESIndex();
+            index.client = node.client();
+            index.indexName = "test";
+            index.documentType = "document";
+            index.scrollSlices = 3;
+            index.scrollSize = 7;
+            for (int i=0;i<100;i++){
+                Map<String, Object> source = new HashMap<>();
+                // some documents miss the field
+                if (i%10!=0){
+                    source.put("body_field_length", i*2);
+                }
+                source.put("count", i);
+                index.client.prepareIndex("test", "document", ""+i).setSource(source).get();
+            }
+            index.client.admin().indices().prepareRefresh("test").get();
+
+            // only every other document is in the data set
+            IdTranslator idTranslator = new IdTranslator();
+            for (int i=0;i<50;i++){
+                idTranslator.addData(i, ""+(i*2));
+            }
+            Map<String, float[]> floats = index.getFloatFields(new String[]{"body_field_length", "count"}, idTranslator);
+            Map<String, int[]> ints = index.getIntFields(new String[]{"count"}, idTranslator, -1);
+            int mismatches = 0;
+            for (int i=0;i<idTranslator.numData();i++){
+                String id = idTranslator.toExtId(i);
+                float expected = index.getFloatField(id, "body_field_length");
+                float value = floats.get("body_field_length")[i];
+                if (Float.compare(expected, value)!=0){
+                    mismatches += 1;
+                }
+                if (floats.get("count")[i]!=index.getIntField(id, "count") || ints.get("count")[i]!=index.getIntField(id, "count")){
+                    mismatches += 1;
+                }
+            }
+            System.out.println("mismatches = "+mismatches);
+        }
+    }
+}
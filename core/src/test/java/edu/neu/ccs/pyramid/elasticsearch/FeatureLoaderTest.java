@@ -0,0 +1,141 @@
+package edu.neu.ccs.pyramid.elasticsearch;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.dataset.DataSetBuilder;
+import edu.neu.ccs.pyramid.dataset.IdTranslator;
+import edu.neu.ccs.pyramid.feature.Ngram;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.spans.*;
+import org.apache.lucene.store.RAMDirectory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class FeatureLoaderTest {
+    private static final String[] WORDS = {"the","of","heart","failure","acute","renal","chronic","disease","kidney"};
+
+    public static void main(String[] args) throws Exception{
+        test1();
+    }
+
+    /**
+     * ngram frequencies matched against a snapshot should equal the number of ordered span near matches in Lucene
+     */
+    private static void test1() throws Exception{
+        Random random = new Random(0);
+        RAMDirectory directory = new RAMDirectory();
+        FieldType fieldType = new FieldType();
+        fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        fieldType.setTokenized(true);
+        fieldType.setStoreTermVectors(true);
+        fieldType.setStoreTermVectorPositions(true);
+        fieldType.freeze();
+        int numDocs = 500;
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))){
+            for (int i=0;i<numDocs;i++){
+                StringBuilder sb = new StringBuilder();
+                int length = random.nextInt(30);
+                for (int w=0;w<length;w++){
+                    sb.append(WORDS[random.nextInt(WORDS.length)]).append(" ");
+                }
+                Document document = new Document();
+                document.add(new StringField("id", "doc"+i, Field.Store.YES));
+                document.add(new Field("body", sb.toString(), fieldType));
+                writer.addDocument(document);
+            }
+        }
+
+        // stop words are removed by the analyzer, so ngrams only use the other words
+        List<Ngram> ngrams = new ArrayList<>();
+        for (int f=0;f<300;f++){
+            int n = 1+random.nextInt(3);
+            List<String> terms = new ArrayList<>();
+            for (int k=0;k<n;k++){
+                terms.add(WORDS[2+random.nextInt(WORDS.length-2)]);
+            }
+            Ngram ngram = new Ngram();
+            ngram.setNgram(Ngram.toNgramString(terms));
+            ngram.setField("body");
+            ngram.setSlop(random.nextInt(3));
+            ngram.setInOrder(true);
+            ngram.setIndex(f);
+            ngrams.add(ngram);
+        }
+
+        File file = File.createTempFile("snapshot", ".bin");
+        file.deleteOnExit();
+        int mismatches = 0;
+        int numMatched = 0;
+        try (IndexReader reader = DirectoryReader.open(directory)){
+            TermVectorSnapshot.export(reader, "id", new String[]{"body"}, file);
+            IdTranslator idTranslator = new IdTranslator();
+            for (int docId=0;docId<reader.maxDoc();docId++){
+                idTranslator.addData(docId, reader.document(docId).get("id"));
+            }
+            DataSet dataSet = DataSetBuilder.getBuilder().numDataPoints(numDocs).numFeatures(ngrams.size()).build();
+            FeatureLoader.loadNgramFeatures(TermVectorSnapshot.load(file), dataSet, ngrams, idTranslator,
+                    FeatureLoader.MatchScoreType.FREQUENCY, null);
+
+            IndexSearcher searcher = new IndexSearcher(reader);
+            searcher.setQueryCache(null);
+            for (Ngram ngram: ngrams){
+                String[] terms = ngram.getTerms();
+                SpanQuery[] clauses = new SpanQuery[terms.length];
+                for (int k=0;k<terms.length;k++){
+                    clauses[k] = new SpanTermQuery(new Term("body", terms[k]));
+                }
+                SpanQuery query = terms.length==1 ? clauses[0] : new SpanNearQuery(clauses, ngram.getSlop(), true);
+                SpanWeight weight = (SpanWeight) searcher.createNormalizedWeight(query, false);
+                double[] expected = new double[numDocs];
+                for (LeafReaderContext leaf: reader.leaves()){
+                    Spans spans = weight.getSpans(leaf, SpanWeight.Postings.POSITIONS);
+                    if (spans==null){
+                        continue;
+                    }
+                    while (spans.nextDoc()!=Spans.NO_MORE_DOCS){
+                        while (spans.nextStartPosition()!=Spans.NO_MORE_POSITIONS){
+                            expected[leaf.docBase+spans.docID()] += 1;
+                        }
+                    }
+                }
+                for (int i=0;i<numDocs;i++){
+                    if (expected[i]>0){
+                        numMatched += 1;
+                    }
+                    if (expected[i]!=dataSet.getRow(i).get(ngram.getIndex())){
+                        mismatches += 1;
+                    }
+                }
+            }
+            // documents outside the filter get no features; a document missing from the snapshot is skipped
+            Set<String> filteredDocs = new HashSet<>();
+            for (int i=0;i<numDocs;i+=2){
+                filteredDocs.add(idTranslator.toExtId(i));
+            }
+            idTranslator.addData(numDocs, "missing");
+            DataSet filtered = DataSetBuilder.getBuilder().numDataPoints(numDocs+1).numFeatures(ngrams.size()).build();
+            FeatureLoader.loadNgramFeatures(TermVectorSnapshot.load(file), filtered, ngrams, idTranslator,
+                    filteredDocs, FeatureLoader.MatchScoreType.FREQUENCY, null);
+            int filteredMismatches = 0;
+            for (int i=0;i<numDocs;i++){
+                double expectedNonZeros = i%2==0 ? dataSet.getRow(i).getNumNonZeroElements() : 0;
+                if (filtered.getRow(i).getNumNonZeroElements()!=expectedNonZeros){
+                    filteredMismatches += 1;
+                }
+            }
+            System.out.println("mismatches with filter = "+filteredMismatches);
+        }
+        System.out.println("matched (document, ngram) pairs = "+numMatched);
+        System.out.println("mismatches = "+mismatches);
+    }
+}
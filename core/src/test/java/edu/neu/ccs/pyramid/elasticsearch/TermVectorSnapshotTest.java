@@ -0,0 +1,95 @@
+package edu.neu.ccs.pyramid.elasticsearch;
+
+import com.google.common.collect.Multiset;
+import edu.neu.ccs.pyramid.feature.Ngram;
+import edu.neu.ccs.pyramid.feature_extraction.NgramEnumerator;
+import edu.neu.ccs.pyramid.feature_extraction.NgramTemplate;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.*;
+import org.apache.lucene.store.RAMDirectory;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Random;
+
+public class TermVectorSnapshotTest {
+    private static final String[] WORDS = {"the","a","of","heart","failure","acute","renal","chronic","disease","and","kidney","with"};
+
+    public static void main(String[] args) throws Exception{
+        test1();
+    }
+
+    /**
+     * term vectors and ngrams read from a snapshot of a local Lucene index should match the index
+     */
+    private static void test1() throws Exception{
+        Random random = new Random(0);
+        RAMDirectory directory = new RAMDirectory();
+        FieldType fieldType = new FieldType();
+        fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        fieldType.setTokenized(true);
+        fieldType.setStoreTermVectors(true);
+        fieldType.setStoreTermVectorPositions(true);
+        fieldType.freeze();
+        int numDocs = 300;
+        // the standard analyzer removes stop words, which leaves gaps in positions
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))){
+            for (int i=0;i<numDocs;i++){
+                Document document = new Document();
+                document.add(new StringField("id", "doc"+i, Field.Store.YES));
+                document.add(new Field("body", text(random, random.nextInt(40)), fieldType));
+                document.add(new Field("title", text(random, random.nextInt(5)), fieldType));
+                writer.addDocument(document);
+            }
+        }
+
+        String[] fields = {"body","title"};
+        File file = File.createTempFile("snapshot", ".bin");
+        file.deleteOnExit();
+        int mismatches = 0;
+        String[] ids = new String[numDocs];
+        try (IndexReader reader = DirectoryReader.open(directory)){
+            TermVectorSnapshot.export(reader, "id", fields, file);
+            TermVectorSnapshot snapshot = TermVectorSnapshot.load(file);
+            System.out.println("documents = "+snapshot.getNumDocs()+", terms = "+snapshot.getNumTerms());
+            for (int docId=0;docId<reader.maxDoc();docId++){
+                String id = reader.document(docId).get("id");
+                ids[docId] = id;
+                for (String field: fields){
+                    Map<Integer,String> expected = ESIndex.termVector(reader.getTermVector(docId, field));
+                    if (!expected.equals(snapshot.getTermVectorFromIndex(field, id))){
+                        mismatches += 1;
+                    }
+                }
+            }
+
+            TermVectorSource lucene = (field, id) -> {
+                try {
+                    return ESIndex.termVector(reader.getTermVector(Integer.parseInt(id.substring(3)), field));
+                } catch (Exception e){
+                    throw new RuntimeException(e);
+                }
+            };
+            NgramTemplate template = new NgramTemplate("body",2,1);
+            Multiset<Ngram> expected = NgramEnumerator.gatherNgram(lucene, ids, template, 2);
+            Multiset<Ngram> actual = NgramEnumerator.gatherNgram(snapshot, ids, template, 2);
+            System.out.println("ngrams = "+expected.elementSet().size());
+            if (!expected.equals(actual)){
+                mismatches += 1;
+            }
+        }
+        System.out.println("mismatches = "+mismatches);
+    }
+
+    private static String text(Random random, int length){
+        StringBuilder sb = new StringBuilder();
+        for (int i=0;i<length;i++){
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append(" ");
+        }
+        return sb.toString();
+    }
+}
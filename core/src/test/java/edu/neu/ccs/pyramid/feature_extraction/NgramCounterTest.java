@@ -0,0 +1,129 @@
+package edu.neu.ccs.pyramid.feature_extraction;
+
+import com.google.common.collect.Multiset;
+import edu.neu.ccs.pyramid.elasticsearch.TermVectorSnapshot;
+import edu.neu.ccs.pyramid.feature.Ngram;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+
+import java.io.File;
+import java.util.*;
+
+public class NgramCounterTest {
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+    }
+
+    /**
+     * document frequencies should match a brute-force count, with and without the sketch
+     */
+    private static void test1(){
+        Random random = new Random(0);
+        int numDocs = 2000;
+        int[][] docs = new int[numDocs][];
+        for (int i=0;i<numDocs;i++){
+            docs[i] = new int[random.nextInt(50)];
+            for (int p=0;p<docs[i].length;p++){
+                // -1 marks position gaps
+                docs[i][p] = random.nextDouble()<0.1 ? -1 : random.nextInt(30);
+            }
+        }
+        NgramTemplate template = new NgramTemplate("body", 3, 1);
+        List<List<Integer>> positionTemplate = template.getPositionTemplate();
+        Map<List<Integer>, Integer> expected = new HashMap<>();
+        for (int[] doc: docs){
+            Set<List<Integer>> distinct = new HashSet<>();
+            for (List<Integer> offsets: positionTemplate){
+                for (int start=0;start+offsets.get(offsets.size()-1)<doc.length;start++){
+                    List<Integer> key = new ArrayList<>();
+                    for (int offset: offsets){
+                        key.add(doc[start+offset]);
+                    }
+                    if (!key.contains(-1)){
+                        distinct.add(key);
+                    }
+                }
+            }
+            for (List<Integer> key: distinct){
+                expected.merge(key, 1, Integer::sum);
+            }
+        }
+
+        for (int minCount: new int[]{1,3}){
+            for (int sketchWidth: new int[]{0,1<<8,1<<16}){
+                NgramCounter.Table table = new NgramCounter(positionTemplate)
+                        .setMinCount(minCount).setSketchWidth(sketchWidth)
+                        .count(numDocs, i -> docs[i]);
+                Map<List<Integer>, Integer> actual = new HashMap<>();
+                table.forEach((keys, offset, count) -> {
+                    List<Integer> key = new ArrayList<>();
+                    for (int k=0;k<table.getWidth();k++){
+                        key.add(keys[offset+k]);
+                    }
+                    actual.put(key, count);
+                });
+                int mismatches = 0;
+                for (Map.Entry<List<Integer>, Integer> entry: expected.entrySet()){
+                    int count = entry.getValue()>=minCount ? entry.getValue() : 0;
+                    if (actual.getOrDefault(entry.getKey(), 0)!=count){
+                        mismatches += 1;
+                    }
+                }
+                mismatches += actual.keySet().stream().filter(key -> !expected.containsKey(key)).count();
+                System.out.println("minCount = "+minCount+", sketch width = "+sketchWidth
+                        +", ngrams = "+table.size()+", mismatches = "+mismatches);
+            }
+        }
+    }
+
+    /**
+     * documents missing from a snapshot should be skipped, not fail the enumeration
+     */
+    private static void test2() throws Exception{
+        RAMDirectory directory = new RAMDirectory();
+        FieldType fieldType = new FieldType();
+        fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        fieldType.setTokenized(true);
+        fieldType.setStoreTermVectors(true);
+        fieldType.setStoreTermVectorPositions(true);
+        fieldType.freeze();
+        String[] bodies = {"heart failure acute", "acute heart failure", "chronic kidney disease"};
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))){
+            for (int i=0;i<bodies.length;i++){
+                Document document = new Document();
+                document.add(new StringField("id", "doc"+i, Field.Store.YES));
+                document.add(new Field("body", bodies[i], fieldType));
+                writer.addDocument(document);
+            }
+        }
+        File file = File.createTempFile("snapshot", ".bin");
+        file.deleteOnExit();
+        try (IndexReader reader = DirectoryReader.open(directory)){
+            TermVectorSnapshot.export(reader, "id", new String[]{"body"}, file);
+        }
+        TermVectorSnapshot snapshot = TermVectorSnapshot.load(file);
+        String[] ids = {"doc0", "doc1", "doc2"};
+        String[] idsWithMissing = {"doc0", "doc1", "not_in_snapshot", "doc2"};
+        NgramTemplate template = new NgramTemplate("body", 2, 0);
+        for (int sketchWidth: new int[]{0,1<<8}){
+            Multiset<Ngram> expected = NgramEnumerator.gatherNgram(snapshot, ids, template, 1, sketchWidth);
+            Multiset<Ngram> actual = NgramEnumerator.gatherNgram(snapshot, idsWithMissing, template, 1, sketchWidth);
+            System.out.println("sketch width = "+sketchWidth+", ngrams = "+actual.entrySet().size()
+                    +", same as without the missing id = "+expected.equals(actual));
+        }
+        List<String> expected = NgramEnumerator.gatherNgrams(snapshot, "body", ids, 2, 1);
+        List<String> actual = NgramEnumerator.gatherNgrams(snapshot, "body", idsWithMissing, 2, 1);
+        System.out.println("contiguous ngrams = "+actual
+                +", same as without the missing id = "+new HashSet<>(expected).equals(new HashSet<>(actual)));
+    }
+}
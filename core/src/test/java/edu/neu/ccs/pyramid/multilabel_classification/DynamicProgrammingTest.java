@@ -1,5 +1,8 @@
 package edu.neu.ccs.pyramid.multilabel_classification;
 
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+
+import java.util.*;
 
 /**
  * Created by Rainicy on 11/28/15.
@@ -8,6 +11,7 @@ public class DynamicProgrammingTest {
 
     public static void main(String[] args) throws Exception {
         test3();
+        test4();
     }
 
     private static void test() throws Exception{
@@ -61,5 +65,43 @@ public class DynamicProgrammingTest {
             System.out.println("\tQ: " + dp.getQueue());
         }
     }
-}
 
+    /**
+     * the enumerated sets should be all sets in decreasing order of probability
+     */
+    private static void test4() throws Exception{
+        Random random = new Random(0);
+        double[] prob = new double[12];
+        for (int l=0;l<prob.length;l++){
+            prob[l] = random.nextDouble();
+        }
+        // certain labels are never flipped
+        prob[3] = 1;
+        prob[7] = 0;
+
+        List<Double> bruteForce = new ArrayList<>();
+        for (int mask=0;mask<(1<<prob.length);mask++){
+            double logProb = 0;
+            for (int l=0;l<prob.length;l++){
+                logProb += ((mask>>l)&1)==1 ? Math.log(prob[l]) : Math.log(1-prob[l]);
+            }
+            if (logProb!=Double.NEGATIVE_INFINITY){
+                bruteForce.add(logProb);
+            }
+        }
+        bruteForce.sort(Comparator.reverseOrder());
+
+        DynamicProgramming dp = new DynamicProgramming(prob);
+        List<DynamicProgramming.Candidate> candidates = dp.nextHighest(bruteForce.size()+10);
+        Set<MultiLabel> distinct = new HashSet<>();
+        double maxDifference = 0;
+        for (int i=0;i<candidates.size();i++){
+            distinct.add(candidates.get(i).getMultiLabel());
+            maxDifference = Math.max(maxDifference, Math.abs(candidates.get(i).getLogProbability()-bruteForce.get(i)));
+        }
+        System.out.println("number of sets = "+candidates.size()+", expected = "+bruteForce.size());
+        System.out.println("number of distinct sets = "+distinct.size());
+        System.out.println("max difference of log probabilities = "+maxDifference);
+        System.out.println("remaining queue size = "+dp.getQueue().size());
+    }
+}
@@ -0,0 +1,86 @@
+package edu.neu.ccs.pyramid.multilabel_classification.cbm;
+
+import edu.neu.ccs.pyramid.dataset.*;
+
+import java.util.List;
+import java.util.Random;
+
+public class BMDistributionCacheTest {
+
+    public static void main(String[] args) {
+        test1();
+    }
+
+    private static MultiLabelClfDataSet generate(int numDataPoints, Random random){
+        MultiLabelClfDataSet dataSet = MLClfDataSetBuilder.getBuilder().numDataPoints(numDataPoints).numFeatures(20)
+                .numClasses(4).density(Density.SPARSE_RANDOM).build();
+        for (int i=0;i<numDataPoints;i++){
+            for (int j=0;j<20;j++){
+                if (random.nextDouble()<0.3){
+                    dataSet.setFeatureValue(i,j,1);
+                }
+            }
+            for (int l=0;l<4;l++){
+                double sum = 0;
+                for (int j=l*5;j<l*5+5;j++){
+                    sum += dataSet.getRow(i).get(j);
+                }
+                if (sum>=2 || random.nextDouble()<0.05){
+                    dataSet.addLabel(i,l);
+                }
+            }
+        }
+        return dataSet;
+    }
+
+    /**
+     * predictions from cached full distributions should be the same as predictions from vectors
+     */
+    private static void test1(){
+        Random random = new Random(1);
+        MultiLabelClfDataSet trainSet = generate(400, random);
+        MultiLabelClfDataSet testSet = generate(100, random);
+        CBM cbm = CBM.getBuilder().setNumClasses(4).setNumFeatures(20).setNumComponents(5)
+                .setMultiClassClassifierType("lr").setBinaryClassifierType("lr").build();
+        LRCBMOptimizer optimizer = new LRCBMOptimizer(cbm, trainSet);
+        optimizer.initialize();
+        for (int iter=0;iter<5;iter++){
+            optimizer.iterate();
+        }
+
+        AccPredictor accPredictor = new AccPredictor(cbm);
+        accPredictor.setComponentContributionThreshold(0.1);
+        PluginF1 pluginF1 = new PluginF1(cbm);
+        List<MultiLabel> support = DataSetUtil.gatherMultiLabels(trainSet);
+        pluginF1.setSupport(support);
+        pluginF1.setPiThreshold(0.1);
+        MarginalPredictor marginalPredictor = new MarginalPredictor(cbm);
+        marginalPredictor.setPiThreshold(0.1);
+
+        BMDistributionCache cache = new BMDistributionCache(cbm, testSet, 10);
+        int mismatches = 0;
+        double maxDifference = 0;
+        for (int repeat=0;repeat<2;repeat++){
+            for (int i=0;i<testSet.getNumDataPoints();i++){
+                BMDistribution bmDistribution = cache.get(i);
+                MultiLabel truth = testSet.getMultiLabels()[i];
+                if (!accPredictor.predict(bmDistribution).equals(accPredictor.predict(testSet.getRow(i)))){
+                    mismatches += 1;
+                }
+                if (!pluginF1.predict(bmDistribution).equals(pluginF1.predict(testSet.getRow(i)))){
+                    mismatches += 1;
+                }
+                if (!marginalPredictor.predict(bmDistribution).equals(marginalPredictor.predict(testSet.getRow(i)))){
+                    mismatches += 1;
+                }
+                if (!CBMInspector.topLabels(cbm, bmDistribution, 0.2).equals(CBMInspector.topLabels(cbm, testSet.getRow(i), 0.2))){
+                    mismatches += 1;
+                }
+                maxDifference = Math.max(maxDifference, Math.abs(bmDistribution.logProbability(truth)
+                        - cbm.predictLogAssignmentProb(testSet.getRow(i), truth)));
+            }
+        }
+        System.out.println("mismatches = "+mismatches);
+        System.out.println("max difference of log probabilities = "+maxDifference);
+    }
+}
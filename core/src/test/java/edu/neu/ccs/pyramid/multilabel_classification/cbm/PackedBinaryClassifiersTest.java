@@ -0,0 +1,114 @@
+package edu.neu.ccs.pyramid.multilabel_classification.cbm;
+
+import edu.neu.ccs.pyramid.classification.PriorProbClassifier;
+import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticRegression;
+import org.apache.commons.lang3.time.StopWatch;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+
+import java.util.Random;
+
+public class PackedBinaryClassifiersTest {
+
+    public static void main(String[] args) {
+        test1();
+    }
+
+    /**
+     * random CBM with sparse logistic regression weights, and a prior classifier for every 10th label
+     */
+    private static CBM randomCBM(int numComponents, int numLabels, int numFeatures, Random random){
+        CBM cbm = CBM.getBuilder().setNumClasses(numLabels).setNumFeatures(numFeatures).setNumComponents(numComponents)
+                .setMultiClassClassifierType("lr").setBinaryClassifierType("lr").build();
+        for (int k=0;k<numComponents;k++){
+            for (int l=0;l<numLabels;l++){
+                if (l%10==0){
+                    cbm.binaryClassifiers[k][l] = new PriorProbClassifier(new double[]{0.9, 0.1});
+                    continue;
+                }
+                LogisticRegression logisticRegression = new LogisticRegression(2, numFeatures);
+                Vector weights = logisticRegression.getWeights().getAllWeights();
+                for (int d=0;d<weights.size();d++){
+                    if (random.nextDouble()<0.05){
+                        weights.set(d, random.nextGaussian());
+                    }
+                }
+                cbm.binaryClassifiers[k][l] = logisticRegression;
+            }
+        }
+        return cbm;
+    }
+
+    private static Vector randomVector(int numFeatures, Random random){
+        Vector vector = new RandomAccessSparseVector(numFeatures);
+        for (int j=0;j<numFeatures;j++){
+            if (random.nextDouble()<0.02){
+                vector.set(j, random.nextDouble());
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * packed and unpacked scoring should give the same distributions
+     */
+    private static void test1(){
+        Random random = new Random(1);
+        int numFeatures = 5000;
+        CBM cbm = randomCBM(50, 200, numFeatures, random);
+        Vector[] vectors = new Vector[200];
+        for (int i=0;i<vectors.length;i++){
+            vectors[i] = randomVector(numFeatures, random);
+        }
+
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        BMDistribution[] unpacked = new BMDistribution[vectors.length];
+        BMDistribution[] unpackedThresholded = new BMDistribution[vectors.length];
+        for (int i=0;i<vectors.length;i++){
+            unpacked[i] = cbm.computeBM(vectors[i]);
+            unpackedThresholded[i] = new BMDistribution(cbm, vectors[i], 0.001);
+        }
+        System.out.println("time without packing = "+stopWatch);
+
+        System.out.println("packed = "+cbm.packBinaryClassifiers());
+        stopWatch = new StopWatch();
+        stopWatch.start();
+        BMDistribution[] packed = new BMDistribution[vectors.length];
+        BMDistribution[] packedThresholded = new BMDistribution[vectors.length];
+        for (int i=0;i<vectors.length;i++){
+            packed[i] = cbm.computeBM(vectors[i]);
+            packedThresholded[i] = new BMDistribution(cbm, vectors[i], 0.001);
+        }
+        System.out.println("time with packing = "+stopWatch);
+
+        double maxDifference = 0;
+        int sizeMismatches = 0;
+        for (int i=0;i<vectors.length;i++){
+            maxDifference = Math.max(maxDifference, maxDifference(unpacked[i], packed[i]));
+            if (unpackedThresholded[i].numComponents!=packedThresholded[i].numComponents){
+                sizeMismatches += 1;
+            } else {
+                maxDifference = Math.max(maxDifference, maxDifference(unpackedThresholded[i], packedThresholded[i]));
+            }
+        }
+        System.out.println("component count mismatches = "+sizeMismatches);
+        System.out.println("max difference of log class probabilities = "+maxDifference);
+    }
+
+    private static double maxDifference(BMDistribution first, BMDistribution second){
+        double max = 0;
+        for (int k=0;k<first.numComponents;k++){
+            for (int l=0;l<first.numLabels;l++){
+                for (int c=0;c<2;c++){
+                    double a = first.logClassProbs[k][l][c];
+                    double b = second.logClassProbs[k][l][c];
+                    if (a!=b){
+                        max = Math.max(max, Math.abs(a-b));
+                    }
+                }
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,131 @@
+package edu.neu.ccs.pyramid.optimization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TuningSchedulerTest {
+
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+        test3();
+        test4();
+    }
+
+    /**
+     * the model moves from 0 towards the target of the candidate; the validation optimum is 1
+     */
+    private static TuningScheduler.Trial<double[]> newTrial(double target, double[] warmStart){
+        double[] model = warmStart==null ? new double[1] : warmStart;
+        return new TuningScheduler.Trial<double[]>() {
+            @Override
+            public void iterate() {
+                model[0] += 0.1*(target-model[0]);
+            }
+
+            @Override
+            public double evaluate() {
+                return -(model[0]-1)*(model[0]-1);
+            }
+
+            @Override
+            public double[] getModel() {
+                return model;
+            }
+        };
+    }
+
+    private static TuningScheduler<Double, double[]> newScheduler(){
+        return new TuningScheduler<>(() -> {
+            EarlyStopper earlyStopper = new EarlyStopper(EarlyStopper.Goal.MAXIMIZE, 5);
+            earlyStopper.setMinimumIterations(5);
+            return earlyStopper;
+        });
+    }
+
+    private static List<List<Double>> paths(){
+        List<List<Double>> paths = new ArrayList<>();
+        paths.add(Arrays.asList(1.2, 1.5, 2.0));
+        paths.add(Arrays.asList(3.0, 5.0));
+        return paths;
+    }
+
+    /**
+     * without warm starts, all candidates run concurrently from scratch
+     */
+    private static void test1() throws Exception{
+        TuningScheduler<Double, double[]> scheduler = newScheduler();
+        scheduler.setNumThreads(2);
+        List<TuningScheduler.Result<Double>> results = scheduler.search(paths(), TuningSchedulerTest::newTrial);
+        for (TuningScheduler.Result<Double> result: results){
+            System.out.println("target = "+result.getCandidate()+", best iteration = "+result.getBestIteration()
+                    +", best value = "+result.getBestValue());
+        }
+        System.out.println("best target = "+scheduler.getBest().getCandidate());
+        System.out.println("best model = "+scheduler.getBestModel()[0]);
+        // the kept model is the one at the best iteration
+        double[] model = new double[1];
+        TuningScheduler.Trial<double[]> trial = newTrial(scheduler.getBest().getCandidate(), model);
+        for (int iter=0;iter<scheduler.getBest().getBestIteration();iter++){
+            trial.iterate();
+        }
+        System.out.println("retrained model = "+model[0]);
+    }
+
+    /**
+     * with warm starts, later candidates of a path start from the best model of the previous one
+     */
+    private static void test2() throws Exception{
+        TuningScheduler<Double, double[]> scheduler = newScheduler();
+        scheduler.setWarmStart(true);
+        List<TuningScheduler.Result<Double>> results = scheduler.search(paths(), TuningSchedulerTest::newTrial);
+        for (TuningScheduler.Result<Double> result: results){
+            System.out.println("target = "+result.getCandidate()+", warm start iterations = "+result.getWarmStartIterations()
+                    +", best iteration = "+result.getBestIteration()+", best value = "+result.getBestValue()
+                    +", time = "+result.getTime()+"ms");
+        }
+        System.out.println("best target = "+scheduler.getBest().getCandidate());
+        System.out.println("best model = "+scheduler.getBestModel()[0]);
+    }
+
+    /**
+     * with successive halving, some candidates are stopped at the rungs
+     */
+    private static void test3() throws Exception{
+        TuningScheduler<Double, double[]> scheduler = newScheduler();
+        scheduler.setNumThreads(1);
+        scheduler.setHalvingMinIterations(2);
+        scheduler.setHalvingReduction(2);
+        List<List<Double>> paths = new ArrayList<>();
+        for (double target: new double[]{1.1, 10, 1.5, 20, 0.5, 3}){
+            paths.add(Arrays.asList(target));
+        }
+        List<TuningScheduler.Result<Double>> results = scheduler.search(paths, TuningSchedulerTest::newTrial);
+        for (TuningScheduler.Result<Double> result: results){
+            System.out.println("target = "+result.getCandidate()+", best iteration = "+result.getBestIteration()
+                    +", best value = "+result.getBestValue()+", pruned = "+result.isPruned());
+        }
+        System.out.println("best target = "+scheduler.getBest().getCandidate());
+    }
+
+    /**
+     * on a warm started path, the total iterations of a candidate include all iterations behind its warm start model
+     */
+    private static void test4() throws Exception{
+        TuningScheduler<Double, double[]> scheduler = newScheduler();
+        scheduler.setWarmStart(true);
+        List<List<Double>> paths = new ArrayList<>();
+        paths.add(Arrays.asList(1.2, 1.5, 2.0));
+        List<TuningScheduler.Result<Double>> results = scheduler.search(paths, TuningSchedulerTest::newTrial);
+        int total = 0;
+        for (TuningScheduler.Result<Double> result: results){
+            assertEquals(total, result.getWarmStartIterations());
+            total = result.getWarmStartIterations()+result.getBestIteration();
+            System.out.println("target = "+result.getCandidate()+", total iterations = "+total);
+        }
+        assertEquals(17+1+1, total);
+    }
+}
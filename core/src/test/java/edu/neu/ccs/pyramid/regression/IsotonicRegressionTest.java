@@ -1,5 +1,6 @@
 package edu.neu.ccs.pyramid.regression;
 
+import edu.neu.ccs.pyramid.multilabel_classification.imlgb.BucketInfo;
 import edu.neu.ccs.pyramid.util.*;
 import junit.framework.TestCase;
 import org.apache.commons.io.FileUtils;
@@ -7,10 +8,13 @@ import org.apache.commons.io.FileUtils;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
 
 public class IsotonicRegressionTest  {
     public static void main(String[] args) throws Exception{
         test7();
+        test8();
     }
 
     private static void test1(){
@@ -151,4 +155,29 @@ public class IsotonicRegressionTest  {
         FileUtils.writeStringToFile(new File("/Users/chengli/tmp/iso/output_gridvalues"), PrintUtil.toSimpleString(gridValues));
     }
 
-}
\ No newline at end of file
+    /**
+     * streaming into buckets should give the same fit as the boxed stream
+     */
+    private static void test8(){
+        Random random = new Random(0);
+        int size = 100000;
+        double[] probs = new double[size];
+        int[] labels = new int[size];
+        for (int i=0;i<size;i++){
+            probs[i] = random.nextDouble();
+            labels[i] = random.nextDouble()<probs[i]*probs[i] ? 1 : 0;
+        }
+        IsotonicRegression boxed = new IsotonicRegression(IntStream.range(0, size).parallel()
+                .mapToObj(i -> new Pair<>(probs[i], labels[i])));
+        BucketInfo bucketInfo = IntStream.range(0, size).parallel()
+                .collect(() -> new BucketInfo(10000), (info, i) -> info.add(probs[i], labels[i]), BucketInfo::addAll);
+        IsotonicRegression streaming = new IsotonicRegression(bucketInfo);
+        double maxDiff = 0;
+        for (int i=0;i<=1000;i++){
+            double location = i/1000.0;
+            maxDiff = Math.max(maxDiff, Math.abs(boxed.predict(location)-streaming.predict(location)));
+        }
+        System.out.println("max difference = "+maxDiff);
+    }
+
+}
@@ -0,0 +1,105 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.SparseDataSet;
+import edu.neu.ccs.pyramid.regression.ConstantRegressor;
+import edu.neu.ccs.pyramid.regression.Regressor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class CompiledTreeEnsembleTest {
+    public static void main(String[] args) {
+        test1(false);
+        test1(true);
+        test2();
+    }
+
+    /**
+     * compiled scores should match the scores of the original regressors
+     */
+    private static void test1(boolean missingValue){
+        Random random = new Random(0);
+        int numDataPoints = 1000;
+        int numFeatures = 20;
+        SparseDataSet dataSet = new SparseDataSet(numDataPoints,numFeatures,missingValue);
+        double[] labels = new double[numDataPoints];
+        for (int i=0;i<numDataPoints;i++){
+            for (int j=0;j<numFeatures;j++){
+                if (random.nextDouble()<0.3){
+                    dataSet.setFeatureValue(i,j,random.nextInt(10));
+                }
+                if (missingValue && random.nextDouble()<0.05){
+                    dataSet.setFeatureValue(i,j,Double.NaN);
+                }
+            }
+            labels[i] = random.nextGaussian();
+        }
+
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(7);
+        List<List<Regressor>> regressors = new ArrayList<>();
+        for (int k=0;k<3;k++){
+            List<Regressor> regressorsClassK = new ArrayList<>();
+            regressorsClassK.add(new ConstantRegressor(k));
+            for (int t=0;t<5;t++){
+                double[] target = new double[numDataPoints];
+                for (int i=0;i<numDataPoints;i++){
+                    target[i] = labels[i]*(k+1) + random.nextGaussian();
+                }
+                regressorsClassK.add(RegTreeTrainer.fit(regTreeConfig,dataSet,target));
+            }
+            regressors.add(regressorsClassK);
+        }
+
+        CompiledTreeEnsemble compiled = CompiledTreeEnsemble.compile(regressors);
+        double maxDifference = 0;
+        double[] scores = new double[3];
+        for (int i=0;i<numDataPoints;i++){
+            compiled.scores(dataSet.getRow(i),scores);
+            for (int k=0;k<3;k++){
+                double expected = 0;
+                for (Regressor regressor: regressors.get(k)){
+                    expected += regressor.predict(dataSet.getRow(i));
+                }
+                maxDifference = Math.max(maxDifference,Math.abs(expected-scores[k]));
+            }
+        }
+        System.out.println("number of nodes = "+compiled.getNumNodes());
+        System.out.println("max difference = "+maxDifference);
+    }
+
+    /**
+     * batch scores should match one-by-one scores
+     */
+    private static void test2(){
+        Random random = new Random(0);
+        int numDataPoints = 1000;
+        int numFeatures = 20;
+        SparseDataSet dataSet = new SparseDataSet(numDataPoints,numFeatures,true);
+        double[] labels = new double[numDataPoints];
+        for (int i=0;i<numDataPoints;i++){
+            for (int j=0;j<numFeatures;j++){
+                if (random.nextDouble()<0.3){
+                    dataSet.setFeatureValue(i,j,random.nextInt(10));
+                }
+                if (random.nextDouble()<0.05){
+                    dataSet.setFeatureValue(i,j,Double.NaN);
+                }
+            }
+            labels[i] = random.nextGaussian();
+        }
+        List<List<Regressor>> regressors = new ArrayList<>();
+        List<Regressor> regressorsClass0 = new ArrayList<>();
+        regressorsClass0.add(new ConstantRegressor(1));
+        regressorsClass0.add(RegTreeTrainer.fit(new RegTreeConfig().setMaxNumLeaves(5),dataSet,labels));
+        regressors.add(regressorsClass0);
+
+        CompiledTreeEnsemble compiled = CompiledTreeEnsemble.compile(regressors);
+        double[][] batchScores = compiled.scores(dataSet);
+        double maxDifference = 0;
+        for (int i=0;i<numDataPoints;i++){
+            maxDifference = Math.max(maxDifference,Math.abs(batchScores[i][0]-compiled.score(dataSet.getRow(i),0)));
+        }
+        System.out.println("max difference = "+maxDifference);
+    }
+}
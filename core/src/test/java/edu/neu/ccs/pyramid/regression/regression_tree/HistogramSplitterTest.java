@@ -0,0 +1,74 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.SparseDataSet;
+
+public class HistogramSplitterTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+        test3();
+    }
+
+    /**
+     * should match IntervalSplitterTest.test1
+     */
+    private static void test1(){
+        SparseDataSet dataSet = new SparseDataSet(5,2,false);
+        dataSet.setFeatureValue(0,0,0);
+        dataSet.setFeatureValue(1,0,0);
+        dataSet.setFeatureValue(2,0,0);
+        dataSet.setFeatureValue(3,0,1);
+        dataSet.setFeatureValue(4,0,1);
+        double[] labels = {1,2,3,3,1};
+        RegTreeConfig regTreeConfig = new RegTreeConfig();
+        double[] probs = {1,1,1,1,0};
+        regTreeConfig.setMinDataPerLeaf(1)
+                .setNumSplitIntervals(2);
+        Splitter.GlobalStats globalStats = new Splitter.GlobalStats(labels,probs);
+        BinnedDataSet binnedDataSet = BinnedDataSet.build(dataSet, regTreeConfig.getNumSplitIntervals());
+        System.out.println(IntervalSplitter.split(regTreeConfig, dataSet, labels, probs, 0,globalStats));
+        System.out.println(HistogramSplitter.split(regTreeConfig, binnedDataSet.getFeature(0), labels, probs, 0,globalStats));
+    }
+
+    /**
+     * with missing values
+     */
+    private static void test2(){
+        SparseDataSet dataSet = new SparseDataSet(6,1,true);
+        dataSet.setFeatureValue(0,0,-1);
+        dataSet.setFeatureValue(1,0,2);
+        dataSet.setFeatureValue(2,0,Double.NaN);
+        dataSet.setFeatureValue(3,0,5);
+        dataSet.setFeatureValue(4,0,5);
+        double[] labels = {1,2,3,3,1,0};
+        RegTreeConfig regTreeConfig = new RegTreeConfig();
+        double[] probs = {1,1,1,1,1,0.5};
+        regTreeConfig.setMinDataPerLeaf(1)
+                .setNumSplitIntervals(100);
+        Splitter.GlobalStats globalStats = new Splitter.GlobalStats(labels,probs);
+        BinnedDataSet binnedDataSet = BinnedDataSet.build(dataSet, regTreeConfig.getNumSplitIntervals());
+        System.out.println(IntervalSplitter.split(regTreeConfig, dataSet, labels, probs, 0,globalStats));
+        System.out.println(HistogramSplitter.split(regTreeConfig, binnedDataSet.getFeature(0), labels, probs, 0,globalStats));
+    }
+
+    /**
+     * more distinct values than bins
+     */
+    private static void test3(){
+        SparseDataSet dataSet = new SparseDataSet(100,1,false);
+        double[] labels = new double[100];
+        double[] probs = new double[100];
+        for (int i=0;i<100;i++){
+            dataSet.setFeatureValue(i,0,i*0.1);
+            labels[i] = i<37?0:1;
+            probs[i] = 1;
+        }
+        RegTreeConfig regTreeConfig = new RegTreeConfig();
+        regTreeConfig.setMinDataPerLeaf(1)
+                .setNumSplitIntervals(10);
+        Splitter.GlobalStats globalStats = new Splitter.GlobalStats(labels,probs);
+        BinnedDataSet binnedDataSet = BinnedDataSet.build(dataSet, regTreeConfig.getNumSplitIntervals());
+        System.out.println(IntervalSplitter.split(regTreeConfig, dataSet, labels, probs, 0,globalStats));
+        System.out.println(HistogramSplitter.split(regTreeConfig, binnedDataSet.getFeature(0), labels, probs, 0,globalStats));
+    }
+}
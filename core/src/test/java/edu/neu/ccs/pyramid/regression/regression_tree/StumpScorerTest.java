@@ -0,0 +1,123 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.dataset.SparseDataSet;
+import org.apache.commons.lang3.time.StopWatch;
+
+import java.util.Random;
+
+public class StumpScorerTest {
+
+    public static void main(String[] args) {
+        test1();
+        test2();
+        test3();
+    }
+
+    /**
+     * sparse multi-label columns, each data point has a few positive labels
+     */
+    private static double[][] randomLabels(int numLabels, int numData, Random random){
+        double[][] labels = new double[numLabels][numData];
+        for (int i=0;i<numData;i++){
+            for (int l=0;l<numLabels;l++){
+                if (random.nextDouble()<0.05){
+                    labels[l][i] = 1;
+                }
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * @param type binary, frequency or signed
+     */
+    private static DataSet randomFeature(int numData, String type, Random random){
+        DataSet dataSet = new SparseDataSet(numData, 1, false, null);
+        for (int i=0;i<numData;i++){
+            if (random.nextDouble()<0.1){
+                double value;
+                switch (type){
+                    case "binary":
+                        value = 1;
+                        break;
+                    case "frequency":
+                        value = 1+random.nextInt(20);
+                        break;
+                    default:
+                        value = random.nextGaussian();
+                        break;
+                }
+                dataSet.setFeatureValue(i, 0, value);
+            }
+        }
+        return dataSet;
+    }
+
+    private static double maxDifference(RegTreeConfig regTreeConfig, double[][] labels, DataSet dataSet){
+        double[] scores = new StumpScorer(regTreeConfig, labels).scores(dataSet.getColumn(0));
+        double max = 0;
+        for (int l=0;l<labels.length;l++){
+            double expected = RegTreeTrainer.fit(regTreeConfig, dataSet, labels[l]).getRoot().getReduction();
+            max = Math.max(max, Math.abs(expected-scores[l]));
+        }
+        return max;
+    }
+
+    /**
+     * same reductions as 2-leaf trees
+     */
+    private static void test1(){
+        Random random = new Random(1);
+        double[][] labels = randomLabels(50, 1000, random);
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(2);
+        for (String type: new String[]{"binary", "frequency", "signed"}){
+            DataSet dataSet = randomFeature(1000, type, random);
+            System.out.println(type+": max difference = "+maxDifference(regTreeConfig, labels, dataSet));
+        }
+    }
+
+    /**
+     * with minimum data per leaf and few intervals
+     */
+    private static void test2(){
+        Random random = new Random(2);
+        double[][] labels = randomLabels(50, 1000, random);
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(2).setMinDataPerLeaf(30).setNumSplitIntervals(5);
+        for (String type: new String[]{"binary", "frequency", "signed"}){
+            DataSet dataSet = randomFeature(1000, type, random);
+            System.out.println(type+": max difference = "+maxDifference(regTreeConfig, labels, dataSet));
+        }
+    }
+
+    /**
+     * speed compared to fitting one tree per label
+     */
+    private static void test3(){
+        Random random = new Random(3);
+        int numData = 20000;
+        double[][] labels = randomLabels(500, numData, random);
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(2);
+        DataSet[] features = new DataSet[20];
+        for (int f=0;f<features.length;f++){
+            features[f] = randomFeature(numData, "frequency", random);
+        }
+
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        for (DataSet feature: features){
+            for (double[] label: labels){
+                RegTreeTrainer.fit(regTreeConfig, feature, label);
+            }
+        }
+        System.out.println("time with trees = "+stopWatch);
+
+        stopWatch = new StopWatch();
+        stopWatch.start();
+        StumpScorer scorer = new StumpScorer(regTreeConfig, labels);
+        for (DataSet feature: features){
+            scorer.scores(feature.getColumn(0));
+        }
+        System.out.println("time with scorer = "+stopWatch);
+    }
+}